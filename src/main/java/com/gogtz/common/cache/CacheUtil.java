@@ -12,17 +12,34 @@
  */
 package com.gogtz.common.cache;
 
-import java.util.HashMap;
+import com.gogtz.common.cache.local.CacheStats;
+import com.gogtz.common.cache.local.LocalCache;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * <h1>缓存工具类</h1>
  * <p>服务器临时缓存，重启后丢失，不支持集群</p>
+ * <ol><strong>
+ * <li>可选配置文件：properties/system.properties</li>
+ * <li>最大条目数：cache.local.maximumSize，默认10000</li>
+ * <li>空闲过期时间（毫秒）：cache.local.expireAfterAccess，默认不过期</li>
+ * </strong>
+ * </ol>
  *
  * @author: t
  * @version: 1.0
  */
 public class CacheUtil {
-    private static HashMap<String, Object> cache;
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private static final LocalCache<String, Object> cache = new LocalCache<String, Object>(
+            getConfig("cache.local.maximumSize", DEFAULT_MAXIMUM_SIZE), 0,
+            getConfig("cache.local.expireAfterAccess", 0L), null);
 
     /**
      * 从缓存中取得数据
@@ -31,7 +48,7 @@ public class CacheUtil {
      * @return
      */
     public static Object get(String key) {
-        if (cache == null) {
+        if (key == null) {
             return null;
         }
         return cache.get(key);
@@ -55,26 +72,96 @@ public class CacheUtil {
      * 添加缓存
      *
      * @param key   key
-     * @param value 值
+     * @param value 值，为null时移除缓存
      */
     public static void put(String key, Object value) {
-        if (cache == null) {
-            cache = new HashMap<String, Object>();
+        if (value == null) {
+            remove(key);
+            return;
         }
         cache.put(key, value);
     }
 
+    /**
+     * 添加缓存，指定过期时间
+     *
+     * @param key           key
+     * @param value         值，为null时移除缓存
+     * @param expireSeconds 过期时间（秒）
+     */
+    public static void put(String key, Object value, int expireSeconds) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        cache.put(key, value, expireSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 读取缓存，不存在时加载，同一个key的并发加载只执行一次
+     *
+     * @param key           key
+     * @param loader        加载方法，返回null时不缓存
+     * @param expireSeconds 过期时间（秒）
+     * @return 值
+     */
+    public static Object getOrLoad(String key, Supplier<?> loader, int expireSeconds) {
+        return getOrLoad(key, loader, expireSeconds, 0);
+    }
+
+    /**
+     * 读取缓存，不存在时加载，同一个key的并发加载只执行一次<br>
+     * 临近过期时随机地提前在后台刷新，过期后staleSeconds内仍返回旧值并在后台刷新
+     *
+     * @param key           key
+     * @param loader        加载方法，返回null时不缓存
+     * @param expireSeconds 过期时间（秒）
+     * @param staleSeconds  过期后仍可返回旧值的时间（秒）
+     * @return 值
+     */
+    public static Object getOrLoad(String key, final Supplier<?> loader, int expireSeconds, int staleSeconds) {
+        return cache.getOrLoad(key, new Function<String, Object>() {
+            @Override
+            public Object apply(String k) {
+                return loader.get();
+            }
+        }, expireSeconds, staleSeconds, TimeUnit.SECONDS);
+    }
+
     /**
      * 从缓存中移除内容
      *
      * @param key key
      */
     public static void remove(String key) {
-        if (cache == null) {
-            cache = new HashMap<String, Object>();
+        if (key == null) {
+            return;
         }
-        if (cache.containsKey(key)) {
-            cache.remove(key);
+        cache.remove(key);
+    }
+
+    /**
+     * 取得缓存的命中、未命中、淘汰统计
+     *
+     * @return 统计快照
+     */
+    public static CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 读取配置，配置文件不存在或格式错误时使用默认值
+     *
+     * @param key          key
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    private static long getConfig(String key, long defaultValue) {
+        try {
+            String value = PropertyUtil.getSystemResourcesPropertieValue(key);
+            return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+        } catch (RuntimeException e) {
+            return defaultValue;
         }
     }
 }
@@ -0,0 +1,86 @@
+package com.gogtz.common.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 通过SCAN逐批遍历匹配的key，分片时依次遍历每个节点<br>
+ * 每次只在内存中保留一批key；遍历期间有增删时，key可能重复出现或遗漏（未被修改的key一定会出现）
+ *
+ * @author t
+ */
+class KeyScanIterator implements Iterator<String> {
+
+    /**
+     * ARGV: 游标, 模式, 每批数量; 返回{下一个游标, key1, key2, ...}<br>
+     * Jedis不能解析嵌套的multi bulk reply，因此把SCAN的结果展开为一层
+     */
+    private static final RedisScript SCAN_SCRIPT = ScriptRegistry.register("SCAN",
+            "local reply = redis.call('scan', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3]) "
+                    + "local result = {reply[1]} "
+                    + "for i, key in ipairs(reply[2]) do "
+                    + "result[i + 1] = key "
+                    + "end "
+                    + "return result");
+
+    private final String pattern;
+    private final int batchSize;
+    private final List<JedisPool> pools;
+    private int poolIndex;
+    private String cursor = "0";
+    private Iterator<String> batch = Collections.<String>emptyList().iterator();
+
+    KeyScanIterator(String pattern, int batchSize) {
+        this.pattern = pattern;
+        this.batchSize = batchSize;
+        this.pools = RedisShards.getPools();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!batch.hasNext()) {
+            if (poolIndex >= pools.size()) {
+                return false;
+            }
+            fetch();
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.next();
+    }
+
+    /**
+     * 在当前节点上取下一批，当前节点遍历完后转到下一个节点
+     */
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        List<Object> reply = RedisUtils.execute(SCAN_SCRIPT.getName(), null, pools.get(poolIndex),
+                new RedisCallback<List<Object>>() {
+                    @Override
+                    public List<Object> doInRedis(Jedis jedis) {
+                        return (List<Object>) SCAN_SCRIPT.eval(jedis, Collections.<String>emptyList(),
+                                Arrays.asList(cursor, pattern, String.valueOf(batchSize)));
+                    }
+                });
+        if (reply == null) {
+            throw new IllegalStateException("scan " + pattern + " failed, see previous error");
+        }
+        cursor = (String) reply.get(0);
+        batch = ((List<String>) (List<?>) reply.subList(1, reply.size())).iterator();
+        if ("0".equals(cursor)) {
+            poolIndex++;
+        }
+    }
+}
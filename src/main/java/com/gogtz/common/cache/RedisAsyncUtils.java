@@ -0,0 +1,528 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * <h1>Redis异步工具类</h1>
+ * 在专用线程池中执行{@link RedisUtils}的命令并返回{@link CompletableFuture}，可以并行发出多个查询：
+ * <pre>
+ * CompletableFuture&lt;String&gt; user = RedisAsyncUtils.get("user:" + id);
+ * CompletableFuture&lt;String&gt; cart = RedisAsyncUtils.get("cart:" + id);
+ * CompletableFuture.allOf(user, cart).join();
+ * </pre>
+ * <ol><strong>
+ * <li>线程数与连接池最大连接数redis.pool.maxActive一致，不会因排队借连接而阻塞</li>
+ * <li>等待队列长度：redis.async.queueSize，默认1024，队列满时返回的Future以{@link RejectedExecutionException}结束</li>
+ * <li>默认超时（毫秒）：redis.async.timeout，默认3000，超时后Future以{@link TimeoutException}结束，尚未执行的命令不再执行</li>
+ * </strong>
+ * </ol>
+ * 与同步方法一样，命令出错时记录日志并以null结束。
+ * 结果的回调默认在线程池中执行，耗时的处理请使用thenApplyAsync等方法指定其他线程池；
+ * {@link RedisUtils#bindConnection()}绑定的连接不会传递到异步命令中。
+ *
+ * @author t
+ */
+public class RedisAsyncUtils {
+    private static final Logger logger = LoggerFactory.getLogger(RedisAsyncUtils.class);
+
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final long DEFAULT_TIMEOUT = 3000L;
+
+    private static final long defaultTimeout = getLong("redis.async.timeout", DEFAULT_TIMEOUT);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("redis-async-timer"));
+
+    private static volatile ThreadPoolExecutor executor;
+
+    private RedisAsyncUtils() {
+    }
+
+    /**
+     * 在线程池中执行任意Redis操作，使用默认超时
+     *
+     * @param command 操作，通常调用RedisUtils的方法
+     * @return 结果
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> command) {
+        return supplyAsync(command, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在线程池中执行任意Redis操作
+     *
+     * @param command 操作，通常调用RedisUtils的方法
+     * @param timeout 超时，0表示不超时
+     * @param unit    时间单位
+     * @return 结果
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Supplier<T> command, final long timeout,
+                                                       final TimeUnit unit) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final Future<?> task;
+        try {
+            task = executor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    try {
+                        result.complete(command.get());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("redis async queue is full");
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeout > 0) {
+            final ScheduledFuture<?> timer = RedisAsyncUtils.timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.completeExceptionally(
+                            new TimeoutException("redis command timed out after " + timeout + " " + unit))) {
+                        task.cancel(false);
+                    }
+                }
+            }, timeout, unit);
+            result.whenComplete(new BiConsumer<T, Throwable>() {
+                @Override
+                public void accept(T value, Throwable throwable) {
+                    timer.cancel(false);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 获取数据
+     *
+     * @param key key
+     * @return
+     * @see RedisUtils#get(String)
+     */
+    public static CompletableFuture<String> get(String key) {
+        return get(key, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取数据
+     *
+     * @param key     key
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#get(String)
+     */
+    public static CompletableFuture<String> get(final String key, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<String>() {
+            @Override
+            public String get() {
+                return RedisUtils.get(key);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 批量获取数据
+     *
+     * @param keys keys
+     * @return
+     * @see RedisUtils#mget(String...)
+     */
+    public static CompletableFuture<List<String>> mget(String... keys) {
+        return mget(defaultTimeout, TimeUnit.MILLISECONDS, keys);
+    }
+
+    /**
+     * 批量获取数据
+     *
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @param keys    keys
+     * @return
+     * @see RedisUtils#mget(String...)
+     */
+    public static CompletableFuture<List<String>> mget(long timeout, TimeUnit unit, final String... keys) {
+        return supplyAsync(new Supplier<List<String>>() {
+            @Override
+            public List<String> get() {
+                return RedisUtils.mget(keys);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 赋值数据
+     *
+     * @param key   key
+     * @param value value
+     * @return
+     * @see RedisUtils#set(String, String)
+     */
+    public static CompletableFuture<String> set(String key, String value) {
+        return set(key, value, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 赋值数据
+     *
+     * @param key     key
+     * @param value   value
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#set(String, String)
+     */
+    public static CompletableFuture<String> set(final String key, final String value, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<String>() {
+            @Override
+            public String get() {
+                return RedisUtils.set(key, value);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 赋值数据并设置过期时间
+     *
+     * @param key           key
+     * @param value         value
+     * @param expireSeconds (过期时间，秒)
+     * @return
+     * @see RedisUtils#set(String, String, int)
+     */
+    public static CompletableFuture<Long> set(String key, String value, int expireSeconds) {
+        return set(key, value, expireSeconds, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 赋值数据并设置过期时间
+     *
+     * @param key           key
+     * @param value         value
+     * @param expireSeconds (过期时间，秒)
+     * @param timeout       超时
+     * @param unit          时间单位
+     * @return
+     * @see RedisUtils#set(String, String, int)
+     */
+    public static CompletableFuture<Long> set(final String key, final String value, final int expireSeconds,
+                                              long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.set(key, value, expireSeconds);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param key key
+     * @return
+     * @see RedisUtils#del(String)
+     */
+    public static CompletableFuture<Long> del(String key) {
+        return del(key, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 删除数据
+     *
+     * @param key     key
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#del(String)
+     */
+    public static CompletableFuture<Long> del(final String key, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.del(key);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 判断是否存在
+     *
+     * @param key key
+     * @return
+     * @see RedisUtils#exists(String)
+     */
+    public static CompletableFuture<Boolean> exists(String key) {
+        return exists(key, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 判断是否存在
+     *
+     * @param key     key
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#exists(String)
+     */
+    public static CompletableFuture<Boolean> exists(final String key, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return RedisUtils.exists(key);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 设置过期时间
+     *
+     * @param key           key
+     * @param expireSeconds (过期时间，秒)
+     * @return
+     * @see RedisUtils#expire(String, int)
+     */
+    public static CompletableFuture<Long> expire(String key, int expireSeconds) {
+        return expire(key, expireSeconds, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置过期时间
+     *
+     * @param key           key
+     * @param expireSeconds (过期时间，秒)
+     * @param timeout       超时
+     * @param unit          时间单位
+     * @return
+     * @see RedisUtils#expire(String, int)
+     */
+    public static CompletableFuture<Long> expire(final String key, final int expireSeconds, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.expire(key, expireSeconds);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 累加值
+     *
+     * @param key key
+     * @return
+     * @see RedisUtils#incr(String)
+     */
+    public static CompletableFuture<Long> incr(String key) {
+        return incr(key, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加值
+     *
+     * @param key     key
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#incr(String)
+     */
+    public static CompletableFuture<Long> incr(final String key, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.incr(key);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * set中添加值
+     *
+     * @param key   key
+     * @param value value
+     * @return
+     * @see RedisUtils#sadd(String, String)
+     */
+    public static CompletableFuture<Long> sadd(String key, String value) {
+        return sadd(key, value, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * set中添加值
+     *
+     * @param key     key
+     * @param value   value
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#sadd(String, String)
+     */
+    public static CompletableFuture<Long> sadd(final String key, final String value, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.sadd(key, value);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 判断set中是否有值
+     *
+     * @param key    key
+     * @param member member
+     * @return
+     * @see RedisUtils#sismember(String, String)
+     */
+    public static CompletableFuture<Boolean> sismember(String key, String member) {
+        return sismember(key, member, defaultTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 判断set中是否有值
+     *
+     * @param key     key
+     * @param member  member
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @return
+     * @see RedisUtils#sismember(String, String)
+     */
+    public static CompletableFuture<Boolean> sismember(final String key, final String member, long timeout, TimeUnit unit) {
+        return supplyAsync(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return RedisUtils.sismember(key, member);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 写入链表
+     *
+     * @param key    key
+     * @param values values
+     * @return
+     * @see RedisUtils#lpush(String, String...)
+     */
+    public static CompletableFuture<Long> lpush(String key, String... values) {
+        return lpush(defaultTimeout, TimeUnit.MILLISECONDS, key, values);
+    }
+
+    /**
+     * 写入链表
+     *
+     * @param timeout 超时
+     * @param unit    时间单位
+     * @param key     key
+     * @param values  values
+     * @return
+     * @see RedisUtils#lpush(String, String...)
+     */
+    public static CompletableFuture<Long> lpush(long timeout, TimeUnit unit, final String key, final String... values) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.lpush(key, values);
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     * @return
+     * @see RedisUtils#publish(String, String)
+     */
+    public static CompletableFuture<Long> publish(final String channel, final String message) {
+        return supplyAsync(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return RedisUtils.publish(channel, message);
+            }
+        });
+    }
+
+    /**
+     * 等待中的命令数
+     *
+     * @return 队列长度
+     */
+    public static int getQueueSize() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    private static ThreadPoolExecutor executor() {
+        ThreadPoolExecutor result = executor;
+        if (result == null) {
+            synchronized (RedisAsyncUtils.class) {
+                result = executor;
+                if (result == null) {
+                    int maxActive = RedisPoolManager.getMaxActive();
+                    int threads = maxActive > 0 ? maxActive : Runtime.getRuntime().availableProcessors() * 2;
+                    int queueSize = (int) getLong("redis.async.queueSize", DEFAULT_QUEUE_SIZE);
+                    result = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory("redis-async"));
+                    result.allowCoreThreadTimeOut(true);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        try {
+            String value = PropertyUtil.getRedisValue(key);
+            return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 带名称的守护线程
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger index = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
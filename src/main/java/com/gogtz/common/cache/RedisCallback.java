@@ -0,0 +1,21 @@
+package com.gogtz.common.cache;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Redis命令回调<br>
+ * 由{@link RedisUtils#execute(RedisCallback)}负责借出和归还连接
+ *
+ * @param <T> 返回值类型
+ * @author t
+ */
+public interface RedisCallback<T> {
+
+    /**
+     * 使用连接执行命令
+     *
+     * @param jedis 连接，不要在回调外保存
+     * @return 结果
+     */
+    T doInRedis(Jedis jedis);
+}
@@ -0,0 +1,271 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.codec.BinaryOutput;
+import com.gogtz.common.cache.codec.CodecException;
+import com.gogtz.common.cache.codec.Compression;
+import com.gogtz.common.cache.metrics.Histogram;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Redis字符串值的透明压缩</h1>
+ * 通过{@link RedisUtils#set(String, String)}等方法写入的值超过阈值时压缩后保存，
+ * 并以{@link #MAGIC}开头标记（合法的UTF-8文本不会出现该字节），{@link RedisUtils#get(String)}读取时自动解压。
+ * <ol><strong>
+ * <li>配置文件：properties/redis.properties</li>
+ * <li>是否启用：redis.compress.enabled，默认false；关闭后仍能读取已压缩的值</li>
+ * <li>压缩阈值（字节）：redis.compress.threshold，默认4096</li>
+ * <li>按key前缀指定阈值：redis.compress.prefix.&lt;前缀&gt;=&lt;阈值&gt;，off表示该前缀不压缩，匹配最长的前缀</li>
+ * </strong>
+ * </ol>
+ *
+ * @author t
+ */
+public class RedisCompression {
+    private static final Logger logger = LoggerFactory.getLogger(RedisCompression.class);
+
+    /**
+     * 压缩值的第一个字节
+     */
+    public static final byte MAGIC = (byte) 0xFF;
+
+    /**
+     * 压缩算法标记
+     */
+    private static final byte DEFLATE = 1;
+
+    private static final String PREFIX_KEY = "redis.compress.prefix.";
+    private static final int DEFAULT_THRESHOLD = 4096;
+    private static final int DISABLED = Integer.MAX_VALUE;
+
+    private static final boolean enabled;
+    private static final int threshold;
+    private static final List<PrefixPolicy> policies;
+
+    private static final AtomicLong compressedCount = new AtomicLong();
+    private static final AtomicLong skippedCount = new AtomicLong();
+    private static final AtomicLong bytesBefore = new AtomicLong();
+    private static final AtomicLong bytesAfter = new AtomicLong();
+    private static final AtomicLong decompressedCount = new AtomicLong();
+    private static final Histogram compressMicros = new Histogram(TimeUnit.SECONDS.toMicros(10));
+    private static final Histogram decompressMicros = new Histogram(TimeUnit.SECONDS.toMicros(10));
+
+    static {
+        boolean on = false;
+        int defaultThreshold = DEFAULT_THRESHOLD;
+        List<PrefixPolicy> prefixPolicies = new ArrayList<PrefixPolicy>();
+        try {
+            Properties properties = PropertyUtil.getRedisResourcesProperties();
+            if (properties != null) {
+                on = Boolean.valueOf(properties.getProperty("redis.compress.enabled"));
+                defaultThreshold = parseThreshold(properties.getProperty("redis.compress.threshold"), DEFAULT_THRESHOLD);
+                for (String name : properties.stringPropertyNames()) {
+                    if (name.startsWith(PREFIX_KEY) && name.length() > PREFIX_KEY.length()) {
+                        prefixPolicies.add(new PrefixPolicy(name.substring(PREFIX_KEY.length()),
+                                parseThreshold(properties.getProperty(name), defaultThreshold)));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("redis compression disabled: " + e.getMessage());
+            on = false;
+        }
+        // 最长的前缀优先匹配
+        Collections.sort(prefixPolicies, new Comparator<PrefixPolicy>() {
+            @Override
+            public int compare(PrefixPolicy o1, PrefixPolicy o2) {
+                return o2.prefix.length() - o1.prefix.length();
+            }
+        });
+        enabled = on;
+        threshold = defaultThreshold;
+        policies = prefixPolicies;
+    }
+
+    private RedisCompression() {
+    }
+
+    /**
+     * 是否启用压缩
+     *
+     * @return 是否启用
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取得key适用的压缩阈值
+     *
+     * @param key key
+     * @return 阈值（字节），{@link Integer#MAX_VALUE}表示不压缩
+     */
+    public static int thresholdOf(String key) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        for (PrefixPolicy policy : policies) {
+            if (key.startsWith(policy.prefix)) {
+                return policy.threshold;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * 按key的策略压缩值
+     *
+     * @param key   key
+     * @param value 值
+     * @return 压缩后的字节，不需要压缩时返回null
+     */
+    public static byte[] compress(String key, String value) {
+        if (value == null) {
+            return null;
+        }
+        int keyThreshold = thresholdOf(key);
+        // UTF-8字节数不小于字符数，字符数已经达到阈值时才需要编码
+        if (keyThreshold == DISABLED || value.length() < keyThreshold / 3) {
+            return null;
+        }
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < keyThreshold) {
+            return null;
+        }
+        long start = System.nanoTime();
+        BinaryOutput out = BinaryOutput.acquire();
+        try {
+            out.writeByte(MAGIC);
+            out.writeByte(DEFLATE);
+            Compression.deflate(raw, 0, raw.length, out);
+            compressMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (out.size() >= raw.length) {
+                skippedCount.incrementAndGet();
+                return null;
+            }
+            compressedCount.incrementAndGet();
+            bytesBefore.addAndGet(raw.length);
+            bytesAfter.addAndGet(out.size());
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 把Redis中读出的字节还原成字符串，未压缩的按UTF-8解码
+     *
+     * @param raw 字节
+     * @return 字符串
+     */
+    public static String decompress(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (!isCompressed(raw)) {
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+        if (raw[1] != DEFLATE) {
+            throw new CodecException("unknown compression algorithm: %s", raw[1]);
+        }
+        long start = System.nanoTime();
+        byte[] bytes = Compression.inflate(raw, 2, raw.length - 2);
+        decompressMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        decompressedCount.incrementAndGet();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 是否为压缩过的值
+     *
+     * @param raw 字节
+     * @return 是否压缩
+     */
+    public static boolean isCompressed(byte[] raw) {
+        return raw != null && raw.length >= 2 && raw[0] == MAGIC;
+    }
+
+    /**
+     * 压缩的次数
+     */
+    public static long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    /**
+     * 超过阈值但压缩后没有变小、按原样保存的次数
+     */
+    public static long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * 解压的次数
+     */
+    public static long getDecompressedCount() {
+        return decompressedCount.get();
+    }
+
+    /**
+     * 压缩率（压缩后字节数/压缩前字节数），没有压缩过时为1.0
+     */
+    public static double getCompressionRatio() {
+        long before = bytesBefore.get();
+        return before == 0 ? 1.0 : (double) bytesAfter.get() / before;
+    }
+
+    /**
+     * 压缩节省的字节数
+     */
+    public static long getBytesSaved() {
+        return bytesBefore.get() - bytesAfter.get();
+    }
+
+    /**
+     * 压缩耗时分布（微秒）
+     */
+    public static Histogram getCompressMicros() {
+        return compressMicros;
+    }
+
+    /**
+     * 解压耗时分布（微秒）
+     */
+    public static Histogram getDecompressMicros() {
+        return decompressMicros;
+    }
+
+    private static int parseThreshold(String value, int defaultValue) {
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        if ("off".equalsIgnoreCase(value.trim())) {
+            return DISABLED;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    /**
+     * 前缀策略
+     */
+    private static class PrefixPolicy {
+        private final String prefix;
+        private final int threshold;
+
+        PrefixPolicy(String prefix, int threshold) {
+            this.prefix = prefix;
+            this.threshold = threshold;
+        }
+    }
+}
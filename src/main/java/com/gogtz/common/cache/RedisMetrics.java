@@ -0,0 +1,402 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.metrics.CommandStats;
+import com.gogtz.common.cache.metrics.Histogram;
+import com.gogtz.common.cache.metrics.KeyStats;
+import com.gogtz.common.cache.metrics.MetricsSink;
+import com.gogtz.common.cache.metrics.MetricsSnapshot;
+import com.gogtz.common.cache.metrics.TopKeys;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>Redis命令指标</h1>
+ * {@link RedisUtils}的每个命令都会记录耗时、错误和值大小，可以通过JMX（com.gogtz.common.cache:type=RedisMetrics）
+ * 或{@link #addSink(MetricsSink)}注册的输出查看。
+ * <ol><strong>
+ * <li>是否启用：redis.metrics.enabled，默认true</li>
+ * <li>热点key采样率：redis.metrics.sampleRate，默认每64次记录1次</li>
+ * <li>大key阈值（字节）：redis.metrics.bigKeyBytes，默认10240，值超过该大小的key全部记录</li>
+ * <li>输出间隔（秒）：redis.metrics.reportInterval，默认60</li>
+ * </strong>
+ * </ol>
+ * 记录一次只有几次原子加，热点统计只对采样到的调用加锁，可以在生产环境常开。
+ * key前缀为第一个冒号之前的部分。
+ *
+ * @author t
+ */
+public class RedisMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(RedisMetrics.class);
+
+    public static final String OBJECT_NAME = "com.gogtz.common.cache:type=RedisMetrics";
+
+    /**
+     * 热点key、热点前缀、大key各保留的数量
+     */
+    private static final int TOP_CAPACITY = 256;
+    private static final int TOP_REPORTED = 20;
+
+    private static final boolean enabled;
+    private static final int sampleRate;
+    private static final long bigKeyBytes;
+    private static final long reportInterval;
+
+    private static final ConcurrentHashMap<String, CommandMetrics> commands =
+            new ConcurrentHashMap<String, CommandMetrics>();
+    private static final LongAdder errorCount = new LongAdder();
+    private static final LongAdder timeoutCount = new LongAdder();
+    private static final TopKeys hotKeys = new TopKeys(TOP_CAPACITY, true);
+    private static final TopKeys hotPrefixes = new TopKeys(TOP_CAPACITY, true);
+    private static final TopKeys bigKeys = new TopKeys(TOP_CAPACITY, false);
+
+    private static final List<MetricsSink> sinks = new CopyOnWriteArrayList<MetricsSink>();
+    private static ScheduledExecutorService reporter;
+
+    static {
+        boolean on = true;
+        int rate = 64;
+        long bigKey = 10240L;
+        long interval = 60L;
+        try {
+            String value = PropertyUtil.getRedisValue("redis.metrics.enabled");
+            if (StringUtils.isNotBlank(value)) {
+                on = Boolean.valueOf(value.trim());
+            }
+            value = PropertyUtil.getRedisValue("redis.metrics.sampleRate");
+            if (StringUtils.isNotBlank(value)) {
+                rate = Math.max(1, Integer.parseInt(value.trim()));
+            }
+            value = PropertyUtil.getRedisValue("redis.metrics.bigKeyBytes");
+            if (StringUtils.isNotBlank(value)) {
+                bigKey = Long.parseLong(value.trim());
+            }
+            value = PropertyUtil.getRedisValue("redis.metrics.reportInterval");
+            if (StringUtils.isNotBlank(value)) {
+                interval = Math.max(1L, Long.parseLong(value.trim()));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("redis metrics use default settings: " + e.getMessage());
+        }
+        enabled = on;
+        sampleRate = rate;
+        bigKeyBytes = bigKey;
+        reportInterval = interval;
+        if (enabled) {
+            registerMBean();
+        }
+    }
+
+    private RedisMetrics() {
+    }
+
+    /**
+     * 是否启用
+     *
+     * @return 是否启用
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录成功的命令
+     *
+     * @param command      命令名
+     * @param key          key，可以为null
+     * @param elapsedNanos 耗时
+     */
+    static void recordSuccess(String command, String key, long elapsedNanos) {
+        if (!enabled) {
+            return;
+        }
+        CommandMetrics metrics = metrics(command);
+        metrics.calls.increment();
+        metrics.latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        sample(key);
+    }
+
+    /**
+     * 记录失败的命令
+     *
+     * @param command      命令名
+     * @param key          key，可以为null
+     * @param elapsedNanos 耗时
+     * @param error        异常
+     */
+    static void recordFailure(String command, String key, long elapsedNanos, Throwable error) {
+        if (!enabled) {
+            return;
+        }
+        CommandMetrics metrics = metrics(command);
+        metrics.calls.increment();
+        metrics.errors.increment();
+        errorCount.increment();
+        if (isTimeout(error)) {
+            metrics.timeouts.increment();
+            timeoutCount.increment();
+        }
+        metrics.latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        sample(key);
+    }
+
+    /**
+     * 记录读写的值大小
+     *
+     * @param command 命令名
+     * @param key     key，可以为null
+     * @param size    大小（字节，压缩后）
+     */
+    static void recordPayload(String command, String key, long size) {
+        if (!enabled) {
+            return;
+        }
+        recordPayload(metrics(command), key, size);
+    }
+
+    /**
+     * 注册指标输出，按redis.metrics.reportInterval定期调用
+     *
+     * @param sink 输出
+     */
+    public static synchronized void addSink(MetricsSink sink) {
+        sinks.add(sink);
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "redis-metrics-reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reporter.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, reportInterval, reportInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 移除指标输出
+     *
+     * @param sink 输出
+     */
+    public static void removeSink(MetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * 取得指标快照
+     *
+     * @return 快照
+     */
+    public static MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(System.currentTimeMillis(), commandStats(), hotKeys(), hotPrefixes(), bigKeys());
+    }
+
+    /**
+     * 各命令的统计，按命令名排序
+     *
+     * @return 统计
+     */
+    public static List<CommandStats> commandStats() {
+        List<CommandStats> result = new ArrayList<CommandStats>(commands.size());
+        for (Map.Entry<String, CommandMetrics> entry : new ConcurrentSkipListMap<String, CommandMetrics>(commands).entrySet()) {
+            result.add(entry.getValue().stats(entry.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * 采样估计的访问最多的key，次数已按采样率换算
+     *
+     * @return 热点key
+     */
+    public static List<KeyStats> hotKeys() {
+        return scale(hotKeys.top(TOP_REPORTED));
+    }
+
+    /**
+     * 采样估计的访问最多的key前缀，次数已按采样率换算
+     *
+     * @return 热点前缀
+     */
+    public static List<KeyStats> hotPrefixes() {
+        return scale(hotPrefixes.top(TOP_REPORTED));
+    }
+
+    /**
+     * 值超过redis.metrics.bigKeyBytes的key，按最大值排序
+     *
+     * @return 大key
+     */
+    public static List<KeyStats> bigKeys() {
+        return bigKeys.top(TOP_REPORTED);
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public static void reset() {
+        commands.clear();
+        errorCount.reset();
+        timeoutCount.reset();
+        hotKeys.reset();
+        hotPrefixes.reset();
+        bigKeys.reset();
+    }
+
+    private static void report() {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        MetricsSnapshot snapshot = snapshot();
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.report(snapshot);
+            } catch (Exception e) {
+                logger.warn("redis metrics sink failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static CommandMetrics metrics(String command) {
+        CommandMetrics metrics = commands.get(command);
+        if (metrics == null) {
+            CommandMetrics created = new CommandMetrics();
+            metrics = commands.putIfAbsent(command, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    private static void recordPayload(CommandMetrics metrics, String key, long size) {
+        metrics.payload.record(size);
+        if (key != null && size >= bigKeyBytes) {
+            bigKeys.add(key, size);
+        }
+    }
+
+    private static void sample(String key) {
+        if (key == null || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        hotKeys.add(key, 1);
+        int index = key.indexOf(':');
+        hotPrefixes.add(index < 0 ? key : key.substring(0, index), 1);
+    }
+
+    private static List<KeyStats> scale(List<KeyStats> sampled) {
+        List<KeyStats> result = new ArrayList<KeyStats>(sampled.size());
+        for (KeyStats stats : sampled) {
+            result.add(new KeyStats(stats.getKey(), stats.getValue() * sampleRate));
+        }
+        return result;
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // 同一JVM中的其他应用已经注册
+        } catch (Exception e) {
+            logger.warn("register redis metrics mbean failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 单个命令的计数
+     */
+    private static class CommandMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final Histogram latency = new Histogram(TimeUnit.MINUTES.toMicros(10));
+        private final Histogram payload = new Histogram(512L * 1024 * 1024);
+
+        CommandStats stats(String command) {
+            return new CommandStats(command, calls.sum(), errors.sum(), timeouts.sum(), (long) latency.getMean(),
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMax(), (long) payload.getMean(),
+                    payload.getValueAtPercentile(99), payload.getMax());
+        }
+    }
+
+    /**
+     * JMX接口实现
+     */
+    private static class MetricsMXBean implements RedisMetricsMXBean {
+
+        @Override
+        public List<CommandStats> getCommands() {
+            return commandStats();
+        }
+
+        @Override
+        public List<KeyStats> getHotKeys() {
+            return hotKeys();
+        }
+
+        @Override
+        public List<KeyStats> getHotPrefixes() {
+            return hotPrefixes();
+        }
+
+        @Override
+        public List<KeyStats> getBigKeys() {
+            return bigKeys();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        @Override
+        public long getTimeoutCount() {
+            return timeoutCount.sum();
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void reset() {
+            RedisMetrics.reset();
+        }
+    }
+}
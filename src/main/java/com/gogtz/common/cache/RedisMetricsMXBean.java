@@ -0,0 +1,31 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.metrics.CommandStats;
+import com.gogtz.common.cache.metrics.KeyStats;
+
+import java.util.List;
+
+/**
+ * Redis命令指标的JMX接口<br>
+ * 注册为com.gogtz.common.cache:type=RedisMetrics
+ *
+ * @author t
+ */
+public interface RedisMetricsMXBean {
+
+    List<CommandStats> getCommands();
+
+    List<KeyStats> getHotKeys();
+
+    List<KeyStats> getHotPrefixes();
+
+    List<KeyStats> getBigKeys();
+
+    long getErrorCount();
+
+    long getTimeoutCount();
+
+    int getSampleRate();
+
+    void reset();
+}
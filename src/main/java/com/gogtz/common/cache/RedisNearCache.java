@@ -0,0 +1,513 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.local.CacheStats;
+import com.gogtz.common.cache.local.LocalCache;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <h1>Redis近端缓存</h1>
+ * 在{@link RedisUtils}前面保留一份热点key的本地副本，读请求直接从内存返回。
+ * 通过{@link RedisUtils}执行字符串和对象的写命令（set、mset、setObject、incr、incrBy、del、mdel、expire、
+ * compareAndSet、compareAndDelete及按模式删除、设置过期）时，会经由Redis的发布订阅频道通知所有节点清除本地副本；
+ * 列表、集合等命令不通知，GET读取这些类型时出错，不会产生本地副本。
+ * 同一个Redis key按String和byte[]读取时各有一份本地副本，失效时两份一起清除。
+ * 通过{@link RedisUtils#pipelined}、Lua脚本或其他客户端写入字符串时，需要调用{@link #invalidate(String)}。
+ * 订阅连接每{@link #HEARTBEAT_INTERVAL}毫秒收到一次心跳，超过3个间隔没有收到时视为连接已断开并重连；
+ * 订阅连接断开期间只依靠本地过期时间保证一致性，重连后清空本地副本。
+ * <ol><strong>
+ * <li>配置文件：properties/redis.properties</li>
+ * <li>是否启用：redis.nearCache.enabled，默认false</li>
+ * <li>需要近端缓存的key前缀，逗号分隔：redis.nearCache.prefixes，为空时缓存所有key</li>
+ * <li>最大条目数：redis.nearCache.maximumSize，默认10000</li>
+ * <li>本地过期时间（秒）：redis.nearCache.expireSeconds，默认60</li>
+ * <li>失效通知频道：redis.nearCache.channel，默认gogtz:nearcache:invalidate</li>
+ * <li>配置可以通过{@link RedisPoolManager#override(java.util.Map)}覆盖，覆盖或取消覆盖时重新读取配置并清空本地副本</li>
+ * </strong>
+ * </ol>
+ *
+ * @author t
+ */
+public class RedisNearCache {
+    private static final Logger logger = LoggerFactory.getLogger(RedisNearCache.class);
+
+    public static final String DEFAULT_CHANNEL = "gogtz:nearcache:invalidate";
+
+    /**
+     * 本地key的前缀，区分按String和按byte[]读取的副本；失效消息为byte[]形式的本地key
+     */
+    private static final String STRING_KEY = "s:";
+    private static final String BINARY_KEY = "b:";
+
+    /**
+     * 订阅断开后重连的最大间隔（毫秒）
+     */
+    private static final long MAX_RECONNECT_INTERVAL = 30000L;
+
+    /**
+     * 心跳间隔（毫秒）
+     */
+    static final long HEARTBEAT_INTERVAL = 10000L;
+
+    /**
+     * 心跳消息，不是合法的本地key
+     */
+    private static final String HEARTBEAT = "heartbeat";
+
+    private static volatile Settings settings;
+
+    /**
+     * 正在加载的key及本次加载的标记，失效时移除，用于丢弃加载期间已经失效的值
+     */
+    private static final ConcurrentHashMap<String, Object> loading = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * 每次清空递增，用于丢弃清空前开始加载的值
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static volatile boolean subscribed;
+
+    private static final Subscriber subscriber = new Subscriber();
+
+    /**
+     * 订阅线程是否在运行，由本类加锁访问
+     */
+    private static boolean subscriberRunning;
+
+    private static ScheduledExecutorService heartbeat;
+
+    static {
+        reload();
+    }
+
+    private RedisNearCache() {
+    }
+
+    /**
+     * 是否启用近端缓存
+     *
+     * @return 是否启用
+     */
+    public static boolean isEnabled() {
+        return settings.enabled;
+    }
+
+    /**
+     * 失效通知频道当前是否已订阅，未订阅时只依靠本地过期时间
+     *
+     * @return 是否已订阅
+     */
+    public static boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * 本地过期时间（秒）
+     *
+     * @return 过期时间
+     */
+    public static long getExpireSeconds() {
+        return settings.expireSeconds;
+    }
+
+    /**
+     * 取得本地缓存的统计
+     *
+     * @return 统计快照
+     */
+    public static CacheStats stats() {
+        return settings.cache.stats();
+    }
+
+    /**
+     * 清空本地副本
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        loading.clear();
+        settings.cache.clear();
+    }
+
+    /**
+     * 重新读取配置并清空本地副本，连接配置被覆盖时由{@link RedisPoolManager}调用；
+     * 启用时启动订阅线程，已在订阅时断开连接，按新的配置重新订阅
+     */
+    static void reload() {
+        Settings loaded = Settings.load();
+        synchronized (RedisNearCache.class) {
+            Settings old = settings;
+            settings = loaded;
+            generation.incrementAndGet();
+            loading.clear();
+            if (old != null) {
+                old.cache.clear();
+            }
+            if (!loaded.enabled) {
+                subscriber.disconnect();
+                return;
+            }
+            if (subscriberRunning) {
+                subscriber.disconnect();
+                return;
+            }
+            subscriberRunning = true;
+            Thread thread = new Thread(subscriber, "redis-near-cache-subscriber");
+            thread.setDaemon(true);
+            thread.start();
+            if (heartbeat == null) {
+                heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread heartbeatThread = new Thread(runnable, "redis-near-cache-heartbeat");
+                        heartbeatThread.setDaemon(true);
+                        return heartbeatThread;
+                    }
+                });
+                heartbeat.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        subscriber.heartbeat();
+                    }
+                }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 订阅线程是否应该退出，未启用时标记为不再运行，之后启用时由{@link #reload()}重新启动
+     */
+    private static boolean stopSubscriber() {
+        synchronized (RedisNearCache.class) {
+            if (settings.enabled) {
+                return false;
+            }
+            subscriberRunning = false;
+            return true;
+        }
+    }
+
+    /**
+     * 判断key是否走近端缓存
+     *
+     * @param key key
+     * @return 是否走近端缓存
+     */
+    public static boolean accept(String key) {
+        Settings current = settings;
+        if (!current.enabled || key == null) {
+            return false;
+        }
+        if (current.prefixes.length == 0) {
+            return true;
+        }
+        for (String prefix : current.prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断key是否走近端缓存
+     *
+     * @param key key
+     * @return 是否走近端缓存
+     */
+    public static boolean accept(byte[] key) {
+        return settings.enabled && key != null && accept(new String(key, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 先读本地副本，不存在时通过loader从Redis读取并保存
+     *
+     * @param key    key
+     * @param loader 从Redis读取的方法
+     * @return 值
+     */
+    static String get(String key, Supplier<String> loader) {
+        String localKey = STRING_KEY + key;
+        Object value = settings.cache.get(localKey);
+        if (value != null) {
+            return (String) value;
+        }
+        Object token = new Object();
+        long stamp = generation.get();
+        loading.put(localKey, token);
+        String loaded = null;
+        try {
+            loaded = loader.get();
+        } finally {
+            cacheIfValid(localKey, loaded, token, stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * 先读本地副本，不存在时通过loader从Redis读取并保存
+     *
+     * @param key    key
+     * @param loader 从Redis读取的方法
+     * @return 值
+     */
+    static byte[] get(byte[] key, Supplier<byte[]> loader) {
+        String localKey = toLocalKey(key);
+        Object value = settings.cache.get(localKey);
+        if (value != null) {
+            return ((byte[]) value).clone();
+        }
+        Object token = new Object();
+        long stamp = generation.get();
+        loading.put(localKey, token);
+        byte[] loaded = null;
+        try {
+            loaded = loader.get();
+        } finally {
+            cacheIfValid(localKey, loaded == null ? null : loaded.clone(), token, stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * 清除本节点按String和byte[]读取的两份副本，并通知其他节点<br>
+     * RedisUtils的写命令会自动调用，通过管道、脚本等方式写入字符串后需要手动调用
+     *
+     * @param key key
+     */
+    public static void invalidate(String key) {
+        if (accept(key)) {
+            invalidate(key.getBytes(StandardCharsets.UTF_8), true);
+        }
+    }
+
+    /**
+     * 清除本节点按String和byte[]读取的两份副本，并通知其他节点
+     *
+     * @param key key
+     */
+    public static void invalidate(byte[] key) {
+        if (accept(key)) {
+            invalidate(key, true);
+        }
+    }
+
+    /**
+     * 清除两份副本；Jedis按UTF-8编码String类型的key，因此String副本的key按UTF-8解码
+     */
+    private static void invalidate(byte[] key, boolean publish) {
+        String binaryKey = toLocalKey(key);
+        remove(binaryKey);
+        remove(STRING_KEY + new String(key, StandardCharsets.UTF_8));
+        if (publish) {
+            RedisUtils.publish(settings.channel, binaryKey);
+        }
+    }
+
+    private static void remove(String localKey) {
+        loading.remove(localKey);
+        settings.cache.remove(localKey);
+    }
+
+    /**
+     * 保存加载的值，加载期间该key失效或本地副本被清空时不保存，避免把旧值写回本地<br>
+     * 先保存再检查：失效在检查之前发生时由这里移除，在检查之后发生时由失效本身移除
+     */
+    private static void cacheIfValid(String localKey, Object value, Object token, long stamp) {
+        if (value == null) {
+            loading.remove(localKey, token);
+            return;
+        }
+        LocalCache<String, Object> cache = settings.cache;
+        cache.put(localKey, value);
+        if (!loading.remove(localKey, token) || generation.get() != stamp) {
+            cache.remove(localKey);
+        }
+    }
+
+    private static String toLocalKey(byte[] key) {
+        return BINARY_KEY + Base64.getEncoder().encodeToString(key);
+    }
+
+    /**
+     * 订阅失效通知，断开后按指数退避重连
+     */
+    private static class Subscriber extends JedisPubSub implements Runnable {
+
+        private volatile Jedis connection;
+        private volatile long lastMessage;
+
+        @Override
+        public void run() {
+            long interval = 1000L;
+            while (!stopSubscriber()) {
+                Jedis jedis = null;
+                try {
+                    jedis = new Jedis(RedisPoolManager.getHost(), RedisPoolManager.getPort(),
+                            (int) HEARTBEAT_INTERVAL);
+                    connection = jedis;
+                    String password = RedisPoolManager.getPassword();
+                    if (password != null) {
+                        jedis.auth(password);
+                    }
+                    interval = 1000L;
+                    // 阻塞直到连接断开
+                    jedis.subscribe(this, settings.channel);
+                } catch (Exception e) {
+                    logger.warn("redis near cache subscription lost, fall back to ttl only: " + e.getMessage());
+                } finally {
+                    subscribed = false;
+                    connection = null;
+                    if (jedis != null) {
+                        try {
+                            jedis.disconnect();
+                        } catch (Exception ignore) {
+                            // 连接已经不可用
+                        }
+                    }
+                }
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                interval = Math.min(interval * 2, MAX_RECONNECT_INTERVAL);
+            }
+        }
+
+        /**
+         * 断开当前的订阅连接，由run按最新的配置重连或退出
+         */
+        void disconnect() {
+            Jedis jedis = connection;
+            if (jedis != null) {
+                try {
+                    jedis.disconnect();
+                } catch (Exception ignore) {
+                    // 连接已经不可用
+                }
+            }
+        }
+
+        /**
+         * 订阅期间发布心跳；订阅时Jedis不设读超时，超过3个间隔没有收到任何消息时断开连接，由run重连
+         */
+        void heartbeat() {
+            Jedis jedis = connection;
+            if (jedis == null || !subscribed) {
+                return;
+            }
+            if (System.currentTimeMillis() - lastMessage > HEARTBEAT_INTERVAL * 3) {
+                logger.warn("redis near cache subscription is silent, reconnect");
+                disconnect();
+                return;
+            }
+            try {
+                RedisUtils.publish(settings.channel, HEARTBEAT);
+            } catch (RuntimeException e) {
+                // 异常会终止定时任务，连接问题由下一次检查处理
+                logger.warn("redis near cache heartbeat failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            lastMessage = System.currentTimeMillis();
+            if (message.startsWith(BINARY_KEY)) {
+                invalidate(Base64.getDecoder().decode(message.substring(BINARY_KEY.length())), false);
+            } else if (message.startsWith(STRING_KEY)) {
+                // 旧版本节点发送的String形式
+                invalidate(message.substring(STRING_KEY.length()).getBytes(StandardCharsets.UTF_8), false);
+            }
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // 断开期间可能漏掉了失效通知
+            clear();
+            lastMessage = System.currentTimeMillis();
+            subscribed = true;
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            subscribed = false;
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        }
+    }
+
+    /**
+     * 一次读取的配置及对应的本地缓存
+     */
+    private static class Settings {
+        private final boolean enabled;
+        private final String[] prefixes;
+        private final String channel;
+        private final long expireSeconds;
+        private final LocalCache<String, Object> cache;
+
+        private Settings(boolean enabled, String[] prefixes, String channel, long expireSeconds, long maximumSize) {
+            this.enabled = enabled;
+            this.prefixes = prefixes;
+            this.channel = channel;
+            this.expireSeconds = expireSeconds;
+            this.cache = new LocalCache<String, Object>(maximumSize, TimeUnit.SECONDS.toMillis(expireSeconds));
+        }
+
+        static Settings load() {
+            boolean on = false;
+            String[] prefixList = new String[0];
+            String channelName = DEFAULT_CHANNEL;
+            long maximumSize = 10000L;
+            long expire = 60L;
+            try {
+                on = Boolean.valueOf(RedisPoolManager.getConfig("redis.nearCache.enabled"));
+                String value = RedisPoolManager.getConfig("redis.nearCache.prefixes");
+                if (StringUtils.isNotBlank(value)) {
+                    prefixList = StringUtils.stripAll(StringUtils.split(value, ','));
+                }
+                value = RedisPoolManager.getConfig("redis.nearCache.channel");
+                if (StringUtils.isNotBlank(value)) {
+                    channelName = value.trim();
+                }
+                value = RedisPoolManager.getConfig("redis.nearCache.maximumSize");
+                if (StringUtils.isNotBlank(value)) {
+                    maximumSize = Long.parseLong(value.trim());
+                }
+                value = RedisPoolManager.getConfig("redis.nearCache.expireSeconds");
+                if (StringUtils.isNotBlank(value)) {
+                    expire = Long.parseLong(value.trim());
+                }
+            } catch (RuntimeException e) {
+                logger.warn("redis near cache disabled: " + e.getMessage());
+                on = false;
+            }
+            return new Settings(on, prefixList, channelName, expire, maximumSize);
+        }
+    }
+}
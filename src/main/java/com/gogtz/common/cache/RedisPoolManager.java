@@ -0,0 +1,520 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.metrics.Histogram;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool.PoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.Pool;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Redis连接池管理</h1>
+ * <ol><strong>
+ * <li>连接池只会创建一次，创建时预先建立redis.pool.minIdle个连接</li>
+ * <li>记录借出次数、借出失败次数、等待线程数、借出等待时间分布、连接创建和销毁次数</li>
+ * <li>借出超时redis.pool.maxWait可以在运行时通过{@link #setMaxWait(long)}或JMX调整</li>
+ * <li>分片模式（见{@link RedisShards}）下默认连接池连接第一个节点，连接数统计和运行时调整只针对默认连接池</li>
+ * <li>连接配置可以通过{@link #override(Map)}在程序中覆盖，用于连接测试或压测用的
+ * {@link com.gogtz.common.cache.embedded.EmbeddedRedisServer}</li>
+ * </strong>
+ * </ol>
+ * 配置项见{@link RedisUtils}
+ *
+ * @author t
+ */
+public class RedisPoolManager {
+    private static final Logger logger = LoggerFactory.getLogger(RedisPoolManager.class);
+
+    public static final String OBJECT_NAME = "com.gogtz.common.cache:type=RedisPool";
+
+    /**
+     * 默认的读写超时（毫秒）
+     */
+    private static final int DEFAULT_TIMEOUT = 100000;
+
+    private static volatile JedisPool pool;
+
+    /**
+     * Jedis未公开的内部连接池，取不到时为null
+     */
+    private static volatile GenericObjectPool internalPool;
+
+    private static volatile long maxWait;
+
+    private static String host;
+    private static int port;
+    private static int timeout;
+    private static int maxActive;
+    private static String password;
+
+    private static final AtomicInteger borrowed = new AtomicInteger();
+    private static final AtomicInteger waiters = new AtomicInteger();
+    private static final AtomicLong borrowCount = new AtomicLong();
+    private static final AtomicLong borrowFailureCount = new AtomicLong();
+    private static final AtomicLong createdCount = new AtomicLong();
+    private static final AtomicLong destroyedCount = new AtomicLong();
+    private static final Histogram borrowWait = new Histogram(TimeUnit.MINUTES.toMicros(10));
+
+    /**
+     * 程序中覆盖的配置，优先于配置文件
+     */
+    private static final ConcurrentHashMap<String, String> overrides = new ConcurrentHashMap<String, String>();
+
+    private RedisPoolManager() {
+    }
+
+    /**
+     * 取得连接池，第一次调用时创建
+     *
+     * @return JedisPool
+     */
+    public static JedisPool getPool() {
+        JedisPool result = pool;
+        if (result == null) {
+            synchronized (RedisPoolManager.class) {
+                result = pool;
+                if (result == null) {
+                    result = createPool();
+                    pool = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 启动时调用，提前创建连接池并预热连接
+     */
+    public static void init() {
+        getPool();
+    }
+
+    /**
+     * 关闭连接池，分片模式下同时关闭其他节点的连接池，之后再次调用{@link #getPool()}会重新创建
+     */
+    public static void destroy() {
+        // 先于本类加锁，与RedisShards创建哈希环时的加锁顺序一致
+        RedisShards.destroy();
+        synchronized (RedisPoolManager.class) {
+            JedisPool old = pool;
+            pool = null;
+            internalPool = null;
+            if (old != null) {
+                old.destroy();
+            }
+        }
+    }
+
+    /**
+     * 覆盖连接配置（redis.ip、redis.port、redis.nodes、redis.pool.*、redis.nearCache.*等），替换之前的覆盖，
+     * 并关闭现有的连接池，之后按新配置重新创建；{@link RedisNearCache}同时重新读取配置。值为空字符串表示不配置该项
+     *
+     * @param values 配置
+     */
+    public static void override(Map<String, String> values) {
+        synchronized (overrides) {
+            overrides.clear();
+            overrides.putAll(values);
+        }
+        destroy();
+        RedisNearCache.reload();
+    }
+
+    /**
+     * 取消{@link #override(Map)}，关闭现有的连接池，之后按配置文件重新创建
+     */
+    public static void clearOverrides() {
+        synchronized (overrides) {
+            overrides.clear();
+        }
+        destroy();
+        RedisNearCache.reload();
+    }
+
+    /**
+     * 读取连接配置，优先使用程序中覆盖的值
+     *
+     * @param key 配置项
+     * @return 值
+     */
+    static String getConfig(String key) {
+        String value = overrides.get(key);
+        return value != null ? value : PropertyUtil.getRedisValue(key);
+    }
+
+    /**
+     * 借出连接并记录等待时间
+     *
+     * @param jedisPool {@link #getPool()}取得的连接池
+     * @return 连接
+     */
+    static Jedis borrow(JedisPool jedisPool) {
+        waiters.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Jedis jedis = jedisPool.getResource();
+            borrowed.incrementAndGet();
+            borrowCount.incrementAndGet();
+            return jedis;
+        } catch (RuntimeException e) {
+            borrowFailureCount.incrementAndGet();
+            throw e;
+        } finally {
+            waiters.decrementAndGet();
+            borrowWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * 归还{@link #borrow(JedisPool)}借出的连接，连接损坏时销毁
+     *
+     * @param jedisPool 借出连接的连接池
+     * @param jedis     连接
+     * @param broken    连接是否已损坏
+     */
+    static void release(JedisPool jedisPool, Jedis jedis, boolean broken) {
+        if (jedisPool == null || jedis == null) {
+            return;
+        }
+        borrowed.decrementAndGet();
+        if (broken) {
+            if (internalPool == null) {
+                destroyedCount.incrementAndGet();
+            }
+            jedisPool.returnBrokenResource(jedis);
+        } else {
+            jedisPool.returnResource(jedis);
+        }
+    }
+
+    /**
+     * 当前的借出超时（毫秒），负数表示一直等待
+     *
+     * @return 借出超时
+     */
+    public static long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * 调整借出超时，立即生效
+     *
+     * @param maxWaitMillis 借出超时（毫秒），负数表示一直等待
+     */
+    public static void setMaxWait(long maxWaitMillis) {
+        maxWait = maxWaitMillis;
+        GenericObjectPool target = internalPool;
+        if (target != null) {
+            target.setMaxWait(maxWaitMillis);
+        } else {
+            logger.warn("redis pool is not instrumented, maxWait takes effect after the pool is recreated");
+        }
+    }
+
+    /**
+     * 取得连接池统计
+     *
+     * @return 统计快照
+     */
+    public static RedisPoolStats stats() {
+        GenericObjectPool target = internalPool;
+        int numActive = target == null ? borrowed.get() : target.getNumActive();
+        int numIdle = target == null ? -1 : target.getNumIdle();
+        return new RedisPoolStats(numActive, numIdle, waiters.get(), borrowCount.get(), borrowFailureCount.get(),
+                target == null ? -1 : createdCount.get(), destroyedCount.get(), (long) borrowWait.getMean(),
+                borrowWait.getValueAtPercentile(99), borrowWait.getMax(), maxWait);
+    }
+
+    /**
+     * Redis服务器地址
+     */
+    public static String getHost() {
+        getPool();
+        return host;
+    }
+
+    /**
+     * Redis服务器端口
+     */
+    public static int getPort() {
+        getPool();
+        return port;
+    }
+
+    /**
+     * Redis密码，未配置时为null
+     */
+    public static String getPassword() {
+        getPool();
+        return password;
+    }
+
+    /**
+     * 连接的读写超时（毫秒）
+     */
+    public static int getTimeout() {
+        getPool();
+        return timeout;
+    }
+
+    /**
+     * 连接池的最大连接数
+     */
+    public static int getMaxActive() {
+        getPool();
+        return maxActive;
+    }
+
+    /**
+     * 为分片模式的其他节点创建连接池，配置与默认连接池相同，不单独统计
+     *
+     * @param nodeHost 地址
+     * @param nodePort 端口
+     * @return 连接池
+     */
+    static JedisPool createNodePool(String nodeHost, int nodePort) {
+        getPool();
+        JedisPoolConfig config = createConfig();
+        config.setMaxWait(maxWait);
+        JedisPool jedisPool = new JedisPool(config, nodeHost, nodePort, timeout, password);
+        warmUp(jedisPool, null, config.getMinIdle());
+        return jedisPool;
+    }
+
+    private static JedisPoolConfig createConfig() {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxActive(getInt("redis.pool.maxActive", config.getMaxActive()));
+        config.setMaxIdle(getInt("redis.pool.maxIdle", config.getMaxIdle()));
+        config.setMinIdle(getInt("redis.pool.minIdle", 0));
+        config.setMaxWait(getLong("redis.pool.maxWait", config.getMaxWait()));
+        config.setTestOnBorrow(Boolean.valueOf(getConfig("redis.pool.testOnBorrow")));
+        config.setTestOnReturn(Boolean.valueOf(getConfig("redis.pool.testOnReturn")));
+        return config;
+    }
+
+    private static JedisPool createPool() {
+        JedisPoolConfig config = createConfig();
+        maxActive = config.getMaxActive();
+        maxWait = config.getMaxWait();
+        // 分片模式下默认连接池连接第一个节点
+        String[] nodes = RedisShards.parseNodes(getConfig(RedisShards.NODES_KEY));
+        if (nodes.length > 0) {
+            String[] first = RedisShards.parseNode(nodes[0]);
+            host = first[0];
+            port = Integer.parseInt(first[1]);
+        } else {
+            host = getConfig("redis.ip");
+            port = getInt("redis.port", 6379);
+        }
+        timeout = getInt("redis.timeout", DEFAULT_TIMEOUT);
+        String configuredPassword = getConfig("redis.pool.password");
+        password = StringUtils.isEmpty(configuredPassword) ? null : configuredPassword;
+
+        JedisPool jedisPool = new JedisPool(config, host, port, timeout, password);
+        instrument(jedisPool, config);
+        warmUp(jedisPool, internalPool, config.getMinIdle());
+        registerMBean();
+        return jedisPool;
+    }
+
+    /**
+     * 用包装了工厂的连接池替换Jedis内部的连接池，统计连接的创建和销毁<br>
+     * 替换时原连接池还没有借出过连接
+     *
+     * @param jedisPool 连接池
+     * @param config    连接池配置
+     */
+    private static void instrument(JedisPool jedisPool, JedisPoolConfig config) {
+        try {
+            Field poolField = Pool.class.getDeclaredField("internalPool");
+            poolField.setAccessible(true);
+            GenericObjectPool original = (GenericObjectPool) poolField.get(jedisPool);
+            Field factoryField = GenericObjectPool.class.getDeclaredField("_factory");
+            factoryField.setAccessible(true);
+            PoolableObjectFactory factory = (PoolableObjectFactory) factoryField.get(original);
+            GenericObjectPool target = new GenericObjectPool(new CountingFactory(factory), config);
+            poolField.set(jedisPool, target);
+            original.close();
+            internalPool = target;
+        } catch (Exception e) {
+            internalPool = null;
+            logger.warn("redis pool metrics are limited: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 预先建立连接，连接失败不影响启动
+     *
+     * @param jedisPool 连接池
+     * @param target    Jedis内部的连接池，取不到时为null
+     * @param minIdle   连接数
+     */
+    private static void warmUp(JedisPool jedisPool, GenericObjectPool target, int minIdle) {
+        if (minIdle <= 0) {
+            return;
+        }
+        try {
+            if (target != null) {
+                for (int i = 0; i < minIdle; i++) {
+                    target.addObject();
+                }
+            } else {
+                Jedis[] connections = new Jedis[minIdle];
+                for (int i = 0; i < minIdle; i++) {
+                    connections[i] = jedisPool.getResource();
+                }
+                for (Jedis jedis : connections) {
+                    jedisPool.returnResource(jedis);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("redis pool warm up failed: " + e.getMessage());
+        }
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new PoolMXBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // 同一JVM中的其他应用已经注册
+        } catch (Exception e) {
+            logger.warn("register redis pool mbean failed: " + e.getMessage());
+        }
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        String value = overrides.get(key);
+        if (value == null) {
+            return PropertyUtil.getRedisSnapshot().getInt(key, defaultValue);
+        }
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = overrides.get(key);
+        if (value == null) {
+            return PropertyUtil.getRedisSnapshot().getLong(key, defaultValue);
+        }
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * 统计连接创建和销毁次数的工厂
+     */
+    private static class CountingFactory implements PoolableObjectFactory {
+        private final PoolableObjectFactory delegate;
+
+        CountingFactory(PoolableObjectFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object makeObject() throws Exception {
+            Object obj = delegate.makeObject();
+            createdCount.incrementAndGet();
+            return obj;
+        }
+
+        @Override
+        public void destroyObject(Object obj) throws Exception {
+            destroyedCount.incrementAndGet();
+            delegate.destroyObject(obj);
+        }
+
+        @Override
+        public boolean validateObject(Object obj) {
+            return delegate.validateObject(obj);
+        }
+
+        @Override
+        public void activateObject(Object obj) throws Exception {
+            delegate.activateObject(obj);
+        }
+
+        @Override
+        public void passivateObject(Object obj) throws Exception {
+            delegate.passivateObject(obj);
+        }
+    }
+
+    /**
+     * JMX接口实现
+     */
+    private static class PoolMXBean implements RedisPoolManagerMXBean {
+
+        @Override
+        public int getNumActive() {
+            return stats().getNumActive();
+        }
+
+        @Override
+        public int getNumIdle() {
+            return stats().getNumIdle();
+        }
+
+        @Override
+        public int getNumWaiters() {
+            return waiters.get();
+        }
+
+        @Override
+        public long getBorrowCount() {
+            return borrowCount.get();
+        }
+
+        @Override
+        public long getBorrowFailureCount() {
+            return borrowFailureCount.get();
+        }
+
+        @Override
+        public long getCreatedCount() {
+            return stats().getCreatedCount();
+        }
+
+        @Override
+        public long getDestroyedCount() {
+            return destroyedCount.get();
+        }
+
+        @Override
+        public long getBorrowWaitMeanMicros() {
+            return (long) borrowWait.getMean();
+        }
+
+        @Override
+        public long getBorrowWaitP99Micros() {
+            return borrowWait.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getBorrowWaitMaxMicros() {
+            return borrowWait.getMax();
+        }
+
+        @Override
+        public long getMaxWait() {
+            return maxWait;
+        }
+
+        @Override
+        public void setMaxWait(long maxWaitMillis) {
+            RedisPoolManager.setMaxWait(maxWaitMillis);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.gogtz.common.cache;
+
+/**
+ * Redis连接池的JMX接口<br>
+ * 注册为com.gogtz.common.cache:type=RedisPool，可以在运行时查看指标并调整借出超时
+ *
+ * @author t
+ */
+public interface RedisPoolManagerMXBean {
+
+    int getNumActive();
+
+    int getNumIdle();
+
+    int getNumWaiters();
+
+    long getBorrowCount();
+
+    long getBorrowFailureCount();
+
+    long getCreatedCount();
+
+    long getDestroyedCount();
+
+    long getBorrowWaitMeanMicros();
+
+    long getBorrowWaitP99Micros();
+
+    long getBorrowWaitMaxMicros();
+
+    long getMaxWait();
+
+    void setMaxWait(long maxWaitMillis);
+}
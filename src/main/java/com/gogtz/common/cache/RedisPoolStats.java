@@ -0,0 +1,129 @@
+package com.gogtz.common.cache;
+
+/**
+ * Redis连接池统计快照<br>
+ * 由{@link RedisPoolManager#stats()}生成，无法取得的值为-1
+ *
+ * @author t
+ */
+public final class RedisPoolStats {
+    private final int numActive;
+    private final int numIdle;
+    private final int numWaiters;
+    private final long borrowCount;
+    private final long borrowFailureCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long borrowWaitMeanMicros;
+    private final long borrowWaitP99Micros;
+    private final long borrowWaitMaxMicros;
+    private final long maxWaitMillis;
+
+    public RedisPoolStats(int numActive, int numIdle, int numWaiters, long borrowCount, long borrowFailureCount,
+                          long createdCount, long destroyedCount, long borrowWaitMeanMicros,
+                          long borrowWaitP99Micros, long borrowWaitMaxMicros, long maxWaitMillis) {
+        this.numActive = numActive;
+        this.numIdle = numIdle;
+        this.numWaiters = numWaiters;
+        this.borrowCount = borrowCount;
+        this.borrowFailureCount = borrowFailureCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.borrowWaitMeanMicros = borrowWaitMeanMicros;
+        this.borrowWaitP99Micros = borrowWaitP99Micros;
+        this.borrowWaitMaxMicros = borrowWaitMaxMicros;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * 已借出的连接数
+     */
+    public int getNumActive() {
+        return numActive;
+    }
+
+    /**
+     * 池中空闲的连接数
+     */
+    public int getNumIdle() {
+        return numIdle;
+    }
+
+    /**
+     * 正在等待借出连接的线程数
+     */
+    public int getNumWaiters() {
+        return numWaiters;
+    }
+
+    /**
+     * 借出总次数
+     */
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    /**
+     * 借出失败（等待超时或无法连接）的次数
+     */
+    public long getBorrowFailureCount() {
+        return borrowFailureCount;
+    }
+
+    /**
+     * 创建的连接总数
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * 销毁的连接总数
+     */
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    /**
+     * 借出等待时间平均值（微秒）
+     */
+    public long getBorrowWaitMeanMicros() {
+        return borrowWaitMeanMicros;
+    }
+
+    /**
+     * 借出等待时间99分位（微秒）
+     */
+    public long getBorrowWaitP99Micros() {
+        return borrowWaitP99Micros;
+    }
+
+    /**
+     * 借出等待时间最大值（微秒）
+     */
+    public long getBorrowWaitMaxMicros() {
+        return borrowWaitMaxMicros;
+    }
+
+    /**
+     * 当前的借出超时设置（毫秒）
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisPoolStats{numActive=" + numActive
+                + ", numIdle=" + numIdle
+                + ", numWaiters=" + numWaiters
+                + ", borrowCount=" + borrowCount
+                + ", borrowFailureCount=" + borrowFailureCount
+                + ", createdCount=" + createdCount
+                + ", destroyedCount=" + destroyedCount
+                + ", borrowWaitMeanMicros=" + borrowWaitMeanMicros
+                + ", borrowWaitP99Micros=" + borrowWaitP99Micros
+                + ", borrowWaitMaxMicros=" + borrowWaitMaxMicros
+                + ", maxWaitMillis=" + maxWaitMillis + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.gogtz.common.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lua脚本<br>
+ * 在本地计算SHA1，执行时只发送SHA1（EVALSHA），服务器没有缓存该脚本时通过SCRIPT LOAD加载后重试；
+ * 需要共享的脚本通过{@link ScriptRegistry}注册
+ *
+ * @author t
+ */
+public class RedisScript {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String name;
+    private final String script;
+    private final String sha1;
+
+    /**
+     * 构建脚本
+     *
+     * @param script Lua脚本
+     */
+    public RedisScript(String script) {
+        this("EVAL", script);
+    }
+
+    /**
+     * 构建脚本
+     *
+     * @param name   脚本名，用于{@link RedisMetrics}
+     * @param script Lua脚本
+     */
+    public RedisScript(String name, String script) {
+        this.name = name;
+        this.script = script;
+        this.sha1 = sha1(script);
+    }
+
+    /**
+     * 脚本名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 脚本全文
+     */
+    public String getScript() {
+        return script;
+    }
+
+    /**
+     * 脚本的SHA1
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * 通过SCRIPT LOAD加载到连接所在的服务器
+     *
+     * @param jedis 连接
+     */
+    public void load(Jedis jedis) {
+        jedis.scriptLoad(script);
+    }
+
+    /**
+     * 在指定连接上执行脚本
+     *
+     * @param jedis 连接
+     * @param keys  KEYS
+     * @param args  ARGV
+     * @return 脚本的返回值，bulk reply转换为String，multi bulk reply转换为List
+     */
+    public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+        try {
+            return jedis.evalsha(sha1, keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith("NOSCRIPT")) {
+                // 服务器重启或执行过SCRIPT FLUSH
+                load(jedis);
+                return jedis.evalsha(sha1, keys, args);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在第一个key所在的节点上执行脚本，并把返回值转换为指定类型
+     * <ol>
+     * <li>Boolean：整数非0或状态OK为true，nil为false</li>
+     * <li>Long、Integer：整数或数字字符串</li>
+     * <li>String：任意返回值的字符串形式</li>
+     * <li>List、Object：不转换</li>
+     * </ol>
+     * 分片时所有key必须在同一个节点上，可以通过hash tag保证
+     *
+     * @param type 返回值类型
+     * @param keys KEYS
+     * @param args ARGV，通过String.valueOf转换
+     * @return 转换后的返回值，Redis出错时返回null
+     */
+    public <T> T execute(final Class<T> type, List<String> keys, Object... args) {
+        final List<String> keyList = keys == null ? Collections.<String>emptyList() : keys;
+        if (keyList.size() > 1 && RedisShards.group(keyList.toArray(new String[keyList.size()])).size() > 1) {
+            throw new IllegalArgumentException("keys of script " + name + " span multiple redis nodes: " + keyList);
+        }
+        final List<String> argList = new ArrayList<String>(args.length);
+        for (Object arg : args) {
+            if (arg == null) {
+                throw new IllegalArgumentException("argument of script " + name + " must not be null");
+            }
+            argList.add(String.valueOf(arg));
+        }
+        return RedisUtils.execute(name, keyList.isEmpty() ? null : keyList.get(0), new RedisCallback<T>() {
+            @Override
+            public T doInRedis(Jedis jedis) {
+                return convert(eval(jedis, keyList, argList), type);
+            }
+        });
+    }
+
+    /**
+     * 转换脚本的返回值
+     *
+     * @param reply 返回值
+     * @param type  类型
+     * @return 转换后的值
+     */
+    static <T> T convert(Object reply, Class<T> type) {
+        if (type == Boolean.class) {
+            boolean value = reply instanceof Long ? (Long) reply != 0 : "OK".equals(reply);
+            return type.cast(value);
+        }
+        if (reply == null || type.isInstance(reply)) {
+            return type.cast(reply);
+        }
+        if (type == Long.class) {
+            return type.cast(Long.valueOf(String.valueOf(reply)));
+        }
+        if (type == Integer.class) {
+            return type.cast(Integer.valueOf(String.valueOf(reply)));
+        }
+        if (type == String.class) {
+            return type.cast(String.valueOf(reply));
+        }
+        throw new IllegalArgumentException("cannot convert " + reply.getClass().getName() + " to " + type.getName());
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+                chars[i * 2 + 1] = HEX[digest[i] & 0x0F];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.gogtz.common.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>Redis客户端分片</h1>
+ * 配置redis.nodes后，{@link RedisUtils}按key的一致性哈希把命令路由到不同节点，未配置时只使用redis.ip/redis.port。
+ * <ol><strong>
+ * <li>节点列表：redis.nodes，格式为host:port[:weight]，逗号分隔，其他连接池配置对所有节点相同</li>
+ * <li>每个节点的虚拟节点数：redis.nodes.virtual，默认160，乘以权重</li>
+ * <li>key中包含{...}时只对大括号中的部分计算哈希，相同hash tag的key在同一个节点上</li>
+ * </strong>
+ * </ol>
+ * 节点增减时只有约1/N的key会改变归属。没有key的命令（publish、自定义管道等）在第一个节点上执行。
+ *
+ * @author t
+ */
+public class RedisShards {
+    private static final Logger logger = LoggerFactory.getLogger(RedisShards.class);
+
+    public static final String NODES_KEY = "redis.nodes";
+
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static volatile Ring ring;
+
+    private static final ExecutorService fanOut = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "redis-shard-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private RedisShards() {
+    }
+
+    /**
+     * 是否配置了多个节点
+     *
+     * @return 是否分片
+     */
+    public static boolean isSharded() {
+        return ring().pools.size() > 1;
+    }
+
+    /**
+     * 取得key所在节点的连接池
+     *
+     * @param key key，为null时返回默认连接池
+     * @return 连接池
+     */
+    public static JedisPool getPool(String key) {
+        Ring current = ring();
+        if (key == null || current.pools.size() == 1) {
+            return current.pools.get(0);
+        }
+        SortedMap<Long, JedisPool> tail = current.nodes.tailMap(hash(key));
+        return tail.isEmpty() ? current.nodes.get(current.nodes.firstKey()) : tail.get(tail.firstKey());
+    }
+
+    /**
+     * 所有节点的连接池，第一个为默认连接池
+     *
+     * @return 连接池
+     */
+    public static List<JedisPool> getPools() {
+        return ring().pools;
+    }
+
+    /**
+     * 按节点分组，保持每组内的原始顺序
+     *
+     * @param keys keys
+     * @return 连接池到keys下标的映射
+     */
+    public static Map<JedisPool, List<Integer>> group(String... keys) {
+        Map<JedisPool, List<Integer>> groups = new LinkedHashMap<JedisPool, List<Integer>>();
+        for (int i = 0; i < keys.length; i++) {
+            JedisPool pool = getPool(keys[i]);
+            List<Integer> indexes = groups.get(pool);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                groups.put(pool, indexes);
+            }
+            indexes.add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 对每个节点的分组并行执行，当前线程执行第一组，全部完成后返回
+     *
+     * @param groups {@link #group(String...)}的结果
+     * @param action 对一个节点执行的操作
+     */
+    public static void forEach(Map<JedisPool, List<Integer>> groups, final BiConsumer<JedisPool, List<Integer>> action) {
+        List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+        Map.Entry<JedisPool, List<Integer>> first = null;
+        for (final Map.Entry<JedisPool, List<Integer>> entry : groups.entrySet()) {
+            if (first == null) {
+                first = entry;
+                continue;
+            }
+            futures.add(fanOut.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    action.accept(entry.getKey(), entry.getValue());
+                    return null;
+                }
+            }));
+        }
+        if (first != null) {
+            action.accept(first.getKey(), first.getValue());
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * 关闭其他节点的连接池，默认连接池由{@link RedisPoolManager#destroy()}关闭
+     */
+    public static synchronized void destroy() {
+        Ring old = ring;
+        ring = null;
+        if (old != null) {
+            for (int i = 1; i < old.pools.size(); i++) {
+                old.pools.get(i).destroy();
+            }
+        }
+    }
+
+    /**
+     * 参与哈希计算的部分：包含{...}时为大括号中的内容
+     *
+     * @param key key
+     * @return hash tag
+     */
+    static String hashTag(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 解析节点列表
+     *
+     * @param value redis.nodes的值
+     * @return 节点，未配置时为空
+     */
+    static String[] parseNodes(String value) {
+        if (StringUtils.isBlank(value)) {
+            return new String[0];
+        }
+        return StringUtils.stripAll(StringUtils.split(value, ','));
+    }
+
+    /**
+     * 解析单个节点
+     *
+     * @param node host:port[:weight]
+     * @return host、port、weight
+     */
+    static String[] parseNode(String node) {
+        String[] parts = StringUtils.split(node, ':');
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("invalid redis node: " + node);
+        }
+        return new String[]{parts[0], parts[1], parts.length == 3 ? parts[2] : "1"};
+    }
+
+    private static long hash(String key) {
+        return Hashing.MURMUR_HASH.hash(hashTag(key));
+    }
+
+    private static Ring ring() {
+        Ring result = ring;
+        if (result == null) {
+            synchronized (RedisShards.class) {
+                result = ring;
+                if (result == null) {
+                    result = createRing();
+                    ring = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Ring createRing() {
+        JedisPool defaultPool = RedisPoolManager.getPool();
+        String[] nodes = parseNodes(RedisPoolManager.getConfig(NODES_KEY));
+        if (nodes.length <= 1) {
+            return new Ring(Collections.singletonList(defaultPool), new TreeMap<Long, JedisPool>());
+        }
+        String value = RedisPoolManager.getConfig("redis.nodes.virtual");
+        int virtualNodes = StringUtils.isBlank(value) ? DEFAULT_VIRTUAL_NODES : Integer.parseInt(value.trim());
+        List<JedisPool> pools = new ArrayList<JedisPool>(nodes.length);
+        TreeMap<Long, JedisPool> ringNodes = new TreeMap<Long, JedisPool>();
+        for (int i = 0; i < nodes.length; i++) {
+            String[] node = parseNode(nodes[i]);
+            JedisPool pool = i == 0 ? defaultPool
+                    : RedisPoolManager.createNodePool(node[0], Integer.parseInt(node[1]));
+            pools.add(pool);
+            int weight = Integer.parseInt(node[2]);
+            for (int n = 0; n < virtualNodes * weight; n++) {
+                ringNodes.put(Hashing.MURMUR_HASH.hash(node[0] + ":" + node[1] + "-" + n), pool);
+            }
+        }
+        logger.info("redis sharded across " + nodes.length + " nodes");
+        return new Ring(Collections.unmodifiableList(pools), ringNodes);
+    }
+
+    /**
+     * 哈希环，创建后不再修改
+     */
+    private static class Ring {
+        private final List<JedisPool> pools;
+        private final TreeMap<Long, JedisPool> nodes;
+
+        Ring(List<JedisPool> pools, TreeMap<Long, JedisPool> nodes) {
+            this.pools = pools;
+            this.nodes = nodes;
+        }
+    }
+}
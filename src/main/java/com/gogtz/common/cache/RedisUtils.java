@@ -21,10 +21,37 @@
  */
 package com.gogtz.common.cache;
 
-import com.gogtz.common.properties.PropertyUtil;
+import com.gogtz.common.cache.codec.CodecException;
+import com.gogtz.common.cache.codec.RedisCodec;
+import com.gogtz.common.cache.local.LocalCache;
+import com.gogtz.common.cache.local.SingleFlight;
+import com.gogtz.common.cache.lock.RedisLock;
+import com.gogtz.common.lang.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <h1>Redis缓存工具类</h1>
@@ -32,63 +59,63 @@ import redis.clients.jedis.JedisPoolConfig;
  * <li>需要配置文件支持：properties/redis.properties</li> 
  * <li>最大分配的对象数：redis.pool.maxActive</li> 
  * <li>最大能够保持状态的对象数：redis.pool.maxIdle</li> 
- * <li>当池内没有对象时，最大等待时间：redis.pool.maxWait</li> 
+ * <li>最少保持的空闲连接数，启动时预先建立：redis.pool.minIdle</li>
+ * <li>当池内没有对象时，最大等待时间：redis.pool.maxWait，可以在运行时调整</li> 
  * <li>当调用borrow Object方法时，是否进行有效检查：redis.pool.testOnBorrow</li> 
  * <li>当调用return Object方法时，是否进行有效检查：redis.pool.testOnReturn</li> 
  * <li>密码：redis.pool.password</li> 
  * <li>redis服务器Ip地址：redis.ip</li> 
  * <li>redis服务器端口：redis.port</li>
+ * <li>读写超时（毫秒）：redis.timeout，默认100000</li>
  * </strong>
  * </ol>
+ * 字符串值超过阈值时自动压缩保存，读取时自动解压，配置项见{@link RedisCompression}；
+ * 每个命令的耗时、错误和值大小见{@link RedisMetrics}；
+ * 配置redis.nodes后按key分片到多个节点，配置项见{@link RedisShards}
  *
  * @author: t
  * @version: 1.0
  */
 public class RedisUtils {
-    private static JedisPool pool = null;
+    private static final Logger logger = LoggerFactory.getLogger(RedisUtils.class);
 
-    private static ThreadLocal<JedisPool> poolThreadLocal = new ThreadLocal<JedisPool>();
+    /**
+     * 当前线程绑定的连接，绑定期间所有命令共用一个连接
+     */
+    private static final ThreadLocal<BoundConnection> boundConnection = new ThreadLocal<BoundConnection>();
 
     public static final int signExpireTime = 86400;
 
+    /**
+     * getOrLoad的并发加载合并
+     */
+    private static final SingleFlight<String, String> loads = new SingleFlight<String, String>();
+
+    /**
+     * 本节点最近一次加载各key的耗时（纳秒），用于提前刷新
+     */
+    private static final LocalCache<String, Long> loadTimes = new LocalCache<String, Long>(10000L,
+            TimeUnit.HOURS.toMillis(1));
+
     /**
      * 构建redis连接池
      *
      * @return JedisPool
+     * @see RedisPoolManager#getPool()
      */
     public static JedisPool getPool() {
-        if (pool == null) {
-            JedisPoolConfig config = new JedisPoolConfig();
-            config.setMaxActive(Integer.valueOf(PropertyUtil.getRedisValue("redis.pool.maxActive")));
-            config.setMaxIdle(Integer.valueOf(PropertyUtil.getRedisValue("redis.pool.maxIdle")));
-            config.setMaxWait(Long.valueOf(PropertyUtil.getRedisValue("redis.pool.maxWait")));
-            config.setTestOnBorrow(Boolean.valueOf(PropertyUtil.getRedisValue("redis.pool.testOnBorrow")));
-            config.setTestOnReturn(Boolean.valueOf(PropertyUtil.getRedisValue("redis.pool.testOnReturn")));
-            // 测试环境
-            // pool = new JedisPool(config, bundle.getString("redis.ip"),
-            // Integer.valueOf(bundle.getString("redis.port")));
-            // 线上环境
-            pool =
-                    new JedisPool(config, PropertyUtil.getRedisValue("redis.ip"), Integer.valueOf(PropertyUtil
-                            .getRedisValue("redis.port")), 100000, PropertyUtil.getRedisValue("redis.pool.password"));
-        }
-        return pool;
+        return RedisPoolManager.getPool();
     }
 
     /**
      * 取得链接
      *
      * @return
+     * @deprecated 连接池全局唯一，使用{@link #getPool()}
      */
+    @Deprecated
     public static JedisPool getConnection() {
-        // ②如果poolThreadLocal没有本线程对应的JedisPool创建一个新的JedisPool，将其保存到线程本地变量中。
-        if (poolThreadLocal.get() == null) {
-            pool = RedisUtils.getPool();
-            poolThreadLocal.set(pool);
-            return pool;
-        } else {
-            return poolThreadLocal.get();// ③直接返回线程本地变量
-        }
+        return getPool();
     }
 
     /**
@@ -104,110 +131,328 @@ public class RedisUtils {
     }
 
     /**
-     * 累加值
-     *
-     * @param key key
-     * @return
+     * 为当前线程绑定一个连接，直到{@link #unbindConnection()}为止，本线程的所有命令共用该连接<br>
+     * 可以嵌套调用，必须与unbindConnection成对出现，通常在请求开始时绑定、结束时解除；
+     * 分片时绑定的是默认节点的连接，路由到其他节点的命令仍从各自的连接池借出连接
      */
-    public static Long incr(String key) {
-        Long value = null;
+    public static void bindConnection() {
+        BoundConnection bound = boundConnection.get();
+        if (bound == null) {
+            JedisPool pool = getPool();
+            bound = new BoundConnection(pool, RedisPoolManager.borrow(pool));
+            boundConnection.set(bound);
+        }
+        bound.depth++;
+    }
 
-        JedisPool pool = null;
-        Jedis jedis = null;
+    /**
+     * 解除当前线程绑定的连接，最外层解除时归还到连接池
+     */
+    public static void unbindConnection() {
+        BoundConnection bound = boundConnection.get();
+        if (bound == null) {
+            return;
+        }
+        if (--bound.depth == 0) {
+            boundConnection.remove();
+            RedisPoolManager.release(bound.pool, bound.jedis, false);
+        }
+    }
+
+    /**
+     * 在同一个连接上执行一组操作，期间调用的RedisUtils方法都共用该连接
+     *
+     * @param work 操作
+     * @return 操作的结果
+     */
+    public static <T> T withConnection(Supplier<T> work) {
+        bindConnection();
         try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.incr(key);
-        } catch (Exception e) {
-            e.printStackTrace();
+            return work.get();
         } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
+            unbindConnection();
         }
+    }
 
-        return value;
+    /**
+     * 借出连接执行命令，异常时记录日志并返回null<br>
+     * 当前线程已绑定连接时直接使用绑定的连接，绑定的连接断开时立即归还，下一条命令重新借出
+     *
+     * @param callback 回调
+     * @return 回调的结果
+     */
+    public static <T> T execute(RedisCallback<T> callback) {
+        return execute("CALLBACK", null, callback);
     }
 
     /**
-     * 获取数据
+     * 借出连接执行命令，异常时记录日志并返回null，同时按命令名记录耗时、错误和值大小<br>
+     * 当前线程已绑定连接时直接使用绑定的连接
      *
-     * @param key key
-     * @return
+     * @param command  命令名，用于{@link RedisMetrics}
+     * @param key      key，用于热点key统计，可以为null
+     * @param callback 回调
+     * @return 回调的结果
      */
-    public static String get(String key) {
-        String value = null;
+    public static <T> T execute(String command, String key, RedisCallback<T> callback) {
+        return execute(command, key, RedisShards.getPool(key), callback);
+    }
 
+    /**
+     * 在指定节点上执行命令，绑定的连接属于该节点时直接使用
+     *
+     * @param command  命令名
+     * @param key      key，可以为null
+     * @param target   节点的连接池
+     * @param callback 回调
+     * @return 回调的结果
+     */
+    static <T> T execute(String command, String key, JedisPool target, RedisCallback<T> callback) {
+        long start = System.nanoTime();
+        BoundConnection bound = boundConnection.get();
+        if (bound != null && bound.pool != target) {
+            bound = null;
+        }
         JedisPool pool = null;
         Jedis jedis = null;
+        boolean broken = false;
         try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.get(key);
+            T result;
+            if (bound != null) {
+                if (bound.jedis == null) {
+                    bound.jedis = RedisPoolManager.borrow(bound.pool);
+                }
+                result = callback.doInRedis(bound.jedis);
+            } else {
+                pool = target;
+                jedis = RedisPoolManager.borrow(pool);
+                result = callback.doInRedis(jedis);
+            }
+            RedisMetrics.recordSuccess(command, key, System.nanoTime() - start);
+            return result;
+        } catch (JedisConnectionException e) {
+            broken = true;
+            if (bound != null) {
+                // 不再复用断开的连接
+                RedisPoolManager.release(bound.pool, bound.jedis, true);
+                bound.jedis = null;
+            }
+            RedisMetrics.recordFailure(command, key, System.nanoTime() - start, e);
+            logger.error(e.getMessage(), e);
         } catch (Exception e) {
-            e.printStackTrace();
+            RedisMetrics.recordFailure(command, key, System.nanoTime() - start, e);
+            logger.error(e.getMessage(), e);
         } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
+            if (bound == null) {
+                RedisPoolManager.release(pool, jedis, broken);
+            }
         }
+        return null;
+    }
+
+    /**
+     * 累加值<br>
+     * 高频计数可以使用{@link com.gogtz.common.cache.counter.CounterAggregator}合并写入，
+     * 生成ID可以使用{@link com.gogtz.common.cache.id.SegmentIdGenerator}按号段租用
+     *
+     * @param key key
+     * @return
+     */
+    public static Long incr(final String key) {
+        Long value = execute("INCR", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.incr(key);
+            }
+        });
+        RedisNearCache.invalidate(key);
+        return value;
+    }
 
+    /**
+     * 按增量累加值
+     *
+     * @param key   key
+     * @param delta 增量
+     * @return 累加后的值
+     */
+    public static Long incrBy(final String key, final long delta) {
+        Long value = execute("INCRBY", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.incrBy(key, delta);
+            }
+        });
+        RedisNearCache.invalidate(key);
         return value;
     }
 
     /**
      * 获取数据
+     * <p>启用近端缓存时，匹配前缀的key优先从本地副本读取</p>
      *
      * @param key key
      * @return
      */
-    public static byte[] get(byte[] key) {
-        byte[] value = null;
-
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.get(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
+    public static String get(final String key) {
+        if (RedisNearCache.accept(key)) {
+            return RedisNearCache.get(key, new Supplier<String>() {
+                @Override
+                public String get() {
+                    return getFromRedis(key);
+                }
+            });
         }
+        return getFromRedis(key);
+    }
 
-        return value;
+    /**
+     * 从Redis获取数据，压缩过的值自动解压
+     *
+     * @param key key
+     * @return
+     */
+    private static String getFromRedis(final String key) {
+        return execute("GET", key, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                byte[] bytes = jedis.get(SafeEncoder.encode(key));
+                if (bytes != null) {
+                    RedisMetrics.recordPayload("GET", key, bytes.length);
+                }
+                return RedisCompression.decompress(bytes);
+            }
+        });
     }
 
     /**
-     * 删除数据
+     * 获取数据
+     * <p>启用近端缓存时，匹配前缀的key优先从本地副本读取</p>
      *
      * @param key key
      * @return
      */
-    public static Long del(String key) {
-        Long value = null;
+    public static byte[] get(final byte[] key) {
+        if (RedisNearCache.accept(key)) {
+            return RedisNearCache.get(key, new Supplier<byte[]>() {
+                @Override
+                public byte[] get() {
+                    return getFromRedis(key);
+                }
+            });
+        }
+        return getFromRedis(key);
+    }
 
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.del(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
+    /**
+     * 从Redis获取数据
+     *
+     * @param key key
+     * @return
+     */
+    private static byte[] getFromRedis(final byte[] key) {
+        return execute("GET", SafeEncoder.encode(key), new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(Jedis jedis) {
+                byte[] bytes = jedis.get(key);
+                if (bytes != null) {
+                    RedisMetrics.recordPayload("GET", SafeEncoder.encode(key), bytes.length);
+                }
+                return bytes;
+            }
+        });
+    }
+
+    /**
+     * 读取数据，不存在时加载并保存，本节点内同一个key的并发加载只执行一次
+     *
+     * @param key           key
+     * @param loader        加载方法，返回null时不保存
+     * @param expireSeconds (过期时间，秒)，不大于0时不过期
+     * @return 值
+     */
+    public static String getOrLoad(String key, Supplier<String> loader, int expireSeconds) {
+        return getOrLoad(key, loader, expireSeconds, 0);
+    }
+
+    /**
+     * 读取数据，不存在时加载并保存，本节点内同一个key的并发加载只执行一次
+     * <ol>
+     * <li>值和剩余时间通过管道一次读取</li>
+     * <li>临近过期时按本节点上一次加载的耗时随机地提前在后台刷新</li>
+     * <li>值在Redis中保留expireSeconds + staleSeconds，超过expireSeconds后仍返回旧值，同时在后台刷新</li>
+     * <li>两者之和不大于0时值不过期，也不刷新</li>
+     * </ol>
+     *
+     * @param key           key
+     * @param loader        加载方法，返回null时不保存
+     * @param expireSeconds (过期时间，秒)
+     * @param staleSeconds  过期后仍可返回旧值的时间（秒）
+     * @return 值
+     */
+    public static String getOrLoad(final String key, final Supplier<String> loader, final int expireSeconds,
+                                   final int staleSeconds) {
+        Assert.isTrue(staleSeconds >= 0, "staleSeconds must not be negative, got %s", staleSeconds);
+        Supplier<String> load = new Supplier<String>() {
+            @Override
+            public String get() {
+                long start = System.nanoTime();
+                String value = loader.get();
+                if (value != null) {
+                    int total = expireSeconds + staleSeconds;
+                    // EXPIRE 0会立即删除刚写入的值
+                    if (total > 0) {
+                        set(key, value, total);
+                    } else {
+                        set(key, value);
+                    }
+                    loadTimes.put(key, System.nanoTime() - start);
+                }
+                return value;
+            }
+        };
+        final byte[] rawKey = SafeEncoder.encode(key);
+        Object[] entry = execute("GET", key, new RedisCallback<Object[]>() {
+            @Override
+            public Object[] doInRedis(Jedis jedis) {
+                Pipeline pipeline = jedis.pipelined();
+                Response<byte[]> value = pipeline.get(rawKey);
+                Response<Long> ttl = pipeline.ttl(rawKey);
+                pipeline.sync();
+                return new Object[]{RedisCompression.decompress(value.get()), ttl.get()};
+            }
+        });
+        if (entry == null || entry[0] == null) {
+            return loads.execute(key, load);
+        }
+        long ttl = (Long) entry[1];
+        if (ttl >= 0) {
+            long remaining = ttl - staleSeconds;
+            Long loadNanos = loadTimes.get(key);
+            if (remaining <= 0) {
+                loads.executeAsync(key, load);
+            } else if (loadNanos != null
+                    && SingleFlight.shouldRefreshEarly(TimeUnit.SECONDS.toNanos(remaining), loadNanos)) {
+                loads.executeAsync(key, load);
+            }
         }
+        return (String) entry[0];
+    }
 
+    /**
+     * 删除数据
+     *
+     * @param key key
+     * @return
+     */
+    public static Long del(final String key) {
+        Long value = execute("DEL", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.del(key);
+            }
+        });
+        RedisNearCache.invalidate(key);
         return value;
     }
 
@@ -217,24 +462,14 @@ public class RedisUtils {
      * @param key key
      * @return
      */
-    public static Long del(byte[] key) {
-        Long value = null;
-
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.del(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
+    public static Long del(final byte[] key) {
+        Long value = execute("DEL", SafeEncoder.encode(key), new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.del(key);
+            }
+        });
+        RedisNearCache.invalidate(key);
         return value;
     }
 
@@ -244,25 +479,13 @@ public class RedisUtils {
      * @param key key
      * @return
      */
-    public static Boolean exists(String key) {
-        Boolean value = null;
-
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            value = jedis.exists(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
-        return value;
+    public static Boolean exists(final String key) {
+        return execute("EXISTS", key, new RedisCallback<Boolean>() {
+            @Override
+            public Boolean doInRedis(Jedis jedis) {
+                return jedis.exists(key);
+            }
+        });
     }
 
     /**
@@ -273,24 +496,16 @@ public class RedisUtils {
      * @param expireSeconds (过期时间，秒)
      * @return value
      */
-    public static Long set(String key, String value, int expireSeconds) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            jedis.set(key, value);
-            result = jedis.expire(key, expireSeconds);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
+    public static Long set(final String key, final String value, final int expireSeconds) {
+        Long result = execute("SET", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                byte[] rawKey = SafeEncoder.encode(key);
+                jedis.set(rawKey, encodeValue("SET", key, value));
+                return jedis.expire(rawKey, expireSeconds);
+            }
+        });
+        RedisNearCache.invalidate(key);
         return result;
     }
 
@@ -301,23 +516,14 @@ public class RedisUtils {
      * @param expireSeconds (过期时间，秒)
      * @return value
      */
-    public static Long expire(String key, int expireSeconds) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.expire(key, expireSeconds);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
+    public static Long expire(final String key, final int expireSeconds) {
+        Long result = execute("EXPIRE", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.expire(key, expireSeconds);
+            }
+        });
+        RedisNearCache.invalidate(key);
         return result;
     }
 
@@ -327,23 +533,14 @@ public class RedisUtils {
      * @param key key
      * @return
      */
-    public static String set(String key, String value) {
-        String result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.set(key, value);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
+    public static String set(final String key, final String value) {
+        String result = execute("SET", key, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return jedis.set(SafeEncoder.encode(key), encodeValue("SET", key, value));
+            }
+        });
+        RedisNearCache.invalidate(key);
         return result;
     }
 
@@ -353,50 +550,45 @@ public class RedisUtils {
      * @param key key
      * @return
      */
-    public static Long sadd(String key, String value) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.sadd(key, value);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
+    public static Long sadd(final String key, final String value) {
+        return execute("SADD", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.sadd(key, value);
+            }
+        });
+    }
 
-        return result;
+    /**
+     * 批量赋值数据
+     *
+     * @param key     key
+     * @param members members
+     * @return 新加入的数量
+     */
+    public static Long sadd(final String key, final String... members) {
+        return execute("SADD", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.sadd(key, members);
+            }
+        });
     }
 
     /**
-     * 判断set中是否有值
+     * 判断set中是否有值<br>
+     * 大部分答案为否的大Set可以使用{@link com.gogtz.common.cache.bloom.BloomFilteredSet}，先由布隆过滤器排除
      *
      * @param key key
      * @return
      */
-    public static Boolean sismember(String key, String member) {
-        Boolean result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.sismember(key, member);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-
-        return result;
+    public static Boolean sismember(final String key, final String member) {
+        return execute("SISMEMBER", key, new RedisCallback<Boolean>() {
+            @Override
+            public Boolean doInRedis(Jedis jedis) {
+                return jedis.sismember(key, member);
+            }
+        });
     }
 
     /**
@@ -407,23 +599,13 @@ public class RedisUtils {
      * @return
      * @author renxingchen
      */
-    public static Long lpush(String key, String... values) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.rpush(key, values);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-        return result;
+    public static Long lpush(final String key, final String... values) {
+        return execute("RPUSH", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.rpush(key, values);
+            }
+        });
     }
 
     /**
@@ -435,23 +617,13 @@ public class RedisUtils {
      * @return
      * @author renxingchen
      */
-    public static String brpoplpush(String source, String destination, int timeout) {
-        String result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.brpoplpush(source, destination, timeout);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-        return result;
+    public static String brpoplpush(final String source, final String destination, final int timeout) {
+        return execute("BRPOPLPUSH", source, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return jedis.brpoplpush(source, destination, timeout);
+            }
+        });
     }
 
     /**
@@ -461,23 +633,13 @@ public class RedisUtils {
      * @return
      * @author renxingchen
      */
-    public static String rpop(String key) {
-        String result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.rpop(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-        return result;
+    public static String rpop(final String key) {
+        return execute("RPOP", key, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return jedis.rpop(key);
+            }
+        });
     }
 
     /**
@@ -489,23 +651,13 @@ public class RedisUtils {
      * @return
      * @author renxingchen
      */
-    public static Long lrem(String key, long count, String value) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
-        try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.lrem(key, count, value);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
-        }
-        return result;
+    public static Long lrem(final String key, final long count, final String value) {
+        return execute("LREM", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.lrem(key, count, value);
+            }
+        });
     }
 
     /**
@@ -515,23 +667,516 @@ public class RedisUtils {
      * @return
      * @author renxingchen
      */
-    public static Long llen(String key) {
-        Long result = null;
-        JedisPool pool = null;
-        Jedis jedis = null;
+    public static Long llen(final String key) {
+        return execute("LLEN", key, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.llen(key);
+            }
+        });
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     * @return 收到消息的订阅者数
+     */
+    public static Long publish(final String channel, final String message) {
+        // 订阅者连接在默认节点上，发布不参与分片
+        return execute("PUBLISH", channel, getPool(), new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.publish(channel, message);
+            }
+        });
+    }
+
+    /**
+     * 批量获取数据，每个节点一次往返，分片时各节点并行执行
+     *
+     * @param keys keys
+     * @return 与keys顺序一致的值，不存在的key对应null；出错时返回null
+     */
+    public static List<String> mget(final String... keys) {
+        if (keys == null || keys.length == 0) {
+            return Collections.emptyList();
+        }
+        Object[] values = executeGrouped("MGET", keys, new GroupCallback() {
+            @Override
+            public List<?> doInRedis(Jedis jedis, List<Integer> indexes) {
+                byte[][] rawKeys = new byte[indexes.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = SafeEncoder.encode(keys[indexes.get(i)]);
+                }
+                List<byte[]> raw = jedis.mget(rawKeys);
+                List<String> result = new ArrayList<String>(raw.size());
+                for (int i = 0; i < raw.size(); i++) {
+                    byte[] bytes = raw.get(i);
+                    if (bytes != null) {
+                        RedisMetrics.recordPayload("MGET", keys[indexes.get(i)], bytes.length);
+                    }
+                    result.add(RedisCompression.decompress(bytes));
+                }
+                return result;
+            }
+        });
+        if (values == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>(values.length);
+        for (Object value : values) {
+            result.add((String) value);
+        }
+        return result;
+    }
+
+    /**
+     * 批量赋值数据，每个节点一次往返，分片时各节点并行执行且不保证跨节点的原子性
+     *
+     * @param values key和值
+     * @return
+     */
+    public static String mset(Map<String, String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        final String[] keys = values.keySet().toArray(new String[values.size()]);
+        final byte[][] encoded = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            encoded[i] = encodeValue("MSET", keys[i], values.get(keys[i]));
+        }
+        Object[] result = executeGrouped("MSET", keys, new GroupCallback() {
+            @Override
+            public List<?> doInRedis(Jedis jedis, List<Integer> indexes) {
+                byte[][] keysValues = new byte[indexes.size() * 2][];
+                int i = 0;
+                for (Integer index : indexes) {
+                    keysValues[i++] = SafeEncoder.encode(keys[index]);
+                    keysValues[i++] = encoded[index];
+                }
+                return Collections.nCopies(indexes.size(), jedis.mset(keysValues));
+            }
+        });
+        for (String key : keys) {
+            RedisNearCache.invalidate(key);
+        }
+        return result == null ? null : (String) result[0];
+    }
+
+    /**
+     * 批量赋值数据并设置过期时间，通过管道每个节点一次往返
+     *
+     * @param values        key和值
+     * @param expireSeconds (过期时间，秒)
+     * @return
+     */
+    public static List<Object> mset(final Map<String, String> values, final int expireSeconds) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] keys = values.keySet().toArray(new String[values.size()]);
+        List<Object> result = pipelined(keys, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.setex(SafeEncoder.encode(key), expireSeconds, encodeValue("SETEX", key, values.get(key)));
+            }
+        });
+        for (String key : keys) {
+            RedisNearCache.invalidate(key);
+        }
+        return result;
+    }
+
+    /**
+     * 批量删除数据，每个节点一次往返
+     *
+     * @param keys keys
+     * @return 删除的数量
+     */
+    public static Long mdel(final String... keys) {
+        if (keys == null || keys.length == 0) {
+            return 0L;
+        }
+        Object[] counts = executeGrouped("DEL", keys, new GroupCallback() {
+            @Override
+            public List<?> doInRedis(Jedis jedis, List<Integer> indexes) {
+                Pipeline pipeline = jedis.pipelined();
+                for (Integer index : indexes) {
+                    pipeline.del(keys[index]);
+                }
+                return pipeline.syncAndReturnAll();
+            }
+        });
+        for (String key : keys) {
+            RedisNearCache.invalidate(key);
+        }
+        if (counts == null) {
+            return null;
+        }
+        long result = 0L;
+        for (Object count : counts) {
+            // 出错的命令在管道结果中是异常，不计数
+            if (count instanceof Long) {
+                result += (Long) count;
+            } else if (count instanceof Throwable) {
+                logger.warn("redis del failed: " + ((Throwable) count).getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 通过管道批量执行命令，所有命令在一个连接上一次发送<br>
+     * block中调用pipeline方法得到的{@link redis.clients.jedis.Response}在本方法返回后即可取值；
+     * 管道中的写操作不会通知近端缓存，需要时调用{@link RedisNearCache#invalidate(String)}；
+     * 也不会压缩，读取压缩过的值需要自行调用{@link RedisCompression}；
+     * 管道在默认节点上执行，分片时使用{@link #pipelined(String[], BiConsumer)}
+     * <pre>
+     * final List&lt;Response&lt;String&gt;&gt; responses = new ArrayList&lt;Response&lt;String&gt;&gt;();
+     * RedisUtils.pipelined(new Consumer&lt;Pipeline&gt;() {
+     *     public void accept(Pipeline pipeline) {
+     *         for (String key : keys) {
+     *             responses.add(pipeline.get(key));
+     *         }
+     *     }
+     * });
+     * </pre>
+     *
+     * @param block 向管道中添加命令
+     * @return 按添加顺序排列的所有命令结果，出错时返回null
+     */
+    public static List<Object> pipelined(final Consumer<Pipeline> block) {
+        return execute("PIPELINE", null, new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(Jedis jedis) {
+                Pipeline pipeline = jedis.pipelined();
+                block.accept(pipeline);
+                return pipeline.syncAndReturnAll();
+            }
+        });
+    }
+
+    /**
+     * 按key所在节点分组通过管道执行，每个节点一次往返，分片时各节点并行执行<br>
+     * block对每个key调用一次，每次必须向管道中添加且只添加一条命令；
+     * 写操作不会通知近端缓存，需要时调用{@link RedisNearCache#invalidate(String)}
+     *
+     * @param keys  keys
+     * @param block 为一个key向管道中添加命令
+     * @return 与keys顺序一致的命令结果，任一节点出错时返回null
+     */
+    public static List<Object> pipelined(final String[] keys, final BiConsumer<Pipeline, String> block) {
+        if (keys == null || keys.length == 0) {
+            return Collections.emptyList();
+        }
+        Object[] result = executeGrouped("PIPELINE", keys, new GroupCallback() {
+            @Override
+            public List<?> doInRedis(Jedis jedis, List<Integer> indexes) {
+                Pipeline pipeline = jedis.pipelined();
+                for (Integer index : indexes) {
+                    block.accept(pipeline, keys[index]);
+                }
+                List<Object> replies = pipeline.syncAndReturnAll();
+                if (replies.size() != indexes.size()) {
+                    throw new IllegalStateException("expected one command per key, got "
+                            + replies.size() + " replies for " + indexes.size() + " keys");
+                }
+                return replies;
+            }
+        });
+        return result == null ? null : Arrays.asList(result);
+    }
+
+    /**
+     * 通过SCAN逐批遍历匹配的key，不会像KEYS一样长时间阻塞Redis，需要Redis 2.8以上<br>
+     * 分片时依次遍历每个节点；遍历期间有增删时key可能重复出现，Redis出错时抛出IllegalStateException
+     *
+     * @param pattern   模式，与KEYS相同
+     * @param batchSize 每次SCAN的COUNT，也是内存中最多保留的key数量级
+     * @return 惰性的迭代器，每批用完时才取下一批
+     */
+    public static Iterator<String> scan(String pattern, int batchSize) {
+        Assert.notBlank(pattern, "pattern must not be blank");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive, got %s", batchSize);
+        return new KeyScanIterator(pattern, batchSize);
+    }
+
+    /**
+     * 以Stream形式遍历匹配的key，说明见{@link #scan(String, int)}
+     *
+     * @param pattern   模式
+     * @param batchSize 每次SCAN的COUNT
+     * @return 惰性的顺序Stream
+     */
+    public static Stream<String> scanStream(String pattern, int batchSize) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan(pattern, batchSize),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 删除匹配的key，每遍历一批通过管道删除一批
+     *
+     * @param pattern   模式
+     * @param batchSize 每批的数量
+     * @return 删除的数量
+     */
+    public static long deleteByPattern(String pattern, int batchSize) {
+        long deleted = 0L;
+        Iterator<String> keys = scan(pattern, batchSize);
+        while (keys.hasNext()) {
+            Long count = mdel(nextBatch(keys, batchSize));
+            if (count == null) {
+                throw new IllegalStateException("delete " + pattern + " failed, see previous error");
+            }
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    /**
+     * 为匹配的key设置过期时间，每遍历一批通过管道设置一批
+     *
+     * @param pattern       模式
+     * @param expireSeconds (过期时间，秒)
+     * @param batchSize     每批的数量
+     * @return 设置成功的数量
+     */
+    public static long expireByPattern(String pattern, final int expireSeconds, int batchSize) {
+        long expired = 0L;
+        Iterator<String> keys = scan(pattern, batchSize);
+        while (keys.hasNext()) {
+            String[] batch = nextBatch(keys, batchSize);
+            List<Object> replies = pipelined(batch, new BiConsumer<Pipeline, String>() {
+                @Override
+                public void accept(Pipeline pipeline, String key) {
+                    pipeline.expire(key, expireSeconds);
+                }
+            });
+            if (replies == null) {
+                throw new IllegalStateException("expire " + pattern + " failed, see previous error");
+            }
+            for (int i = 0; i < batch.length; i++) {
+                if (Long.valueOf(1L).equals(replies.get(i))) {
+                    expired++;
+                }
+                RedisNearCache.invalidate(batch[i]);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 统计匹配的key的数量，遍历期间有增删时为近似值
+     *
+     * @param pattern   模式
+     * @param batchSize 每次SCAN的COUNT
+     * @return 数量
+     */
+    public static long countByPattern(String pattern, int batchSize) {
+        long count = 0L;
+        Iterator<String> keys = scan(pattern, batchSize);
+        while (keys.hasNext()) {
+            keys.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 编码后保存对象
+     *
+     * @param key   key
+     * @param value 对象，为null时删除key
+     * @param codec 编解码
+     * @return
+     */
+    public static String setObject(String key, Object value, RedisCodec codec) {
+        return setObject(key, value, 0, codec);
+    }
+
+    /**
+     * 编码后保存对象并设置过期时间
+     *
+     * @param key           key
+     * @param value         对象，为null时删除key
+     * @param expireSeconds (过期时间，秒)，0表示不过期
+     * @param codec         编解码
+     * @return
+     */
+    public static String setObject(String key, Object value, final int expireSeconds, RedisCodec codec) {
+        final byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        if (value == null) {
+            del(rawKey);
+            return null;
+        }
+        final byte[] bytes = codec.encode(value);
+        RedisMetrics.recordPayload("SET", key, bytes.length);
+        String result = execute("SET", key, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                if (expireSeconds > 0) {
+                    return jedis.setex(rawKey, expireSeconds, bytes);
+                }
+                return jedis.set(rawKey, bytes);
+            }
+        });
+        RedisNearCache.invalidate(rawKey);
+        return result;
+    }
+
+    /**
+     * 读取并解码对象
+     *
+     * @param key   key
+     * @param type  对象类型
+     * @param codec 编解码，必须与保存时一致
+     * @return 对象，不存在或解码失败时返回null
+     */
+    public static <T> T getObject(String key, Class<T> type, RedisCodec codec) {
+        byte[] bytes = get(key.getBytes(StandardCharsets.UTF_8));
+        if (bytes == null) {
+            return null;
+        }
         try {
-            pool = getPool();
-            jedis = pool.getResource();
-            result = jedis.llen(key);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 释放redis对象
-            pool.returnBrokenResource(jedis);
-            // 返还到连接池
-            returnResource(pool, jedis);
+            return codec.decode(bytes, type);
+        } catch (CodecException e) {
+            logger.error("decode " + key + " error", e);
+            return null;
         }
+    }
+
+    /**
+     * 值等于期望值时赋值，一次往返原子完成<br>
+     * 比较的是Redis中保存的原始字符串，不适用于被{@link RedisCompression}压缩的值
+     *
+     * @param key           key
+     * @param expect        期望值，null表示key不存在
+     * @param update        新值
+     * @param expireSeconds (过期时间，秒)，0表示不过期
+     * @return 是否已赋值，出错时返回null
+     */
+    public static Boolean compareAndSet(String key, String expect, String update, int expireSeconds) {
+        Boolean result = ScriptRegistry.COMPARE_AND_SET.execute(Boolean.class, Collections.singletonList(key),
+                expect == null ? "" : expect, update, expireSeconds);
+        RedisNearCache.invalidate(key);
         return result;
     }
 
+    /**
+     * 值等于期望值时删除，一次往返原子完成
+     *
+     * @param key    key
+     * @param expect 期望值
+     * @return 是否已删除，出错时返回null
+     */
+    public static Boolean compareAndDelete(String key, String expect) {
+        Boolean result = ScriptRegistry.COMPARE_AND_DELETE.execute(Boolean.class, Collections.singletonList(key),
+                expect);
+        RedisNearCache.invalidate(key);
+        return result;
+    }
+
+    /**
+     * 条件key的值等于期望值时移除列表元素，一次往返原子完成，分片时两个key必须在同一个节点
+     *
+     * @param key      列表
+     * @param count    count
+     * @param value    元素
+     * @param guardKey 条件key
+     * @param expect   期望值
+     * @return 移除的数量，条件不满足时为-1，出错时返回null
+     */
+    public static Long lremIf(String key, long count, String value, String guardKey, String expect) {
+        return ScriptRegistry.CONDITIONAL_LREM.execute(Long.class, Arrays.asList(key, guardKey),
+                expect, count, value);
+    }
+
+    /**
+     * 取得分布式锁，每次调用返回新的实例；只有同一个实例可以重入，
+     * 同一线程通过另一个实例获取已持有的锁时抛出IllegalStateException
+     *
+     * @param name 锁名，即Redis的key
+     * @return 锁，租约为{@link RedisLock#DEFAULT_LEASE}，持有期间自动续期
+     */
+    public static RedisLock getLock(String name) {
+        return new RedisLock(name);
+    }
+
+    /**
+     * 按key的压缩策略编码字符串值，并记录值大小
+     *
+     * @param command 命令名
+     * @param key     key
+     * @param value   值
+     * @return 压缩后的字节，不需要压缩时为UTF-8字节
+     */
+    private static byte[] encodeValue(String command, String key, String value) {
+        byte[] compressed = RedisCompression.compress(key, value);
+        byte[] bytes = compressed != null ? compressed : SafeEncoder.encode(value);
+        RedisMetrics.recordPayload(command, key, bytes.length);
+        return bytes;
+    }
+
+    private static String[] nextBatch(Iterator<String> keys, int batchSize) {
+        List<String> batch = new ArrayList<String>(batchSize);
+        while (batch.size() < batchSize && keys.hasNext()) {
+            batch.add(keys.next());
+        }
+        return batch.toArray(new String[batch.size()]);
+    }
+
+    /**
+     * 按key所在节点分组执行，第一组在当前线程执行，其他组并行执行
+     *
+     * @param command  命令名
+     * @param keys     keys
+     * @param callback 对一个节点的一组key执行命令，返回与该组顺序一致的结果
+     * @return 与keys顺序一致的结果，任一节点出错时返回null
+     */
+    private static Object[] executeGrouped(final String command, String[] keys, final GroupCallback callback) {
+        final Object[] results = new Object[keys.length];
+        final AtomicBoolean failed = new AtomicBoolean();
+        RedisShards.forEach(RedisShards.group(keys), new BiConsumer<JedisPool, List<Integer>>() {
+            @Override
+            public void accept(JedisPool pool, final List<Integer> indexes) {
+                List<?> values = execute(command, null, pool, new RedisCallback<List<?>>() {
+                    @Override
+                    public List<?> doInRedis(Jedis jedis) {
+                        return callback.doInRedis(jedis, indexes);
+                    }
+                });
+                if (values == null) {
+                    failed.set(true);
+                    return;
+                }
+                for (int i = 0; i < indexes.size(); i++) {
+                    results[indexes.get(i)] = values.get(i);
+                }
+            }
+        });
+        return failed.get() ? null : results;
+    }
+
+    /**
+     * 对一个节点上的一组key执行命令
+     */
+    private interface GroupCallback {
+        List<?> doInRedis(Jedis jedis, List<Integer> indexes);
+    }
+
+    /**
+     * 当前线程绑定的连接
+     */
+    private static class BoundConnection {
+        private final JedisPool pool;
+        private Jedis jedis;
+        private int depth;
+
+        BoundConnection(JedisPool pool, Jedis jedis) {
+            this.pool = pool;
+            this.jedis = jedis;
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package com.gogtz.common.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>Lua脚本注册表</h1>
+ * 按名称保存共享的{@link RedisScript}，脚本只加载一次，之后只发送SHA1。
+ * <ol><strong>
+ * <li>{@link #loadAll()}通过SCRIPT LOAD把所有脚本加载到每个节点，通常在启动时调用</li>
+ * <li>服务器重启等原因丢失脚本时，执行时收到NOSCRIPT自动重新加载</li>
+ * <li>内置比较并赋值、比较并删除、条件lrem等常用脚本，把多次往返合并为一次原子操作</li>
+ * </strong>
+ * </ol>
+ * <pre>
+ * private static final RedisScript TRANSFER = ScriptRegistry.register("ACCOUNT_TRANSFER", "...");
+ * Long balance = TRANSFER.execute(Long.class, Arrays.asList("{acct}:a", "{acct}:b"), amount);
+ * </pre>
+ *
+ * @author t
+ */
+public class ScriptRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    private static final ConcurrentHashMap<String, RedisScript> scripts = new ConcurrentHashMap<String, RedisScript>();
+
+    /**
+     * 值等于期望值时赋值，期望值为空字符串表示key不存在<br>
+     * KEYS: key; ARGV: 期望值, 新值, 过期时间（秒，0表示不过期）; 返回1表示已赋值
+     */
+    public static final RedisScript COMPARE_AND_SET = register("COMPARE_AND_SET",
+            "local current = redis.call('get', KEYS[1]) "
+                    + "if (current or '') ~= ARGV[1] then "
+                    + "return 0 "
+                    + "end "
+                    + "if tonumber(ARGV[3]) > 0 then "
+                    + "redis.call('setex', KEYS[1], ARGV[3], ARGV[2]) "
+                    + "else "
+                    + "redis.call('set', KEYS[1], ARGV[2]) "
+                    + "end "
+                    + "return 1");
+
+    /**
+     * 值等于期望值时删除<br>
+     * KEYS: key; ARGV: 期望值; 返回1表示已删除
+     */
+    public static final RedisScript COMPARE_AND_DELETE = register("COMPARE_AND_DELETE",
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('del', KEYS[1]) "
+                    + "end "
+                    + "return 0");
+
+    /**
+     * 条件key的值等于期望值时从列表中移除元素<br>
+     * KEYS: 列表, 条件key; ARGV: 期望值, 数量, 元素; 返回移除的数量，条件不满足时为-1
+     */
+    public static final RedisScript CONDITIONAL_LREM = register("CONDITIONAL_LREM",
+            "if redis.call('get', KEYS[2]) ~= ARGV[1] then "
+                    + "return -1 "
+                    + "end "
+                    + "return redis.call('lrem', KEYS[1], ARGV[2], ARGV[3])");
+
+    private ScriptRegistry() {
+    }
+
+    /**
+     * 注册脚本，同名同内容的脚本重复注册时返回已注册的实例
+     *
+     * @param name   脚本名，同时作为{@link RedisMetrics}中的命令名
+     * @param script Lua脚本
+     * @return 脚本
+     * @throws IllegalStateException 同名脚本的内容不同
+     */
+    public static RedisScript register(String name, String script) {
+        RedisScript created = new RedisScript(name, script);
+        RedisScript existing = scripts.putIfAbsent(name, created);
+        if (existing == null) {
+            return created;
+        }
+        if (!existing.getSha1().equals(created.getSha1())) {
+            throw new IllegalStateException("script " + name + " is already registered with different content");
+        }
+        return existing;
+    }
+
+    /**
+     * 取得已注册的脚本
+     *
+     * @param name 脚本名
+     * @return 脚本
+     * @throws IllegalArgumentException 脚本未注册
+     */
+    public static RedisScript get(String name) {
+        RedisScript script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("script " + name + " is not registered");
+        }
+        return script;
+    }
+
+    /**
+     * 所有已注册的脚本
+     *
+     * @return 脚本
+     */
+    public static Collection<RedisScript> getScripts() {
+        return Collections.unmodifiableCollection(new ArrayList<RedisScript>(scripts.values()));
+    }
+
+    /**
+     * 把所有已注册的脚本加载到每个节点，之后注册的脚本在第一次执行时加载
+     *
+     * @return 加载成功的节点数
+     */
+    public static int loadAll() {
+        int loaded = 0;
+        for (JedisPool pool : RedisShards.getPools()) {
+            Jedis jedis = null;
+            boolean broken = false;
+            try {
+                jedis = RedisPoolManager.borrow(pool);
+                for (RedisScript script : scripts.values()) {
+                    script.load(jedis);
+                }
+                loaded++;
+            } catch (Exception e) {
+                broken = true;
+                logger.warn("load redis scripts failed: " + e.getMessage());
+            } finally {
+                RedisPoolManager.release(pool, jedis, broken);
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gogtz.common.cache.bloom;
+
+/**
+ * 布隆过滤器<br>
+ * 判断为不存在时一定不存在，判断为可能存在时有一定的误判率；元素数量超过预期时自动扩容，误判率保持在设定值附近
+ *
+ * @author t
+ */
+public interface BloomFilter {
+
+    /**
+     * 添加元素
+     *
+     * @param value 元素
+     * @return 添加前一定不存在时为true，可能已存在时为false
+     */
+    boolean put(String value);
+
+    /**
+     * 批量添加元素
+     *
+     * @param values 元素
+     * @return 与values顺序一致，含义同{@link #put(String)}
+     */
+    boolean[] putAll(String... values);
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @param value 元素
+     * @return false表示一定不存在
+     */
+    boolean mightContain(String value);
+
+    /**
+     * 批量判断元素是否可能存在
+     *
+     * @param values 元素
+     * @return 与values顺序一致，false表示一定不存在
+     */
+    boolean[] mightContainAll(String... values);
+
+    /**
+     * 已添加的元素数量，可能已存在的元素不计入
+     *
+     * @return 数量
+     */
+    long count();
+}
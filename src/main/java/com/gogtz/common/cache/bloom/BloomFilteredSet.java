@@ -0,0 +1,149 @@
+package com.gogtz.common.cache.bloom;
+
+import com.gogtz.common.cache.RedisCallback;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.lang.Assert;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>前置布隆过滤器的Redis Set</h1>
+ * 适合“是否出现过”一类大部分答案为否的判断：过滤器判断为不存在时直接返回，
+ * 只有可能存在时才通过SISMEMBER确认，结果与直接使用{@link RedisUtils#sismember(String, String)}相同。
+ * <ol><strong>
+ * <li>过滤器可以是{@link LocalBloomFilter}（单进程）或{@link RedisBloomFilter}（多进程共享）</li>
+ * <li>所有添加必须通过{@link #add(String...)}，否则过滤器会把已存在的元素判断为不存在；
+ * 已有数据的Set需要先把成员添加到过滤器</li>
+ * <li>从Set中删除不影响正确性，只是之后对该元素的判断仍需访问Redis</li>
+ * </strong>
+ * </ol>
+ * <pre>
+ * BloomFilteredSet seen = new BloomFilteredSet("seen:order", new RedisBloomFilter("seen:order", 10000000, 0.01));
+ * if (!Boolean.TRUE.equals(seen.contains(orderId))) { ... }
+ * </pre>
+ *
+ * @author t
+ */
+public class BloomFilteredSet {
+
+    private final String key;
+    private final BloomFilter filter;
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder queried = new LongAdder();
+
+    /**
+     * @param key    Set的key
+     * @param filter 过滤器，只用于这一个Set
+     */
+    public BloomFilteredSet(String key, BloomFilter filter) {
+        Assert.notBlank(key, "key must not be blank");
+        Assert.notNull(filter, "filter must not be null");
+        this.key = key;
+        this.filter = filter;
+    }
+
+    /**
+     * 添加成员，先写入过滤器再写入Set
+     *
+     * @param members 成员
+     * @return 新加入Set的数量，Redis出错时返回null
+     * @throws IllegalStateException 写入过滤器失败
+     */
+    public Long add(String... members) {
+        if (members.length == 0) {
+            return 0L;
+        }
+        filter.putAll(members);
+        return RedisUtils.sadd(key, members);
+    }
+
+    /**
+     * 判断是否是成员
+     *
+     * @param member 成员
+     * @return 是否是成员，Redis出错时返回null
+     */
+    public Boolean contains(String member) {
+        if (!filter.mightContain(member)) {
+            filtered.increment();
+            return false;
+        }
+        queried.increment();
+        return RedisUtils.sismember(key, member);
+    }
+
+    /**
+     * 批量判断是否是成员，过滤器可能存在的成员通过一个管道确认
+     *
+     * @param members 成员
+     * @return 与members顺序一致，Redis出错时可能存在的成员为null
+     */
+    public Boolean[] containsAll(String... members) {
+        Boolean[] result = new Boolean[members.length];
+        boolean[] maybe = filter.mightContainAll(members);
+        final List<String> candidates = new ArrayList<String>();
+        for (int i = 0; i < members.length; i++) {
+            if (maybe[i]) {
+                candidates.add(members[i]);
+            } else {
+                result[i] = false;
+            }
+        }
+        filtered.add(members.length - candidates.size());
+        if (candidates.isEmpty()) {
+            return result;
+        }
+        queried.add(candidates.size());
+        List<Object> replies = RedisUtils.execute("SISMEMBER", key, new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(Jedis jedis) {
+                Pipeline pipeline = jedis.pipelined();
+                for (String candidate : candidates) {
+                    pipeline.sismember(key, candidate);
+                }
+                return pipeline.syncAndReturnAll();
+            }
+        });
+        if (replies != null) {
+            int next = 0;
+            for (int i = 0; i < members.length; i++) {
+                if (maybe[i]) {
+                    result[i] = (Boolean) replies.get(next++);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set的key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 过滤器
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * 由过滤器直接判断为不存在、没有访问Redis的次数
+     */
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    /**
+     * 访问Redis确认的次数，其中判断为不存在的是误判
+     */
+    public long getQueriedCount() {
+        return queried.sum();
+    }
+}
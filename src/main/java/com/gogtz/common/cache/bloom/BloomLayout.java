@@ -0,0 +1,142 @@
+package com.gogtz.common.cache.bloom;
+
+import com.gogtz.common.lang.Assert;
+import redis.clients.util.Hashing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 可扩容布隆过滤器的分层布局<br>
+ * 第i层的容量为预期数量的2^i倍，误判率为fpp/2^(i+1)，各层误判率之和不超过fpp；
+ * 所有层依次排列在同一段位图中，元素写入当前容量未满的最后一层，判断时检查所有已启用的层。
+ * 每个元素只计算一次64位哈希，第j个位置为(h1 + j * h2) % bits。
+ *
+ * @author t
+ */
+final class BloomLayout {
+
+    /**
+     * 最多的层数
+     */
+    static final int MAX_LAYERS = 16;
+
+    private static final double LN2 = Math.log(2);
+
+    /**
+     * 每层的起始位置
+     */
+    final long[] offsets;
+
+    /**
+     * 每层的位数
+     */
+    final long[] bits;
+
+    /**
+     * 每层的哈希函数个数
+     */
+    final int[] hashes;
+
+    /**
+     * 到该层为止的累计容量，元素数量达到后启用下一层
+     */
+    final long[] limits;
+
+    /**
+     * @param expectedInsertions 第一层的预期元素数量
+     * @param fpp                总的误判率
+     * @param maxBits            所有层的总位数上限，超过时不再增加新层
+     */
+    BloomLayout(long expectedInsertions, double fpp, long maxBits) {
+        Assert.isTrue(expectedInsertions > 0, "expectedInsertions must be positive, got %s", expectedInsertions);
+        Assert.isTrue(fpp > 0 && fpp < 1, "fpp must be between 0 and 1, got %s", fpp);
+        List<long[]> layers = new ArrayList<long[]>();
+        long offset = 0L;
+        long limit = 0L;
+        for (int i = 0; i < MAX_LAYERS; i++) {
+            long capacity = expectedInsertions << i;
+            double layerFpp = fpp / (2L << i);
+            long layerBits = (long) Math.ceil(-capacity * Math.log(layerFpp) / (LN2 * LN2));
+            if (capacity <= 0 || offset + layerBits > maxBits) {
+                break;
+            }
+            int layerHashes = Math.max(1, (int) Math.round((double) layerBits / capacity * LN2));
+            limit += capacity;
+            layers.add(new long[]{offset, layerBits, layerHashes, limit});
+            offset += layerBits;
+        }
+        Assert.isTrue(!layers.isEmpty(), "expectedInsertions %s with fpp %s needs more than %s bits",
+                expectedInsertions, fpp, maxBits);
+        int size = layers.size();
+        offsets = new long[size];
+        bits = new long[size];
+        hashes = new int[size];
+        limits = new long[size];
+        for (int i = 0; i < size; i++) {
+            long[] layer = layers.get(i);
+            offsets[i] = layer[0];
+            bits[i] = layer[1];
+            hashes[i] = (int) layer[2];
+            limits[i] = layer[3];
+        }
+    }
+
+    /**
+     * 层数
+     */
+    int size() {
+        return bits.length;
+    }
+
+    /**
+     * 已添加count个元素时写入的层
+     *
+     * @param count 已添加的元素数量
+     * @return 层号
+     */
+    int activeLayer(long count) {
+        int layer = 0;
+        while (layer < limits.length - 1 && limits[layer] <= count) {
+            layer++;
+        }
+        return layer;
+    }
+
+    /**
+     * 元素的64位哈希
+     *
+     * @param value 元素
+     * @return 哈希
+     */
+    static long hash(String value) {
+        return Hashing.MURMUR_HASH.hash(value);
+    }
+
+    /**
+     * 第一个哈希值，非负
+     */
+    static long h1(long hash) {
+        return hash & 0x7FFFFFFFL;
+    }
+
+    /**
+     * 第二个哈希值，非负
+     */
+    static long h2(long hash) {
+        return (hash >>> 32) & 0x7FFFFFFFL;
+    }
+
+    /**
+     * 元素在某一层中第j个位置，相对于该层的起始位置
+     *
+     * @param layer 层号
+     * @param h1    第一个哈希值
+     * @param h2    第二个哈希值
+     * @param j     哈希函数序号
+     * @return 位置
+     */
+    long position(int layer, long h1, long h2, int j) {
+        return (h1 + j * h2) % bits[layer];
+    }
+}
@@ -0,0 +1,137 @@
+package com.gogtz.common.cache.bloom;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 本地内存中的布隆过滤器，线程安全<br>
+ * 每层的位图在启用时才分配；并发添加同一元素时计数可能多算，只会让扩容略微提前
+ * <pre>
+ * BloomFilter seen = new LocalBloomFilter(1000000, 0.01);
+ * </pre>
+ *
+ * @author t
+ */
+public class LocalBloomFilter implements BloomFilter {
+
+    /**
+     * 所有层的总位数上限，约2GB
+     */
+    private static final long MAX_BITS = 1L << 34;
+
+    private final BloomLayout layout;
+    private final AtomicReferenceArray<AtomicLongArray> layers;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * 构建过滤器
+     *
+     * @param expectedInsertions 预期元素数量，超过时自动扩容
+     * @param fpp                误判率，如0.01
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        this.layout = new BloomLayout(expectedInsertions, fpp, MAX_BITS);
+        this.layers = new AtomicReferenceArray<AtomicLongArray>(layout.size());
+    }
+
+    @Override
+    public boolean put(String value) {
+        long hash = BloomLayout.hash(value);
+        long h1 = BloomLayout.h1(hash);
+        long h2 = BloomLayout.h2(hash);
+        int active = layout.activeLayer(count.get());
+        for (int i = 0; i <= active; i++) {
+            if (contains(i, h1, h2)) {
+                return false;
+            }
+        }
+        AtomicLongArray words = words(active);
+        for (int j = 0; j < layout.hashes[active]; j++) {
+            long position = layout.position(active, h1, h2, j);
+            int index = (int) (position >>> 6);
+            long mask = 1L << position;
+            long word;
+            do {
+                word = words.get(index);
+            } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean[] putAll(String... values) {
+        boolean[] result = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = put(values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean mightContain(String value) {
+        long hash = BloomLayout.hash(value);
+        long h1 = BloomLayout.h1(hash);
+        long h2 = BloomLayout.h2(hash);
+        int active = layout.activeLayer(count.get());
+        for (int i = 0; i <= active; i++) {
+            if (contains(i, h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean[] mightContainAll(String... values) {
+        boolean[] result = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = mightContain(values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * 已分配的位图占用的字节数
+     *
+     * @return 字节数
+     */
+    public long getMemoryBytes() {
+        long bytes = 0L;
+        for (int i = 0; i < layers.length(); i++) {
+            if (layers.get(i) != null) {
+                bytes += layers.get(i).length() * 8L;
+            }
+        }
+        return bytes;
+    }
+
+    private boolean contains(int layer, long h1, long h2) {
+        AtomicLongArray words = layers.get(layer);
+        if (words == null) {
+            return false;
+        }
+        for (int j = 0; j < layout.hashes[layer]; j++) {
+            long position = layout.position(layer, h1, h2, j);
+            if ((words.get((int) (position >>> 6)) & (1L << position)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AtomicLongArray words(int layer) {
+        AtomicLongArray words = layers.get(layer);
+        if (words == null) {
+            layers.compareAndSet(layer, null, new AtomicLongArray((int) ((layout.bits[layer] + 63) >>> 6)));
+            words = layers.get(layer);
+        }
+        return words;
+    }
+}
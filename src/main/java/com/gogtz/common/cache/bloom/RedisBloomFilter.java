@@ -0,0 +1,201 @@
+package com.gogtz.common.cache.bloom;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.cache.ScriptRegistry;
+import com.gogtz.common.lang.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 以Redis位图保存的布隆过滤器，多个进程共享<br>
+ * 所有层保存在同一个位图中，元素数量保存在另一个key中，两个key通过hash tag分配在同一个节点上；
+ * 每批元素的判断和添加在一个Lua脚本中完成，批量操作每{@link #BATCH_SIZE}个元素一次往返。
+ * <ol><strong>
+ * <li>位图：bloom:{name}，最大512MB</li>
+ * <li>元素数量：bloom:{name}:count</li>
+ * </strong>
+ * </ol>
+ * 位图的布局由预期数量和误判率决定，修改这两个参数后需要先{@link #delete()}。
+ * Redis出错时判断结果为可能存在，添加抛出IllegalStateException。
+ *
+ * @author t
+ */
+public class RedisBloomFilter implements BloomFilter {
+
+    /**
+     * 每次脚本调用处理的元素数量
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    /**
+     * Redis位图的位数上限
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    /**
+     * 判断元素是否可能存在，需要时添加<br>
+     * KEYS: 位图, 元素数量; ARGV: 是否添加, 层数, 每层的起始位置、位数、哈希函数个数、累计容量, 每个元素的两个哈希值;
+     * 返回由'1'、'0'组成的字符串，依次表示每个元素是否可能已存在（Jedis不能转换元素为整数的multi bulk回复）
+     */
+    private static final RedisScript SCRIPT = ScriptRegistry.register("BLOOM",
+            "local add = ARGV[1] == '1' "
+                    + "local size = tonumber(ARGV[2]) "
+                    + "local layers = {} "
+                    + "for i = 1, size do "
+                    + "local base = 2 + (i - 1) * 4 "
+                    + "layers[i] = {tonumber(ARGV[base + 1]), tonumber(ARGV[base + 2]), "
+                    + "tonumber(ARGV[base + 3]), tonumber(ARGV[base + 4])} "
+                    + "end "
+                    + "local count = tonumber(redis.call('get', KEYS[2]) or '0') "
+                    + "local added = 0 "
+                    + "local result = {} "
+                    + "for v = 3 + size * 4, #ARGV, 2 do "
+                    + "local h1 = tonumber(ARGV[v]) "
+                    + "local h2 = tonumber(ARGV[v + 1]) "
+                    + "local active = 1 "
+                    + "while active < size and layers[active][4] <= count do "
+                    + "active = active + 1 "
+                    + "end "
+                    + "local found = false "
+                    + "for i = 1, active do "
+                    + "local layer = layers[i] "
+                    + "found = true "
+                    + "for j = 0, layer[3] - 1 do "
+                    + "if redis.call('getbit', KEYS[1], layer[1] + (h1 + j * h2) % layer[2]) == 0 then "
+                    + "found = false "
+                    + "break "
+                    + "end "
+                    + "end "
+                    + "if found then "
+                    + "break "
+                    + "end "
+                    + "end "
+                    + "if add and not found then "
+                    + "local layer = layers[active] "
+                    + "for j = 0, layer[3] - 1 do "
+                    + "redis.call('setbit', KEYS[1], layer[1] + (h1 + j * h2) % layer[2], 1) "
+                    + "end "
+                    + "count = count + 1 "
+                    + "added = added + 1 "
+                    + "end "
+                    + "result[#result + 1] = found and '1' or '0' "
+                    + "end "
+                    + "if added > 0 then "
+                    + "redis.call('incrby', KEYS[2], added) "
+                    + "end "
+                    + "return table.concat(result)");
+
+    private final String name;
+    private final BloomLayout layout;
+    private final List<String> keys;
+
+    /**
+     * 构建过滤器
+     *
+     * @param name               过滤器名
+     * @param expectedInsertions 预期元素数量，超过时自动扩容
+     * @param fpp                误判率，如0.01
+     */
+    public RedisBloomFilter(String name, long expectedInsertions, double fpp) {
+        Assert.notBlank(name, "name must not be blank");
+        this.name = name;
+        this.layout = new BloomLayout(expectedInsertions, fpp, MAX_BITS);
+        String key = "bloom:{" + name + "}";
+        this.keys = Arrays.asList(key, key + ":count");
+    }
+
+    /**
+     * 过滤器名
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean put(String value) {
+        return putAll(value)[0];
+    }
+
+    @Override
+    public boolean[] putAll(String... values) {
+        boolean[] result = execute(true, values);
+        if (result == null) {
+            throw new IllegalStateException("add to bloom filter " + name + " failed, see previous error");
+        }
+        for (int i = 0; i < result.length; i++) {
+            result[i] = !result[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean mightContain(String value) {
+        return mightContainAll(value)[0];
+    }
+
+    @Override
+    public boolean[] mightContainAll(String... values) {
+        boolean[] result = execute(false, values);
+        if (result == null) {
+            result = new boolean[values.length];
+            Arrays.fill(result, true);
+        }
+        return result;
+    }
+
+    @Override
+    public long count() {
+        String count = RedisUtils.get(keys.get(1));
+        return count == null ? 0L : Long.parseLong(count);
+    }
+
+    /**
+     * 删除位图和元素数量
+     */
+    public void delete() {
+        RedisUtils.del(keys.get(0));
+        RedisUtils.del(keys.get(1));
+    }
+
+    /**
+     * 分批执行脚本
+     *
+     * @param add    是否添加
+     * @param values 元素
+     * @return 每个元素是否可能已存在，Redis出错时返回null
+     */
+    private boolean[] execute(boolean add, String[] values) {
+        boolean[] result = new boolean[values.length];
+        for (int from = 0; from < values.length; from += BATCH_SIZE) {
+            int to = Math.min(values.length, from + BATCH_SIZE);
+            List<Object> args = new ArrayList<Object>(2 + layout.size() * 4 + (to - from) * 2);
+            args.add(add ? 1 : 0);
+            args.add(layout.size());
+            for (int i = 0; i < layout.size(); i++) {
+                args.add(layout.offsets[i]);
+                args.add(layout.bits[i]);
+                args.add(layout.hashes[i]);
+                args.add(layout.limits[i]);
+            }
+            for (int i = from; i < to; i++) {
+                long hash = BloomLayout.hash(values[i]);
+                args.add(BloomLayout.h1(hash));
+                args.add(BloomLayout.h2(hash));
+            }
+            String reply = SCRIPT.execute(String.class, keys, args.toArray());
+            if (reply == null) {
+                return null;
+            }
+            if (reply.length() != to - from) {
+                throw new IllegalStateException("unexpected reply of bloom filter " + name + ": " + reply);
+            }
+            for (int i = from; i < to; i++) {
+                result[i] = reply.charAt(i - from) == '1';
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,697 @@
+package com.gogtz.common.cache.codec;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编解码<br>
+ * <ol>
+ * <li>每个类的字段列表只反射一次并缓存（schema），对象按字段顺序写入，不写字段名</li>
+ * <li>基本类型字段不写类型标记，整数使用ZigZag变长编码，字符串使用UTF-8</li>
+ * <li>同一次编码中重复出现的类只写一次类名，之后写序号；类名后附带字段指纹，类结构变化时解码失败而不是读出错误数据</li>
+ * <li>JDK类型中不认识的、实现了Serializable的对象退回JDK序列化</li>
+ * </ol>
+ * 对象需要有无参构造方法，static和transient字段不参与编码；不支持循环引用，共享引用会被复制。
+ * TreeMap、TreeSet等有序容器的比较器随容器一起编码，比较器不能编码（如lambda）时编码失败
+ *
+ * @author t
+ */
+public class BinaryCodec implements RedisCodec {
+
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    private static final int VERSION = 1;
+    private static final int MAX_DEPTH = 256;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int BYTE = 3;
+    private static final int SHORT = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int CHAR = 9;
+    private static final int STRING = 10;
+    private static final int BYTES = 11;
+    private static final int DATE = 12;
+    private static final int BIG_DECIMAL = 13;
+    private static final int BIG_INTEGER = 14;
+    private static final int ENUM = 15;
+    private static final int COLLECTION = 16;
+    private static final int MAP = 17;
+    private static final int ARRAY = 18;
+    private static final int OBJECT = 19;
+    private static final int SERIALIZABLE = 20;
+    private static final int SORTED_COLLECTION = 21;
+    private static final int SORTED_MAP = 22;
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, short.class, char.class, int.class,
+                long.class, float.class, double.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    /**
+     * 不能按字段编码的类
+     */
+    private static final Schema NO_SCHEMA = new Schema(null, new Field[0], 0);
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<Class<?>, Schema>();
+    private final ConcurrentHashMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+    private final ConcurrentHashMap<Class<?>, Constructor<?>> containerConstructors =
+            new ConcurrentHashMap<Class<?>, Constructor<?>>();
+    private final ConcurrentHashMap<Class<?>, Constructor<?>> sortedConstructors =
+            new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    @Override
+    public byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        BinaryOutput out = BinaryOutput.acquire();
+        try {
+            encode(value, out);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 编码并写入out
+     *
+     * @param value 值
+     * @param out   输出
+     */
+    public void encode(Object value, BinaryOutput out) {
+        out.writeByte(VERSION);
+        new Writer(out).write(value, 0);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes == null) {
+            return null;
+        }
+        return decode(new BinaryInput(bytes), type);
+    }
+
+    /**
+     * 从in中解码
+     *
+     * @param in   输入
+     * @param type 期望的类型
+     * @param <T>  类型
+     * @return 值
+     */
+    public <T> T decode(BinaryInput in, Class<T> type) {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new CodecException("unsupported binary codec version: %s", version);
+        }
+        Object value;
+        try {
+            value = new Reader(in).read(0);
+        } catch (CodecException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // 损坏或其他格式的数据可能在任何位置产生异常，统一为CodecException以便调用方按解码失败处理
+            throw new CodecException("corrupt data at " + in.position(), e);
+        }
+        if (value != null && !type.isInstance(value)) {
+            throw new CodecException("expected %s but decoded %s", type.getName(), value.getClass().getName());
+        }
+        return type.cast(value);
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = buildSchema(type);
+            Schema existing = schemas.putIfAbsent(type, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+
+    private static Schema buildSchema(Class<?> type) {
+        String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.") || type.isInterface()
+                || Modifier.isAbstract(type.getModifiers()) || type.isAnonymousClass() || type.isSynthetic()
+                || (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))) {
+            return NO_SCHEMA;
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            return NO_SCHEMA;
+        }
+
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<Field> fields = new ArrayList<Field>();
+        int fingerprint = 1;
+        for (Class<?> c : hierarchy) {
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort(declared, new Comparator<Field>() {
+                @Override
+                public int compare(Field o1, Field o2) {
+                    return o1.getName().compareTo(o2.getName());
+                }
+            });
+            for (Field field : declared) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+                fingerprint = 31 * fingerprint + field.getName().hashCode();
+                fingerprint = 31 * fingerprint + field.getType().getName().hashCode();
+            }
+        }
+        return new Schema(constructor, fields.toArray(new Field[fields.size()]), fingerprint);
+    }
+
+    private Class<?> classForName(String name) {
+        Class<?> type = classes.get(name);
+        if (type != null) {
+            return type;
+        }
+        type = PRIMITIVES.get(name);
+        if (type == null) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = BinaryCodec.class.getClassLoader();
+            }
+            try {
+                type = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                throw new CodecException("class not found: " + name, e);
+            }
+        }
+        classes.putIfAbsent(name, type);
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object newContainer(Class<?> type, int size, boolean map) {
+        Constructor<?> constructor = containerConstructors.get(type);
+        if (constructor == null) {
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                containerConstructors.putIfAbsent(type, constructor);
+            } catch (Exception e) {
+                constructor = null;
+            }
+        }
+        if (constructor != null) {
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                // 退回到通用的实现
+            }
+        }
+        if (map) {
+            return SortedMap.class.isAssignableFrom(type) ? new TreeMap<Object, Object>()
+                    : new LinkedHashMap<Object, Object>(Math.max(16, size * 4 / 3 + 1));
+        }
+        if (SortedSet.class.isAssignableFrom(type)) {
+            return new TreeSet<Object>();
+        }
+        if (Set.class.isAssignableFrom(type)) {
+            return new LinkedHashSet<Object>(Math.max(16, size * 4 / 3 + 1));
+        }
+        return new ArrayList<Object>(size);
+    }
+
+    /**
+     * 创建使用指定比较器的有序容器，没有以Comparator为参数的构造方法时使用TreeMap/TreeSet
+     */
+    @SuppressWarnings("unchecked")
+    private Object newSortedContainer(Class<?> type, Comparator<Object> comparator, boolean map) {
+        Constructor<?> constructor = sortedConstructors.get(type);
+        if (constructor == null) {
+            try {
+                constructor = type.getDeclaredConstructor(Comparator.class);
+                constructor.setAccessible(true);
+                sortedConstructors.putIfAbsent(type, constructor);
+            } catch (Exception e) {
+                constructor = null;
+            }
+        }
+        if (constructor != null) {
+            try {
+                return constructor.newInstance(comparator);
+            } catch (Exception e) {
+                // 退回到通用的实现
+            }
+        }
+        return map ? new TreeMap<Object, Object>(comparator) : new TreeSet<Object>(comparator);
+    }
+
+    /**
+     * 一次编码的上下文
+     */
+    private final class Writer {
+        private final BinaryOutput out;
+        private final Map<Class<?>, Integer> classTable = new IdentityHashMap<Class<?>, Integer>();
+
+        Writer(BinaryOutput out) {
+            this.out = out;
+        }
+
+        /**
+         * 写入类引用
+         *
+         * @return 是否第一次写入
+         */
+        boolean writeClass(Class<?> type) {
+            Integer index = classTable.get(type);
+            if (index != null) {
+                out.writeVarInt(index + 1);
+                return false;
+            }
+            out.writeVarInt(0);
+            out.writeString(type.getName());
+            classTable.put(type, classTable.size());
+            return true;
+        }
+
+        void write(Object value, int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new CodecException("object graph is too deep, circular reference is not supported");
+            }
+            if (value == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            if (type == String.class) {
+                out.writeByte(STRING);
+                out.writeString((String) value);
+            } else if (type == Integer.class) {
+                out.writeByte(INT);
+                out.writeSignedVarInt((Integer) value);
+            } else if (type == Long.class) {
+                out.writeByte(LONG);
+                out.writeSignedVarLong((Long) value);
+            } else if (type == Boolean.class) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (type == Double.class) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (type == Float.class) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (type == Short.class) {
+                out.writeByte(SHORT);
+                out.writeSignedVarInt((Short) value);
+            } else if (type == Byte.class) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (type == Character.class) {
+                out.writeByte(CHAR);
+                out.writeVarInt((Character) value);
+            } else if (type == byte[].class) {
+                byte[] bytes = (byte[]) value;
+                out.writeByte(BYTES);
+                out.writeVarInt(bytes.length);
+                out.writeBytes(bytes, 0, bytes.length);
+            } else if (type == Date.class) {
+                out.writeByte(DATE);
+                out.writeSignedVarLong(((Date) value).getTime());
+            } else if (type == BigDecimal.class) {
+                out.writeByte(BIG_DECIMAL);
+                out.writeString(value.toString());
+            } else if (type == BigInteger.class) {
+                out.writeByte(BIG_INTEGER);
+                out.writeString(value.toString());
+            } else if (value instanceof Enum) {
+                out.writeByte(ENUM);
+                writeClass(((Enum<?>) value).getDeclaringClass());
+                out.writeString(((Enum<?>) value).name());
+            } else if (type.isArray()) {
+                writeArray(value, type.getComponentType(), depth);
+            } else if (value instanceof SortedSet && ((SortedSet<?>) value).comparator() != null) {
+                SortedSet<?> set = (SortedSet<?>) value;
+                out.writeByte(SORTED_COLLECTION);
+                writeClass(type);
+                writeComparator(set.comparator(), type, depth);
+                out.writeVarInt(set.size());
+                for (Object element : set) {
+                    write(element, depth + 1);
+                }
+            } else if (value instanceof SortedMap && ((SortedMap<?, ?>) value).comparator() != null) {
+                SortedMap<?, ?> map = (SortedMap<?, ?>) value;
+                out.writeByte(SORTED_MAP);
+                writeClass(type);
+                writeComparator(map.comparator(), type, depth);
+                out.writeVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    write(entry.getKey(), depth + 1);
+                    write(entry.getValue(), depth + 1);
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                out.writeByte(COLLECTION);
+                writeClass(type);
+                out.writeVarInt(collection.size());
+                for (Object element : collection) {
+                    write(element, depth + 1);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                writeClass(type);
+                out.writeVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    write(entry.getKey(), depth + 1);
+                    write(entry.getValue(), depth + 1);
+                }
+            } else {
+                Schema schema = schemaOf(type);
+                if (schema != NO_SCHEMA) {
+                    writeObject(value, type, schema, depth);
+                } else if (value instanceof Serializable) {
+                    byte[] bytes = JdkCodec.INSTANCE.encode(value);
+                    out.writeByte(SERIALIZABLE);
+                    out.writeVarInt(bytes.length);
+                    out.writeBytes(bytes, 0, bytes.length);
+                } else {
+                    throw new CodecException("unsupported type: %s", type.getName());
+                }
+            }
+        }
+
+        /**
+         * 写入有序容器的比较器，比较器不能编码时拒绝，避免解码后按自然顺序排列
+         */
+        private void writeComparator(Comparator<?> comparator, Class<?> type, int depth) {
+            Class<?> comparatorType = comparator.getClass();
+            if (!(comparator instanceof Serializable) && schemaOf(comparatorType) == NO_SCHEMA) {
+                throw new CodecException("comparator %s of %s can not be encoded", comparatorType.getName(),
+                        type.getName());
+            }
+            write(comparator, depth + 1);
+        }
+
+        private void writeArray(Object array, Class<?> componentType, int depth) {
+            int length = Array.getLength(array);
+            out.writeByte(ARRAY);
+            writeClass(componentType);
+            out.writeVarInt(length);
+            if (componentType.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    writePrimitive(componentType, Array.get(array, i));
+                }
+            } else {
+                Object[] elements = (Object[]) array;
+                for (Object element : elements) {
+                    write(element, depth + 1);
+                }
+            }
+        }
+
+        private void writeObject(Object value, Class<?> type, Schema schema, int depth) {
+            out.writeByte(OBJECT);
+            if (writeClass(type)) {
+                out.writeSignedVarInt(schema.fingerprint);
+            }
+            try {
+                for (Field field : schema.fields) {
+                    Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        writePrimitive(fieldType, field.get(value));
+                    } else {
+                        write(field.get(value), depth + 1);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new CodecException("encode " + type.getName() + " error", e);
+            }
+        }
+
+        private void writePrimitive(Class<?> type, Object value) {
+            if (type == int.class) {
+                out.writeSignedVarInt((Integer) value);
+            } else if (type == long.class) {
+                out.writeSignedVarLong((Long) value);
+            } else if (type == boolean.class) {
+                out.writeByte((Boolean) value ? 1 : 0);
+            } else if (type == double.class) {
+                out.writeDouble((Double) value);
+            } else if (type == float.class) {
+                out.writeFloat((Float) value);
+            } else if (type == short.class) {
+                out.writeSignedVarInt((Short) value);
+            } else if (type == byte.class) {
+                out.writeByte((Byte) value);
+            } else {
+                out.writeVarInt((Character) value);
+            }
+        }
+    }
+
+    /**
+     * 一次解码的上下文
+     */
+    private final class Reader {
+        private final BinaryInput in;
+        private final List<Class<?>> classTable = new ArrayList<Class<?>>();
+
+        Reader(BinaryInput in) {
+            this.in = in;
+        }
+
+        Class<?> readClass() {
+            int index = in.readVarInt();
+            if (index == 0) {
+                Class<?> type = classForName(in.readString());
+                classTable.add(type);
+                return type;
+            }
+            if (index > classTable.size()) {
+                throw new CodecException("invalid class reference: %s", index);
+            }
+            return classTable.get(index - 1);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object read(int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new CodecException("object graph is too deep");
+            }
+            int tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return (byte) in.readByte();
+                case SHORT:
+                    return (short) in.readSignedVarInt();
+                case INT:
+                    return in.readSignedVarInt();
+                case LONG:
+                    return in.readSignedVarLong();
+                case FLOAT:
+                    return in.readFloat();
+                case DOUBLE:
+                    return in.readDouble();
+                case CHAR:
+                    return (char) in.readVarInt();
+                case STRING:
+                    return in.readString();
+                case BYTES:
+                    return in.readBytes(in.readVarInt());
+                case DATE:
+                    return new Date(in.readSignedVarLong());
+                case BIG_DECIMAL:
+                    return new BigDecimal(in.readString());
+                case BIG_INTEGER:
+                    return new BigInteger(in.readString());
+                case ENUM:
+                    return Enum.valueOf((Class<Enum>) readClass(), in.readString());
+                case ARRAY:
+                    return readArray(depth);
+                case COLLECTION: {
+                    Class<?> type = readClass();
+                    int size = in.readLength();
+                    Collection<Object> collection = (Collection<Object>) newContainer(type, size, false);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(read(depth + 1));
+                    }
+                    return collection;
+                }
+                case MAP: {
+                    Class<?> type = readClass();
+                    int size = in.readLength();
+                    Map<Object, Object> map = (Map<Object, Object>) newContainer(type, size, true);
+                    for (int i = 0; i < size; i++) {
+                        Object key = read(depth + 1);
+                        map.put(key, read(depth + 1));
+                    }
+                    return map;
+                }
+                case SORTED_COLLECTION: {
+                    Class<?> type = readClass();
+                    Comparator<Object> comparator = readComparator(depth);
+                    int size = in.readLength();
+                    Collection<Object> collection = (Collection<Object>) newSortedContainer(type, comparator, false);
+                    for (int i = 0; i < size; i++) {
+                        collection.add(read(depth + 1));
+                    }
+                    return collection;
+                }
+                case SORTED_MAP: {
+                    Class<?> type = readClass();
+                    Comparator<Object> comparator = readComparator(depth);
+                    int size = in.readLength();
+                    Map<Object, Object> map = (Map<Object, Object>) newSortedContainer(type, comparator, true);
+                    for (int i = 0; i < size; i++) {
+                        Object key = read(depth + 1);
+                        map.put(key, read(depth + 1));
+                    }
+                    return map;
+                }
+                case OBJECT:
+                    return readObject(depth);
+                case SERIALIZABLE:
+                    return JdkCodec.INSTANCE.decode(in.readBytes(in.readVarInt()), Object.class);
+                default:
+                    throw new CodecException("unknown tag %s at %s", tag, in.position() - 1);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Comparator<Object> readComparator(int depth) {
+            Object comparator = read(depth + 1);
+            if (!(comparator instanceof Comparator)) {
+                throw new CodecException("expected comparator but decoded %s",
+                        comparator == null ? null : comparator.getClass().getName());
+            }
+            return (Comparator<Object>) comparator;
+        }
+
+        private Object readArray(int depth) {
+            Class<?> componentType = readClass();
+            int length = in.readLength();
+            Object array = Array.newInstance(componentType, length);
+            if (componentType.isPrimitive()) {
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readPrimitive(componentType));
+                }
+            } else {
+                Object[] elements = (Object[]) array;
+                for (int i = 0; i < length; i++) {
+                    elements[i] = read(depth + 1);
+                }
+            }
+            return array;
+        }
+
+        private Object readObject(int depth) {
+            int known = classTable.size();
+            Class<?> type = readClass();
+            Schema schema = schemaOf(type);
+            if (schema == NO_SCHEMA) {
+                throw new CodecException("can not decode %s, no default constructor", type.getName());
+            }
+            if (classTable.size() > known) {
+                int fingerprint = in.readSignedVarInt();
+                if (fingerprint != schema.fingerprint) {
+                    throw new CodecException("fields of %s have changed since it was encoded", type.getName());
+                }
+            }
+            try {
+                Object value = schema.constructor.newInstance();
+                for (Field field : schema.fields) {
+                    Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        field.set(value, readPrimitive(fieldType));
+                    } else {
+                        field.set(value, read(depth + 1));
+                    }
+                }
+                return value;
+            } catch (CodecException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CodecException("decode " + type.getName() + " error", e);
+            }
+        }
+
+        private Object readPrimitive(Class<?> type) {
+            if (type == int.class) {
+                return in.readSignedVarInt();
+            } else if (type == long.class) {
+                return in.readSignedVarLong();
+            } else if (type == boolean.class) {
+                return in.readByte() != 0;
+            } else if (type == double.class) {
+                return in.readDouble();
+            } else if (type == float.class) {
+                return in.readFloat();
+            } else if (type == short.class) {
+                return (short) in.readSignedVarInt();
+            } else if (type == byte.class) {
+                return (byte) in.readByte();
+            } else {
+                return (char) in.readVarInt();
+            }
+        }
+    }
+
+    /**
+     * 类的字段布局
+     */
+    private static final class Schema {
+        final Constructor<?> constructor;
+        final Field[] fields;
+        final int fingerprint;
+
+        Schema(Constructor<?> constructor, Field[] fields, int fingerprint) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.gogtz.common.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节输入，与{@link BinaryOutput}的写入方法一一对应
+ *
+ * @author t
+ */
+public final class BinaryInput {
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+
+    public BinaryInput(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public BinaryInput(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    public int position() {
+        return pos;
+    }
+
+    public int readByte() {
+        require(1);
+        return buf[pos++];
+    }
+
+    public byte[] readBytes(int length) {
+        require(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buf, pos, bytes, 0, length);
+        pos += length;
+        return bytes;
+    }
+
+    public int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new CodecException("malformed varint at %s", pos);
+    }
+
+    public long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new CodecException("malformed varlong at %s", pos);
+    }
+
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buf[pos++] & 0xFF);
+        }
+        return value;
+    }
+
+    public float readFloat() {
+        require(4);
+        int bits = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+                | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+        pos += 4;
+        return Float.intBitsToFloat(bits);
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        require(length);
+        // ASCII快速路径
+        boolean ascii = true;
+        for (int i = pos; i < pos + length; i++) {
+            if (buf[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        String value;
+        if (ascii) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) buf[pos + i];
+            }
+            value = new String(chars);
+        } else {
+            value = new String(buf, pos, length, StandardCharsets.UTF_8);
+        }
+        pos += length;
+        return value;
+    }
+
+    /**
+     * 读取元素个数；每个元素至少占一个字节，超过剩余字节数的个数说明数据已损坏
+     *
+     * @return 元素个数
+     */
+    public int readLength() {
+        int length = readVarInt();
+        if (length < 0 || length > limit - pos) {
+            throw new CodecException("invalid length %s at %s", length, pos);
+        }
+        return length;
+    }
+
+    private void require(int length) {
+        if (length < 0 || length > limit - pos) {
+            throw new CodecException("unexpected end of data at %s", pos);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.gogtz.common.cache.codec;
+
+import java.util.Arrays;
+
+/**
+ * 可扩容的字节输出缓冲<br>
+ * 通过{@link #acquire()}取得当前线程复用的缓冲，用完调用{@link #release()}归还；
+ * 超过{@link #MAX_POOLED_CAPACITY}的缓冲不会被保留，避免长期占用内存
+ *
+ * @author t
+ */
+public final class BinaryOutput {
+
+    /**
+     * 线程复用缓冲的最大容量
+     */
+    static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<BinaryOutput> POOL = new ThreadLocal<BinaryOutput>();
+
+    private byte[] buf;
+    private int pos;
+    private boolean pooled;
+
+    public BinaryOutput(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * 取得当前线程复用的缓冲，缓冲正在使用中（嵌套编码）时返回新的缓冲
+     *
+     * @return 缓冲
+     */
+    public static BinaryOutput acquire() {
+        BinaryOutput out = POOL.get();
+        if (out == null) {
+            out = new BinaryOutput(1024);
+        } else {
+            POOL.remove();
+        }
+        out.pos = 0;
+        out.pooled = true;
+        return out;
+    }
+
+    /**
+     * 归还到当前线程
+     */
+    public void release() {
+        if (pooled && buf.length <= MAX_POOLED_CAPACITY) {
+            pooled = false;
+            POOL.set(this);
+        }
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    /**
+     * 内部数组，有效数据为[0, size())
+     */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    public void reset() {
+        pos = 0;
+    }
+
+    /**
+     * 直接写入{@link #buffer()}后调整位置
+     *
+     * @param length 写入的字节数
+     */
+    public void advance(int length) {
+        if (length < 0 || pos + length > buf.length) {
+            throw new IndexOutOfBoundsException("pos=" + pos + ", length=" + length);
+        }
+        pos += length;
+    }
+
+    public void ensureCapacity(int extra) {
+        int required = pos + extra;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, required));
+        }
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(1);
+        buf[pos++] = (byte) b;
+    }
+
+    public void writeBytes(byte[] bytes, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(bytes, off, buf, pos, len);
+        pos += len;
+    }
+
+    /**
+     * 写入无符号变长整数
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    /**
+     * 写入无符号变长长整数
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    /**
+     * 写入有符号整数（ZigZag编码）
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * 写入有符号长整数（ZigZag编码）
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[pos++] = (byte) (value >>> shift);
+        }
+    }
+
+    public void writeFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        ensureCapacity(4);
+        buf[pos++] = (byte) (bits >>> 24);
+        buf[pos++] = (byte) (bits >>> 16);
+        buf[pos++] = (byte) (bits >>> 8);
+        buf[pos++] = (byte) bits;
+    }
+
+    public void writeDouble(double value) {
+        writeLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * 写入UTF-8字符串，长度为字节数，ASCII字符走快速路径
+     */
+    public void writeString(String value) {
+        int length = value.length();
+        int utfLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utfLength++;
+            } else if (c < 0x800) {
+                utfLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utfLength += 4;
+                i++;
+            } else {
+                utfLength += 3;
+            }
+        }
+        writeVarInt(utfLength);
+        ensureCapacity(utfLength);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.gogtz.common.cache.codec;
+
+/**
+ * 编解码异常
+ *
+ * @author t
+ */
+public class CodecException extends RuntimeException {
+    private static final long serialVersionUID = -4238190582713650421L;
+
+    public CodecException(String message) {
+        super(message);
+    }
+
+    public CodecException(String message, Throwable throwable) {
+        super(message, throwable);
+    }
+
+    public CodecException(String messageTemplate, Object... params) {
+        super(String.format(messageTemplate, params));
+    }
+}
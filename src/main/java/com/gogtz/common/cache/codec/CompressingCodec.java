@@ -0,0 +1,72 @@
+package com.gogtz.common.cache.codec;
+
+/**
+ * 压缩包装<br>
+ * 被包装的编码结果达到阈值时用{@link Compression}压缩，第一个字节标记是否压缩，
+ * 压缩后没有变小时保留原始数据
+ *
+ * @author t
+ */
+public class CompressingCodec implements RedisCodec {
+
+    private static final int RAW = 0;
+    private static final int DEFLATE = 1;
+
+    private final RedisCodec delegate;
+    private final int threshold;
+
+    /**
+     * 构建压缩包装
+     *
+     * @param delegate  被包装的编解码
+     * @param threshold 压缩阈值（字节），编码结果小于该值时不压缩
+     */
+    public CompressingCodec(RedisCodec delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] raw = delegate.encode(value);
+        if (raw == null) {
+            return null;
+        }
+        BinaryOutput out = BinaryOutput.acquire();
+        try {
+            if (raw.length >= threshold) {
+                out.writeByte(DEFLATE);
+                Compression.deflate(raw, 0, raw.length, out);
+                if (out.size() < raw.length + 1) {
+                    return out.toByteArray();
+                }
+                out.reset();
+            }
+            out.writeByte(RAW);
+            out.writeBytes(raw, 0, raw.length);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0) {
+            throw new CodecException("empty data");
+        }
+        byte[] raw;
+        if (bytes[0] == DEFLATE) {
+            raw = Compression.inflate(bytes, 1, bytes.length - 1);
+        } else if (bytes[0] == RAW) {
+            raw = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, raw, 0, raw.length);
+        } else {
+            throw new CodecException("unknown compression flag: %s", bytes[0]);
+        }
+        return delegate.decode(raw, type);
+    }
+}
@@ -0,0 +1,122 @@
+package com.gogtz.common.cache.codec;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate压缩工具<br>
+ * 使用最快的压缩级别，每个线程复用一组{@link Deflater}/{@link Inflater}。
+ * 压缩结果以原始长度（变长整数）开头，解压时可以一次分配目标数组
+ *
+ * @author t
+ */
+public final class Compression {
+
+    /**
+     * Deflate的最大压缩比约为1032:1，原始长度超过压缩数据长度的这个倍数时数据一定已损坏
+     */
+    private static final int MAX_RATIO = 1032;
+
+    /**
+     * 数组的最大长度
+     */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private Compression() {
+    }
+
+    /**
+     * 压缩并写入out
+     *
+     * @param src 原始数据
+     * @param off 偏移
+     * @param len 长度
+     * @param out 输出
+     */
+    public static void deflate(byte[] src, int off, int len, BinaryOutput out) {
+        out.writeVarInt(len);
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(src, off, len);
+        deflater.finish();
+        while (!deflater.finished()) {
+            out.ensureCapacity(Math.max(64, len >> 2));
+            byte[] buffer = out.buffer();
+            int written = deflater.deflate(buffer, out.size(), buffer.length - out.size());
+            out.advance(written);
+        }
+    }
+
+    /**
+     * 压缩
+     *
+     * @param src 原始数据
+     * @param off 偏移
+     * @param len 长度
+     * @return 压缩结果
+     */
+    public static byte[] deflate(byte[] src, int off, int len) {
+        BinaryOutput out = BinaryOutput.acquire();
+        try {
+            deflate(src, off, len, out);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * 解压{@link #deflate(byte[], int, int)}的结果
+     *
+     * @param src 压缩数据
+     * @param off 偏移
+     * @param len 长度
+     * @return 原始数据
+     * @throws CodecException 数据已损坏
+     */
+    public static byte[] inflate(byte[] src, int off, int len) {
+        BinaryInput in = new BinaryInput(src, off, len);
+        int originalLength = in.readVarInt();
+        int headerLength = in.position() - off;
+        // 长度来自数据本身，分配数组之前先检查，避免损坏的数据导致负数长度或超大分配
+        long limit = Math.min(MAX_ARRAY_LENGTH, (long) (len - headerLength) * MAX_RATIO);
+        if (originalLength < 0 || originalLength > limit) {
+            throw new CodecException("corrupt compressed data, invalid length %s", originalLength);
+        }
+        byte[] result = new byte[originalLength];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(src, off + headerLength, len - headerLength);
+        try {
+            int n = 0;
+            while (n < originalLength) {
+                int read = inflater.inflate(result, n, originalLength - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != originalLength) {
+                throw new CodecException("corrupt compressed data, expected %s bytes but got %s", originalLength, n);
+            }
+        } catch (DataFormatException e) {
+            throw new CodecException("corrupt compressed data", e);
+        }
+        return result;
+    }
+}
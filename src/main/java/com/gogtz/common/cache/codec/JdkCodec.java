@@ -0,0 +1,56 @@
+package com.gogtz.common.cache.codec;
+
+import com.gogtz.common.file.FastByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * JDK序列化编解码<br>
+ * 与{@link com.gogtz.common.util.SerializeUtil}格式相同，但直接读写字节数组而不经过Base64
+ *
+ * @author t
+ */
+public class JdkCodec implements RedisCodec {
+
+    public static final JdkCodec INSTANCE = new JdkCodec();
+
+    @Override
+    public byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        FastByteArrayOutputStream bos = new FastByteArrayOutputStream();
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+        } catch (IOException e) {
+            throw new CodecException("serialize error", e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return type.cast(ois.readObject());
+            } finally {
+                ois.close();
+            }
+        } catch (IOException e) {
+            throw new CodecException("deserialize error", e);
+        } catch (ClassNotFoundException e) {
+            throw new CodecException("deserialize error", e);
+        } catch (ClassCastException e) {
+            throw new CodecException("deserialize error", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.gogtz.common.cache.codec;
+
+/**
+ * Redis值的编解码接口<br>
+ * 实现类必须线程安全，编解码失败时抛出{@link CodecException}
+ *
+ * @author t
+ * @see BinaryCodec
+ * @see JdkCodec
+ * @see CompressingCodec
+ */
+public interface RedisCodec {
+
+    /**
+     * 编码
+     *
+     * @param value 值，可以为null
+     * @return 字节数组
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes 字节数组，为null时返回null
+     * @param type  期望的类型
+     * @param <T>   类型
+     * @return 值
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+}
@@ -0,0 +1,427 @@
+package com.gogtz.common.cache.counter;
+
+import com.gogtz.common.cache.RedisShards;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.lang.Assert;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>合并写入的Redis计数器</h1>
+ * 增量先累加在本地的{@link LongAdder}中，定期或累计次数达到阈值时通过管道以INCRBY写入Redis，
+ * 适合页面访问量等高频计数，代替每次一个往返的{@link RedisUtils#incr(String)}。
+ * <ol><strong>
+ * <li>写入间隔（毫秒）：redis.counter.flushInterval，默认1000</li>
+ * <li>写入阈值：redis.counter.flushThreshold，默认10000，本地累计的增加次数约达到该值时提前写入</li>
+ * <li>每个key可以单独设置{@link CounterMode}，默认{@link CounterMode#EXACT}</li>
+ * </strong>
+ * </ol>
+ * 连续{@link #IDLE_FLUSHES}次写入都没有增量的key从本地移除，移除后的一个写入间隔内仍会收集迟到的增量。
+ * JVM退出时通过shutdown hook写入剩余的增量，进程被强制终止时最多丢失一个写入间隔的增量。
+ * 写入超时但Redis实际已执行时，精确模式会重复写入该次增量。
+ * <pre>
+ * CounterAggregator.getDefault().incr("pv:" + pageId);
+ * </pre>
+ *
+ * @author t
+ */
+public class CounterAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(CounterAggregator.class);
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+    private static final long DEFAULT_FLUSH_THRESHOLD = 10000L;
+
+    /**
+     * 每次增加以1/CHECK_RATE的概率检查阈值，避免每次都汇总计数
+     */
+    private static final int CHECK_RATE = 64;
+
+    /**
+     * 连续多少次写入没有增量时移除本地状态
+     */
+    static final int IDLE_FLUSHES = 60;
+
+    private static volatile CounterAggregator defaultInstance;
+
+    private final long flushThreshold;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentHashMap<String, CounterMode> modes = new ConcurrentHashMap<String, CounterMode>();
+    /**
+     * 上一次写入时移除的本地状态，只在持有flushLock时访问
+     */
+    private final Map<String, Counter> retired = new HashMap<String, Counter>();
+    private final LongAdder unflushed = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                logger.error("flush redis counters error", e);
+            }
+        }
+    };
+    private volatile CounterMode defaultMode = CounterMode.EXACT;
+    private volatile boolean stopped;
+
+    /**
+     * 使用redis.counter.*配置构建
+     */
+    public CounterAggregator() {
+        this(getLong("redis.counter.flushInterval", DEFAULT_FLUSH_INTERVAL),
+                getLong("redis.counter.flushThreshold", DEFAULT_FLUSH_THRESHOLD));
+    }
+
+    /**
+     * 构建计数器，立即开始定期写入
+     *
+     * @param flushInterval  写入间隔（毫秒）
+     * @param flushThreshold 本地累计的增加次数达到该值时提前写入
+     */
+    public CounterAggregator(long flushInterval, long flushThreshold) {
+        Assert.isTrue(flushInterval > 0, "flushInterval must be positive, got %s", flushInterval);
+        Assert.isTrue(flushThreshold > 0, "flushThreshold must be positive, got %s", flushThreshold);
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "redis-counter-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(flushTask, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "redis-counter-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * 共享的实例，第一次调用时按配置创建
+     *
+     * @return 实例
+     */
+    public static CounterAggregator getDefault() {
+        CounterAggregator instance = defaultInstance;
+        if (instance == null) {
+            synchronized (CounterAggregator.class) {
+                instance = defaultInstance;
+                if (instance == null) {
+                    instance = new CounterAggregator();
+                    defaultInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 设置未单独设置模式的key使用的模式
+     *
+     * @param mode 模式
+     */
+    public void setDefaultMode(CounterMode mode) {
+        Assert.notNull(mode, "mode must not be null");
+        this.defaultMode = mode;
+    }
+
+    /**
+     * 设置key的模式
+     *
+     * @param key  key
+     * @param mode 模式
+     */
+    public void setMode(String key, CounterMode mode) {
+        Assert.notNull(mode, "mode must not be null");
+        modes.put(key, mode);
+    }
+
+    /**
+     * 加1
+     *
+     * @param key key
+     */
+    public void incr(String key) {
+        incrBy(key, 1L);
+    }
+
+    /**
+     * 累加增量，稍后写入Redis<br>
+     * 关闭后直接写入Redis
+     *
+     * @param key   key
+     * @param delta 增量
+     */
+    public void incrBy(String key, long delta) {
+        if (stopped) {
+            RedisUtils.incrBy(key, delta);
+            return;
+        }
+        counter(key).pending.add(delta);
+        unflushed.increment();
+        if (ThreadLocalRandom.current().nextInt(CHECK_RATE) == 0 && unflushed.sum() >= flushThreshold
+                && !flushLock.isLocked()) {
+            try {
+                flusher.execute(flushTask);
+            } catch (RejectedExecutionException e) {
+                // 已关闭，由shutdown写入
+            }
+        }
+    }
+
+    /**
+     * 读取计数，包含本地尚未写入的增量<br>
+     * 精确模式每次读取Redis，近似模式只在第一次读取时访问Redis
+     *
+     * @param key key
+     * @return 计数，精确模式下Redis不可用时返回null
+     */
+    public Long get(String key) {
+        Counter counter = counter(key);
+        if (mode(key) == CounterMode.APPROXIMATE && counter.flushed != null) {
+            return counter.flushed + counter.unflushed();
+        }
+        String value = RedisUtils.get(key);
+        if (value == null && !Boolean.FALSE.equals(RedisUtils.exists(key))) {
+            return null;
+        }
+        long remote = value == null ? 0L : Long.parseLong(value);
+        counter.flushed = remote;
+        return remote + counter.unflushed();
+    }
+
+    /**
+     * 立即写入所有累计的增量，按节点分组，每个节点一次往返<br>
+     * 写入失败时精确模式的增量保留到下一次写入，近似模式的增量丢弃
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            unflushed.reset();
+            // 移除时其他线程可能仍持有旧的本地状态，之后写入的增量转到新的本地状态
+            for (Map.Entry<String, Counter> entry : retired.entrySet()) {
+                Counter counter = entry.getValue();
+                long delta = counter.unflushed();
+                if (delta != 0) {
+                    counter.taken += delta;
+                    counter(entry.getKey()).pending.add(delta);
+                }
+            }
+            retired.clear();
+            final List<String> keys = new ArrayList<String>();
+            final List<Long> deltas = new ArrayList<Long>();
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                Counter counter = entry.getValue();
+                long delta = counter.unflushed();
+                if (delta != 0) {
+                    counter.taken += delta;
+                    counter.idleFlushes = 0;
+                    keys.add(entry.getKey());
+                    deltas.add(delta);
+                } else if (++counter.idleFlushes >= IDLE_FLUSHES && counters.remove(entry.getKey(), counter)) {
+                    retired.put(entry.getKey(), counter);
+                }
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+            String[] keyArray = keys.toArray(new String[keys.size()]);
+            // 逐个节点写入，一个节点失败不影响其他节点已写入的增量
+            for (List<Integer> indexes : RedisShards.group(keyArray).values()) {
+                String[] groupKeys = new String[indexes.size()];
+                final long[] groupDeltas = new long[indexes.size()];
+                for (int i = 0; i < groupKeys.length; i++) {
+                    groupKeys[i] = keyArray[indexes.get(i)];
+                    groupDeltas[i] = deltas.get(indexes.get(i));
+                }
+                flush(groupKeys, groupDeltas);
+            }
+            flushCount.increment();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 停止定期写入并写入剩余的增量，之后的增加直接写入Redis
+     */
+    public void shutdown() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        flusher.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // 正在由shutdown hook调用
+        }
+        flush();
+    }
+
+    /**
+     * 本地尚未写入的增量之和
+     *
+     * @return 增量
+     */
+    public long getPending() {
+        long pending = 0L;
+        for (Counter counter : counters.values()) {
+            pending += counter.unflushed();
+        }
+        return pending;
+    }
+
+    /**
+     * 本地保留状态的key数量
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * 写入的次数
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * 写入失败的节点批次数
+     */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 近似模式下因写入失败丢弃的增量之和
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private void flush(String[] keys, final long[] deltas) {
+        final Map<String, Integer> positions = new HashMap<String, Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            positions.put(keys[i], i);
+        }
+        List<Object> replies = RedisUtils.pipelined(keys, new BiConsumer<Pipeline, String>() {
+            @Override
+            public void accept(Pipeline pipeline, String key) {
+                pipeline.incrBy(key, deltas[positions.get(key)]);
+            }
+        });
+        if (replies == null) {
+            failedCount.increment();
+            for (int i = 0; i < keys.length; i++) {
+                restore(keys[i], deltas[i]);
+            }
+            logger.warn("flush " + keys.length + " redis counters failed");
+            return;
+        }
+        int failed = 0;
+        for (int i = 0; i < keys.length; i++) {
+            Object reply = replies.get(i);
+            if (reply instanceof Long) {
+                counter(keys[i]).flushed = (Long) reply;
+            } else {
+                // 单条命令出错（如key不是整数）时管道结果中是异常，与整批失败一样处理该key的增量
+                restore(keys[i], deltas[i]);
+                if (failed++ == 0) {
+                    logger.warn("flush redis counter " + keys[i] + " failed: "
+                            + (reply instanceof Throwable ? ((Throwable) reply).getMessage() : reply));
+                }
+            }
+        }
+        if (failed > 0) {
+            failedCount.increment();
+        }
+    }
+
+    /**
+     * 写入失败时，精确模式的增量放回，近似模式的增量丢弃
+     */
+    private void restore(String key, long delta) {
+        if (mode(key) == CounterMode.EXACT) {
+            counter(key).taken -= delta;
+        } else {
+            droppedCount.add(delta);
+        }
+    }
+
+    private Counter counter(String key) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private CounterMode mode(String key) {
+        CounterMode mode = modes.get(key);
+        return mode == null ? defaultMode : mode;
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertyUtil.getRedisValue(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * 单个key的本地状态
+     */
+    private static class Counter {
+        /**
+         * 累计的全部增量，只增加不清零，并发增加时清零会丢失增量
+         */
+        private final LongAdder pending = new LongAdder();
+        /**
+         * 已取出写入的增量，只在持有flushLock时修改
+         */
+        private volatile long taken;
+        /**
+         * 上一次写入或读取得到的Redis中的值，未知时为null
+         */
+        private volatile Long flushed;
+        /**
+         * 连续没有增量的写入次数，只在持有flushLock时修改
+         */
+        private int idleFlushes;
+
+        long unflushed() {
+            return pending.sum() - taken;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.gogtz.common.cache.counter;
+
+/**
+ * 计数器的一致性模式
+ *
+ * @author t
+ */
+public enum CounterMode {
+    /**
+     * 写入失败的增量保留到下一次写入，读取时以Redis中的值加上本地未写入的增量为准
+     */
+    EXACT,
+
+    /**
+     * 写入失败的增量直接丢弃，读取时使用上一次写入返回的值加上本地未写入的增量，不访问Redis
+     */
+    APPROXIMATE
+}
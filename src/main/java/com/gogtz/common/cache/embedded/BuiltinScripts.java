@@ -0,0 +1,267 @@
+package com.gogtz.common.cache.embedded;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本库内置Lua脚本的Java实现，按{@link com.gogtz.common.cache.ScriptRegistry}中的脚本名对应<br>
+ * 每个实现逐句对应脚本中的redis.call，修改脚本时需要同步修改这里，
+ * 并用mvn test -Dredis.it.address=127.0.0.1:6379对真实的Redis运行同样的测试
+ *
+ * @author t
+ */
+final class BuiltinScripts {
+
+    private BuiltinScripts() {
+    }
+
+    /**
+     * 所有内置实现
+     *
+     * @return 脚本名到实现的映射
+     */
+    static Map<String, ScriptHandler> create() {
+        Map<String, ScriptHandler> handlers = new HashMap<String, ScriptHandler>();
+        handlers.put("COMPARE_AND_SET", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                Object current = redis.call("get", keys.get(0));
+                if (!args.get(0).equals(current == null ? "" : current)) {
+                    return 0L;
+                }
+                if (Long.parseLong(args.get(2)) > 0) {
+                    redis.call("setex", keys.get(0), args.get(2), args.get(1));
+                } else {
+                    redis.call("set", keys.get(0), args.get(1));
+                }
+                return 1L;
+            }
+        });
+        handlers.put("COMPARE_AND_DELETE", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                if (args.get(0).equals(redis.call("get", keys.get(0)))) {
+                    return redis.call("del", keys.get(0));
+                }
+                return 0L;
+            }
+        });
+        handlers.put("CONDITIONAL_LREM", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                if (!args.get(0).equals(redis.call("get", keys.get(1)))) {
+                    return -1L;
+                }
+                return redis.call("lrem", keys.get(0), args.get(1), args.get(2));
+            }
+        });
+        handlers.put("LOCK_ACQUIRE", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                return redis.call("set", keys.get(0), args.get(0), "NX", "PX", args.get(1));
+            }
+        });
+        handlers.put("LOCK_RENEW", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                if (args.get(0).equals(redis.call("get", keys.get(0)))) {
+                    return redis.call("pexpire", keys.get(0), args.get(1));
+                }
+                return 0L;
+            }
+        });
+        handlers.put("QUEUE_POLL", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                List<Object> result = new ArrayList<Object>();
+                for (int i = 0; i < Integer.parseInt(args.get(0)); i++) {
+                    Object message = redis.call("rpoplpush", keys.get(0), keys.get(1));
+                    if (message == null) {
+                        break;
+                    }
+                    redis.call("zadd", keys.get(2), args.get(1), (String) message);
+                    result.add(message);
+                }
+                return result;
+            }
+        });
+        handlers.put("QUEUE_ACK", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                for (String message : args) {
+                    redis.call("lrem", keys.get(0), "1", message);
+                    redis.call("zrem", keys.get(1), message);
+                    redis.call("hdel", keys.get(2), message);
+                }
+                return (long) args.size();
+            }
+        });
+        handlers.put("QUEUE_TOUCH", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                int acked = Integer.parseInt(args.get(1));
+                for (String message : args.subList(2, acked + 2)) {
+                    redis.call("lrem", keys.get(0), "1", message);
+                    redis.call("zrem", keys.get(1), message);
+                    redis.call("hdel", keys.get(2), message);
+                }
+                long result = 0L;
+                for (int i = acked + 2; i < args.size(); i++) {
+                    if (redis.call("zscore", keys.get(1), args.get(i)) != null) {
+                        redis.call("zadd", keys.get(1), args.get(0), args.get(i));
+                        if (i == acked + 2) {
+                            result = 1L;
+                        }
+                    }
+                }
+                return result;
+            }
+        });
+        handlers.put("QUEUE_REQUEUE", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                if (Long.valueOf(0L).equals(redis.call("lrem", keys.get(1), "1", args.get(0)))) {
+                    redis.call("zrem", keys.get(2), args.get(0));
+                    return 0L;
+                }
+                redis.call("zrem", keys.get(2), args.get(0));
+                if ((Long) redis.call("hincrby", keys.get(3), args.get(0), "1") >= Long.parseLong(args.get(1))) {
+                    redis.call("hdel", keys.get(3), args.get(0));
+                    redis.call("lpush", keys.get(4), args.get(0));
+                    return 2L;
+                }
+                redis.call("rpush", keys.get(0), args.get(0));
+                return 1L;
+            }
+        });
+        handlers.put("RATE_LIMIT_TOKEN_BUCKET", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                double capacity = Double.parseDouble(args.get(0));
+                double rate = Double.parseDouble(args.get(1));
+                double now = Double.parseDouble(args.get(2));
+                double requested = Double.parseDouble(args.get(3));
+                List<?> state = (List<?>) redis.call("hmget", keys.get(0), "tokens", "ts");
+                double tokens = state.get(0) == null ? capacity : Double.parseDouble((String) state.get(0));
+                double ts = state.get(1) == null ? now : Double.parseDouble((String) state.get(1));
+                if (now > ts) {
+                    tokens = Math.min(capacity, tokens + (now - ts) * rate);
+                    ts = now;
+                }
+                long allowed = 0L;
+                if (tokens >= requested) {
+                    tokens = tokens - requested;
+                    allowed = 1L;
+                }
+                redis.call("hmset", keys.get(0), "tokens", number(tokens), "ts", number(ts));
+                redis.call("pexpire", keys.get(0), number(Math.ceil((capacity - tokens) / rate) + 1000));
+                long wait = 0L;
+                if (tokens < 1) {
+                    wait = (long) Math.ceil((1 - tokens) / rate);
+                }
+                return allowed + ":" + wait;
+            }
+        });
+        handlers.put("RATE_LIMIT_SLIDING_WINDOW", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                long limit = Long.parseLong(args.get(0));
+                long window = Long.parseLong(args.get(1));
+                long now = Long.parseLong(args.get(2));
+                long requested = Long.parseLong(args.get(3));
+                redis.call("zremrangebyscore", keys.get(0), "-inf", String.valueOf(now - window));
+                long count = (Long) redis.call("zcard", keys.get(0));
+                if (count + requested > limit) {
+                    long wait = 0L;
+                    if (count >= limit) {
+                        List<?> oldest = (List<?>) redis.call("zrange", keys.get(0), "0", "0", "WITHSCORES");
+                        wait = (long) Double.parseDouble((String) oldest.get(1)) + window - now;
+                    }
+                    return "0:" + wait;
+                }
+                for (int i = 1; i <= requested; i++) {
+                    redis.call("zadd", keys.get(0), String.valueOf(now), args.get(4) + ":" + i);
+                }
+                redis.call("pexpire", keys.get(0), String.valueOf(window));
+                return "1:0";
+            }
+        });
+        handlers.put("BLOOM", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                boolean add = "1".equals(args.get(0));
+                int size = Integer.parseInt(args.get(1));
+                long[][] layers = new long[size][4];
+                for (int i = 0; i < size; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        layers[i][j] = Long.parseLong(args.get(2 + i * 4 + j));
+                    }
+                }
+                Object stored = redis.call("get", keys.get(1));
+                long count = stored == null ? 0L : Long.parseLong((String) stored);
+                long added = 0L;
+                StringBuilder result = new StringBuilder();
+                for (int v = 2 + size * 4; v < args.size(); v += 2) {
+                    long h1 = Long.parseLong(args.get(v));
+                    long h2 = Long.parseLong(args.get(v + 1));
+                    int active = 0;
+                    while (active < size - 1 && layers[active][3] <= count) {
+                        active++;
+                    }
+                    boolean found = false;
+                    for (int i = 0; i <= active; i++) {
+                        long[] layer = layers[i];
+                        found = true;
+                        for (long j = 0; j < layer[2]; j++) {
+                            String bit = String.valueOf(layer[0] + (h1 + j * h2) % layer[1]);
+                            if (Long.valueOf(0L).equals(redis.call("getbit", keys.get(0), bit))) {
+                                found = false;
+                                break;
+                            }
+                        }
+                        if (found) {
+                            break;
+                        }
+                    }
+                    if (add && !found) {
+                        long[] layer = layers[active];
+                        for (long j = 0; j < layer[2]; j++) {
+                            redis.call("setbit", keys.get(0), String.valueOf(layer[0] + (h1 + j * h2) % layer[1]), "1");
+                        }
+                        count++;
+                        added++;
+                    }
+                    result.append(found ? '1' : '0');
+                }
+                if (added > 0) {
+                    redis.call("incrby", keys.get(1), String.valueOf(added));
+                }
+                return result.toString();
+            }
+        });
+        handlers.put("SCAN", new ScriptHandler() {
+            @Override
+            public Object execute(ScriptContext redis, List<String> keys, List<String> args) {
+                List<?> reply = (List<?>) redis.call("scan", args.get(0), "MATCH", args.get(1), "COUNT", args.get(2));
+                List<Object> result = new ArrayList<Object>();
+                result.add(reply.get(0));
+                result.addAll((List<?>) reply.get(1));
+                return result;
+            }
+        });
+        return Collections.unmodifiableMap(handlers);
+    }
+
+    /**
+     * 与Lua的tostring一样，整数不带小数部分
+     */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,18 @@
+package com.gogtz.common.cache.embedded;
+
+/**
+ * 命令执行错误，作为RESP错误回复返回给客户端
+ *
+ * @author t
+ */
+class CommandError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message 错误信息，以错误类型开头，如ERR、WRONGTYPE
+     */
+    CommandError(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,1219 @@
+package com.gogtz.common.cache.embedded;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.ScriptRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 内存中的数据和命令实现<br>
+ * 所有命令在一把锁内串行执行，与Redis的单线程模型一致；脚本在同一把锁内执行，因此是原子的。
+ * 过期的key在访问时删除。
+ *
+ * @author t
+ */
+final class Database {
+
+    private static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+    private static final String NOT_INTEGER = "ERR value is not an integer or out of range";
+
+    /**
+     * SCAN的遍历顺序：按key的哈希值排序
+     */
+    private static final Comparator<String> SCAN_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int result = Long.compare(scanHash(a), scanHash(b));
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pushed = lock.newCondition();
+    private final HashMap<String, Object> data = new HashMap<String, Object>();
+    private final HashMap<String, Long> expires = new HashMap<String, Long>();
+    private final HashMap<String, String> scripts = new HashMap<String, String>();
+
+    /**
+     * 按SHA1注册的脚本实现
+     */
+    private final ConcurrentHashMap<String, ScriptHandler> handlers = new ConcurrentHashMap<String, ScriptHandler>();
+
+    /**
+     * 按{@link ScriptRegistry}中的脚本名注册的内置实现
+     */
+    private final Map<String, ScriptHandler> builtins;
+
+    private final ScriptContext context = new ScriptContext() {
+        @Override
+        public Object call(String... command) {
+            return execute(Arrays.asList(command));
+        }
+    };
+
+    private boolean closed;
+
+    /**
+     * @param builtins 按脚本名注册的内置实现
+     */
+    Database(Map<String, ScriptHandler> builtins) {
+        this.builtins = builtins;
+    }
+
+    /**
+     * 注册脚本实现
+     *
+     * @param sha1    脚本的SHA1
+     * @param handler 实现
+     */
+    void registerScript(String sha1, ScriptHandler handler) {
+        handlers.put(sha1, handler);
+    }
+
+    /**
+     * 清空所有数据
+     */
+    void flushAll() {
+        lock.lock();
+        try {
+            data.clear();
+            expires.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭，唤醒所有阻塞的命令
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 执行命令
+     *
+     * @param command 命令及参数
+     * @return 回复，类型见{@link RespProtocol#writeReply}
+     * @throws CommandError 命令出错
+     */
+    Object execute(List<String> command) {
+        if (command.isEmpty()) {
+            throw new CommandError("ERR empty command");
+        }
+        lock.lock();
+        try {
+            return dispatch(command.get(0).toUpperCase(Locale.ROOT), command);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object dispatch(String name, List<String> c) {
+        switch (name) {
+            // 连接和服务器
+            case "PING":
+                return c.size() > 1 ? c.get(1) : RespProtocol.Status.PONG;
+            case "ECHO":
+                arity(c, 2);
+                return c.get(1);
+            case "SELECT":
+            case "AUTH":
+                arity(c, 2);
+                return RespProtocol.Status.OK;
+            case "FLUSHDB":
+            case "FLUSHALL":
+                data.clear();
+                expires.clear();
+                return RespProtocol.Status.OK;
+            case "DBSIZE":
+                return (long) liveKeys().size();
+            case "TIME": {
+                long micros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+                return Arrays.<Object>asList(String.valueOf(micros / 1000000L), String.valueOf(micros % 1000000L));
+            }
+            case "INFO":
+                return "# Server\r\nredis_version:2.8.0\r\nredis_mode:embedded\r\n";
+
+            // key
+            case "DEL": {
+                arity(c, 2);
+                long removed = 0L;
+                for (String key : c.subList(1, c.size())) {
+                    if (lookup(key) != null) {
+                        remove(key);
+                        removed++;
+                    }
+                }
+                return removed;
+            }
+            case "EXISTS": {
+                arity(c, 2);
+                long found = 0L;
+                for (String key : c.subList(1, c.size())) {
+                    if (lookup(key) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+            case "TYPE":
+                arity(c, 2);
+                return new RespProtocol.Status(type(lookup(c.get(1))));
+            case "EXPIRE":
+                arity(c, 3);
+                return expireAt(c.get(1), now() + parseLong(c.get(2)) * 1000L);
+            case "PEXPIRE":
+                arity(c, 3);
+                return expireAt(c.get(1), now() + parseLong(c.get(2)));
+            case "EXPIREAT":
+                arity(c, 3);
+                return expireAt(c.get(1), parseLong(c.get(2)) * 1000L);
+            case "PEXPIREAT":
+                arity(c, 3);
+                return expireAt(c.get(1), parseLong(c.get(2)));
+            case "TTL":
+            case "PTTL": {
+                arity(c, 2);
+                if (lookup(c.get(1)) == null) {
+                    return -2L;
+                }
+                Long at = expires.get(c.get(1));
+                if (at == null) {
+                    return -1L;
+                }
+                long millis = at - now();
+                return "PTTL".equals(name) ? millis : (millis + 500L) / 1000L;
+            }
+            case "PERSIST":
+                arity(c, 2);
+                return lookup(c.get(1)) != null && expires.remove(c.get(1)) != null ? 1L : 0L;
+            case "KEYS": {
+                arity(c, 2);
+                List<Object> keys = new ArrayList<Object>();
+                for (String key : liveKeys()) {
+                    if (matches(c.get(1), key)) {
+                        keys.add(key);
+                    }
+                }
+                return keys;
+            }
+            case "SCAN":
+                arity(c, 2);
+                return scan(c);
+
+            // 字符串
+            case "GET":
+                arity(c, 2);
+                return get(c.get(1), String.class);
+            case "SET":
+                arity(c, 3);
+                return set(c);
+            case "SETEX":
+                arity(c, 4);
+                return setWithExpire(c.get(1), c.get(3), parseLong(c.get(2)) * 1000L);
+            case "PSETEX":
+                arity(c, 4);
+                return setWithExpire(c.get(1), c.get(3), parseLong(c.get(2)));
+            case "SETNX":
+                arity(c, 3);
+                if (lookup(c.get(1)) != null) {
+                    return 0L;
+                }
+                putString(c.get(1), c.get(2));
+                return 1L;
+            case "GETSET": {
+                arity(c, 3);
+                String old = get(c.get(1), String.class);
+                putString(c.get(1), c.get(2));
+                return old;
+            }
+            case "MGET": {
+                arity(c, 2);
+                List<Object> values = new ArrayList<Object>(c.size() - 1);
+                for (String key : c.subList(1, c.size())) {
+                    Object value = lookup(key);
+                    values.add(value instanceof String ? value : null);
+                }
+                return values;
+            }
+            case "MSET":
+                pairs(c, 1);
+                for (int i = 1; i < c.size(); i += 2) {
+                    putString(c.get(i), c.get(i + 1));
+                }
+                return RespProtocol.Status.OK;
+            case "INCR":
+                arity(c, 2);
+                return incrBy(c.get(1), 1L);
+            case "DECR":
+                arity(c, 2);
+                return incrBy(c.get(1), -1L);
+            case "INCRBY":
+                arity(c, 3);
+                return incrBy(c.get(1), parseLong(c.get(2)));
+            case "DECRBY":
+                arity(c, 3);
+                return incrBy(c.get(1), -parseLong(c.get(2)));
+            case "APPEND": {
+                arity(c, 3);
+                String old = get(c.get(1), String.class);
+                String value = old == null ? c.get(2) : old + c.get(2);
+                data.put(c.get(1), value);
+                return (long) value.length();
+            }
+            case "GETBIT": {
+                arity(c, 3);
+                String value = get(c.get(1), String.class);
+                long offset = bitOffset(c.get(2));
+                long index = offset >>> 3;
+                if (value == null || index >= value.length()) {
+                    return 0L;
+                }
+                return (long) ((value.charAt((int) index) >> (7 - (offset & 7))) & 1);
+            }
+            case "SETBIT": {
+                arity(c, 4);
+                String value = get(c.get(1), String.class);
+                long offset = bitOffset(c.get(2));
+                if (!"0".equals(c.get(3)) && !"1".equals(c.get(3))) {
+                    throw new CommandError("ERR bit is not an integer or out of range");
+                }
+                int index = (int) (offset >>> 3);
+                int mask = 1 << (7 - (offset & 7));
+                int old = value == null || index >= value.length() ? 0 : value.charAt(index);
+                int updated = "1".equals(c.get(3)) ? old | mask : old & ~mask;
+                if (updated == old && value != null && index < value.length()) {
+                    return (long) ((old & mask) != 0 ? 1 : 0);
+                }
+                // 字符串按ISO-8859-1保存，每个char是一个字节；与APPEND一样保留过期时间
+                char[] chars = Arrays.copyOf(value == null ? new char[0] : value.toCharArray(),
+                        Math.max(index + 1, value == null ? 0 : value.length()));
+                chars[index] = (char) updated;
+                data.put(c.get(1), new String(chars));
+                return (long) ((old & mask) != 0 ? 1 : 0);
+            }
+            case "STRLEN": {
+                arity(c, 2);
+                String value = get(c.get(1), String.class);
+                return value == null ? 0L : (long) value.length();
+            }
+
+            // 列表
+            case "LPUSH":
+            case "RPUSH": {
+                arity(c, 3);
+                LinkedList<String> list = list(c.get(1), true);
+                for (String value : c.subList(2, c.size())) {
+                    if ("LPUSH".equals(name)) {
+                        list.addFirst(value);
+                    } else {
+                        list.addLast(value);
+                    }
+                }
+                pushed.signalAll();
+                return (long) list.size();
+            }
+            case "LPOP":
+            case "RPOP":
+                arity(c, 2);
+                return pop(c.get(1), "LPOP".equals(name));
+            case "LLEN": {
+                arity(c, 2);
+                LinkedList<String> list = list(c.get(1), false);
+                return list == null ? 0L : (long) list.size();
+            }
+            case "LINDEX": {
+                arity(c, 3);
+                LinkedList<String> list = list(c.get(1), false);
+                if (list == null) {
+                    return null;
+                }
+                int index = (int) parseLong(c.get(2));
+                index = index < 0 ? index + list.size() : index;
+                return index < 0 || index >= list.size() ? null : list.get(index);
+            }
+            case "LRANGE": {
+                arity(c, 4);
+                LinkedList<String> list = list(c.get(1), false);
+                if (list == null) {
+                    return Collections.emptyList();
+                }
+                int[] range = range(list.size(), parseLong(c.get(2)), parseLong(c.get(3)));
+                return new ArrayList<Object>(list.subList(range[0], range[1]));
+            }
+            case "LTRIM": {
+                arity(c, 4);
+                LinkedList<String> list = list(c.get(1), false);
+                if (list != null) {
+                    int[] range = range(list.size(), parseLong(c.get(2)), parseLong(c.get(3)));
+                    LinkedList<String> kept = new LinkedList<String>(list.subList(range[0], range[1]));
+                    list.clear();
+                    list.addAll(kept);
+                    removeIfEmpty(c.get(1), list.isEmpty());
+                }
+                return RespProtocol.Status.OK;
+            }
+            case "LREM":
+                arity(c, 4);
+                return lrem(c.get(1), parseLong(c.get(2)), c.get(3));
+            case "RPOPLPUSH":
+                arity(c, 3);
+                return rpoplpush(c.get(1), c.get(2));
+            case "BRPOPLPUSH": {
+                arity(c, 4);
+                long deadline = deadline(c.get(3));
+                while (true) {
+                    Object value = rpoplpush(c.get(1), c.get(2));
+                    if (value != null || !await(deadline)) {
+                        return value;
+                    }
+                }
+            }
+            case "BLPOP":
+            case "BRPOP": {
+                arity(c, 3);
+                long deadline = deadline(c.get(c.size() - 1));
+                List<String> keys = c.subList(1, c.size() - 1);
+                while (true) {
+                    for (String key : keys) {
+                        String value = pop(key, "BLPOP".equals(name));
+                        if (value != null) {
+                            return Arrays.<Object>asList(key, value);
+                        }
+                    }
+                    if (!await(deadline)) {
+                        return null;
+                    }
+                }
+            }
+
+            // 集合
+            case "SADD": {
+                arity(c, 3);
+                LinkedHashSet<String> set = set(c.get(1), true);
+                long added = 0L;
+                for (String member : c.subList(2, c.size())) {
+                    if (set.add(member)) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            case "SREM": {
+                arity(c, 3);
+                LinkedHashSet<String> set = set(c.get(1), false);
+                if (set == null) {
+                    return 0L;
+                }
+                long removed = 0L;
+                for (String member : c.subList(2, c.size())) {
+                    if (set.remove(member)) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(c.get(1), set.isEmpty());
+                return removed;
+            }
+            case "SISMEMBER": {
+                arity(c, 3);
+                LinkedHashSet<String> set = set(c.get(1), false);
+                return set != null && set.contains(c.get(2)) ? 1L : 0L;
+            }
+            case "SMEMBERS": {
+                arity(c, 2);
+                LinkedHashSet<String> set = set(c.get(1), false);
+                return set == null ? Collections.emptyList() : new ArrayList<Object>(set);
+            }
+            case "SCARD": {
+                arity(c, 2);
+                LinkedHashSet<String> set = set(c.get(1), false);
+                return set == null ? 0L : (long) set.size();
+            }
+
+            // 哈希
+            case "HSET":
+            case "HMSET": {
+                pairs(c, 2);
+                LinkedHashMap<String, String> hash = hash(c.get(1), true);
+                long added = 0L;
+                for (int i = 2; i < c.size(); i += 2) {
+                    if (hash.put(c.get(i), c.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                return "HSET".equals(name) ? (Object) added : RespProtocol.Status.OK;
+            }
+            case "HGET": {
+                arity(c, 3);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                return hash == null ? null : hash.get(c.get(2));
+            }
+            case "HMGET": {
+                arity(c, 3);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                List<Object> values = new ArrayList<Object>(c.size() - 2);
+                for (String field : c.subList(2, c.size())) {
+                    values.add(hash == null ? null : hash.get(field));
+                }
+                return values;
+            }
+            case "HGETALL":
+            case "HKEYS":
+            case "HVALS": {
+                arity(c, 2);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                List<Object> values = new ArrayList<Object>();
+                if (hash != null) {
+                    for (Map.Entry<String, String> entry : hash.entrySet()) {
+                        if (!"HVALS".equals(name)) {
+                            values.add(entry.getKey());
+                        }
+                        if (!"HKEYS".equals(name)) {
+                            values.add(entry.getValue());
+                        }
+                    }
+                }
+                return values;
+            }
+            case "HDEL": {
+                arity(c, 3);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                if (hash == null) {
+                    return 0L;
+                }
+                long removed = 0L;
+                for (String field : c.subList(2, c.size())) {
+                    if (hash.remove(field) != null) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(c.get(1), hash.isEmpty());
+                return removed;
+            }
+            case "HEXISTS": {
+                arity(c, 3);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                return hash != null && hash.containsKey(c.get(2)) ? 1L : 0L;
+            }
+            case "HLEN": {
+                arity(c, 2);
+                LinkedHashMap<String, String> hash = hash(c.get(1), false);
+                return hash == null ? 0L : (long) hash.size();
+            }
+            case "HINCRBY": {
+                arity(c, 4);
+                LinkedHashMap<String, String> hash = hash(c.get(1), true);
+                String old = hash.get(c.get(2));
+                long value = add(old == null ? 0L : parseLong(old), parseLong(c.get(3)));
+                hash.put(c.get(2), String.valueOf(value));
+                return value;
+            }
+
+            // 有序集合
+            case "ZADD": {
+                pairs(c, 2);
+                ZSet zset = zset(c.get(1), true);
+                long added = 0L;
+                for (int i = 2; i < c.size(); i += 2) {
+                    if (zset.add(c.get(i + 1), parseDouble(c.get(i)))) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            case "ZREM": {
+                arity(c, 3);
+                ZSet zset = zset(c.get(1), false);
+                if (zset == null) {
+                    return 0L;
+                }
+                long removed = 0L;
+                for (String member : c.subList(2, c.size())) {
+                    if (zset.remove(member)) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(c.get(1), zset.scores.isEmpty());
+                return removed;
+            }
+            case "ZSCORE": {
+                arity(c, 3);
+                ZSet zset = zset(c.get(1), false);
+                Double score = zset == null ? null : zset.scores.get(c.get(2));
+                return score == null ? null : formatScore(score);
+            }
+            case "ZCARD": {
+                arity(c, 2);
+                ZSet zset = zset(c.get(1), false);
+                return zset == null ? 0L : (long) zset.scores.size();
+            }
+            case "ZRANGE": {
+                arity(c, 4);
+                ZSet zset = zset(c.get(1), false);
+                if (zset == null) {
+                    return Collections.emptyList();
+                }
+                List<String> members = new ArrayList<String>(zset.members);
+                int[] range = range(members.size(), parseLong(c.get(2)), parseLong(c.get(3)));
+                return withScores(zset, members.subList(range[0], range[1]),
+                        c.size() > 4 && "WITHSCORES".equalsIgnoreCase(c.get(4)));
+            }
+            case "ZRANGEBYSCORE":
+                arity(c, 4);
+                return zrangeByScore(c);
+            case "ZREMRANGEBYSCORE": {
+                arity(c, 4);
+                ZSet zset = zset(c.get(1), false);
+                if (zset == null) {
+                    return 0L;
+                }
+                List<String> members = zset.byScore(c.get(2), c.get(3));
+                for (String member : members) {
+                    zset.remove(member);
+                }
+                removeIfEmpty(c.get(1), zset.scores.isEmpty());
+                return (long) members.size();
+            }
+
+            // 脚本
+            case "SCRIPT":
+                arity(c, 2);
+                return script(c);
+            case "EVAL": {
+                arity(c, 3);
+                String sha1 = new RedisScript(c.get(1)).getSha1();
+                scripts.put(sha1, c.get(1));
+                return evalsha(sha1, c);
+            }
+            case "EVALSHA":
+                arity(c, 3);
+                return evalsha(c.get(1), c);
+            default:
+                throw new CommandError("ERR unknown command '" + c.get(0) + "'");
+        }
+    }
+
+    private Object set(List<String> c) {
+        long ttl = 0L;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < c.size(); i++) {
+            String option = c.get(i).toUpperCase(Locale.ROOT);
+            if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            } else if (("EX".equals(option) || "PX".equals(option)) && i + 1 < c.size()) {
+                ttl = parseLong(c.get(++i)) * ("EX".equals(option) ? 1000L : 1L);
+                if (ttl <= 0) {
+                    throw new CommandError("ERR invalid expire time in set");
+                }
+            } else {
+                throw new CommandError("ERR syntax error");
+            }
+        }
+        boolean exists = lookup(c.get(1)) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            return null;
+        }
+        putString(c.get(1), c.get(2));
+        if (ttl > 0) {
+            expires.put(c.get(1), now() + ttl);
+        }
+        return RespProtocol.Status.OK;
+    }
+
+    private Object setWithExpire(String key, String value, long ttl) {
+        if (ttl <= 0) {
+            throw new CommandError("ERR invalid expire time in setex");
+        }
+        putString(key, value);
+        expires.put(key, now() + ttl);
+        return RespProtocol.Status.OK;
+    }
+
+    private long incrBy(String key, long delta) {
+        String old = get(key, String.class);
+        long value = add(old == null ? 0L : parseLong(old), delta);
+        // 保留原有的过期时间
+        data.put(key, String.valueOf(value));
+        return value;
+    }
+
+    private Object expireAt(String key, long at) {
+        if (lookup(key) == null) {
+            return 0L;
+        }
+        if (at <= now()) {
+            remove(key);
+        } else {
+            expires.put(key, at);
+        }
+        return 1L;
+    }
+
+    private Object scan(List<String> c) {
+        long cursor = parseLong(c.get(1));
+        String pattern = null;
+        int count = 10;
+        for (int i = 2; i + 1 < c.size(); i += 2) {
+            if ("MATCH".equalsIgnoreCase(c.get(i))) {
+                pattern = c.get(i + 1);
+            } else if ("COUNT".equalsIgnoreCase(c.get(i))) {
+                count = (int) parseLong(c.get(i + 1));
+            } else {
+                throw new CommandError("ERR syntax error");
+            }
+        }
+        // 游标是key哈希值的下界，遍历期间增删其他key不影响未返回的key，与Redis的保证相同
+        List<String> keys = liveKeys();
+        Collections.sort(keys, SCAN_ORDER);
+        List<Object> batch = new ArrayList<Object>();
+        long next = 0L;
+        int examined = 0;
+        for (String key : keys) {
+            long hash = scanHash(key);
+            if (hash < cursor) {
+                continue;
+            }
+            if (examined >= Math.max(count, 1) && hash >= next) {
+                break;
+            }
+            examined++;
+            // 同一哈希值的key在同一批中返回
+            next = hash + 1;
+            if (pattern == null || matches(pattern, key)) {
+                batch.add(key);
+            }
+        }
+        boolean finished = keys.isEmpty() || examined == 0
+                || scanHash(keys.get(keys.size() - 1)) < next;
+        return Arrays.<Object>asList(finished ? "0" : String.valueOf(next), batch);
+    }
+
+    private static long scanHash(String key) {
+        return key.hashCode() & 0xFFFFFFFFL;
+    }
+
+    private String pop(String key, boolean left) {
+        LinkedList<String> list = list(key, false);
+        if (list == null) {
+            return null;
+        }
+        String value = left ? list.pollFirst() : list.pollLast();
+        removeIfEmpty(key, list.isEmpty());
+        return value;
+    }
+
+    private Object rpoplpush(String source, String destination) {
+        LinkedList<String> from = list(source, false);
+        if (from == null) {
+            return null;
+        }
+        // 先检查目标的类型，类型错误时不弹出
+        list(destination, false);
+        String value = from.pollLast();
+        removeIfEmpty(source, from.isEmpty());
+        list(destination, true).addFirst(value);
+        pushed.signalAll();
+        return value;
+    }
+
+    private Object lrem(String key, long count, String value) {
+        LinkedList<String> list = list(key, false);
+        if (list == null) {
+            return 0L;
+        }
+        long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+        long removed = 0L;
+        Iterator<String> iterator = count < 0 ? list.descendingIterator() : list.iterator();
+        while (removed < limit && iterator.hasNext()) {
+            if (iterator.next().equals(value)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        removeIfEmpty(key, list.isEmpty());
+        return removed;
+    }
+
+    private Object zrangeByScore(List<String> c) {
+        ZSet zset = zset(c.get(1), false);
+        if (zset == null) {
+            return Collections.emptyList();
+        }
+        boolean scores = false;
+        int offset = 0;
+        int limit = -1;
+        for (int i = 4; i < c.size(); i++) {
+            if ("WITHSCORES".equalsIgnoreCase(c.get(i))) {
+                scores = true;
+            } else if ("LIMIT".equalsIgnoreCase(c.get(i)) && i + 2 < c.size()) {
+                offset = (int) parseLong(c.get(i + 1));
+                limit = (int) parseLong(c.get(i + 2));
+                i += 2;
+            } else {
+                throw new CommandError("ERR syntax error");
+            }
+        }
+        List<String> members = zset.byScore(c.get(2), c.get(3));
+        int from = Math.min(Math.max(offset, 0), members.size());
+        int to = limit < 0 ? members.size() : (int) Math.min(members.size(), (long) from + limit);
+        return withScores(zset, members.subList(from, to), scores);
+    }
+
+    private static List<Object> withScores(ZSet zset, List<String> members, boolean scores) {
+        List<Object> result = new ArrayList<Object>(scores ? members.size() * 2 : members.size());
+        for (String member : members) {
+            result.add(member);
+            if (scores) {
+                result.add(formatScore(zset.scores.get(member)));
+            }
+        }
+        return result;
+    }
+
+    private Object script(List<String> c) {
+        String sub = c.get(1).toUpperCase(Locale.ROOT);
+        if ("LOAD".equals(sub)) {
+            arity(c, 3);
+            String sha1 = new RedisScript(c.get(2)).getSha1();
+            scripts.put(sha1, c.get(2));
+            return sha1;
+        }
+        if ("EXISTS".equals(sub)) {
+            List<Object> result = new ArrayList<Object>();
+            for (String sha1 : c.subList(2, c.size())) {
+                result.add(scripts.containsKey(sha1.toLowerCase(Locale.ROOT)) ? 1L : 0L);
+            }
+            return result;
+        }
+        if ("FLUSH".equals(sub)) {
+            scripts.clear();
+            return RespProtocol.Status.OK;
+        }
+        throw new CommandError("ERR unknown SCRIPT subcommand '" + c.get(1) + "'");
+    }
+
+    private Object evalsha(String sha1, List<String> c) {
+        String key = sha1.toLowerCase(Locale.ROOT);
+        if (!scripts.containsKey(key)) {
+            throw new CommandError("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        int keyCount = (int) parseLong(c.get(2));
+        if (keyCount < 0 || 3 + keyCount > c.size()) {
+            throw new CommandError("ERR Number of keys can't be greater than number of args");
+        }
+        ScriptHandler handler = handler(key);
+        if (handler == null) {
+            throw new CommandError("ERR embedded redis cannot run Lua, register a ScriptHandler for script " + key);
+        }
+        Object result;
+        try {
+            result = handler.execute(context, c.subList(3, 3 + keyCount), c.subList(3 + keyCount, c.size()));
+        } catch (CommandError e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new CommandError("ERR Error running script: " + e);
+        }
+        if (result instanceof Boolean) {
+            // 与Lua相同：true转换为1，false转换为nil
+            return (Boolean) result ? 1L : null;
+        }
+        return result;
+    }
+
+    private ScriptHandler handler(String sha1) {
+        ScriptHandler handler = handlers.get(sha1);
+        if (handler != null) {
+            return handler;
+        }
+        for (RedisScript script : ScriptRegistry.getScripts()) {
+            if (script.getSha1().equals(sha1)) {
+                return builtins.get(script.getName());
+            }
+        }
+        return null;
+    }
+
+    private long deadline(String timeout) {
+        double seconds = parseDouble(timeout);
+        if (seconds < 0) {
+            throw new CommandError("ERR timeout is negative");
+        }
+        return seconds == 0 ? 0L : now() + (long) (seconds * 1000);
+    }
+
+    /**
+     * 等待列表写入
+     *
+     * @param deadline 截止时间，0表示一直等待
+     * @return 是否需要重试
+     */
+    private boolean await(long deadline) {
+        // 与Redis相同，脚本中的阻塞命令不等待
+        if (closed || lock.getHoldCount() > 1) {
+            return false;
+        }
+        try {
+            if (deadline == 0L) {
+                pushed.await();
+                return true;
+            }
+            long remaining = deadline - now();
+            if (remaining <= 0) {
+                return false;
+            }
+            pushed.await(remaining, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Object lookup(String key) {
+        Long at = expires.get(key);
+        if (at != null && at <= now()) {
+            remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private List<String> liveKeys() {
+        List<String> keys = new ArrayList<String>(data.size());
+        for (String key : new ArrayList<String>(data.keySet())) {
+            if (lookup(key) != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void putString(String key, String value) {
+        data.put(key, value);
+        expires.remove(key);
+    }
+
+    private void remove(String key) {
+        data.remove(key);
+        expires.remove(key);
+    }
+
+    private void removeIfEmpty(String key, boolean empty) {
+        if (empty) {
+            remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Class<T> type) {
+        Object value = lookup(key);
+        if (value != null && !type.isInstance(value)) {
+            throw new CommandError(WRONGTYPE);
+        }
+        return (T) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedList<String> list(String key, boolean create) {
+        LinkedList<String> list = get(key, LinkedList.class);
+        if (list == null && create) {
+            list = new LinkedList<String>();
+            data.put(key, list);
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedHashSet<String> set(String key, boolean create) {
+        LinkedHashSet<String> set = get(key, LinkedHashSet.class);
+        if (set == null && create) {
+            set = new LinkedHashSet<String>();
+            data.put(key, set);
+        }
+        return set;
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, String> hash(String key, boolean create) {
+        LinkedHashMap<String, String> hash = get(key, LinkedHashMap.class);
+        if (hash == null && create) {
+            hash = new LinkedHashMap<String, String>();
+            data.put(key, hash);
+        }
+        return hash;
+    }
+
+    private ZSet zset(String key, boolean create) {
+        ZSet zset = get(key, ZSet.class);
+        if (zset == null && create) {
+            zset = new ZSet();
+            data.put(key, zset);
+        }
+        return zset;
+    }
+
+    private static String type(Object value) {
+        if (value == null) {
+            return "none";
+        }
+        if (value instanceof String) {
+            return "string";
+        }
+        if (value instanceof LinkedList) {
+            return "list";
+        }
+        if (value instanceof LinkedHashSet) {
+            return "set";
+        }
+        return value instanceof ZSet ? "zset" : "hash";
+    }
+
+    /**
+     * 按LRANGE的规则计算下标范围
+     *
+     * @return [起始下标, 结束下标（不含）]
+     */
+    private static int[] range(int size, long start, long stop) {
+        long from = start < 0 ? Math.max(start + size, 0) : start;
+        long to = stop < 0 ? stop + size : Math.min(stop, size - 1L);
+        if (from > to || from >= size) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(int) from, (int) to + 1};
+    }
+
+    private static void arity(List<String> c, int min) {
+        if (c.size() < min) {
+            throw new CommandError("ERR wrong number of arguments for '" + c.get(0).toLowerCase(Locale.ROOT) + "' command");
+        }
+    }
+
+    private static void pairs(List<String> c, int from) {
+        if (c.size() < from + 2 || (c.size() - from) % 2 != 0) {
+            throw new CommandError("ERR wrong number of arguments for '" + c.get(0).toLowerCase(Locale.ROOT) + "' command");
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new CommandError(NOT_INTEGER);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        String text = value.toLowerCase(Locale.ROOT);
+        if ("+inf".equals(text) || "inf".equals(text)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if ("-inf".equals(text)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new CommandError("ERR value is not a valid float");
+        }
+    }
+
+    /**
+     * 位图的偏移量，与Redis一样不超过512MB
+     */
+    private static long bitOffset(String value) {
+        long offset;
+        try {
+            offset = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            offset = -1L;
+        }
+        if (offset < 0 || offset >= 1L << 32) {
+            throw new CommandError("ERR bit offset is not an integer or out of range");
+        }
+        return offset;
+    }
+
+    private static long add(long value, long delta) {
+        try {
+            return Math.addExact(value, delta);
+        } catch (ArithmeticException e) {
+            throw new CommandError("ERR increment or decrement would overflow");
+        }
+    }
+
+    private static String formatScore(double score) {
+        if (Double.isInfinite(score)) {
+            return score > 0 ? "inf" : "-inf";
+        }
+        if (score == Math.rint(score) && Math.abs(score) < 1e15) {
+            return String.valueOf((long) score);
+        }
+        return String.valueOf(score);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * glob风格的匹配，支持*、?、[abc]、[^a]、[a-z]和\转义
+     *
+     * @param pattern 模式
+     * @param text    文本
+     * @return 是否匹配
+     */
+    static boolean matches(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        int starPattern = -1;
+        int starText = -1;
+        while (t < text.length()) {
+            if (p < pattern.length()) {
+                char pc = pattern.charAt(p);
+                if (pc == '*') {
+                    starPattern = p++;
+                    starText = t;
+                    continue;
+                }
+                int next = matchOne(pattern, p, text.charAt(t));
+                if (next >= 0) {
+                    p = next;
+                    t++;
+                    continue;
+                }
+            }
+            if (starPattern < 0) {
+                return false;
+            }
+            p = starPattern + 1;
+            t = ++starText;
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * 匹配一个字符
+     *
+     * @return 匹配时返回模式中下一个元素的位置，否则返回-1
+     */
+    private static int matchOne(String pattern, int p, char c) {
+        char pc = pattern.charAt(p);
+        if (pc == '?') {
+            return p + 1;
+        }
+        if (pc == '\\' && p + 1 < pattern.length()) {
+            return pattern.charAt(p + 1) == c ? p + 2 : -1;
+        }
+        if (pc == '[') {
+            int i = p + 1;
+            boolean negate = i < pattern.length() && pattern.charAt(i) == '^';
+            if (negate) {
+                i++;
+            }
+            boolean matched = false;
+            while (i < pattern.length() && pattern.charAt(i) != ']') {
+                char from = pattern.charAt(i);
+                if (from == '\\' && i + 1 < pattern.length()) {
+                    from = pattern.charAt(++i);
+                }
+                if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                    char to = pattern.charAt(i + 2);
+                    matched |= c >= Math.min(from, to) && c <= Math.max(from, to);
+                    i += 3;
+                } else {
+                    matched |= c == from;
+                    i++;
+                }
+            }
+            if (i >= pattern.length()) {
+                // 没有闭合的[按普通字符处理
+                return c == '[' ? p + 1 : -1;
+            }
+            return matched != negate ? i + 1 : -1;
+        }
+        return pc == c ? p + 1 : -1;
+    }
+
+    /**
+     * 有序集合，按分数和成员排序
+     */
+    static final class ZSet {
+        final HashMap<String, Double> scores = new HashMap<String, Double>();
+        final TreeSet<String> members = new TreeSet<String>(new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int result = Double.compare(scores.get(a), scores.get(b));
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+
+        boolean add(String member, double score) {
+            Double old = scores.get(member);
+            if (old != null) {
+                members.remove(member);
+            }
+            scores.put(member, score);
+            members.add(member);
+            return old == null;
+        }
+
+        boolean remove(String member) {
+            if (!scores.containsKey(member)) {
+                return false;
+            }
+            members.remove(member);
+            scores.remove(member);
+            return true;
+        }
+
+        /**
+         * 分数在范围内的成员，范围以(开头表示不含
+         */
+        List<String> byScore(String min, String max) {
+            boolean minExclusive = min.startsWith("(");
+            boolean maxExclusive = max.startsWith("(");
+            double low = parseDouble(minExclusive ? min.substring(1) : min);
+            double high = parseDouble(maxExclusive ? max.substring(1) : max);
+            List<String> result = new ArrayList<String>();
+            for (String member : members) {
+                double score = scores.get(member);
+                if (score > high || (maxExclusive && score == high)) {
+                    break;
+                }
+                if (score > low || (!minExclusive && score == low)) {
+                    result.add(member);
+                }
+            }
+            return result;
+        }
+    }
+}
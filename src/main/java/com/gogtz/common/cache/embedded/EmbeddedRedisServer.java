@@ -0,0 +1,425 @@
+package com.gogtz.common.cache.embedded;
+
+import com.gogtz.common.cache.RedisPoolManager;
+import com.gogtz.common.cache.RedisScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>内嵌的内存Redis服务器</h1>
+ * 在本进程中监听本机端口，实现RESP协议和{@link com.gogtz.common.cache.RedisUtils}等用到的命令，
+ * 用于没有Redis服务器的单元测试、并发测试和JMH压测，数据只保存在内存中。
+ * <ol><strong>
+ * <li>字符串、位图（GETBIT、SETBIT）、计数、过期、key遍历（KEYS、SCAN）</li>
+ * <li>列表，包括阻塞的BRPOPLPUSH、BLPOP、BRPOP；集合；哈希；有序集合的常用命令</li>
+ * <li>发布订阅：PUBLISH、SUBSCRIBE、PSUBSCRIBE</li>
+ * <li>不能执行Lua，本库内置的锁、队列、限流、布隆过滤器、比较并赋值、SCAN脚本由Java实现；
+ * 其他脚本通过{@link #registerScript(RedisScript, ScriptHandler)}提供实现。
+ * 本库的测试指定-Dredis.it.address=127.0.0.1:6379时改为连接真实的Redis，执行Lua脚本本身</li>
+ * <li>只有一个数据库，SELECT和AUTH总是成功；不支持事务和持久化</li>
+ * </strong>
+ * </ol>
+ * <pre>
+ * EmbeddedRedisServer server = new EmbeddedRedisServer().start();
+ * server.useAsDefault();
+ * try {
+ *     RedisUtils.set("k", "v");
+ * } finally {
+ *     server.close();
+ * }
+ * </pre>
+ *
+ * @author t
+ */
+public class EmbeddedRedisServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedRedisServer.class);
+
+    /**
+     * 订阅相关的命令已直接写出回复
+     */
+    private static final Object NO_REPLY = new Object();
+
+    private final int requestedPort;
+    private final Database database = new Database(BuiltinScripts.create());
+    private final Set<Client> clients = new CopyOnWriteArraySet<Client>();
+    private final ConcurrentHashMap<String, Set<Client>> channels = new ConcurrentHashMap<String, Set<Client>>();
+    private final ConcurrentHashMap<String, Set<Client>> patterns = new ConcurrentHashMap<String, Set<Client>>();
+    private final AtomicInteger clientIndex = new AtomicInteger();
+    private final AtomicLong commandCount = new AtomicLong();
+    private volatile ServerSocket serverSocket;
+    private volatile boolean usedAsDefault;
+
+    /**
+     * 构建监听随机端口的服务器
+     */
+    public EmbeddedRedisServer() {
+        this(0);
+    }
+
+    /**
+     * 构建服务器
+     *
+     * @param port 端口，0表示启动时随机选择空闲端口
+     */
+    public EmbeddedRedisServer(int port) {
+        this.requestedPort = port;
+    }
+
+    /**
+     * 启动，只监听本机地址
+     *
+     * @return 本服务器
+     * @throws IllegalStateException 已启动或端口不可用
+     */
+    public synchronized EmbeddedRedisServer start() {
+        if (serverSocket != null) {
+            throw new IllegalStateException("embedded redis is already started on port " + getPort());
+        }
+        try {
+            ServerSocket socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort));
+            serverSocket = socket;
+        } catch (IOException e) {
+            throw new IllegalStateException("start embedded redis on port " + requestedPort + " failed", e);
+        }
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "embedded-redis-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * 让{@link RedisPoolManager}连接本服务器，关闭本服务器时恢复配置文件中的连接配置
+     *
+     * @return 本服务器
+     */
+    public EmbeddedRedisServer useAsDefault() {
+        return useAsDefault(Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * 让{@link RedisPoolManager}连接本服务器，并覆盖其他配置，如redis.nearCache.enabled；
+     * 关闭本服务器时恢复配置文件中的配置
+     *
+     * @param settings 其他配置
+     * @return 本服务器
+     */
+    public EmbeddedRedisServer useAsDefault(Map<String, String> settings) {
+        Map<String, String> overrides = new HashMap<String, String>(settings);
+        overrides.put("redis.ip", getHost());
+        overrides.put("redis.port", String.valueOf(getPort()));
+        overrides.put("redis.nodes", "");
+        overrides.put("redis.pool.password", "");
+        RedisPoolManager.override(overrides);
+        usedAsDefault = true;
+        return this;
+    }
+
+    /**
+     * 为脚本提供Java实现
+     *
+     * @param script  脚本
+     * @param handler 实现
+     */
+    public void registerScript(RedisScript script, ScriptHandler handler) {
+        database.registerScript(script.getSha1(), handler);
+    }
+
+    /**
+     * 清空所有数据
+     */
+    public void flushAll() {
+        database.flushAll();
+    }
+
+    /**
+     * 地址
+     */
+    public String getHost() {
+        return InetAddress.getLoopbackAddress().getHostAddress();
+    }
+
+    /**
+     * 实际监听的端口，未启动时为-1
+     */
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    /**
+     * 当前的连接数
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * 已执行的命令数
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * 停止并断开所有连接，数据被丢弃
+     */
+    @Override
+    public synchronized void close() {
+        ServerSocket socket = serverSocket;
+        if (socket == null) {
+            return;
+        }
+        serverSocket = null;
+        if (usedAsDefault) {
+            usedAsDefault = false;
+            RedisPoolManager.clearOverrides();
+        }
+        closeQuietly(socket);
+        database.close();
+        for (Client client : clients) {
+            closeQuietly(client.socket);
+        }
+    }
+
+    private void accept() {
+        ServerSocket socket = serverSocket;
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Socket accepted = socket.accept();
+                accepted.setTcpNoDelay(true);
+                final Client client = new Client(accepted);
+                clients.add(client);
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        client.serve();
+                    }
+                }, "embedded-redis-client-" + clientIndex.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("embedded redis accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private long publish(String channel, String message) {
+        long receivers = 0L;
+        Set<Client> subscribers = channels.get(channel);
+        if (subscribers != null) {
+            for (Client subscriber : subscribers) {
+                if (subscriber.push(Arrays.<Object>asList("message", channel, message))) {
+                    receivers++;
+                }
+            }
+        }
+        for (Map.Entry<String, Set<Client>> entry : patterns.entrySet()) {
+            if (Database.matches(entry.getKey(), channel)) {
+                for (Client subscriber : entry.getValue()) {
+                    if (subscriber.push(Arrays.<Object>asList("pmessage", entry.getKey(), channel, message))) {
+                        receivers++;
+                    }
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private static void subscribe(ConcurrentHashMap<String, Set<Client>> registry, String name, Client client) {
+        Set<Client> subscribers = registry.get(name);
+        if (subscribers == null) {
+            Set<Client> created = new CopyOnWriteArraySet<Client>();
+            subscribers = registry.putIfAbsent(name, created);
+            if (subscribers == null) {
+                subscribers = created;
+            }
+        }
+        subscribers.add(client);
+    }
+
+    private static void unsubscribe(ConcurrentHashMap<String, Set<Client>> registry, String name, Client client) {
+        Set<Client> subscribers = registry.get(name);
+        if (subscribers != null) {
+            subscribers.remove(client);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 一个客户端连接，在单独的线程中依次执行命令
+     */
+    private class Client {
+        private final Socket socket;
+        private final Set<String> subscribedChannels = new LinkedHashSet<String>();
+        private final Set<String> subscribedPatterns = new LinkedHashSet<String>();
+        private OutputStream out;
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        void serve() {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+                while (true) {
+                    List<String> command = RespProtocol.readCommand(in);
+                    if (command == null) {
+                        break;
+                    }
+                    if (command.isEmpty()) {
+                        continue;
+                    }
+                    commandCount.incrementAndGet();
+                    String name = command.get(0).toUpperCase(Locale.ROOT);
+                    if ("QUIT".equals(name)) {
+                        reply(RespProtocol.Status.OK, true);
+                        break;
+                    }
+                    Object reply;
+                    try {
+                        reply = execute(name, command);
+                    } catch (CommandError e) {
+                        reply = e;
+                    }
+                    if (reply != NO_REPLY) {
+                        // 没有更多已发送的命令时才刷新，管道中的命令合并写出
+                        reply(reply, in.available() == 0);
+                    }
+                }
+            } catch (SocketException e) {
+                // 连接被关闭
+            } catch (IOException e) {
+                logger.debug("embedded redis client error: " + e.getMessage());
+            } finally {
+                for (String channel : subscribedChannels) {
+                    unsubscribe(channels, channel, this);
+                }
+                for (String pattern : subscribedPatterns) {
+                    unsubscribe(patterns, pattern, this);
+                }
+                clients.remove(this);
+                closeQuietly(socket);
+            }
+        }
+
+        /**
+         * 执行命令，订阅相关的命令直接写出回复并返回{@link #NO_REPLY}
+         */
+        private Object execute(String name, List<String> command) throws IOException {
+            switch (name) {
+                case "PUBLISH":
+                    if (command.size() != 3) {
+                        throw new CommandError("ERR wrong number of arguments for 'publish' command");
+                    }
+                    return publish(command.get(1), command.get(2));
+                case "SUBSCRIBE":
+                case "PSUBSCRIBE": {
+                    boolean pattern = "PSUBSCRIBE".equals(name);
+                    for (String target : command.subList(1, command.size())) {
+                        (pattern ? subscribedPatterns : subscribedChannels).add(target);
+                        subscribe(pattern ? patterns : channels, target, this);
+                        reply(Arrays.<Object>asList(name.toLowerCase(Locale.ROOT), target, subscriptions()), true);
+                    }
+                    return NO_REPLY;
+                }
+                case "UNSUBSCRIBE":
+                case "PUNSUBSCRIBE": {
+                    boolean pattern = "PUNSUBSCRIBE".equals(name);
+                    Set<String> subscribed = pattern ? subscribedPatterns : subscribedChannels;
+                    List<String> targets = command.size() > 1
+                            ? command.subList(1, command.size()) : Arrays.asList(subscribed.toArray(new String[0]));
+                    if (targets.isEmpty()) {
+                        reply(Arrays.<Object>asList(name.toLowerCase(Locale.ROOT), null, subscriptions()), true);
+                    }
+                    for (String target : targets) {
+                        subscribed.remove(target);
+                        unsubscribe(pattern ? patterns : channels, target, this);
+                        reply(Arrays.<Object>asList(name.toLowerCase(Locale.ROOT), target, subscriptions()), true);
+                    }
+                    return NO_REPLY;
+                }
+                default:
+                    if (isSubscriber() && !"PING".equals(name)) {
+                        throw new CommandError("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+                    }
+                    return database.execute(command);
+            }
+        }
+
+        private boolean isSubscriber() {
+            return !subscribedChannels.isEmpty() || !subscribedPatterns.isEmpty();
+        }
+
+        private long subscriptions() {
+            return subscribedChannels.size() + subscribedPatterns.size();
+        }
+
+        /**
+         * 写出回复，与其他线程推送的消息互斥
+         */
+        private void reply(Object reply, boolean flush) throws IOException {
+            synchronized (this) {
+                RespProtocol.writeReply(out, reply);
+                if (flush) {
+                    out.flush();
+                }
+            }
+        }
+
+        /**
+         * 推送订阅的消息
+         *
+         * @return 是否推送成功
+         */
+        boolean push(List<Object> message) {
+            try {
+                reply(message, true);
+                return true;
+            } catch (IOException e) {
+                closeQuietly(socket);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.gogtz.common.cache.embedded;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RESP协议的读写<br>
+ * 所有字符串按ISO-8859-1与字节一一对应，二进制key和值可以原样保存
+ *
+ * @author t
+ */
+final class RespProtocol {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] NIL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private RespProtocol() {
+    }
+
+    /**
+     * 状态回复，如+OK
+     */
+    static final class Status {
+        static final Status OK = new Status("OK");
+        static final Status PONG = new Status("PONG");
+
+        final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * 读取一条命令，支持多行格式和内联格式
+     *
+     * @param in 输入流
+     * @return 命令及参数，连接关闭时返回null
+     * @throws IOException 读取失败或格式错误
+     */
+    static List<String> readCommand(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            // 内联命令，如telnet中输入的PING
+            String line = (char) first + readLine(in);
+            List<String> command = new ArrayList<String>();
+            for (String part : line.trim().split("\\s+")) {
+                if (!part.isEmpty()) {
+                    command.add(part);
+                }
+            }
+            return command;
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<String> command = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Protocol error: expected '$'");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            if (in.read() != '\r' || in.read() != '\n') {
+                throw new IOException("Protocol error: expected CRLF");
+            }
+            command.add(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return command;
+    }
+
+    /**
+     * 写入回复
+     * <ol>
+     * <li>null：空的bulk reply</li>
+     * <li>Long、Integer：整数</li>
+     * <li>String：bulk reply</li>
+     * <li>{@link Status}：状态</li>
+     * <li>{@link CommandError}：错误</li>
+     * <li>List：multi bulk reply，元素递归写入</li>
+     * </ol>
+     *
+     * @param out   输出流
+     * @param reply 回复
+     * @throws IOException 写入失败
+     */
+    static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write(NIL);
+        } else if (reply instanceof String) {
+            byte[] bytes = ((String) reply).getBytes(StandardCharsets.ISO_8859_1);
+            writeLine(out, '$', String.valueOf(bytes.length));
+            out.write(bytes);
+            out.write(CRLF);
+        } else if (reply instanceof Long || reply instanceof Integer) {
+            writeLine(out, ':', reply.toString());
+        } else if (reply instanceof Status) {
+            writeLine(out, '+', ((Status) reply).text);
+        } else if (reply instanceof CommandError) {
+            writeLine(out, '-', ((CommandError) reply).getMessage());
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            writeLine(out, '*', String.valueOf(list.size()));
+            for (Object element : list) {
+                writeReply(out, element);
+            }
+        } else if (reply instanceof Object[]) {
+            writeReply(out, Arrays.asList((Object[]) reply));
+        } else {
+            throw new IllegalArgumentException("unsupported reply type " + reply.getClass().getName());
+        }
+    }
+
+    private static void writeLine(OutputStream out, char type, String text) throws IOException {
+        out.write(type);
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(CRLF);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '\r') {
+                if (in.read() != '\n') {
+                    throw new IOException("Protocol error: expected LF");
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.gogtz.common.cache.embedded;
+
+/**
+ * 脚本中访问数据的入口，相当于Lua中的redis.call
+ *
+ * @author t
+ */
+public interface ScriptContext {
+
+    /**
+     * 执行命令，与其他命令之间是原子的
+     *
+     * @param command 命令及参数
+     * @return 回复：nil为null，整数为Long，bulk reply为String，multi bulk reply为List，状态回复的toString为状态文本
+     * @throws RuntimeException 命令出错
+     */
+    Object call(String... command);
+}
@@ -0,0 +1,22 @@
+package com.gogtz.common.cache.embedded;
+
+import java.util.List;
+
+/**
+ * 用Java实现的脚本<br>
+ * {@link EmbeddedRedisServer}不能执行Lua，EVAL/EVALSHA按脚本的SHA1找到对应的实现执行
+ *
+ * @author t
+ */
+public interface ScriptHandler {
+
+    /**
+     * 执行脚本
+     *
+     * @param redis 执行命令的入口
+     * @param keys  KEYS
+     * @param args  ARGV
+     * @return 返回值，类型与{@link ScriptContext#call(String...)}的回复相同，false与Lua一样作为nil返回
+     */
+    Object execute(ScriptContext redis, List<String> keys, List<String> args);
+}
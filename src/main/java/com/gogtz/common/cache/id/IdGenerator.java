@@ -0,0 +1,16 @@
+package com.gogtz.common.cache.id;
+
+/**
+ * 生成递增的long型ID
+ *
+ * @author t
+ */
+public interface IdGenerator {
+
+    /**
+     * 取得下一个ID
+     *
+     * @return ID
+     */
+    long nextId();
+}
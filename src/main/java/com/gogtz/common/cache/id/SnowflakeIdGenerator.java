@@ -0,0 +1,107 @@
+package com.gogtz.common.cache.id;
+
+import com.gogtz.common.lang.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>Snowflake ID生成器</h1>
+ * 完全在本地生成，不访问Redis。ID由三部分组成：
+ * <ol><strong>
+ * <li>41位：距2017-01-01的毫秒数，可以使用约69年</li>
+ * <li>10位：节点号，0~1023，每个节点必须不同</li>
+ * <li>12位：同一毫秒内的序号，每个节点每毫秒最多4096个ID</li>
+ * </strong>
+ * </ol>
+ * 同一节点内严格递增，节点之间按时间大致有序。时钟回拨不超过{@link #MAX_BACKWARD_MILLIS}毫秒时等待追上，
+ * 超过时抛出异常。
+ *
+ * @author t
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 2017-01-01 00:00:00 UTC
+     */
+    public static final long EPOCH = 1483228800000L;
+
+    public static final int WORKER_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+
+    /**
+     * 可以等待的最大时钟回拨（毫秒）
+     */
+    public static final long MAX_BACKWARD_MILLIS = 5L;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long workerId;
+
+    /**
+     * 上一个ID的时间戳和序号：(毫秒数 &lt;&lt; SEQUENCE_BITS) | 序号
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * 构建生成器
+     *
+     * @param workerId 节点号，0~1023
+     */
+    public SnowflakeIdGenerator(long workerId) {
+        Assert.isTrue(workerId >= 0 && workerId <= MAX_WORKER_ID,
+                "workerId must be between 0 and %s, got %s", MAX_WORKER_ID, workerId);
+        this.workerId = workerId;
+    }
+
+    /**
+     * 取得下一个ID
+     *
+     * @return ID
+     * @throws IllegalStateException 时钟回拨超过{@link #MAX_BACKWARD_MILLIS}毫秒
+     */
+    @Override
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long previousMillis = previous >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+            long state;
+            if (now > previousMillis) {
+                state = now << SEQUENCE_BITS;
+            } else if (now >= previousMillis - MAX_BACKWARD_MILLIS) {
+                if ((previous & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    // 本毫秒的序号已用完或时钟回拨，等待下一毫秒
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                    continue;
+                }
+                state = previous + 1;
+            } else {
+                throw new IllegalStateException("clock moved backwards by " + (previousMillis - now) + "ms");
+            }
+            if (last.compareAndSet(previous, state)) {
+                long millis = state >>> SEQUENCE_BITS;
+                return (millis << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | (state & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 节点号
+     */
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 从ID中取出生成时间
+     *
+     * @param id ID
+     * @return 毫秒时间戳
+     */
+    public static long getTimestamp(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
@@ -0,0 +1,26 @@
+package com.gogtz.common.cache.limit;
+
+/**
+ * 限流器，同一个限流器按调用方标识（用户、IP、手机号等）分别计数
+ *
+ * @author t
+ */
+public interface RateLimiter {
+
+    /**
+     * 尝试取得1个许可，不等待
+     *
+     * @param id 调用方标识
+     * @return 是否允许
+     */
+    boolean tryAcquire(String id);
+
+    /**
+     * 尝试一次取得多个许可，不等待，许可不足时一个也不取
+     *
+     * @param id      调用方标识
+     * @param permits 许可数
+     * @return 是否允许
+     */
+    boolean tryAcquire(String id, int permits);
+}
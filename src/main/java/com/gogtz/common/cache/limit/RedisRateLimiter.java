@@ -0,0 +1,109 @@
+package com.gogtz.common.cache.limit;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.local.LocalCache;
+import com.gogtz.common.lang.Assert;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis Lua脚本的限流器<br>
+ * 判断和扣减在一个脚本中原子地完成，每次调用一个往返；
+ * 被拒绝后在本地记录最早可能成功的时间，在此之前的调用不访问Redis直接拒绝，
+ * 超过上限的许可数也直接拒绝。
+ *
+ * @author t
+ */
+public abstract class RedisRateLimiter implements RateLimiter {
+
+    /**
+     * 本地记录的被拒绝的调用方数量
+     */
+    private static final long MAX_BLOCKED = 10000L;
+
+    private final String name;
+    private final long maxPermits;
+    private final LocalCache<String, Long> blocked = new LocalCache<String, Long>(MAX_BLOCKED);
+    private volatile boolean allowOnError = true;
+
+    /**
+     * @param name       限流器名，作为Redis key的前缀
+     * @param maxPermits 一次最多可以取得的许可数
+     */
+    protected RedisRateLimiter(String name, long maxPermits) {
+        Assert.notBlank(name, "name must not be blank");
+        this.name = name;
+        this.maxPermits = maxPermits;
+    }
+
+    /**
+     * 限流器名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Redis不可用时是否放行，默认放行
+     *
+     * @param allowOnError 是否放行
+     */
+    public void setAllowOnError(boolean allowOnError) {
+        this.allowOnError = allowOnError;
+    }
+
+    @Override
+    public boolean tryAcquire(String id) {
+        return tryAcquire(id, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(String id, int permits) {
+        Assert.isTrue(permits > 0, "permits must be positive, got %s", permits);
+        if (permits > maxPermits) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long until = blocked.get(id);
+        if (until != null && until > now) {
+            return false;
+        }
+        String reply = script().execute(String.class, Collections.singletonList(name + ":" + id),
+                args(now, permits).toArray());
+        if (reply == null) {
+            return allowOnError;
+        }
+        int separator = reply.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalStateException("unexpected reply of " + script().getName() + ": " + reply);
+        }
+        if ("1".equals(reply.substring(0, separator))) {
+            return true;
+        }
+        long wait = Long.parseLong(reply.substring(separator + 1));
+        if (wait > 0) {
+            blocked.put(id, now + wait, wait, TimeUnit.MILLISECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * 限流脚本，通过{@link com.gogtz.common.cache.ScriptRegistry}注册<br>
+     * KEYS[1]为调用方的key，返回字符串"是否允许(1/0):距离至少有1个许可的毫秒数"，如"0:1500"；
+     * Jedis不能转换元素为整数的multi bulk回复，因此不返回table
+     *
+     * @return 脚本
+     */
+    protected abstract RedisScript script();
+
+    /**
+     * 脚本的ARGV
+     *
+     * @param now     当前时间（毫秒）
+     * @param permits 许可数
+     * @return ARGV
+     */
+    protected abstract List<String> args(long now, int permits);
+}
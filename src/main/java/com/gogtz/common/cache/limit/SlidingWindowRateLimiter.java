@@ -0,0 +1,91 @@
+package com.gogtz.common.cache.limit;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.ScriptRegistry;
+import com.gogtz.common.lang.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * <h1>滑动窗口日志限流</h1>
+ * 任意长度为window的时间段内最多limit个许可，没有固定窗口在边界处的两倍突发。
+ * 每个许可在Redis sorted set中记录一条，score为时间，内存占用与limit成正比，适合limit较小的场景，
+ * 如登录失败、验证码。时间以调用方的时钟为准，各节点的时钟需要大致同步。
+ * <pre>
+ * // 每个IP每10分钟最多5次登录
+ * RateLimiter login = new SlidingWindowRateLimiter("limit:login", 5, 600000);
+ * </pre>
+ *
+ * @author t
+ */
+public class SlidingWindowRateLimiter extends RedisRateLimiter {
+
+    /**
+     * KEYS: 日志; ARGV: 上限, 窗口（毫秒）, 当前时间, 许可数, 成员前缀
+     */
+    private static final RedisScript SCRIPT = ScriptRegistry.register("RATE_LIMIT_SLIDING_WINDOW",
+            "local limit = tonumber(ARGV[1]) "
+                    + "local window = tonumber(ARGV[2]) "
+                    + "local now = tonumber(ARGV[3]) "
+                    + "local requested = tonumber(ARGV[4]) "
+                    + "redis.call('zremrangebyscore', KEYS[1], '-inf', now - window) "
+                    + "local count = redis.call('zcard', KEYS[1]) "
+                    + "if count + requested > limit then "
+                    + "local wait = 0 "
+                    + "if count >= limit then "
+                    + "local oldest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES') "
+                    + "wait = tonumber(oldest[2]) + window - now "
+                    + "end "
+                    + "return string.format('0:%d', wait) "
+                    + "end "
+                    + "for i = 1, requested do "
+                    + "redis.call('zadd', KEYS[1], now, ARGV[5] .. ':' .. i) "
+                    + "end "
+                    + "redis.call('pexpire', KEYS[1], window) "
+                    + "return '1:0'");
+
+    private final long limit;
+    private final long window;
+
+    /**
+     * 构建滑动窗口
+     *
+     * @param name   限流器名，作为Redis key的前缀
+     * @param limit  窗口内最多的许可数
+     * @param window 窗口长度（毫秒）
+     */
+    public SlidingWindowRateLimiter(String name, long limit, long window) {
+        super(name, limit);
+        Assert.isTrue(limit > 0, "limit must be positive, got %s", limit);
+        Assert.isTrue(window > 0, "window must be positive, got %s", window);
+        this.limit = limit;
+        this.window = window;
+    }
+
+    /**
+     * 窗口内最多的许可数
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * 窗口长度（毫秒）
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    @Override
+    protected RedisScript script() {
+        return SCRIPT;
+    }
+
+    @Override
+    protected List<String> args(long now, int permits) {
+        return Arrays.asList(String.valueOf(limit), String.valueOf(window), String.valueOf(now),
+                String.valueOf(permits), UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.gogtz.common.cache.limit;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.ScriptRegistry;
+import com.gogtz.common.lang.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>令牌桶限流</h1>
+ * 桶中最多capacity个令牌，按固定速率补充，允许不超过capacity的突发。
+ * 桶的状态保存在Redis hash中（tokens、ts），桶满后自动过期。
+ * 时间以调用方的时钟为准，各节点的时钟需要大致同步。
+ * <pre>
+ * // 每个手机号每分钟1条短信，最多连续发送3条
+ * RateLimiter sms = new TokenBucketRateLimiter("limit:sms", 3, 1.0 / 60);
+ * if (!sms.tryAcquire(mobile)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author t
+ */
+public class TokenBucketRateLimiter extends RedisRateLimiter {
+
+    /**
+     * KEYS: 桶; ARGV: 容量, 每毫秒补充的令牌数, 当前时间, 许可数
+     */
+    private static final RedisScript SCRIPT = ScriptRegistry.register("RATE_LIMIT_TOKEN_BUCKET",
+            "local capacity = tonumber(ARGV[1]) "
+                    + "local rate = tonumber(ARGV[2]) "
+                    + "local now = tonumber(ARGV[3]) "
+                    + "local requested = tonumber(ARGV[4]) "
+                    + "local state = redis.call('hmget', KEYS[1], 'tokens', 'ts') "
+                    + "local tokens = tonumber(state[1]) or capacity "
+                    + "local ts = tonumber(state[2]) or now "
+                    + "if now > ts then "
+                    + "tokens = math.min(capacity, tokens + (now - ts) * rate) "
+                    + "ts = now "
+                    + "end "
+                    + "local allowed = 0 "
+                    + "if tokens >= requested then "
+                    + "tokens = tokens - requested "
+                    + "allowed = 1 "
+                    + "end "
+                    + "redis.call('hmset', KEYS[1], 'tokens', tokens, 'ts', ts) "
+                    + "redis.call('pexpire', KEYS[1], math.ceil((capacity - tokens) / rate) + 1000) "
+                    + "local wait = 0 "
+                    + "if tokens < 1 then "
+                    + "wait = math.ceil((1 - tokens) / rate) "
+                    + "end "
+                    + "return string.format('%d:%d', allowed, wait)");
+
+    private final long capacity;
+    private final double permitsPerSecond;
+
+    /**
+     * 构建令牌桶
+     *
+     * @param name             限流器名，作为Redis key的前缀
+     * @param capacity         桶的容量，即允许的最大突发
+     * @param permitsPerSecond 每秒补充的令牌数
+     */
+    public TokenBucketRateLimiter(String name, long capacity, double permitsPerSecond) {
+        super(name, capacity);
+        Assert.isTrue(capacity > 0, "capacity must be positive, got %s", capacity);
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be positive, got %s", permitsPerSecond);
+        this.capacity = capacity;
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /**
+     * 桶的容量
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 每秒补充的令牌数
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    @Override
+    protected RedisScript script() {
+        return SCRIPT;
+    }
+
+    @Override
+    protected List<String> args(long now, int permits) {
+        return Arrays.asList(String.valueOf(capacity), String.valueOf(permitsPerSecond / 1000),
+                String.valueOf(now), String.valueOf(permits));
+    }
+}
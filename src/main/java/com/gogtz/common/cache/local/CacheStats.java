@@ -0,0 +1,92 @@
+package com.gogtz.common.cache.local;
+
+/**
+ * 缓存统计快照<br>
+ * 由{@link LocalCache#stats()}生成，创建后不可变
+ *
+ * @author t
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expireCount;
+    private final long size;
+    private final long weightedSize;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long expireCount, long size, long weightedSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expireCount = expireCount;
+        this.size = size;
+        this.weightedSize = weightedSize;
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 未命中次数（包括已过期的条目）
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 因容量不足被淘汰的条目数
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 因过期被清除的条目数
+     */
+    public long getExpireCount() {
+        return expireCount;
+    }
+
+    /**
+     * 当前条目数
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 当前总权重
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * 请求总数
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * 命中率，没有请求时为1.0
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount
+                + ", expireCount=" + expireCount
+                + ", size=" + size
+                + ", weightedSize=" + weightedSize + "}";
+    }
+}
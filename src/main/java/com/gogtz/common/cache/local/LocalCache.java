@@ -0,0 +1,562 @@
+package com.gogtz.common.cache.local;
+
+import com.gogtz.common.lang.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 有界并发本地缓存<br>
+ * <ol>
+ * <li>数据存放在{@link ConcurrentHashMap}中，读操作不加锁</li>
+ * <li>按LRU顺序淘汰，容量可以按条目数或按{@link Weigher}计算的权重限制</li>
+ * <li>支持全局/单条目的写入过期时间（TTL）以及空闲过期时间</li>
+ * <li>提供命中、未命中、淘汰、过期计数</li>
+ * <li>{@link #getOrLoad(Object, Function, long, long, TimeUnit)}合并并发加载，支持提前刷新和过期后短时间内返回旧值</li>
+ * </ol>
+ * 读操作只把访问记录放入一个有损的缓冲区，LRU链表的调整在持有淘汰锁的线程中批量进行，
+ * 获取不到锁的读线程直接返回，因此热点读不会阻塞。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author t
+ */
+public class LocalCache<K, V> {
+
+    /**
+     * 读缓冲达到该数量时尝试整理LRU链表
+     */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+
+    /**
+     * 读缓冲上限，超过后丢弃访问记录
+     */
+    private static final int READ_BUFFER_MAX = 128;
+
+    /**
+     * 每次整理时从链表头部检查过期条目的最大数量
+     */
+    private static final int EXPIRE_SWEEP_LIMIT = 16;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final long maximumWeight;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Node<K, V>> readBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+    private final SingleFlight<K, V> loads = new SingleFlight<K, V>();
+
+    /**
+     * LRU链表，由evictionLock保护
+     */
+    private Node<K, V> head;
+    private Node<K, V> tail;
+    private long weightedSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expireCount = new LongAdder();
+
+    /**
+     * 按条目数限制容量，不过期
+     *
+     * @param maximumSize 最大条目数
+     */
+    public LocalCache(long maximumSize) {
+        this(maximumSize, 0, 0, null);
+    }
+
+    /**
+     * 按条目数限制容量
+     *
+     * @param maximumSize            最大条目数
+     * @param expireAfterWriteMillis 写入后过期时间（毫秒），0表示不过期
+     */
+    public LocalCache(long maximumSize, long expireAfterWriteMillis) {
+        this(maximumSize, expireAfterWriteMillis, 0, null);
+    }
+
+    /**
+     * 构建缓存
+     *
+     * @param maximumWeight           最大权重，未指定weigher时即最大条目数
+     * @param expireAfterWriteMillis  写入后过期时间（毫秒），0表示不过期
+     * @param expireAfterAccessMillis 空闲过期时间（毫秒），0表示不过期
+     * @param weigher                 权重计算器，null时每个条目权重为1
+     */
+    @SuppressWarnings("unchecked")
+    public LocalCache(long maximumWeight, long expireAfterWriteMillis, long expireAfterAccessMillis,
+                      Weigher<? super K, ? super V> weigher) {
+        Assert.isTrue(maximumWeight >= 0, "maximumWeight must not be negative: %s", maximumWeight);
+        Assert.isTrue(expireAfterWriteMillis >= 0, "expireAfterWrite must not be negative: %s", expireAfterWriteMillis);
+        Assert.isTrue(expireAfterAccessMillis >= 0, "expireAfterAccess must not be negative: %s", expireAfterAccessMillis);
+        this.maximumWeight = maximumWeight;
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMillis);
+        this.expireAfterAccessNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterAccessMillis);
+        this.weigher = weigher == null ? (Weigher<? super K, ? super V>) SingletonWeigher.INSTANCE : weigher;
+        this.data = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 从缓存中取得数据
+     *
+     * @param key key
+     * @return 值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        long now = System.nanoTime();
+        if (isExpired(node, now)) {
+            removeIfDead(node, now);
+            missCount.increment();
+            return null;
+        }
+        node.accessTime = now;
+        hitCount.increment();
+        afterRead(node);
+        return node.value;
+    }
+
+    /**
+     * 读取缓存，不存在时加载，同一个key的并发加载只执行一次
+     *
+     * @param key    key
+     * @param loader 加载方法，返回null时不缓存
+     * @param ttl    过期时间，0表示不过期
+     * @param unit   时间单位
+     * @return 值
+     */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader, long ttl, TimeUnit unit) {
+        return getOrLoad(key, loader, ttl, 0, unit);
+    }
+
+    /**
+     * 读取缓存，不存在时加载，同一个key的并发加载只执行一次
+     * <ol>
+     * <li>临近过期时按上一次加载的耗时随机地提前在后台刷新</li>
+     * <li>过期后staleTtl内仍返回旧值，同时在后台刷新</li>
+     * </ol>
+     *
+     * @param key      key
+     * @param loader   加载方法，返回null时不缓存
+     * @param ttl      过期时间，0表示不过期
+     * @param staleTtl 过期后仍可返回旧值的时间，0表示过期后同步加载
+     * @param unit     时间单位
+     * @return 值
+     */
+    public V getOrLoad(final K key, final Function<? super K, ? extends V> loader, final long ttl,
+                       final long staleTtl, final TimeUnit unit) {
+        Assert.notNull(key, "key must not be null");
+        Assert.isTrue(ttl >= 0, "ttl must not be negative: %s", ttl);
+        Assert.isTrue(staleTtl >= 0, "staleTtl must not be negative: %s", staleTtl);
+        Supplier<V> load = new Supplier<V>() {
+            @Override
+            public V get() {
+                long start = System.nanoTime();
+                V value = loader.apply(key);
+                if (value != null) {
+                    put(key, value, unit.toNanos(ttl), unit.toNanos(staleTtl), System.nanoTime() - start);
+                }
+                return value;
+            }
+        };
+        Node<K, V> node = data.get(key);
+        long now = System.nanoTime();
+        if (node != null && !isDead(node, now)) {
+            node.accessTime = now;
+            hitCount.increment();
+            afterRead(node);
+            if (isExpired(node, now)) {
+                loads.executeAsync(key, load);
+            } else if (node.ttlNanos > 0
+                    && SingleFlight.shouldRefreshEarly(node.writeTime + node.ttlNanos - now, node.loadNanos)) {
+                loads.executeAsync(key, load);
+            }
+            return node.value;
+        }
+        missCount.increment();
+        return loads.execute(key, load);
+    }
+
+    /**
+     * 判断缓存中是否存在未过期的数据，不影响统计和LRU顺序
+     *
+     * @param key key
+     * @return 是否存在
+     */
+    public boolean containsKey(K key) {
+        Node<K, V> node = data.get(key);
+        return node != null && !isExpired(node, System.nanoTime());
+    }
+
+    /**
+     * 添加缓存，使用默认过期时间
+     *
+     * @param key   key
+     * @param value 值
+     * @return 原来的值
+     */
+    public V put(K key, V value) {
+        return put(key, value, expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 添加缓存，指定该条目的过期时间
+     *
+     * @param key   key
+     * @param value 值
+     * @param ttl   过期时间，0表示不过期
+     * @param unit  时间单位
+     * @return 原来的值
+     */
+    public V put(K key, V value, long ttl, TimeUnit unit) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+        Assert.isTrue(ttl >= 0, "ttl must not be negative: %s", ttl);
+        int weight = weigher.weigh(key, value);
+        Assert.isTrue(weight >= 0, "weight must not be negative: %s", weight);
+        return put(key, value, weight, unit.toNanos(ttl), 0, 0);
+    }
+
+    private V put(K key, V value, long ttlNanos, long staleNanos, long loadNanos) {
+        int weight = weigher.weigh(key, value);
+        Assert.isTrue(weight >= 0, "weight must not be negative: %s", weight);
+        return put(key, value, weight, ttlNanos, staleNanos, loadNanos);
+    }
+
+    private V put(K key, V value, int weight, long ttlNanos, long staleNanos, long loadNanos) {
+        long now = System.nanoTime();
+        final Node<K, V> node = new Node<K, V>(key, value, weight, now, ttlNanos, staleNanos, loadNanos);
+        final Node<K, V> prior = data.put(key, node);
+        if (prior != null) {
+            prior.alive = false;
+        }
+        writeBuffer.add(new Runnable() {
+            @Override
+            public void run() {
+                if (prior != null) {
+                    unlink(prior);
+                }
+                if (node.alive) {
+                    link(node);
+                }
+            }
+        });
+        drainBuffers();
+        return prior == null || isExpired(prior, now) ? null : prior.value;
+    }
+
+    /**
+     * 从缓存中移除内容
+     *
+     * @param key key
+     * @return 被移除的值
+     */
+    public V remove(K key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        afterRemove(node);
+        return isExpired(node, System.nanoTime()) ? null : node.value;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (K key : data.keySet()) {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                node.alive = false;
+            }
+        }
+        evictionLock.lock();
+        try {
+            maintenance();
+            // 清除期间并发写入的条目仍然存活，只摘除已失效的节点
+            Node<K, V> node = head;
+            while (node != null) {
+                Node<K, V> next = node.next;
+                if (!node.alive) {
+                    unlink(node);
+                }
+                node = next;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 执行挂起的维护操作：整理LRU链表、淘汰超出容量的条目、清理链表头部的过期条目
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前条目数（可能包含尚未清理的过期条目）
+     *
+     * @return 条目数
+     */
+    public long size() {
+        return data.size();
+    }
+
+    /**
+     * 当前总权重
+     *
+     * @return 总权重
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 最大权重
+     *
+     * @return 最大权重
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * 取得统计快照
+     *
+     * @return 统计快照
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), expireCount.sum(),
+                data.size(), weightedSize());
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        if (node.ttlNanos > 0 && now - node.writeTime >= node.ttlNanos) {
+            return true;
+        }
+        return expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos;
+    }
+
+    /**
+     * 已过期且超过了可以返回旧值的时间
+     */
+    private boolean isDead(Node<K, V> node, long now) {
+        if (node.ttlNanos > 0 && now - node.writeTime >= node.ttlNanos + node.staleNanos) {
+            return true;
+        }
+        return expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos;
+    }
+
+    private void removeIfDead(Node<K, V> node, long now) {
+        if (isDead(node, now) && data.remove(node.key, node)) {
+            expireCount.increment();
+            afterRemove(node);
+        }
+    }
+
+    private void afterRead(Node<K, V> node) {
+        int pending = readBufferSize.get();
+        if (pending < READ_BUFFER_MAX) {
+            readBuffer.offer(node);
+            pending = readBufferSize.incrementAndGet();
+        }
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterRemove(final Node<K, V> node) {
+        node.alive = false;
+        writeBuffer.add(new Runnable() {
+            @Override
+            public void run() {
+                unlink(node);
+            }
+        });
+        drainBuffers();
+    }
+
+    /**
+     * 写操作后整理，写线程会等待淘汰锁，保证容量始终有界
+     */
+    private void drainBuffers() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 必须在持有evictionLock时调用
+     */
+    private void maintenance() {
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+        }
+
+        Node<K, V> node;
+        while ((node = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            if (node.linked) {
+                moveToTail(node);
+            }
+        }
+
+        evict();
+        sweepExpired();
+    }
+
+    private void evict() {
+        while (weightedSize > maximumWeight && head != null) {
+            Node<K, V> victim = head;
+            unlink(victim);
+            if (data.remove(victim.key, victim)) {
+                victim.alive = false;
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private void sweepExpired() {
+        long now = System.nanoTime();
+        Node<K, V> node = head;
+        for (int i = 0; i < EXPIRE_SWEEP_LIMIT && node != null; i++) {
+            Node<K, V> next = node.next;
+            if (isDead(node, now) && data.remove(node.key, node)) {
+                node.alive = false;
+                unlink(node);
+                expireCount.increment();
+            }
+            node = next;
+        }
+    }
+
+    private void link(Node<K, V> node) {
+        if (node.linked) {
+            return;
+        }
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        node.linked = true;
+        weightedSize += node.weight;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (!node.linked) {
+            return;
+        }
+        Node<K, V> prev = node.prev;
+        Node<K, V> next = node.next;
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.prev = prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.linked = false;
+        weightedSize -= node.weight;
+    }
+
+    private void moveToTail(Node<K, V> node) {
+        if (tail == node) {
+            return;
+        }
+        unlink(node);
+        link(node);
+    }
+
+    /**
+     * 缓存条目，值不可变，更新时替换整个节点
+     */
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        final long writeTime;
+        final long ttlNanos;
+        /**
+         * 过期后仍可返回旧值的时间
+         */
+        final long staleNanos;
+        /**
+         * 加载该值的耗时，用于提前刷新
+         */
+        final long loadNanos;
+        volatile long accessTime;
+        volatile boolean alive = true;
+
+        // 以下字段由evictionLock保护
+        Node<K, V> prev;
+        Node<K, V> next;
+        boolean linked;
+
+        Node(K key, V value, int weight, long writeTime, long ttlNanos, long staleNanos, long loadNanos) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+            this.ttlNanos = ttlNanos;
+            this.staleNanos = staleNanos;
+            this.loadNanos = loadNanos;
+            this.accessTime = writeTime;
+        }
+    }
+
+    /**
+     * 每个条目权重为1
+     */
+    private enum SingletonWeigher implements Weigher<Object, Object> {
+        INSTANCE;
+
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    }
+}
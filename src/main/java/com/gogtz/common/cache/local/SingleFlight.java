@@ -0,0 +1,164 @@
+package com.gogtz.common.cache.local;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个key的并发加载<br>
+ * 同一时刻每个key只有一个加载在执行，其他调用者等待并共享它的结果；
+ * 后台刷新在共享的刷新线程池中执行，线程池满时放弃本次刷新。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author t
+ */
+public class SingleFlight<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    /**
+     * 提前刷新的系数，越大越早刷新
+     */
+    private static final double BETA = 1.0;
+
+    private static final ThreadPoolExecutor refreshExecutor;
+
+    static {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        refreshExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1024), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cache-refresh-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * 执行加载，同一个key正在加载时等待它的结果
+     *
+     * @param key    key
+     * @param loader 加载方法
+     * @return 加载结果
+     */
+    public V execute(K key, Supplier<? extends V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<V>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, call);
+        if (running != null) {
+            return await(running);
+        }
+        return run(key, call, loader);
+    }
+
+    /**
+     * 在后台执行加载，同一个key正在加载时直接返回
+     *
+     * @param key    key
+     * @param loader 加载方法
+     * @return 是否提交了新的加载
+     */
+    public boolean executeAsync(final K key, final Supplier<? extends V> loader) {
+        final CompletableFuture<V> call = new CompletableFuture<V>();
+        if (calls.putIfAbsent(key, call) != null) {
+            return false;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        SingleFlight.this.run(key, call, loader);
+                    } catch (RuntimeException e) {
+                        logger.warn("refresh " + key + " failed: " + e.getMessage());
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            calls.remove(key, call);
+            call.complete(null);
+            return false;
+        }
+    }
+
+    /**
+     * 是否有正在执行的加载
+     *
+     * @param key key
+     * @return 是否正在加载
+     */
+    public boolean isRunning(K key) {
+        return calls.containsKey(key);
+    }
+
+    /**
+     * 按XFetch算法判断是否提前刷新：剩余时间越短、加载越慢，提前刷新的概率越大
+     *
+     * @param remainingNanos 距离过期的时间
+     * @param loadNanos      上一次加载的耗时
+     * @return 是否提前刷新
+     */
+    public static boolean shouldRefreshEarly(long remainingNanos, long loadNanos) {
+        if (loadNanos <= 0) {
+            return false;
+        }
+        if (remainingNanos <= 0) {
+            return true;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        return -loadNanos * BETA * Math.log(random) >= remainingNanos;
+    }
+
+    private V run(K key, CompletableFuture<V> call, Supplier<? extends V> loader) {
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+}
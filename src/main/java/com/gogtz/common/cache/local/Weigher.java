@@ -0,0 +1,21 @@
+package com.gogtz.common.cache.local;
+
+/**
+ * 缓存条目权重计算器<br>
+ * 用于按权重（例如估算的字节数）而非条目数限制{@link LocalCache}的容量
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author t
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * 计算条目权重，不能为负数
+     *
+     * @param key   键
+     * @param value 值
+     * @return 权重
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,409 @@
+package com.gogtz.common.cache.lock;
+
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.cache.ScriptRegistry;
+import com.gogtz.common.lang.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Redis分布式锁</h1>
+ * <ol><strong>
+ * <li>通过SET NX PX原子地加锁，锁的值为每次加锁生成的唯一标识</li>
+ * <li>解锁和续期由Lua脚本先校验标识，不会释放其他持有者的锁</li>
+ * <li>持有期间后台线程每隔租约的1/3续期一次，持有者宕机后最多一个租约时间即可被其他节点获取</li>
+ * <li>同一JVM内先获取同名的本地锁，同名锁只有一个线程访问Redis；本地锁按引用计数，没有线程使用时移除</li>
+ * </strong>
+ * </ol>
+ * 同一个实例可以在持有线程内重入，不同实例之间不可重入：
+ * 线程已通过另一个实例持有同名的锁时，加锁立即抛出IllegalStateException，而不是一直等待自己释放。
+ * <pre>
+ * Lock lock = RedisUtils.getLock("order:" + orderId);
+ * if (lock.tryLock(3, TimeUnit.SECONDS)) {
+ *     try {
+ *         ...
+ *     } finally {
+ *         lock.unlock();
+ *     }
+ * }
+ * </pre>
+ *
+ * @author t
+ */
+public class RedisLock implements Lock {
+    private static final Logger logger = LoggerFactory.getLogger(RedisLock.class);
+
+    /**
+     * 默认租约（毫秒）
+     */
+    public static final long DEFAULT_LEASE = 30000L;
+
+    /**
+     * 重试的最短、最长等待时间（毫秒）
+     */
+    private static final long MIN_BACKOFF = 2L;
+    private static final long MAX_BACKOFF = 100L;
+
+    /**
+     * KEYS: 锁; ARGV: 标识, 租约
+     */
+    private static final RedisScript ACQUIRE_SCRIPT = ScriptRegistry.register("LOCK_ACQUIRE",
+            "return redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2])");
+
+    /**
+     * KEYS: 锁; ARGV: 标识, 租约
+     */
+    private static final RedisScript RENEW_SCRIPT = ScriptRegistry.register("LOCK_RENEW",
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "end "
+                    + "return 0");
+
+    /**
+     * 正在使用的本地锁，按锁名区分
+     */
+    private static final ConcurrentHashMap<String, LocalLock> localLocks = new ConcurrentHashMap<String, LocalLock>();
+
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "redis-lock-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final String name;
+    private final long lease;
+
+    /**
+     * 以下字段只由持有线程修改
+     */
+    private volatile Thread owner;
+    private volatile String token;
+    private volatile boolean lost;
+    private int holdCount;
+    private ScheduledFuture<?> renewal;
+    private LocalLock localLock;
+
+    /**
+     * 使用默认租约构建锁
+     *
+     * @param name 锁名，即Redis的key
+     */
+    public RedisLock(String name) {
+        this(name, DEFAULT_LEASE);
+    }
+
+    /**
+     * 构建锁
+     *
+     * @param name  锁名，即Redis的key
+     * @param lease 租约（毫秒），持有期间自动续期
+     */
+    public RedisLock(String name, long lease) {
+        Assert.notBlank(name, "lock name must not be blank");
+        Assert.isTrue(lease >= 100, "lease must be at least 100ms, got %s", lease);
+        this.name = name;
+        this.lease = lease;
+    }
+
+    /**
+     * 锁名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前线程是否持有锁
+     *
+     * @return 是否持有
+     */
+    public boolean isHeldByCurrentThread() {
+        return owner == Thread.currentThread();
+    }
+
+    /**
+     * 持有期间发现锁已过期或被其他节点获取时为true，此时受保护的操作可能已不再互斥
+     *
+     * @return 是否丢失
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (tryLock(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        while (!tryLock(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * 只尝试一次，不等待
+     *
+     * @return 是否获得锁
+     */
+    @Override
+    public boolean tryLock() {
+        if (reenter()) {
+            return true;
+        }
+        LocalLock local = retainNotHeld();
+        if (!local.tryLock()) {
+            release(name, local);
+            return false;
+        }
+        if (acquire(local)) {
+            return true;
+        }
+        local.unlock();
+        release(name, local);
+        return false;
+    }
+
+    /**
+     * 在等待时间内重试，重试间隔按指数增加并加入随机抖动
+     *
+     * @param time 最长等待时间
+     * @param unit 时间单位
+     * @return 是否获得锁
+     * @throws InterruptedException 等待期间被中断
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (reenter()) {
+            return true;
+        }
+        long deadline = deadline(unit.toNanos(time));
+        LocalLock local = retainNotHeld();
+        try {
+            if (!local.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                release(name, local);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            release(name, local);
+            throw e;
+        }
+        long backoff = MIN_BACKOFF;
+        try {
+            while (true) {
+                if (acquire(local)) {
+                    return true;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                long sleep = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                Thread.sleep(Math.min(sleep, remaining));
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            }
+        } catch (InterruptedException e) {
+            local.unlock();
+            release(name, local);
+            throw e;
+        }
+        local.unlock();
+        release(name, local);
+        return false;
+    }
+
+    @Override
+    public void unlock() {
+        if (owner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("lock " + name + " is not held by current thread");
+        }
+        if (--holdCount > 0) {
+            return;
+        }
+        renewal.cancel(false);
+        renewal = null;
+        String current = token;
+        LocalLock local = localLock;
+        owner = null;
+        token = null;
+        localLock = null;
+        try {
+            RedisUtils.compareAndDelete(name, current);
+        } finally {
+            local.unlock();
+            release(name, local);
+        }
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+
+    private boolean reenter() {
+        if (owner == Thread.currentThread()) {
+            holdCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 已持有本地锁时向Redis加锁，成功后开始续期
+     *
+     * @param local 已持有的本地锁，成功时由本实例保留到解锁
+     * @return 是否成功
+     */
+    private boolean acquire(LocalLock local) {
+        String candidate = UUID.randomUUID().toString();
+        String reply = ACQUIRE_SCRIPT.execute(String.class, Collections.singletonList(name), candidate, lease);
+        if (!"OK".equals(reply)) {
+            return false;
+        }
+        token = candidate;
+        localLock = local;
+        owner = Thread.currentThread();
+        lost = false;
+        holdCount = 1;
+        long period = lease / 3;
+        renewal = watchdog.scheduleWithFixedDelay(new Renewal(candidate), period, period, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 取得本地锁；当前线程已经持有时说明是通过同名的另一个实例获取的，Redis上的锁不会再被自己获取
+     *
+     * @return 本地锁
+     * @throws IllegalStateException 当前线程已通过另一个实例持有同名的锁
+     */
+    private LocalLock retainNotHeld() {
+        LocalLock local = retain(name);
+        if (local.isHeldByCurrentThread()) {
+            release(name, local);
+            throw new IllegalStateException("lock " + name + " is already held by current thread through another instance");
+        }
+        return local;
+    }
+
+    private static long deadline(long timeoutNanos) {
+        long now = System.nanoTime();
+        long deadline = now + timeoutNanos;
+        // 溢出时视为一直等待
+        return deadline < now ? Long.MAX_VALUE : deadline;
+    }
+
+    /**
+     * 取得锁名对应的本地锁并增加引用计数，等待或持有本地锁期间必须保留引用
+     *
+     * @param name 锁名
+     * @return 本地锁
+     */
+    private static LocalLock retain(String name) {
+        while (true) {
+            LocalLock local = localLocks.get(name);
+            if (local == null) {
+                LocalLock created = new LocalLock();
+                local = localLocks.putIfAbsent(name, created);
+                if (local == null) {
+                    local = created;
+                }
+            }
+            synchronized (local) {
+                // 已经移除的本地锁不能再使用，重新取得
+                if (local.users >= 0) {
+                    local.users++;
+                    return local;
+                }
+            }
+        }
+    }
+
+    /**
+     * 减少本地锁的引用计数，没有引用时移除
+     *
+     * @param name  锁名
+     * @param local 本地锁
+     */
+    private static void release(String name, LocalLock local) {
+        synchronized (local) {
+            if (--local.users == 0) {
+                local.users = -1;
+                localLocks.remove(name, local);
+            }
+        }
+    }
+
+    /**
+     * 带引用计数的本地锁，users为-1表示已经移除
+     */
+    private static class LocalLock extends ReentrantLock {
+        private static final long serialVersionUID = 5712829140287532401L;
+
+        private int users;
+    }
+
+    /**
+     * 续期任务，发现锁已不属于自己时停止
+     */
+    private class Renewal implements Runnable {
+        private final String expected;
+
+        Renewal(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void run() {
+            if (!expected.equals(token)) {
+                throw new IllegalStateException("lock released");
+            }
+            Long reply = RENEW_SCRIPT.execute(Long.class, Collections.singletonList(name), expected, lease);
+            if (reply == null) {
+                // Redis暂时不可用，下次继续尝试
+                return;
+            }
+            if (!Long.valueOf(1L).equals(reply) && expected.equals(token)) {
+                lost = true;
+                logger.warn("lease of redis lock " + name + " could not be renewed");
+                // 抛出异常以停止后续续期
+                throw new IllegalStateException("lock lost");
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.gogtz.common.cache.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * 单个命令的统计快照
+ *
+ * @author t
+ */
+public final class CommandStats {
+    private final String command;
+    private final long calls;
+    private final long errors;
+    private final long timeouts;
+    private final long latencyMeanMicros;
+    private final long latencyP50Micros;
+    private final long latencyP99Micros;
+    private final long latencyP999Micros;
+    private final long latencyMaxMicros;
+    private final long payloadMeanBytes;
+    private final long payloadP99Bytes;
+    private final long payloadMaxBytes;
+
+    @ConstructorProperties({"command", "calls", "errors", "timeouts", "latencyMeanMicros", "latencyP50Micros",
+            "latencyP99Micros", "latencyP999Micros", "latencyMaxMicros", "payloadMeanBytes", "payloadP99Bytes",
+            "payloadMaxBytes"})
+    public CommandStats(String command, long calls, long errors, long timeouts, long latencyMeanMicros,
+                        long latencyP50Micros, long latencyP99Micros, long latencyP999Micros, long latencyMaxMicros,
+                        long payloadMeanBytes, long payloadP99Bytes, long payloadMaxBytes) {
+        this.command = command;
+        this.calls = calls;
+        this.errors = errors;
+        this.timeouts = timeouts;
+        this.latencyMeanMicros = latencyMeanMicros;
+        this.latencyP50Micros = latencyP50Micros;
+        this.latencyP99Micros = latencyP99Micros;
+        this.latencyP999Micros = latencyP999Micros;
+        this.latencyMaxMicros = latencyMaxMicros;
+        this.payloadMeanBytes = payloadMeanBytes;
+        this.payloadP99Bytes = payloadP99Bytes;
+        this.payloadMaxBytes = payloadMaxBytes;
+    }
+
+    /**
+     * 命令名
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 调用次数
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * 出错次数（包括超时）
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * 读写超时次数
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * 耗时平均值（微秒），包括借出连接的时间
+     */
+    public long getLatencyMeanMicros() {
+        return latencyMeanMicros;
+    }
+
+    /**
+     * 耗时50分位（微秒）
+     */
+    public long getLatencyP50Micros() {
+        return latencyP50Micros;
+    }
+
+    /**
+     * 耗时99分位（微秒）
+     */
+    public long getLatencyP99Micros() {
+        return latencyP99Micros;
+    }
+
+    /**
+     * 耗时99.9分位（微秒）
+     */
+    public long getLatencyP999Micros() {
+        return latencyP999Micros;
+    }
+
+    /**
+     * 耗时最大值（微秒）
+     */
+    public long getLatencyMaxMicros() {
+        return latencyMaxMicros;
+    }
+
+    /**
+     * 读写的值大小平均值（字节）
+     */
+    public long getPayloadMeanBytes() {
+        return payloadMeanBytes;
+    }
+
+    /**
+     * 值大小99分位（字节）
+     */
+    public long getPayloadP99Bytes() {
+        return payloadP99Bytes;
+    }
+
+    /**
+     * 值大小最大值（字节）
+     */
+    public long getPayloadMaxBytes() {
+        return payloadMaxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandStats{" +
+                "command='" + command + '\'' +
+                ", calls=" + calls +
+                ", errors=" + errors +
+                ", timeouts=" + timeouts +
+                ", latencyMeanMicros=" + latencyMeanMicros +
+                ", latencyP50Micros=" + latencyP50Micros +
+                ", latencyP99Micros=" + latencyP99Micros +
+                ", latencyP999Micros=" + latencyP999Micros +
+                ", latencyMaxMicros=" + latencyMaxMicros +
+                ", payloadMeanBytes=" + payloadMeanBytes +
+                ", payloadP99Bytes=" + payloadP99Bytes +
+                ", payloadMaxBytes=" + payloadMaxBytes +
+                '}';
+    }
+}
@@ -0,0 +1,147 @@
+package com.gogtz.common.cache.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数-线性直方图<br>
+ * 参照HdrHistogram的分桶方式：小于64的值每个值一个桶，之后每个2的幂区间再等分为32个桶，
+ * 相对误差不超过约3%。记录操作只有几次原子加，适合在生产环境常开。
+ *
+ * @author t
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * 构建直方图
+     *
+     * @param highestTrackableValue 可记录的最大值，超过的值按最大值记录
+     */
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < SUB_BUCKET_COUNT) {
+            highestTrackableValue = SUB_BUCKET_COUNT;
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /**
+     * 记录一个值，负数按0记录
+     *
+     * @param value 值
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > highestTrackableValue) {
+            value = highestTrackableValue;
+        }
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * 记录的总次数
+     *
+     * @return 次数
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * 记录值的总和
+     *
+     * @return 总和
+     */
+    public long getSum() {
+        return totalSum.get();
+    }
+
+    /**
+     * 平均值
+     *
+     * @return 平均值，没有记录时为0
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalSum.get() / count;
+    }
+
+    /**
+     * 最大值
+     *
+     * @return 最大值
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * 取得百分位上的值（所在桶的上界）
+     *
+     * @param percentile 百分位，0到100
+     * @return 值，没有记录时为0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double p = Math.min(Math.max(percentile, 0), 100);
+        long target = Math.max(1, (long) Math.ceil(p / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * 清空记录
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_HALF;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket;
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.gogtz.common.cache.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * key或key前缀的统计值
+ *
+ * @author t
+ */
+public final class KeyStats {
+    private final String key;
+    private final long value;
+
+    @ConstructorProperties({"key", "value"})
+    public KeyStats(String key, long value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * key或key前缀
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 访问次数（已按采样率换算）或字节数
+     */
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + value;
+    }
+}
@@ -0,0 +1,17 @@
+package com.gogtz.common.cache.metrics;
+
+/**
+ * 指标输出<br>
+ * 定期收到指标快照，可以写日志或转发到监控系统；实现不应阻塞太久
+ *
+ * @author t
+ */
+public interface MetricsSink {
+
+    /**
+     * 输出一次快照
+     *
+     * @param snapshot 快照
+     */
+    void report(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,60 @@
+package com.gogtz.common.cache.metrics;
+
+import java.util.List;
+
+/**
+ * Redis指标快照
+ *
+ * @author t
+ */
+public final class MetricsSnapshot {
+    private final long timestamp;
+    private final List<CommandStats> commands;
+    private final List<KeyStats> hotKeys;
+    private final List<KeyStats> hotPrefixes;
+    private final List<KeyStats> bigKeys;
+
+    public MetricsSnapshot(long timestamp, List<CommandStats> commands, List<KeyStats> hotKeys,
+                           List<KeyStats> hotPrefixes, List<KeyStats> bigKeys) {
+        this.timestamp = timestamp;
+        this.commands = commands;
+        this.hotKeys = hotKeys;
+        this.hotPrefixes = hotPrefixes;
+        this.bigKeys = bigKeys;
+    }
+
+    /**
+     * 生成时间（毫秒）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 各命令的统计，按命令名排序
+     */
+    public List<CommandStats> getCommands() {
+        return commands;
+    }
+
+    /**
+     * 采样估计的访问最多的key
+     */
+    public List<KeyStats> getHotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * 采样估计的访问最多的key前缀
+     */
+    public List<KeyStats> getHotPrefixes() {
+        return hotPrefixes;
+    }
+
+    /**
+     * 值最大的key
+     */
+    public List<KeyStats> getBigKeys() {
+        return bigKeys;
+    }
+}
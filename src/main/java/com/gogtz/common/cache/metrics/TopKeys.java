@@ -0,0 +1,95 @@
+package com.gogtz.common.cache.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 有界的热点统计<br>
+ * 使用Space-Saving算法，最多保留capacity个key，超出时替换计数最小的key，
+ * 新key继承被替换者的计数，因此计数是上界，误差不超过被替换者的计数。
+ * 按最大值统计时只保留值最大的capacity个key。
+ *
+ * @author t
+ */
+public class TopKeys {
+
+    private final int capacity;
+    private final boolean sum;
+    private final Map<String, long[]> counters;
+
+    /**
+     * 构建统计
+     *
+     * @param capacity 最多保留的key数
+     * @param sum      true时累加，false时保留每个key的最大值
+     */
+    public TopKeys(int capacity, boolean sum) {
+        this.capacity = capacity;
+        this.sum = sum;
+        this.counters = new HashMap<String, long[]>(capacity * 2);
+    }
+
+    /**
+     * 记录一次
+     *
+     * @param key   key
+     * @param value 累加的值或本次的值
+     */
+    public synchronized void add(String key, long value) {
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0] = sum ? counter[0] + value : Math.max(counter[0], value);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{value});
+            return;
+        }
+        String minKey = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (entry.getValue()[0] < min) {
+                min = entry.getValue()[0];
+                minKey = entry.getKey();
+            }
+        }
+        if (sum) {
+            counters.remove(minKey);
+            counters.put(key, new long[]{min + value});
+        } else if (value > min) {
+            counters.remove(minKey);
+            counters.put(key, new long[]{value});
+        }
+    }
+
+    /**
+     * 取得值最大的n个key
+     *
+     * @param n 数量
+     * @return 按值从大到小排列
+     */
+    public synchronized List<KeyStats> top(int n) {
+        List<KeyStats> result = new ArrayList<KeyStats>(counters.size());
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            result.add(new KeyStats(entry.getKey(), entry.getValue()[0]));
+        }
+        Collections.sort(result, new Comparator<KeyStats>() {
+            @Override
+            public int compare(KeyStats o1, KeyStats o2) {
+                return Long.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        return result.size() > n ? new ArrayList<KeyStats>(result.subList(0, n)) : result;
+    }
+
+    /**
+     * 清空
+     */
+    public synchronized void reset() {
+        counters.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package com.gogtz.common.cache.queue;
+
+/**
+ * 队列消息处理<br>
+ * 正常返回表示处理成功并确认消息，抛出异常时消息重新入队，超过最大次数后转入死信队列
+ *
+ * @author t
+ */
+public interface MessageHandler {
+
+    /**
+     * 处理一条消息
+     *
+     * @param message 消息
+     * @throws Exception 处理失败
+     */
+    void handle(String message) throws Exception;
+}
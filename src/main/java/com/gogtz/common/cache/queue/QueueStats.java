@@ -0,0 +1,131 @@
+package com.gogtz.common.cache.queue;
+
+/**
+ * 队列消费统计快照<br>
+ * 由{@link RedisQueueConsumer#stats()}生成，无法从Redis取得的长度为-1
+ *
+ * @author t
+ */
+public final class QueueStats {
+    private final String queue;
+    private final long processedCount;
+    private final long failedCount;
+    private final long redeliveredCount;
+    private final long deadLetteredCount;
+    private final double throughput;
+    private final long lag;
+    private final long inFlight;
+    private final long latencyMeanMicros;
+    private final long latencyP99Micros;
+    private final long latencyMaxMicros;
+
+    public QueueStats(String queue, long processedCount, long failedCount, long redeliveredCount,
+                      long deadLetteredCount, double throughput, long lag, long inFlight,
+                      long latencyMeanMicros, long latencyP99Micros, long latencyMaxMicros) {
+        this.queue = queue;
+        this.processedCount = processedCount;
+        this.failedCount = failedCount;
+        this.redeliveredCount = redeliveredCount;
+        this.deadLetteredCount = deadLetteredCount;
+        this.throughput = throughput;
+        this.lag = lag;
+        this.inFlight = inFlight;
+        this.latencyMeanMicros = latencyMeanMicros;
+        this.latencyP99Micros = latencyP99Micros;
+        this.latencyMaxMicros = latencyMaxMicros;
+    }
+
+    /**
+     * 队列名
+     */
+    public String getQueue() {
+        return queue;
+    }
+
+    /**
+     * 处理成功的消息数
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * 处理失败的次数
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 超过可见超时后重新入队的消息数
+     */
+    public long getRedeliveredCount() {
+        return redeliveredCount;
+    }
+
+    /**
+     * 转入死信队列的消息数
+     */
+    public long getDeadLetteredCount() {
+        return deadLetteredCount;
+    }
+
+    /**
+     * 启动以来每秒处理成功的消息数
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 等待处理的消息数（队列长度）
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * 已取出尚未确认的消息数（处理中列表长度）
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 处理耗时平均值（微秒）
+     */
+    public long getLatencyMeanMicros() {
+        return latencyMeanMicros;
+    }
+
+    /**
+     * 处理耗时99分位（微秒）
+     */
+    public long getLatencyP99Micros() {
+        return latencyP99Micros;
+    }
+
+    /**
+     * 处理耗时最大值（微秒）
+     */
+    public long getLatencyMaxMicros() {
+        return latencyMaxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueStats{" +
+                "queue='" + queue + '\'' +
+                ", processedCount=" + processedCount +
+                ", failedCount=" + failedCount +
+                ", redeliveredCount=" + redeliveredCount +
+                ", deadLetteredCount=" + deadLetteredCount +
+                ", throughput=" + throughput +
+                ", lag=" + lag +
+                ", inFlight=" + inFlight +
+                ", latencyMeanMicros=" + latencyMeanMicros +
+                ", latencyP99Micros=" + latencyP99Micros +
+                ", latencyMaxMicros=" + latencyMaxMicros +
+                '}';
+    }
+}
@@ -0,0 +1,496 @@
+package com.gogtz.common.cache.queue;
+
+import com.gogtz.common.cache.RedisCallback;
+import com.gogtz.common.cache.RedisScript;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.cache.ScriptRegistry;
+import com.gogtz.common.cache.metrics.Histogram;
+import com.gogtz.common.lang.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Redis可靠队列消费</h1>
+ * 消费通过{@link RedisUtils#lpush(String, String...)}写入的队列，与{@link RedisUtils#brpoplpush(String, String, int)}一样从队列右侧取出。
+ * <ol><strong>
+ * <li>每次往返最多取出batchSize条消息，同时移入处理中列表（队列名:processing）并记录可见超时</li>
+ * <li>批量中的每条消息开始处理前，为它和之后还未处理的消息重新计算可见超时，同一次往返确认之前处理成功的消息；
+ * 单条消息的处理时间不超过可见超时即不会被重复投递。处理失败时重新入队</li>
+ * <li>超过可见超时仍未确认的消息（消费者宕机、处理过慢）由后台线程重新入队</li>
+ * <li>投递次数超过maxAttempts的消息转入死信队列（队列名:dead）</li>
+ * </strong>
+ * </ol>
+ * 处理中的消息以内容区分，内容相同的消息请带上唯一ID。
+ * 分片时队列的所有辅助key都在队列名所在的节点上，只能通过本类访问。
+ * <pre>
+ * RedisQueueConsumer consumer = new RedisQueueConsumer("order:queue", new MessageHandler() {
+ *     public void handle(String message) throws Exception {
+ *         ...
+ *     }
+ * }, 4, 10, 30000L, 3);
+ * consumer.start();
+ * ...
+ * consumer.stop(10, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * @author t
+ */
+public class RedisQueueConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(RedisQueueConsumer.class);
+
+    public static final String PROCESSING_SUFFIX = ":processing";
+    public static final String DEAD_LETTER_SUFFIX = ":dead";
+    public static final String DEADLINES_SUFFIX = ":deadlines";
+    public static final String ATTEMPTS_SUFFIX = ":attempts";
+
+    /**
+     * 队列为空时阻塞等待的时间（秒），决定停止消费的响应速度
+     */
+    private static final int BLOCK_SECONDS = 1;
+
+    /**
+     * Redis出错后的重试间隔（毫秒）
+     */
+    private static final long ERROR_BACKOFF = 1000L;
+
+    /**
+     * 每次检查超时消息的最大数量
+     */
+    private static final int REAP_LIMIT = 100;
+
+    /**
+     * 取出消息并记录超时时间<br>
+     * KEYS: 队列, 处理中列表, 超时时间; ARGV: 数量, 超时时间
+     */
+    private static final RedisScript POP_SCRIPT = ScriptRegistry.register("QUEUE_POLL",
+            "local result = {} "
+                    + "for i = 1, tonumber(ARGV[1]) do "
+                    + "local message = redis.call('rpoplpush', KEYS[1], KEYS[2]) "
+                    + "if not message then break end "
+                    + "redis.call('zadd', KEYS[3], ARGV[2], message) "
+                    + "result[i] = message "
+                    + "end "
+                    + "return result");
+
+    /**
+     * 确认一批消息<br>
+     * KEYS: 处理中列表, 超时时间, 投递次数; ARGV: 消息
+     */
+    private static final RedisScript ACK_SCRIPT = ScriptRegistry.register("QUEUE_ACK",
+            "for i = 1, #ARGV do "
+                    + "redis.call('lrem', KEYS[1], 1, ARGV[i]) "
+                    + "redis.call('zrem', KEYS[2], ARGV[i]) "
+                    + "redis.call('hdel', KEYS[3], ARGV[i]) "
+                    + "end "
+                    + "return #ARGV");
+
+    /**
+     * 确认之前处理成功的消息，并为还未处理的消息重新计算超时时间，已经超时被重新投递的消息不再设置<br>
+     * KEYS: 处理中列表, 超时时间, 投递次数; ARGV: 超时时间, 要确认的数量n, n条要确认的消息, 还未处理的消息...<br>
+     * 返回0表示下一条（第一条还未处理的）消息已经超时被重新投递，不应再处理
+     */
+    private static final RedisScript TOUCH_SCRIPT = ScriptRegistry.register("QUEUE_TOUCH",
+            "local acked = tonumber(ARGV[2]) "
+                    + "for i = 3, acked + 2 do "
+                    + "redis.call('lrem', KEYS[1], 1, ARGV[i]) "
+                    + "redis.call('zrem', KEYS[2], ARGV[i]) "
+                    + "redis.call('hdel', KEYS[3], ARGV[i]) "
+                    + "end "
+                    + "local result = 0 "
+                    + "for i = acked + 3, #ARGV do "
+                    + "if redis.call('zscore', KEYS[2], ARGV[i]) then "
+                    + "redis.call('zadd', KEYS[2], ARGV[1], ARGV[i]) "
+                    + "if i == acked + 3 then result = 1 end "
+                    + "end "
+                    + "end "
+                    + "return result");
+
+    /**
+     * 从处理中列表移出并重新入队，次数超过上限时转入死信队列<br>
+     * KEYS: 队列, 处理中列表, 超时时间, 投递次数, 死信队列; ARGV: 消息, 最大次数<br>
+     * 返回0表示消息已被确认或已被其他消费者处理，1表示重新入队，2表示转入死信队列
+     */
+    private static final RedisScript REQUEUE_SCRIPT = ScriptRegistry.register("QUEUE_REQUEUE",
+            "if redis.call('lrem', KEYS[2], 1, ARGV[1]) == 0 then "
+                    + "redis.call('zrem', KEYS[3], ARGV[1]) "
+                    + "return 0 "
+                    + "end "
+                    + "redis.call('zrem', KEYS[3], ARGV[1]) "
+                    + "if redis.call('hincrby', KEYS[4], ARGV[1], 1) >= tonumber(ARGV[2]) then "
+                    + "redis.call('hdel', KEYS[4], ARGV[1]) "
+                    + "redis.call('lpush', KEYS[5], ARGV[1]) "
+                    + "return 2 "
+                    + "end "
+                    + "redis.call('rpush', KEYS[1], ARGV[1]) "
+                    + "return 1");
+
+    private final String queue;
+    private final String processing;
+    private final String deadLetter;
+    private final String deadlines;
+    private final String attempts;
+    private final MessageHandler handler;
+    private final int concurrency;
+    private final int batchSize;
+    private final long visibilityTimeout;
+    private final int maxAttempts;
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong redeliveredCount = new AtomicLong();
+    private final AtomicLong deadLetteredCount = new AtomicLong();
+    private final Histogram latency = new Histogram(TimeUnit.HOURS.toMicros(1));
+
+    private volatile boolean running;
+    private volatile long startTime;
+    private Thread[] workers;
+    private ScheduledExecutorService reaper;
+
+    /**
+     * 单线程消费，每次最多取10条，可见超时30秒，最多投递3次
+     *
+     * @param queue   队列名
+     * @param handler 消息处理
+     */
+    public RedisQueueConsumer(String queue, MessageHandler handler) {
+        this(queue, handler, 1, 10, 30000L, 3);
+    }
+
+    /**
+     * 构建消费者
+     *
+     * @param queue             队列名
+     * @param handler           消息处理
+     * @param concurrency       消费线程数
+     * @param batchSize         每次往返最多取出的消息数
+     * @param visibilityTimeout 可见超时（毫秒），取出后超过该时间未确认的消息重新入队
+     * @param maxAttempts       最大投递次数，达到后转入死信队列
+     */
+    public RedisQueueConsumer(String queue, MessageHandler handler, int concurrency, int batchSize,
+                              long visibilityTimeout, int maxAttempts) {
+        Assert.notBlank(queue, "queue must not be blank");
+        Assert.notNull(handler, "handler must not be null");
+        Assert.isTrue(concurrency > 0, "concurrency must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(visibilityTimeout > 0, "visibilityTimeout must be positive");
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be positive");
+        this.queue = queue;
+        this.processing = queue + PROCESSING_SUFFIX;
+        this.deadLetter = queue + DEAD_LETTER_SUFFIX;
+        this.deadlines = queue + DEADLINES_SUFFIX;
+        this.attempts = queue + ATTEMPTS_SUFFIX;
+        this.handler = handler;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.visibilityTimeout = visibilityTimeout;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * 启动消费线程和超时检查线程
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        startTime = System.currentTimeMillis();
+        ThreadFactory factory = new NamedThreadFactory("redis-queue-" + queue);
+        workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = factory.newThread(new Worker());
+            workers[i].start();
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(factory);
+        long period = Math.max(1000L, visibilityTimeout / 2);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reap();
+                } catch (Exception e) {
+                    logger.error("reap " + queue + " error", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止消费，等待正在处理的消息完成<br>
+     * 超时后仍未完成的消息不会确认，在可见超时后重新投递
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 所有消费线程是否都已结束
+     */
+    public boolean stop(long timeout, TimeUnit unit) {
+        Thread[] current;
+        synchronized (this) {
+            if (!running) {
+                return true;
+            }
+            running = false;
+            current = workers;
+            reaper.shutdownNow();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Thread worker : current) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Thread worker : current) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否正在消费
+     *
+     * @return 是否正在消费
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 取得消费统计，队列长度从Redis读取
+     *
+     * @return 统计快照
+     */
+    public QueueStats stats() {
+        Long lag = RedisUtils.llen(queue);
+        Long inFlight = RedisUtils.execute("LLEN", queue, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return jedis.llen(processing);
+            }
+        });
+        long processed = processedCount.get();
+        long elapsed = System.currentTimeMillis() - startTime;
+        double throughput = startTime == 0 || elapsed <= 0 ? 0 : processed * 1000.0 / elapsed;
+        return new QueueStats(queue, processed, failedCount.get(), redeliveredCount.get(),
+                deadLetteredCount.get(), throughput, lag == null ? -1 : lag, inFlight == null ? -1 : inFlight,
+                (long) latency.getMean(), latency.getValueAtPercentile(99), latency.getMax());
+    }
+
+    /**
+     * 取出一批消息，队列为空时阻塞等待一条
+     *
+     * @return 消息，出错时返回null
+     */
+    private List<String> poll() {
+        final String deadline = String.valueOf(System.currentTimeMillis() + visibilityTimeout);
+        return RedisUtils.execute(POP_SCRIPT.getName(), queue, new RedisCallback<List<String>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<String> doInRedis(Jedis jedis) {
+                List<String> messages = (List<String>) POP_SCRIPT.eval(jedis,
+                        Arrays.asList(queue, processing, deadlines), Arrays.asList(String.valueOf(batchSize), deadline));
+                if (messages != null && !messages.isEmpty()) {
+                    return messages;
+                }
+                String message = jedis.brpoplpush(queue, processing, BLOCK_SECONDS);
+                if (message == null) {
+                    return Collections.emptyList();
+                }
+                // 在此之前宕机时，没有超时时间的消息由reap补上
+                jedis.zadd(deadlines, System.currentTimeMillis() + visibilityTimeout, message);
+                return Collections.singletonList(message);
+            }
+        });
+    }
+
+    /**
+     * 通过脚本一次往返确认多条消息
+     *
+     * @param messages 处理成功的消息
+     */
+    private void ack(final List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        RedisUtils.execute(ACK_SCRIPT.getName(), queue, new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(Jedis jedis) {
+                return ACK_SCRIPT.eval(jedis, Arrays.asList(processing, deadlines, attempts), messages);
+            }
+        });
+    }
+
+    /**
+     * 开始处理批量中的下一条消息之前，为它和之后的消息重新计算超时时间，同时确认已经处理成功的消息，
+     * 避免前面的消息处理较慢时后面的消息超时被重复投递，或已处理的消息等到整批结束才确认<br>
+     * 确认成功后清空succeeded；Redis出错时保留succeeded留待下次确认，并继续处理消息
+     *
+     * @param pending   还未处理的消息，第一条是下一条要处理的消息
+     * @param succeeded 处理成功还未确认的消息
+     * @return 是否继续处理下一条消息，消息已经超时被重新投递时返回false
+     */
+    private boolean touch(List<String> pending, List<String> succeeded) {
+        final List<String> args = new ArrayList<String>(succeeded.size() + pending.size() + 2);
+        args.add(String.valueOf(System.currentTimeMillis() + visibilityTimeout));
+        args.add(String.valueOf(succeeded.size()));
+        args.addAll(succeeded);
+        args.addAll(pending);
+        Long result = RedisUtils.execute(TOUCH_SCRIPT.getName(), queue, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return (Long) TOUCH_SCRIPT.eval(jedis, Arrays.asList(processing, deadlines, attempts), args);
+            }
+        });
+        if (result == null) {
+            return true;
+        }
+        succeeded.clear();
+        return result == 1;
+    }
+
+    /**
+     * 重新入队或转入死信队列
+     *
+     * @param message 消息
+     * @return 0未处理，1重新入队，2转入死信队列
+     */
+    private long requeue(final String message) {
+        Long result = RedisUtils.execute(REQUEUE_SCRIPT.getName(), queue, new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(Jedis jedis) {
+                return (Long) REQUEUE_SCRIPT.eval(jedis, Arrays.asList(queue, processing, deadlines, attempts, deadLetter),
+                        Arrays.asList(message, String.valueOf(maxAttempts)));
+            }
+        });
+        if (result == null) {
+            return 0;
+        }
+        if (result == 2) {
+            deadLetteredCount.incrementAndGet();
+            logger.warn("message moved to dead letter queue " + deadLetter + ": " + message);
+        }
+        return result;
+    }
+
+    /**
+     * 重新投递超过可见超时的消息，并为缺少超时时间的处理中消息补上
+     */
+    private void reap() {
+        Set<String> expired = RedisUtils.execute("QUEUE_REAP", queue, new RedisCallback<Set<String>>() {
+            @Override
+            public Set<String> doInRedis(Jedis jedis) {
+                return jedis.zrangeByScore(deadlines, 0, System.currentTimeMillis(), 0, REAP_LIMIT);
+            }
+        });
+        if (expired != null) {
+            for (String message : expired) {
+                if (requeue(message) == 1) {
+                    redeliveredCount.incrementAndGet();
+                }
+            }
+        }
+        RedisUtils.execute("QUEUE_REAP", queue, new RedisCallback<Void>() {
+            @Override
+            public Void doInRedis(Jedis jedis) {
+                List<String> inFlight = jedis.lrange(processing, 0, REAP_LIMIT - 1);
+                if (inFlight.isEmpty()) {
+                    return null;
+                }
+                Pipeline pipeline = jedis.pipelined();
+                for (String message : inFlight) {
+                    pipeline.zscore(deadlines, message);
+                }
+                List<Object> scores = pipeline.syncAndReturnAll();
+                long deadline = System.currentTimeMillis() + visibilityTimeout;
+                for (int i = 0; i < inFlight.size(); i++) {
+                    if (scores.get(i) == null) {
+                        jedis.zadd(deadlines, deadline, inFlight.get(i));
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 消费线程
+     */
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                List<String> messages = poll();
+                if (messages == null) {
+                    try {
+                        Thread.sleep(ERROR_BACKOFF);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    continue;
+                }
+                List<String> succeeded = new ArrayList<String>(messages.size());
+                for (int i = 0; i < messages.size(); i++) {
+                    String message = messages.get(i);
+                    // 第一条消息的超时时间刚刚设置
+                    if (i > 0 && !touch(messages.subList(i, messages.size()), succeeded)) {
+                        logger.warn("message from " + queue + " timed out before handling, skipped: " + message);
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        handler.handle(message);
+                        succeeded.add(message);
+                        processedCount.incrementAndGet();
+                    } catch (Exception e) {
+                        failedCount.incrementAndGet();
+                        logger.error("handle message from " + queue + " error: " + message, e);
+                        requeue(message);
+                    } finally {
+                        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    }
+                }
+                ack(succeeded);
+            }
+        }
+    }
+
+    /**
+     * 带名称的守护线程
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger index = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.gogtz.common.cache.shiro;
+
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.cache.codec.RedisCodec;
+import com.gogtz.common.cache.local.LocalCache;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 两级的Shiro缓存<br>
+ * 本地一级缓存的时间很短，其他节点的修改最多在该时间后可见；二级缓存保存在Redis的shiro:cache:{缓存名}:{key}，
+ * key为String.valueOf(key)，因此{@link #keys()}返回的是字符串形式的key。
+ * put和remove不读取旧值，只返回本地一级缓存中的旧值，以省去一次往返。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author t
+ */
+public class RedisCache<K, V> implements Cache<K, V> {
+
+    private static final int SCAN_BATCH = 500;
+
+    private final String prefix;
+    private final RedisCodec codec;
+    private final int expireSeconds;
+    private final LocalCache<String, Object> local;
+
+    /**
+     * 构建缓存
+     *
+     * @param name          缓存名
+     * @param codec         编解码
+     * @param expireSeconds Redis中的过期时间（秒），0表示不过期
+     * @param localTtl      本地一级缓存的时间（毫秒），0表示不使用
+     * @param localSize     本地一级缓存的条目数
+     */
+    public RedisCache(String name, RedisCodec codec, int expireSeconds, long localTtl, long localSize) {
+        this.prefix = RedisCacheManager.KEY_PREFIX + name + ":";
+        this.codec = codec;
+        this.expireSeconds = expireSeconds;
+        this.local = localTtl > 0 ? new LocalCache<String, Object>(localSize, localTtl) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        String redisKey = redisKey(key);
+        if (local != null) {
+            Object value = local.get(redisKey);
+            if (value != null) {
+                return (V) value;
+            }
+        }
+        Object value = RedisUtils.getObject(redisKey, Object.class, codec);
+        if (value != null && local != null) {
+            local.put(redisKey, value);
+        }
+        return (V) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) throws CacheException {
+        String redisKey = redisKey(key);
+        if (RedisUtils.setObject(redisKey, value, expireSeconds, codec) == null && value != null) {
+            throw new CacheException("put " + redisKey + " failed");
+        }
+        if (local == null) {
+            return null;
+        }
+        return value == null ? (V) local.remove(redisKey) : (V) local.put(redisKey, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(K key) throws CacheException {
+        String redisKey = redisKey(key);
+        RedisUtils.del(redisKey);
+        return local == null ? null : (V) local.remove(redisKey);
+    }
+
+    @Override
+    public void clear() throws CacheException {
+        RedisUtils.deleteByPattern(prefix + "*", SCAN_BATCH);
+        if (local != null) {
+            local.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, RedisUtils.countByPattern(prefix + "*", SCAN_BATCH));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<K> keys() {
+        Set<K> keys = new LinkedHashSet<K>();
+        Iterator<String> it = RedisUtils.scan(prefix + "*", SCAN_BATCH);
+        while (it.hasNext()) {
+            keys.add((K) it.next().substring(prefix.length()));
+        }
+        return keys;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        List<V> values = new ArrayList<V>();
+        for (K key : keys()) {
+            V value = get(key);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private String redisKey(Object key) {
+        return prefix + key;
+    }
+}
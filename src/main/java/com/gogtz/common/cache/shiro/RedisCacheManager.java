@@ -0,0 +1,68 @@
+package com.gogtz.common.cache.shiro;
+
+import com.gogtz.common.cache.codec.BinaryCodec;
+import com.gogtz.common.cache.codec.CompressingCodec;
+import com.gogtz.common.cache.codec.RedisCodec;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.cache.AbstractCacheManager;
+import org.apache.shiro.cache.Cache;
+import org.apache.shiro.cache.CacheException;
+
+/**
+ * <h1>基于Redis的Shiro CacheManager</h1>
+ * 认证、授权缓存保存在Redis中，前面加一层很短的本地缓存，见{@link RedisCache}。
+ * <ol><strong>
+ * <li>Redis中的过期时间（秒）：redis.shiro.cache.expireSeconds，默认1800</li>
+ * <li>本地缓存时间（毫秒）：redis.shiro.cache.localTtl，默认5000，0表示不使用本地缓存</li>
+ * <li>每个缓存的本地条目数：redis.shiro.cache.localSize，默认1000</li>
+ * </strong>
+ * </ol>
+ * 值由{@link BinaryCodec}编码，超过1KB时压缩。
+ *
+ * @author t
+ */
+public class RedisCacheManager extends AbstractCacheManager {
+
+    public static final String KEY_PREFIX = "shiro:cache:";
+
+    private final RedisCodec codec;
+    private final int expireSeconds;
+    private final long localTtl;
+    private final long localSize;
+
+    /**
+     * 使用redis.shiro.cache.*配置构建
+     */
+    public RedisCacheManager() {
+        this(new CompressingCodec(BinaryCodec.INSTANCE, 1024),
+                (int) getLong("redis.shiro.cache.expireSeconds", 1800L),
+                getLong("redis.shiro.cache.localTtl", 5000L),
+                getLong("redis.shiro.cache.localSize", 1000L));
+    }
+
+    /**
+     * 构建CacheManager
+     *
+     * @param codec         编解码
+     * @param expireSeconds Redis中的过期时间（秒），0表示不过期
+     * @param localTtl      本地缓存时间（毫秒），0表示不使用
+     * @param localSize     每个缓存的本地条目数
+     */
+    public RedisCacheManager(RedisCodec codec, int expireSeconds, long localTtl, long localSize) {
+        this.codec = codec;
+        this.expireSeconds = expireSeconds;
+        this.localTtl = localTtl;
+        this.localSize = localSize;
+    }
+
+    @Override
+    protected Cache<Object, Object> createCache(String name) throws CacheException {
+        return new RedisCache<Object, Object>(name, codec, expireSeconds, localTtl, localSize);
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertyUtil.getRedisValue(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+}
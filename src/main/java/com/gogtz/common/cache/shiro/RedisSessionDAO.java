@@ -0,0 +1,423 @@
+package com.gogtz.common.cache.shiro;
+
+import com.gogtz.common.cache.RedisCallback;
+import com.gogtz.common.cache.RedisUtils;
+import com.gogtz.common.cache.local.LocalCache;
+import com.gogtz.common.lang.Assert;
+import com.gogtz.common.properties.PropertyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.session.Session;
+import org.apache.shiro.session.UnknownSessionException;
+import org.apache.shiro.session.mgt.SimpleSession;
+import org.apache.shiro.session.mgt.eis.AbstractSessionDAO;
+import org.apache.shiro.util.Destroyable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>基于Redis的Shiro SessionDAO</h1>
+ * <ol><strong>
+ * <li>会话由{@link SessionCodec}紧凑编码后保存在shiro:session:{id}，Redis的过期时间跟随会话超时</li>
+ * <li>本地保留最近使用的会话（redis.shiro.session.localTtl，毫秒，默认1000），同一节点的连续请求不访问Redis</li>
+ * <li>Shiro每次请求都会调用update，只有最后访问时间变化的会话不重新写入，
+ * 而是每隔redis.shiro.session.touchInterval毫秒（默认5000）通过管道批量延长过期时间</li>
+ * <li>读取时由剩余过期时间推算最后访问时间，其他节点看到的最后访问时间最多晚一个写入间隔</li>
+ * </strong>
+ * </ol>
+ * 会话的过期由Redis负责，建议关闭Shiro的会话验证调度器；多个节点同时修改同一个会话时以最后写入的为准。
+ * 在{@link #batchUpdates(Runnable)}中连续修改多个属性时，每个会话只在结束时写入一次。
+ * <pre>
+ * &lt;bean id="sessionDAO" class="com.gogtz.common.cache.shiro.RedisSessionDAO"/&gt;
+ * &lt;bean id="sessionManager" class="org.apache.shiro.web.session.mgt.DefaultWebSessionManager"&gt;
+ *     &lt;property name="sessionDAO" ref="sessionDAO"/&gt;
+ *     &lt;property name="sessionValidationSchedulerEnabled" value="false"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author t
+ */
+public class RedisSessionDAO extends AbstractSessionDAO implements Destroyable {
+    private static final Logger logger = LoggerFactory.getLogger(RedisSessionDAO.class);
+
+    public static final String KEY_PREFIX = "shiro:session:";
+
+    private static final long DEFAULT_LOCAL_TTL = 1000L;
+    private static final long DEFAULT_TOUCH_INTERVAL = 5000L;
+
+    /**
+     * 本地保留的会话数和指纹数
+     */
+    private static final long MAX_LOCAL_SESSIONS = 10000L;
+    private static final long MAX_FINGERPRINTS = 100000L;
+
+    private static final int SCAN_BATCH = 500;
+
+    /**
+     * 当前线程正在合并的更新
+     */
+    private static final ThreadLocal<Batch> batch = new ThreadLocal<Batch>();
+
+    private final LocalCache<Serializable, SimpleSession> local;
+    private final LocalCache<Serializable, Long> fingerprints =
+            new LocalCache<Serializable, Long>(MAX_FINGERPRINTS, TimeUnit.HOURS.toMillis(1));
+    /**
+     * 待延长过期时间的会话：key到过期时刻（秒）
+     */
+    private final ConcurrentHashMap<String, Long> touches = new ConcurrentHashMap<String, Long>();
+    private final long slackSeconds;
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder readCount = new LongAdder();
+    private final LongAdder localHitCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder touchCount = new LongAdder();
+
+    /**
+     * 使用redis.shiro.session.*配置构建
+     */
+    public RedisSessionDAO() {
+        this(getLong("redis.shiro.session.localTtl", DEFAULT_LOCAL_TTL),
+                getLong("redis.shiro.session.touchInterval", DEFAULT_TOUCH_INTERVAL));
+    }
+
+    /**
+     * 构建SessionDAO
+     *
+     * @param localTtl      本地保留会话的时间（毫秒），0表示不在本地保留
+     * @param touchInterval 批量延长过期时间的间隔（毫秒）
+     */
+    public RedisSessionDAO(long localTtl, long touchInterval) {
+        Assert.isTrue(localTtl >= 0, "localTtl must not be negative, got %s", localTtl);
+        Assert.isTrue(touchInterval > 0, "touchInterval must be positive, got %s", touchInterval);
+        this.local = localTtl > 0 ? new LocalCache<Serializable, SimpleSession>(MAX_LOCAL_SESSIONS, localTtl) : null;
+        // Redis中多保留的时间，覆盖尚未写入的访问
+        this.slackSeconds = TimeUnit.MILLISECONDS.toSeconds(touchInterval) + 2;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "redis-session-touch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushTouches();
+                } catch (RuntimeException e) {
+                    logger.error("flush session touches error", e);
+                }
+            }
+        }, touchInterval, touchInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Serializable doCreate(Session session) {
+        Serializable sessionId = generateSessionId(session);
+        assignSessionId(session, sessionId);
+        write(session);
+        return sessionId;
+    }
+
+    /**
+     * 合并执行期间的会话更新，每个会话在结束时只写入一次，期间读取同一个会话得到同一个实例<br>
+     * 可以嵌套调用，由最外层写入
+     *
+     * @param work 修改会话的操作
+     */
+    public static void batchUpdates(Runnable work) {
+        if (batch.get() != null) {
+            work.run();
+            return;
+        }
+        Batch current = new Batch();
+        batch.set(current);
+        try {
+            work.run();
+        } finally {
+            batch.remove();
+            for (Session session : current.sessions.values()) {
+                current.dao.update(session);
+            }
+        }
+    }
+
+    @Override
+    protected Session doReadSession(Serializable sessionId) {
+        Batch current = batch.get();
+        if (current != null && current.sessions.containsKey(sessionId)) {
+            return current.sessions.get(sessionId);
+        }
+        readCount.increment();
+        if (local != null) {
+            SimpleSession session = local.get(sessionId);
+            if (session != null) {
+                localHitCount.increment();
+                return session;
+            }
+        }
+        final byte[] key = SafeEncoder.encode(KEY_PREFIX + sessionId);
+        Object[] entry = RedisUtils.execute("SESSION_READ", KEY_PREFIX + sessionId, new RedisCallback<Object[]>() {
+            @Override
+            public Object[] doInRedis(Jedis jedis) {
+                Pipeline pipeline = jedis.pipelined();
+                Response<byte[]> value = pipeline.get(key);
+                Response<Long> ttl = pipeline.ttl(key);
+                pipeline.sync();
+                return new Object[]{value.get(), ttl.get()};
+            }
+        });
+        if (entry == null || entry[0] == null) {
+            return null;
+        }
+        Session session = SessionCodec.INSTANCE.decode((byte[]) entry[0], Session.class);
+        if (session instanceof SimpleSession) {
+            SimpleSession simple = (SimpleSession) session;
+            restoreLastAccessTime(simple, (Long) entry[1]);
+            fingerprints.put(sessionId, SessionCodec.INSTANCE.fingerprint(simple));
+            if (local != null) {
+                local.put(sessionId, simple);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * 内容变化时重新写入，只有最后访问时间变化时记录待延长的过期时间
+     *
+     * @param session 会话
+     */
+    @Override
+    public void update(Session session) throws UnknownSessionException {
+        if (session == null || session.getId() == null) {
+            return;
+        }
+        Batch current = batch.get();
+        if (current != null) {
+            current.dao = this;
+            current.sessions.put(session.getId(), session);
+            return;
+        }
+        if (session instanceof SimpleSession) {
+            SimpleSession simple = (SimpleSession) session;
+            Long previous = fingerprints.get(session.getId());
+            if (previous != null && previous == SessionCodec.INSTANCE.fingerprint(simple)) {
+                touchCount.increment();
+                if (simple.getTimeout() > 0) {
+                    touches.put(KEY_PREFIX + session.getId(), expireAt(simple));
+                }
+                if (local != null) {
+                    local.put(session.getId(), simple);
+                }
+                return;
+            }
+        }
+        write(session);
+    }
+
+    @Override
+    public void delete(Session session) {
+        if (session == null || session.getId() == null) {
+            return;
+        }
+        Serializable sessionId = session.getId();
+        Batch current = batch.get();
+        if (current != null) {
+            current.sessions.remove(sessionId);
+        }
+        touches.remove(KEY_PREFIX + sessionId);
+        fingerprints.remove(sessionId);
+        if (local != null) {
+            local.remove(sessionId);
+        }
+        RedisUtils.del(KEY_PREFIX + sessionId);
+    }
+
+    /**
+     * 通过SCAN逐批读取所有会话，会话较多时开销较大
+     *
+     * @return 会话
+     */
+    @Override
+    public Collection<Session> getActiveSessions() {
+        List<Session> sessions = new ArrayList<Session>();
+        Iterator<String> keys = RedisUtils.scan(KEY_PREFIX + "*", SCAN_BATCH);
+        while (keys.hasNext()) {
+            List<String> batch = new ArrayList<String>(SCAN_BATCH);
+            while (batch.size() < SCAN_BATCH && keys.hasNext()) {
+                batch.add(keys.next());
+            }
+            List<Object> values = RedisUtils.pipelined(batch.toArray(new String[batch.size()]),
+                    new BiConsumer<Pipeline, String>() {
+                        @Override
+                        public void accept(Pipeline pipeline, String key) {
+                            pipeline.get(SafeEncoder.encode(key));
+                        }
+                    });
+            if (values == null) {
+                continue;
+            }
+            for (Object value : values) {
+                if (value instanceof byte[]) {
+                    sessions.add(SessionCodec.INSTANCE.decode((byte[]) value, Session.class));
+                }
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * 立即通过管道延长待写入会话的过期时间
+     */
+    public void flushTouches() {
+        if (touches.isEmpty()) {
+            return;
+        }
+        final Map<String, Long> batch = new ConcurrentHashMap<String, Long>();
+        for (Iterator<Map.Entry<String, Long>> it = touches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            batch.put(entry.getKey(), entry.getValue());
+            it.remove();
+        }
+        List<Object> result = RedisUtils.pipelined(batch.keySet().toArray(new String[batch.size()]),
+                new BiConsumer<Pipeline, String>() {
+                    @Override
+                    public void accept(Pipeline pipeline, String key) {
+                        pipeline.expireAt(key, batch.get(key));
+                    }
+                });
+        if (result == null) {
+            logger.warn("extend " + batch.size() + " redis sessions failed");
+        }
+    }
+
+    /**
+     * 停止定期写入并写入剩余的访问
+     */
+    @Override
+    public void destroy() {
+        flusher.shutdown();
+        flushTouches();
+    }
+
+    /**
+     * 读取会话的次数
+     */
+    public long getReadCount() {
+        return readCount.sum();
+    }
+
+    /**
+     * 从本地读到会话的次数
+     */
+    public long getLocalHitCount() {
+        return localHitCount.sum();
+    }
+
+    /**
+     * 完整写入会话的次数
+     */
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    /**
+     * 只延长过期时间、没有重新写入的更新次数
+     */
+    public long getTouchCount() {
+        return touchCount.sum();
+    }
+
+    private void write(Session session) {
+        writeCount.increment();
+        final Serializable sessionId = session.getId();
+        final byte[] key = SafeEncoder.encode(KEY_PREFIX + sessionId);
+        final byte[] value = SessionCodec.INSTANCE.encode(session);
+        final int seconds = session instanceof SimpleSession ? expireSeconds((SimpleSession) session) : 0;
+        touches.remove(KEY_PREFIX + sessionId);
+        String result = RedisUtils.execute("SESSION_WRITE", KEY_PREFIX + sessionId, new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return seconds > 0 ? jedis.setex(key, seconds, value) : jedis.set(key, value);
+            }
+        });
+        if (!(session instanceof SimpleSession)) {
+            return;
+        }
+        if (result == null) {
+            // 写入失败时下一次更新重新写入
+            fingerprints.remove(sessionId);
+        } else {
+            fingerprints.put(sessionId, SessionCodec.INSTANCE.fingerprint((SimpleSession) session));
+        }
+        if (local != null) {
+            local.put(sessionId, (SimpleSession) session);
+        }
+    }
+
+    /**
+     * Redis中的过期时刻（秒）：最后访问时间 + 会话超时 + 余量
+     */
+    private long expireAt(SimpleSession session) {
+        Date access = session.getLastAccessTime();
+        long lastAccess = access == null ? System.currentTimeMillis() : access.getTime();
+        return TimeUnit.MILLISECONDS.toSeconds(lastAccess + session.getTimeout()) + slackSeconds;
+    }
+
+    private int expireSeconds(SimpleSession session) {
+        if (session.getTimeout() <= 0) {
+            return 0;
+        }
+        long seconds = expireAt(session) - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        return (int) Math.max(1L, seconds);
+    }
+
+    /**
+     * 其他节点只延长过期时间时，Redis中的最后访问时间是旧的，由剩余过期时间推算
+     */
+    private void restoreLastAccessTime(SimpleSession session, Long ttl) {
+        if (ttl == null || ttl <= 0 || session.getTimeout() <= 0) {
+            return;
+        }
+        long expireAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+        long touched = expireAtMillis - TimeUnit.SECONDS.toMillis(slackSeconds) - session.getTimeout();
+        Date access = session.getLastAccessTime();
+        if (access == null || touched > access.getTime()) {
+            session.setLastAccessTime(new Date(Math.min(touched, System.currentTimeMillis())));
+        }
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = PropertyUtil.getRedisValue(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * 一个线程中合并的更新
+     */
+    private static class Batch {
+        private final Map<Serializable, Session> sessions = new LinkedHashMap<Serializable, Session>();
+        private RedisSessionDAO dao;
+    }
+}
@@ -0,0 +1,142 @@
+package com.gogtz.common.cache.shiro;
+
+import com.gogtz.common.cache.codec.BinaryCodec;
+import com.gogtz.common.cache.codec.BinaryInput;
+import com.gogtz.common.cache.codec.BinaryOutput;
+import com.gogtz.common.cache.codec.CodecException;
+import com.gogtz.common.cache.codec.JdkCodec;
+import com.gogtz.common.cache.codec.RedisCodec;
+import org.apache.shiro.session.mgt.SimpleSession;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Shiro会话的紧凑编码<br>
+ * {@link SimpleSession}的固定字段按顺序以变长整数写入，属性由{@link BinaryCodec}编码；
+ * 其他Session实现退回JDK序列化。编码结果通常只有{@link com.gogtz.common.util.SerializeUtil}的几分之一。
+ *
+ * @author t
+ */
+public final class SessionCodec implements RedisCodec {
+
+    public static final SessionCodec INSTANCE = new SessionCodec();
+
+    private static final int COMPACT = 1;
+    private static final int JDK = 2;
+
+    private static final int HAS_STOP = 1;
+    private static final int EXPIRED = 1 << 1;
+    private static final int HAS_HOST = 1 << 2;
+    private static final int HAS_ATTRIBUTES = 1 << 3;
+    private static final int HAS_START = 1 << 4;
+    private static final int HAS_ACCESS = 1 << 5;
+
+    private SessionCodec() {
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof SimpleSession) {
+            return encode((SimpleSession) value, true);
+        }
+        byte[] serialized = JdkCodec.INSTANCE.encode(value);
+        byte[] bytes = new byte[serialized.length + 1];
+        bytes[0] = JDK;
+        System.arraycopy(serialized, 0, bytes, 1, serialized.length);
+        return bytes;
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JDK) {
+            return JdkCodec.INSTANCE.decode(Arrays.copyOfRange(bytes, 1, bytes.length), type);
+        }
+        if (bytes[0] != COMPACT) {
+            throw new CodecException("unknown session format: %s", bytes[0]);
+        }
+        return type.cast(decodeCompact(new BinaryInput(bytes, 1, bytes.length - 1)));
+    }
+
+    /**
+     * 除最后访问时间外的内容的指纹，用于判断会话是否需要重新写入
+     *
+     * @param session 会话
+     * @return 指纹
+     */
+    long fingerprint(SimpleSession session) {
+        byte[] bytes = encode(session, false);
+        long hash = 1125899906842597L;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private byte[] encode(SimpleSession session, boolean withAccessTime) {
+        BinaryOutput out = BinaryOutput.acquire();
+        try {
+            Date start = session.getStartTimestamp();
+            Date stop = session.getStopTimestamp();
+            Date access = withAccessTime ? session.getLastAccessTime() : null;
+            String host = session.getHost();
+            Map<Object, Object> attributes = session.getAttributes();
+            int flags = (start != null ? HAS_START : 0)
+                    | (stop != null ? HAS_STOP : 0)
+                    | (access != null ? HAS_ACCESS : 0)
+                    | (session.isExpired() ? EXPIRED : 0)
+                    | (host != null ? HAS_HOST : 0)
+                    | (attributes != null && !attributes.isEmpty() ? HAS_ATTRIBUTES : 0);
+            out.writeByte(COMPACT);
+            out.writeByte(flags);
+            out.writeString(String.valueOf(session.getId()));
+            if (start != null) {
+                out.writeVarLong(start.getTime());
+            }
+            if (stop != null) {
+                out.writeVarLong(stop.getTime());
+            }
+            if (access != null) {
+                out.writeVarLong(access.getTime());
+            }
+            out.writeSignedVarLong(session.getTimeout());
+            if (host != null) {
+                out.writeString(host);
+            }
+            if ((flags & HAS_ATTRIBUTES) != 0) {
+                BinaryCodec.INSTANCE.encode(attributes, out);
+            }
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private SimpleSession decodeCompact(BinaryInput in) {
+        int flags = in.readByte();
+        SimpleSession session = new SimpleSession();
+        session.setId(in.readString());
+        session.setStartTimestamp((flags & HAS_START) != 0 ? new Date(in.readVarLong()) : null);
+        if ((flags & HAS_STOP) != 0) {
+            session.setStopTimestamp(new Date(in.readVarLong()));
+        }
+        session.setLastAccessTime((flags & HAS_ACCESS) != 0 ? new Date(in.readVarLong()) : null);
+        session.setTimeout(in.readSignedVarLong());
+        session.setExpired((flags & EXPIRED) != 0);
+        if ((flags & HAS_HOST) != 0) {
+            session.setHost(in.readString());
+        }
+        if ((flags & HAS_ATTRIBUTES) != 0) {
+            session.setAttributes(BinaryCodec.INSTANCE.decode(in, Map.class));
+        }
+        return session;
+    }
+}
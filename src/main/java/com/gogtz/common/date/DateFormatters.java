@@ -0,0 +1,381 @@
+package com.gogtz.common.date;
+
+import com.gogtz.common.lang.Assert;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>日期格式注册表</h1>
+ * 按日期格式和{@link EnumDateStyle}缓存不可变、线程安全的{@link DateTimeFormatter}，代替每次新建SimpleDateFormat。
+ * <ol><strong>
+ * <li>格式写法与SimpleDateFormat相同，含义不同的字母（y、S、u、F、Z）和字符（[、]、{、}、#）按SimpleDateFormat的含义翻译，
+ * S是毫秒，u是星期几，方括号是普通字符</li>
+ * <li>{@link LocalDate}、{@link java.time.LocalDateTime}按ISO公历处理；Date和{@link Instant}早于1582-10-15时
+ * 与SimpleDateFormat一样按儒略历处理，时差与SimpleDateFormat一样按{@link TimeZone}计算，1900年前不使用地方平时</li>
+ * <li>与非宽松的SimpleDateFormat一致：2012-02-30等不存在的日期解析失败；
+ * 数字位数不固定，2012-1-5也可以解析；相邻的数字字段（如yyyyMMdd）除最后一个外按格式的位数拆分，最后一个读完后面所有数字，
+ * 2012015解析为2012-01-05；不要求解析完整个字符串，但不能停在数字中间，如yyyyMMdd不能解析20120105102030</li>
+ * <li>格式中没有的字段按1970-01-01 00:00:00补全，如MM-dd、HH:mm</li>
+ * <li>缓存的格式数量超过{@link #MAX_CACHED_PATTERNS}后不再缓存，避免动态拼接的格式无限增长</li>
+ * </strong>
+ * </ol>
+ *
+ * @author t
+ */
+public final class DateFormatters {
+
+    static final int MAX_CACHED_PATTERNS = 256;
+
+    /**
+     * 公历启用日，之前的日期SimpleDateFormat按儒略历计算，DateTimeFormatter按外推的公历计算
+     */
+    static final LocalDate GREGORIAN_START = LocalDate.of(1582, 10, 15);
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * SimpleDateFormat支持的字母
+     */
+    private static final String SIMPLE_DATE_FORMAT_LETTERS = "GyYMLwWDdFEuaHkKhmsSzZX";
+
+    /**
+     * SimpleDateFormat中的普通字符，DateTimeFormatter中是可选段或保留字符
+     */
+    private static final String LITERALS = "[]{}#";
+
+    /**
+     * 相邻数字字段的最后一个不限位数时对应的字段，周相关的字段仍按格式的位数
+     */
+    private static final Map<Character, ChronoField> LAST_NUMBERS = new HashMap<Character, ChronoField>();
+
+    private static final ConcurrentHashMap<String, DateTimeFormatter> patterns = new ConcurrentHashMap<String, DateTimeFormatter>();
+    private static final Map<EnumDateStyle, DateTimeFormatter> styles = new EnumMap<EnumDateStyle, DateTimeFormatter>(EnumDateStyle.class);
+
+    static {
+        LAST_NUMBERS.put('M', ChronoField.MONTH_OF_YEAR);
+        LAST_NUMBERS.put('D', ChronoField.DAY_OF_YEAR);
+        LAST_NUMBERS.put('d', ChronoField.DAY_OF_MONTH);
+        LAST_NUMBERS.put('F', ChronoField.ALIGNED_WEEK_OF_MONTH);
+        LAST_NUMBERS.put('u', ChronoField.DAY_OF_WEEK);
+        LAST_NUMBERS.put('H', ChronoField.HOUR_OF_DAY);
+        LAST_NUMBERS.put('k', ChronoField.CLOCK_HOUR_OF_DAY);
+        LAST_NUMBERS.put('K', ChronoField.HOUR_OF_AMPM);
+        LAST_NUMBERS.put('h', ChronoField.CLOCK_HOUR_OF_AMPM);
+        LAST_NUMBERS.put('m', ChronoField.MINUTE_OF_HOUR);
+        LAST_NUMBERS.put('s', ChronoField.SECOND_OF_MINUTE);
+        LAST_NUMBERS.put('S', ChronoField.MILLI_OF_SECOND);
+        for (EnumDateStyle style : EnumDateStyle.values()) {
+            DateTimeFormatter formatter = compile(style.getValue());
+            styles.put(style, formatter);
+            patterns.put(style.getValue(), formatter);
+        }
+    }
+
+    private DateFormatters() {
+    }
+
+    /**
+     * 取得日期格式对应的DateTimeFormatter
+     *
+     * @param pattern 日期格式
+     * @return DateTimeFormatter
+     * @throws IllegalArgumentException 非法日期格式
+     */
+    public static DateTimeFormatter get(String pattern) {
+        Assert.notNull(pattern, "pattern must not be null");
+        DateTimeFormatter formatter = patterns.get(pattern);
+        if (formatter == null) {
+            formatter = compile(pattern);
+            if (patterns.size() < MAX_CACHED_PATTERNS) {
+                patterns.putIfAbsent(pattern, formatter);
+            }
+        }
+        return formatter;
+    }
+
+    /**
+     * 取得日期风格对应的DateTimeFormatter
+     *
+     * @param style 日期风格
+     * @return DateTimeFormatter
+     */
+    public static DateTimeFormatter get(EnumDateStyle style) {
+        Assert.notNull(style, "style must not be null");
+        return styles.get(style);
+    }
+
+    /**
+     * 解析日期字符串，格式中没有的字段按1970-01-01 00:00:00补全，没有时区时使用系统时区
+     *
+     * @param text      日期字符串
+     * @param formatter 本类取得的DateTimeFormatter
+     * @return 日期，失败返回null
+     */
+    static ZonedDateTime parse(CharSequence text, DateTimeFormatter formatter) {
+        if (text == null) {
+            return null;
+        }
+        // 先不解析语义地检查一次，格式不符时不产生异常；自动判断格式时大部分尝试在这里失败
+        ParsePosition position = new ParsePosition(0);
+        if (formatter.parseUnresolved(text, position) == null) {
+            return null;
+        }
+        // SimpleDateFormat的数字字段会读完后面所有数字，停在数字中间时视为失败
+        int end = position.getIndex();
+        if (end > 0 && end < text.length() && isDigit(text.charAt(end - 1)) && isDigit(text.charAt(end))) {
+            return null;
+        }
+        try {
+            TemporalAccessor parsed = formatter.parse(text, new ParsePosition(0));
+            LocalDate date = parsed.query(TemporalQueries.localDate());
+            if (date == null) {
+                date = LocalDate.of(field(parsed, ChronoField.YEAR, 1970),
+                        field(parsed, ChronoField.MONTH_OF_YEAR, 1), field(parsed, ChronoField.DAY_OF_MONTH, 1));
+            }
+            LocalTime time = parsed.query(TemporalQueries.localTime());
+            if (time == null) {
+                time = LocalTime.of(field(parsed, ChronoField.HOUR_OF_DAY, 0),
+                        field(parsed, ChronoField.MINUTE_OF_HOUR, 0), field(parsed, ChronoField.SECOND_OF_MINUTE, 0),
+                        field(parsed, ChronoField.MILLI_OF_SECOND, 0) * 1000000);
+            }
+            ZoneId zone = parsed.query(TemporalQueries.zone());
+            return ZonedDateTime.of(date, time, zone == null ? ZoneId.systemDefault() : zone);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int field(TemporalAccessor parsed, ChronoField field, int defaultValue) {
+        return parsed.isSupported(field) ? parsed.get(field) : defaultValue;
+    }
+
+    /**
+     * 解析日期字符串为Date，早于{@link #GREGORIAN_START}的日期与SimpleDateFormat一样按儒略历计算，
+     * 没有时区时与SimpleDateFormat一样按{@link TimeZone}的时差换算
+     *
+     * @param text    日期字符串
+     * @param pattern 日期格式
+     * @return 日期，失败返回null
+     * @throws IllegalArgumentException 非法日期格式
+     */
+    static Date parseDate(CharSequence text, String pattern) {
+        DateTimeFormatter formatter = get(pattern);
+        ZonedDateTime dateTime = parse(text, formatter);
+        // 1500-02-29等只在儒略历中存在的日期按公历解析失败
+        if (dateTime == null ? isJulianYear(text, formatter) : dateTime.toLocalDate().isBefore(GREGORIAN_START)) {
+            return julian(pattern).parse(text.toString(), new ParsePosition(0));
+        }
+        if (dateTime == null) {
+            return null;
+        }
+        if (dateTime.getZone() instanceof ZoneOffset) {
+            return new Date(dateTime.toInstant().toEpochMilli());
+        }
+        // ZoneId的规则在1900年前使用地方平时（如上海+08:05:43），按TimeZone换算才与SimpleDateFormat一致
+        long local = dateTime.toLocalDate().toEpochDay() * DAY_MILLIS + dateTime.toLocalTime().toNanoOfDay() / 1000000;
+        return new Date(DateScanner.toUtc(local, TimeZone.getTimeZone(dateTime.getZone())));
+    }
+
+    private static boolean isJulianYear(CharSequence text, DateTimeFormatter formatter) {
+        TemporalAccessor parsed = text == null ? null : formatter.parseUnresolved(text, new ParsePosition(0));
+        return parsed != null && parsed.isSupported(ChronoField.YEAR)
+                && parsed.getLong(ChronoField.YEAR) <= GREGORIAN_START.getYear();
+    }
+
+    /**
+     * 按系统时区格式化时刻，早于{@link #GREGORIAN_START}的日期与SimpleDateFormat一样按儒略历显示，
+     * 1900年前与SimpleDateFormat一样不使用地方平时
+     *
+     * @param instant 时刻
+     * @param pattern 日期格式
+     * @return 日期字符串
+     * @throws IllegalArgumentException 非法日期格式
+     */
+    static String format(Instant instant, String pattern) {
+        ZonedDateTime dateTime = instant.atZone(ZoneId.systemDefault());
+        // 地方平时期间ZoneId与TimeZone的时差不同，与儒略历一样交给SimpleDateFormat
+        int offset = TimeZone.getDefault().getOffset(instant.toEpochMilli()) / 1000;
+        if (dateTime.toLocalDate().isBefore(GREGORIAN_START) || dateTime.getOffset().getTotalSeconds() != offset) {
+            return julian(pattern).format(new Date(instant.toEpochMilli()));
+        }
+        return get(pattern).format(dateTime);
+    }
+
+    /**
+     * 编译日期格式<br>
+     * 逐段翻译SimpleDateFormat的写法，写法相同的部分交给appendPattern，含义不同的字母单独处理：
+     * <ul>
+     * <li>y：严格规则下yyyy需要纪元才能确定年份，换成uuuu；yy按SimpleDateFormat从80年前开始的百年解析</li>
+     * <li>S：毫秒而不是秒的小数，S格式化为123，解析5为5毫秒</li>
+     * <li>u：星期几的数字（1为星期一），不是年份</li>
+     * <li>F：当月第几个星期几；Z：+0800形式的时区偏移</li>
+     * <li>[、]、{、}、#：普通字符，不是可选段或保留字符</li>
+     * </ul>
+     * 宽松模式只放宽数字位数；相邻的数字字段（如yyyyMMdd）与SimpleDateFormat一样，除最后一个外按格式的位数拆分，
+     * 最后一个不限位数；严格的解析规则拒绝不存在的日期
+     *
+     * @throws IllegalArgumentException 含有SimpleDateFormat不支持的字母或引号不完整
+     */
+    private static DateTimeFormatter compile(String pattern) {
+        DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder().parseLenient();
+        // 写法与DateTimeFormatter相同的部分
+        StringBuilder same = new StringBuilder();
+        // 前一个字段是紧挨着的数字字段
+        boolean afterNumber = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                int end = closingQuote(pattern, i);
+                same.append(pattern, i, end + 1);
+                i = end + 1;
+                afterNumber = false;
+                continue;
+            }
+            if (!isLetter(c)) {
+                if (LITERALS.indexOf(c) >= 0) {
+                    same.append('\'').append(c).append('\'');
+                } else {
+                    same.append(c);
+                }
+                i++;
+                afterNumber = false;
+                continue;
+            }
+            int count = countOf(pattern, i);
+            i += count;
+            if (SIMPLE_DATE_FORMAT_LETTERS.indexOf(c) < 0) {
+                throw new IllegalArgumentException("Illegal pattern character '" + c + "'");
+            }
+            // 后面紧接其他字段时（如yyyyMMdd）年按格式的位数拆分，否则会读走后面字段的数字
+            boolean adjacent = i < pattern.length() && isLetter(pattern.charAt(i));
+            // 相邻数字字段的最后一个，与SimpleDateFormat一样读完后面所有数字
+            boolean beforeNumber = adjacent && isNumber(pattern.charAt(i), countOf(pattern, i));
+            ChronoField last = afterNumber && !beforeNumber && isNumber(c, count) ? LAST_NUMBERS.get(c) : null;
+            afterNumber = isNumber(c, count);
+            if (c == 'y' && count != 2 && !adjacent) {
+                repeat(same, 'u', count);
+                continue;
+            }
+            if (last == null && c != 'y' && c != 'S' && c != 'u' && c != 'F' && c != 'Z') {
+                repeat(same, c, count);
+                continue;
+            }
+            if (same.length() > 0) {
+                builder.appendPattern(same.toString());
+                same.setLength(0);
+            }
+            if (last != null) {
+                builder.appendValue(last, count, 19, SignStyle.NOT_NEGATIVE);
+                continue;
+            }
+            switch (c) {
+                case 'y':
+                    if (count == 2) {
+                        builder.appendValueReduced(ChronoField.YEAR, 2, 2, LocalDate.now().minusYears(80));
+                    } else {
+                        builder.appendValue(ChronoField.YEAR, count);
+                    }
+                    break;
+                case 'S':
+                    if (count < 3) {
+                        builder.appendValue(ChronoField.MILLI_OF_SECOND, count, 3, SignStyle.NOT_NEGATIVE);
+                    } else {
+                        builder.appendValue(ChronoField.MILLI_OF_SECOND, count);
+                    }
+                    break;
+                case 'u':
+                    builder.appendValue(ChronoField.DAY_OF_WEEK, count);
+                    break;
+                case 'F':
+                    builder.appendValue(ChronoField.ALIGNED_WEEK_OF_MONTH, count);
+                    break;
+                default:
+                    builder.appendOffset("+HHMM", "+0000");
+                    break;
+            }
+        }
+        if (same.length() > 0) {
+            builder.appendPattern(same.toString());
+        }
+        return builder.toFormatter().withResolverStyle(ResolverStyle.STRICT);
+    }
+
+    /**
+     * 按儒略历处理早期日期的非宽松SimpleDateFormat，只用于罕见的早期日期，每次新建
+     */
+    private static SimpleDateFormat julian(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        return format;
+    }
+
+    private static int countOf(String pattern, int start) {
+        int count = 1;
+        while (start + count < pattern.length() && pattern.charAt(start + count) == pattern.charAt(start)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * SimpleDateFormat中按数字解析的字段，M和L三个以上是月份名称
+     */
+    private static boolean isNumber(char c, int count) {
+        if (c == 'M' || c == 'L') {
+            return count <= 2;
+        }
+        return "yYwWDdFuHkKhmsS".indexOf(c) >= 0;
+    }
+
+    private static int closingQuote(String pattern, int start) {
+        int i = start + 1;
+        while (i < pattern.length()) {
+            if (pattern.charAt(i) == '\'') {
+                // 引号内两个单引号表示单引号本身
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+        throw new IllegalArgumentException("Unterminated quote in pattern: " + pattern);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static void repeat(StringBuilder builder, char c, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+    }
+}
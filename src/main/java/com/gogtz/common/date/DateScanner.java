@@ -0,0 +1,430 @@
+package com.gogtz.common.date;
+
+import java.util.TimeZone;
+
+/**
+ * <h1>日期字符串扫描器</h1>
+ * 逐字符扫描一遍即判断出{@link EnumDateStyle}中的格式并直接计算毫秒数，不逐个格式尝试解析，
+ * 解析失败不产生异常，也不创建中间对象，用于批量导入等大量转换的场景。
+ * <ol><strong>
+ * <li>识别EnumDateStyle的所有格式；年为4位数字，月、日、时、分、秒为1到2位数字，首尾空白忽略</li>
+ * <li>纯数字中6位为HHmmss，8位为yyyyMMdd，10位为秒数，13位为毫秒数，其他位数（如yyyyMMddHHmmss）无法识别；
+ * 10位数字同时是1900到2099年的yyyyMMddHH时含义不确定，无法识别</li>
+ * <li>格式中没有的字段按1970-01-01 00:00:00补全，不存在的日期（如2012-02-30）解析失败</li>
+ * <li>只按公历计算，1582-10-15公历启用之前的日期无法识别，由调用方按SimpleDateFormat的儒略历解析</li>
+ * <li>按指定时区（默认系统时区）换算，夏令时切换时与{@link java.time.ZonedDateTime}相同：重复的时刻取切换前的时差，不存在的时刻顺延</li>
+ * </strong>
+ * </ol>
+ * <pre>
+ * long[] millis = DateScanner.parseAll(column);
+ * if (millis[i] == DateScanner.INVALID) {
+ *     // 第i行不是日期
+ * }
+ * </pre>
+ *
+ * @author t
+ */
+public final class DateScanner {
+
+    /**
+     * 无法识别时的返回值
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int DASH = 0;
+    private static final int SLASH = 1;
+    private static final int CHINESE = 2;
+
+    private static final int MM_DD = 0;
+    private static final int YYYY_MM = 1;
+    private static final int YYYY_MM_DD = 2;
+    private static final int MM_DD_HH_MM = 3;
+    private static final int MM_DD_HH_MM_SS = 4;
+    private static final int YYYY_MM_DD_HH_MM = 5;
+    private static final int YYYY_MM_DD_HH_MM_SS = 6;
+
+    /**
+     * 分隔符与格式对应的日期风格
+     */
+    private static final EnumDateStyle[][] LAYOUTS = {
+            {EnumDateStyle.MM_DD, EnumDateStyle.YYYY_MM, EnumDateStyle.YYYY_MM_DD, EnumDateStyle.MM_DD_HH_MM,
+                    EnumDateStyle.MM_DD_HH_MM_SS, EnumDateStyle.YYYY_MM_DD_HH_MM, EnumDateStyle.YYYY_MM_DD_HH_MM_SS},
+            {EnumDateStyle.MM_DD_EN, EnumDateStyle.YYYY_MM_EN, EnumDateStyle.YYYY_MM_DD_EN, EnumDateStyle.MM_DD_HH_MM_EN,
+                    EnumDateStyle.MM_DD_HH_MM_SS_EN, EnumDateStyle.YYYY_MM_DD_HH_MM_EN, EnumDateStyle.YYYY_MM_DD_HH_MM_SS_EN},
+            {EnumDateStyle.MM_DD_CN, EnumDateStyle.YYYY_MM_CN, EnumDateStyle.YYYY_MM_DD_CN, EnumDateStyle.MM_DD_HH_MM_CN,
+                    EnumDateStyle.MM_DD_HH_MM_SS_CN, EnumDateStyle.YYYY_MM_DD_HH_MM_CN, EnumDateStyle.YYYY_MM_DD_HH_MM_SS_CN}
+    };
+
+    private static final EnumDateStyle[] STYLES = EnumDateStyle.values();
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * 公历启用的日期1582-10-15，之前SimpleDateFormat按儒略历计算
+     */
+    private static final int GREGORIAN_START = 15821015;
+
+    /*
+     * 扫描结果压缩在一个long中：秒6位，分6位，时5位，日5位，月4位，年14位，日期风格的序号6位；失败为-1
+     */
+    private static final int MINUTE_SHIFT = 6;
+    private static final int HOUR_SHIFT = 12;
+    private static final int DAY_SHIFT = 17;
+    private static final int MONTH_SHIFT = 22;
+    private static final int YEAR_SHIFT = 26;
+    private static final int STYLE_SHIFT = 40;
+
+    private DateScanner() {
+    }
+
+    /**
+     * 按系统时区转换为毫秒数
+     *
+     * @param text 日期字符串或秒数、毫秒数
+     * @return 毫秒数，无法识别时为{@link #INVALID}
+     */
+    public static long parse(CharSequence text) {
+        return parse(text, TimeZone.getDefault());
+    }
+
+    /**
+     * 按指定时区转换为毫秒数
+     *
+     * @param text 日期字符串或秒数、毫秒数
+     * @param zone 时区
+     * @return 毫秒数，无法识别时为{@link #INVALID}
+     */
+    public static long parse(CharSequence text, TimeZone zone) {
+        if (text == null) {
+            return INVALID;
+        }
+        int start = skipSpace(text, 0, text.length());
+        int end = trimSpace(text, start, text.length());
+        long epoch = epoch(text, start, end);
+        if (epoch != INVALID) {
+            return epoch;
+        }
+        long fields = scan(text, start, end);
+        if (fields < 0) {
+            return INVALID;
+        }
+        long local = ((daysFromCivil(field(fields, YEAR_SHIFT, 14), field(fields, MONTH_SHIFT, 4), field(fields, DAY_SHIFT, 5)) * 24
+                + field(fields, HOUR_SHIFT, 5)) * 60 + field(fields, MINUTE_SHIFT, 6)) * 60 + field(fields, 0, 6);
+        return toUtc(local * 1000L, zone);
+    }
+
+    /**
+     * 按系统时区批量转换为毫秒数，如导入文件的一列
+     *
+     * @param texts 日期字符串或秒数、毫秒数
+     * @return 毫秒数，无法识别的元素为{@link #INVALID}
+     */
+    public static long[] parseAll(String[] texts) {
+        return parseAll(texts, TimeZone.getDefault());
+    }
+
+    /**
+     * 按指定时区批量转换为毫秒数
+     *
+     * @param texts 日期字符串或秒数、毫秒数
+     * @param zone  时区
+     * @return 毫秒数，无法识别的元素为{@link #INVALID}
+     */
+    public static long[] parseAll(String[] texts, TimeZone zone) {
+        long[] millis = new long[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            millis[i] = parse(texts[i], zone);
+        }
+        return millis;
+    }
+
+    /**
+     * 判断日期字符串的日期风格
+     *
+     * @param text 日期字符串
+     * @return 日期风格，无法识别或为秒数、毫秒数时为null
+     */
+    public static EnumDateStyle detect(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        int start = skipSpace(text, 0, text.length());
+        int end = trimSpace(text, start, text.length());
+        if (epoch(text, start, end) != INVALID) {
+            return null;
+        }
+        long fields = scan(text, start, end);
+        return fields < 0 ? null : STYLES[field(fields, STYLE_SHIFT, 6)];
+    }
+
+    /**
+     * 是否为秒数或毫秒数
+     *
+     * @param text 字符串
+     * @return 是否为秒数或毫秒数
+     */
+    public static boolean isEpoch(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int start = skipSpace(text, 0, text.length());
+        return epoch(text, start, trimSpace(text, start, text.length())) != INVALID;
+    }
+
+    /**
+     * 纯数字的秒数（10位）或毫秒数（13位）
+     */
+    private static long epoch(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length != 10 && length != 13) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (length == 13) {
+            return value;
+        }
+        return isDateHour(value) ? INVALID : value * 1000L;
+    }
+
+    /**
+     * 10位数字是否为1900到2099年的yyyyMMddHH，如2012010510；这样的秒数在2030年之后，按秒数处理容易误判
+     */
+    private static boolean isDateHour(long value) {
+        int year = (int) (value / 1000000);
+        int month = (int) (value / 10000 % 100);
+        int day = (int) (value / 100 % 100);
+        int hour = (int) (value % 100);
+        return year >= 1900 && year <= 2099 && month >= 1 && month <= 12
+                && day >= 1 && day <= lengthOfMonth(year, month) && hour <= 23;
+    }
+
+    /**
+     * 扫描日期字符串
+     *
+     * @return 压缩的字段，无法识别时为-1
+     */
+    private static long scan(CharSequence text, int start, int end) {
+        int pos = start;
+        int first = 0;
+        while (pos < end && pos - start < 9 && isDigit(text.charAt(pos))) {
+            first = first * 10 + (text.charAt(pos++) - '0');
+        }
+        int digits = pos - start;
+        if (digits == 0) {
+            return -1;
+        }
+        if (pos == end) {
+            if (digits == 8) {
+                return pack(EnumDateStyle.YYYYMMDD, first / 10000, first / 100 % 100, first % 100, 0, 0, 0);
+            }
+            if (digits == 6) {
+                return pack(EnumDateStyle.HHMMSS, 1970, 1, 1, first / 10000, first / 100 % 100, first % 100);
+            }
+            return -1;
+        }
+        char separator = text.charAt(pos);
+        if (separator == ':') {
+            if (digits > 2) {
+                return -1;
+            }
+            return time(text, start, end, null, false, 1970, 1, 1);
+        }
+        if (digits == 4) {
+            int family = family(separator, '年');
+            if (family < 0) {
+                return -1;
+            }
+            pos++;
+            int monthStart = pos;
+            int month = 0;
+            while (pos < end && pos - monthStart < 2 && isDigit(text.charAt(pos))) {
+                month = month * 10 + (text.charAt(pos++) - '0');
+            }
+            if (pos == monthStart) {
+                return -1;
+            }
+            if (family == CHINESE) {
+                if (pos == end || text.charAt(pos++) != '月') {
+                    return -1;
+                }
+            }
+            if (pos == end) {
+                return pack(LAYOUTS[family][YYYY_MM], first, month, 1, 0, 0, 0);
+            }
+            if (family != CHINESE && text.charAt(pos++) != separator) {
+                return -1;
+            }
+            return day(text, pos, end, family, true, first, month);
+        }
+        if (digits <= 2) {
+            int family = family(separator, '月');
+            if (family < 0) {
+                return -1;
+            }
+            return day(text, pos + 1, end, family, false, 1970, first);
+        }
+        return -1;
+    }
+
+    /**
+     * 扫描日及之后的部分
+     */
+    private static long day(CharSequence text, int pos, int end, int family, boolean withYear, int year, int month) {
+        int dayStart = pos;
+        int day = 0;
+        while (pos < end && pos - dayStart < 2 && isDigit(text.charAt(pos))) {
+            day = day * 10 + (text.charAt(pos++) - '0');
+        }
+        if (pos == dayStart) {
+            return -1;
+        }
+        if (family == CHINESE) {
+            if (pos == end || text.charAt(pos++) != '日') {
+                return -1;
+            }
+        }
+        EnumDateStyle[] layouts = LAYOUTS[family];
+        if (pos == end) {
+            return pack(layouts[withYear ? YYYY_MM_DD : MM_DD], year, month, day, 0, 0, 0);
+        }
+        if (text.charAt(pos) != ' ') {
+            return -1;
+        }
+        return time(text, pos + 1, end, layouts, withYear, year, month, day);
+    }
+
+    /**
+     * 扫描时间部分，layouts为null时只有时间
+     */
+    private static long time(CharSequence text, int pos, int end, EnumDateStyle[] layouts, boolean withYear,
+                             int year, int month, int day) {
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int count = 0;
+        while (true) {
+            int fieldStart = pos;
+            int value = 0;
+            while (pos < end && pos - fieldStart < 2 && isDigit(text.charAt(pos))) {
+                value = value * 10 + (text.charAt(pos++) - '0');
+            }
+            if (pos == fieldStart) {
+                return -1;
+            }
+            if (count == 0) {
+                hour = value;
+            } else if (count == 1) {
+                minute = value;
+            } else {
+                second = value;
+            }
+            count++;
+            if (pos == end) {
+                break;
+            }
+            if (count == 3 || text.charAt(pos++) != ':') {
+                return -1;
+            }
+        }
+        if (count < 2) {
+            return -1;
+        }
+        EnumDateStyle style;
+        if (layouts == null) {
+            style = count == 2 ? EnumDateStyle.HH_MM : EnumDateStyle.HH_MM_SS;
+        } else if (withYear) {
+            style = layouts[count == 2 ? YYYY_MM_DD_HH_MM : YYYY_MM_DD_HH_MM_SS];
+        } else {
+            style = layouts[count == 2 ? MM_DD_HH_MM : MM_DD_HH_MM_SS];
+        }
+        return pack(style, year, month, day, hour, minute, second);
+    }
+
+    /**
+     * 本地时间换算为UTC毫秒数<br>
+     * 前后一天的时差相同时没有切换；不同时优先取切换前的时差，两个时差都不成立的是夏令时开始时不存在的时刻，按切换前的时差顺延
+     */
+    static long toUtc(long local, TimeZone zone) {
+        int before = zone.getOffset(local - DAY_MILLIS);
+        int after = zone.getOffset(local + DAY_MILLIS);
+        if (before == after || zone.getOffset(local - before) == before || zone.getOffset(local - after) != after) {
+            return local - before;
+        }
+        return local - after;
+    }
+
+    /**
+     * 校验并压缩字段
+     *
+     * @return 压缩的字段，日期或时间不存在或早于公历启用时为-1
+     */
+    private static long pack(EnumDateStyle style, int year, int month, int day, int hour, int minute, int second) {
+        if (year * 10000 + month * 100 + day < GREGORIAN_START || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return -1;
+        }
+        return (long) style.ordinal() << STYLE_SHIFT | (long) year << YEAR_SHIFT | (long) month << MONTH_SHIFT
+                | (long) day << DAY_SHIFT | (long) hour << HOUR_SHIFT | (long) minute << MINUTE_SHIFT | second;
+    }
+
+    private static int field(long fields, int shift, int bits) {
+        return (int) (fields >>> shift) & ((1 << bits) - 1);
+    }
+
+    /**
+     * 分隔符对应的格式，中文格式的分隔符为年或月
+     */
+    private static int family(char separator, char chinese) {
+        if (separator == '-') {
+            return DASH;
+        }
+        if (separator == '/') {
+            return SLASH;
+        }
+        return separator == chinese ? CHINESE : -1;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * 公历日期距1970-01-01的天数
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipSpace(CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpace(CharSequence text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
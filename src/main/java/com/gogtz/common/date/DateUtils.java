@@ -13,18 +13,30 @@ package com.gogtz.common.date;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.*;
 
 /**
- * 时间共通类
+ * 时间共通类<br>
+ * 格式化与解析通过{@link DateFormatters}缓存的DateTimeFormatter进行，不再每次新建SimpleDateFormat
  *
  * @author: t
  * @version: 1.0
  */
 public class DateUtils {
 
+    /**
+     * getServerDateTime的类型对应的日期格式，下标为类型
+     */
+    private static final String[] SERVER_DATE_TIME_PATTERNS = {null, "yyyyMMdd", "yyyy-MM-dd HH", "HHmmss",
+            "HH:mm:ss", "yyyyMMdd HHmmss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd|HH:mm:ss", "yyyyMMddHHmmss",
+            "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd", "MM月dd日"};
+
     /**
      * 获取当前时间
      *
@@ -66,7 +78,9 @@ public class DateUtils {
     }
 
     /**
-     * string转换为日期。失败返回null。
+     * string转换为日期。失败返回null。<br>
+     * 日期风格为null时自动判断，{@link DateScanner}能识别的格式（包括秒数、毫秒数）一次扫描得到结果，
+     * 不能识别时再逐个日期风格尝试
      *
      * @param date
      * @param enumDateStyle
@@ -75,16 +89,20 @@ public class DateUtils {
     public static Date date(String date, EnumDateStyle enumDateStyle) {
         Date myDate = null;
         if (enumDateStyle == null) {
+            long millis = DateScanner.parse(date);
+            if (millis != DateScanner.INVALID) {
+                return new Date(millis);
+            }
             List<Long> timestamps = new ArrayList<Long>();
             for (EnumDateStyle style : EnumDateStyle.values()) {
-                Date dateTmp = date(date, style.getValue());
+                Date dateTmp = parse(date, style.getValue());
                 if (dateTmp != null) {
                     timestamps.add(dateTmp.getTime());
                 }
             }
             myDate = getAccurateDate(timestamps);
         } else {
-            myDate = date(date, enumDateStyle.getValue());
+            myDate = parse(date, enumDateStyle.getValue());
         }
         return myDate;
     }
@@ -98,17 +116,88 @@ public class DateUtils {
      */
     public static Date date(String date, String parttern) {
         Date myDate = null;
-        if (date != null) {
+        if (date != null && parttern != null) {
             try {
-                myDate = getDateFormat(parttern).parse(date);
-            } catch (Exception e) {
+                myDate = parse(date, parttern);
+            } catch (IllegalArgumentException e) {
             }
         }
         return myDate;
     }
 
     /**
-     * 获取SimpleDateFormat
+     * string转换为LocalDate。失败返回null。
+     *
+     * @param date     日期字符串
+     * @param parttern 日期格式
+     * @return 日期
+     */
+    public static LocalDate localDate(String date, String parttern) {
+        ZonedDateTime dateTime = zonedDateTime(date, parttern);
+        return dateTime == null ? null : dateTime.toLocalDate();
+    }
+
+    /**
+     * string转换为LocalDate。失败返回null。
+     *
+     * @param date          日期字符串
+     * @param enumDateStyle 日期风格
+     * @return 日期
+     */
+    public static LocalDate localDate(String date, EnumDateStyle enumDateStyle) {
+        ZonedDateTime dateTime = zonedDateTime(date, enumDateStyle);
+        return dateTime == null ? null : dateTime.toLocalDate();
+    }
+
+    /**
+     * string转换为LocalDateTime。失败返回null。
+     *
+     * @param date     日期字符串
+     * @param parttern 日期格式
+     * @return 日期时间
+     */
+    public static LocalDateTime localDateTime(String date, String parttern) {
+        ZonedDateTime dateTime = zonedDateTime(date, parttern);
+        return dateTime == null ? null : dateTime.toLocalDateTime();
+    }
+
+    /**
+     * string转换为LocalDateTime。失败返回null。
+     *
+     * @param date          日期字符串
+     * @param enumDateStyle 日期风格
+     * @return 日期时间
+     */
+    public static LocalDateTime localDateTime(String date, EnumDateStyle enumDateStyle) {
+        ZonedDateTime dateTime = zonedDateTime(date, enumDateStyle);
+        return dateTime == null ? null : dateTime.toLocalDateTime();
+    }
+
+    private static ZonedDateTime zonedDateTime(String date, String parttern) {
+        if (date == null || parttern == null) {
+            return null;
+        }
+        try {
+            return DateFormatters.parse(date, DateFormatters.get(parttern));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static ZonedDateTime zonedDateTime(String date, EnumDateStyle enumDateStyle) {
+        if (enumDateStyle == null) {
+            return null;
+        }
+        return DateFormatters.parse(date, DateFormatters.get(enumDateStyle));
+    }
+
+    private static Date parse(String date, String parttern) {
+        return DateFormatters.parseDate(date, parttern);
+    }
+
+    /**
+     * 获取SimpleDateFormat<br>
+     * SimpleDateFormat不是线程安全的，每次新建；只需要格式化或解析时使用{@link DateFormatters}
      *
      * @param parttern 日期格式
      * @return SimpleDateFormat对象
@@ -264,17 +353,23 @@ public class DateUtils {
      * @return 日期风格
      */
     public static EnumDateStyle getEnumDateStyle(String date) {
-        EnumDateStyle EnumDateStyle = null;
+        EnumDateStyle EnumDateStyle = DateScanner.detect(date);
+        if (EnumDateStyle != null || DateScanner.isEpoch(date)) {
+            return EnumDateStyle;
+        }
         Map<Long, EnumDateStyle> map = new HashMap<Long, EnumDateStyle>();
         List<Long> timestamps = new ArrayList<Long>();
         for (EnumDateStyle style : EnumDateStyle.values()) {
-            Date dateTmp = date(date, style.getValue());
+            Date dateTmp = parse(date, style.getValue());
             if (dateTmp != null) {
                 timestamps.add(dateTmp.getTime());
                 map.put(dateTmp.getTime(), style);
             }
         }
-        EnumDateStyle = map.get(getAccurateDate(timestamps).getTime());
+        Date accurateDate = getAccurateDate(timestamps);
+        if (accurateDate != null) {
+            EnumDateStyle = map.get(accurateDate.getTime());
+        }
         return EnumDateStyle;
     }
 
@@ -288,10 +383,7 @@ public class DateUtils {
     public static String format(Date date, String parttern) {
         String dateString = null;
         if (date != null) {
-            try {
-                dateString = getDateFormat(parttern).format(date);
-            } catch (Exception e) {
-            }
+            dateString = format(Instant.ofEpochMilli(date.getTime()), parttern);
         }
         return dateString;
     }
@@ -305,8 +397,110 @@ public class DateUtils {
      */
     public static String format(Date date, EnumDateStyle EnumDateStyle) {
         String dateString = null;
-        if (EnumDateStyle != null) {
-            dateString = format(date, EnumDateStyle.getValue());
+        if (date != null) {
+            dateString = format(Instant.ofEpochMilli(date.getTime()), EnumDateStyle);
+        }
+        return dateString;
+    }
+
+    /**
+     * 将时刻按系统时区转化为日期字符串。失败返回null。
+     *
+     * @param instant  时刻
+     * @param parttern 日期格式
+     * @return 日期字符串
+     */
+    public static String format(Instant instant, String parttern) {
+        String dateString = null;
+        if (instant != null && parttern != null) {
+            try {
+                dateString = DateFormatters.format(instant, parttern);
+            } catch (IllegalArgumentException | DateTimeException e) {
+            }
+        }
+        return dateString;
+    }
+
+    /**
+     * 将时刻按系统时区转化为日期字符串。失败返回null。
+     *
+     * @param instant       时刻
+     * @param enumDateStyle 日期风格
+     * @return 日期字符串
+     */
+    public static String format(Instant instant, EnumDateStyle enumDateStyle) {
+        String dateString = null;
+        if (instant != null && enumDateStyle != null) {
+            dateString = DateFormatters.format(instant, enumDateStyle.getValue());
+        }
+        return dateString;
+    }
+
+    /**
+     * 将日期时间转化为日期字符串。失败返回null。
+     *
+     * @param dateTime 日期时间
+     * @param parttern 日期格式
+     * @return 日期字符串
+     */
+    public static String format(LocalDateTime dateTime, String parttern) {
+        String dateString = null;
+        if (dateTime != null && parttern != null) {
+            try {
+                dateString = DateFormatters.get(parttern).format(dateTime);
+            } catch (IllegalArgumentException | DateTimeException e) {
+            }
+        }
+        return dateString;
+    }
+
+    /**
+     * 将日期时间转化为日期字符串。失败返回null。
+     *
+     * @param dateTime      日期时间
+     * @param enumDateStyle 日期风格
+     * @return 日期字符串
+     */
+    public static String format(LocalDateTime dateTime, EnumDateStyle enumDateStyle) {
+        String dateString = null;
+        if (dateTime != null && enumDateStyle != null) {
+            dateString = DateFormatters.get(enumDateStyle).format(dateTime);
+        }
+        return dateString;
+    }
+
+    /**
+     * 将日期转化为日期字符串。格式中有时间时失败，返回null。
+     *
+     * @param date     日期
+     * @param parttern 日期格式
+     * @return 日期字符串
+     */
+    public static String format(LocalDate date, String parttern) {
+        String dateString = null;
+        if (date != null && parttern != null) {
+            try {
+                dateString = DateFormatters.get(parttern).format(date);
+            } catch (IllegalArgumentException | DateTimeException e) {
+            }
+        }
+        return dateString;
+    }
+
+    /**
+     * 将日期转化为日期字符串。日期风格中有时间时失败，返回null。
+     *
+     * @param date          日期
+     * @param enumDateStyle 日期风格
+     * @return 日期字符串
+     */
+    public static String format(LocalDate date, EnumDateStyle enumDateStyle) {
+        String dateString = null;
+        if (date != null && enumDateStyle != null) {
+            try {
+                dateString = DateFormatters.get(enumDateStyle).format(date);
+            } catch (DateTimeException e) {
+            }
         }
         return dateString;
     }
@@ -864,14 +1058,10 @@ public class DateUtils {
     public static long stringToLong(String date, String format) {
         long lTime = 0;
         if (StringUtils.isNotBlank(date)) {
-            SimpleDateFormat sdf = new SimpleDateFormat(format);
-            Date dt2 = null;
-            try {
-                dt2 = sdf.parse(date);
+            ZonedDateTime dateTime = zonedDateTime(date, format);
+            if (dateTime != null) {
                 // 继续转换得到秒数的long型
-                lTime = dt2.getTime() / 1000;
-            } catch (ParseException e) {
-                e.printStackTrace();
+                lTime = dateTime.toEpochSecond();
             }
         }
 
@@ -889,9 +1079,7 @@ public class DateUtils {
         if (date == null || date <= 0) {
             return "";
         }
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(Long.valueOf(date) * 1000L);
-        return format(c.getTime(), enumDateStyle);
+        return format(Instant.ofEpochSecond(date), enumDateStyle);
     }
 
     /**
@@ -905,9 +1093,7 @@ public class DateUtils {
         if (date == null || date <= 0) {
             return "";
         }
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(Long.valueOf(date) * 1000L);
-        return format(c.getTime(), parttern);
+        return format(Instant.ofEpochSecond(date), parttern);
     }
 
     /**
@@ -934,54 +1120,10 @@ public class DateUtils {
      * @return
      */
     public static String getServerDateTime(int Kind, Date currentTime) {
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
-        String strDate = formatter.format(currentTime);
-        StringTokenizer token = new StringTokenizer(strDate, "-");
-        String year = token.nextToken();
-        String month = token.nextToken();
-        String day = token.nextToken();
-        String hh = token.nextToken();
-        String mm = token.nextToken();
-        String ss = token.nextToken();
-        String strServerDateTime = "";
-        switch (Kind) {
-            case 1:
-                strServerDateTime = year + month + day;
-                break;
-            case 2:
-                strServerDateTime = year + "-" + month + "-" + day + " " + hh;
-                break;
-            case 3:
-                strServerDateTime = hh + mm + ss;
-                break;
-            case 4:
-                strServerDateTime = hh + ":" + mm + ":" + ss;
-                break;
-            case 5:
-                strServerDateTime = year + month + day + " " + hh + mm + ss;
-                break;
-            case 6:
-                strServerDateTime = year + "-" + month + "-" + day + " " + hh + ":" + mm + ":" + ss;
-                break;
-            case 7:
-                strServerDateTime = year + "-" + month + "-" + day + "|" + hh + ":" + mm + ":" + ss;
-                break;
-            case 8:
-                strServerDateTime = year + month + day + hh + mm + ss;
-                break;
-            case 9:
-                strServerDateTime = year + "-" + month + "-" + day + " " + hh + ":" + mm + ":" + ss;
-                break;
-            case 10:
-                strServerDateTime = year + "-" + month + "-" + day;
-                break;
-            case 11:
-                strServerDateTime = month + "月" + day + "日";
-                break;
-            default:
-                break;
+        if (Kind < 1 || Kind >= SERVER_DATE_TIME_PATTERNS.length) {
+            return "";
         }
-        return strServerDateTime;
+        return format(currentTime, SERVER_DATE_TIME_PATTERNS[Kind]);
     }
 
     /**
@@ -0,0 +1,281 @@
+package com.gogtz.common.properties;
+
+import com.gogtz.common.lang.Assert;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>消息目录</h1>
+ * 按语言读取消息资源文件并格式化，代替每次读取文件再新建MessageFormat。
+ * <ol><strong>
+ * <li>资源文件按语言查找：message/message_zh_CN.properties、message/message_zh.properties、message/message.properties，
+ * 依次取第一个有该key的文件</li>
+ * <li>资源文件通过{@link PropertyUtil#getSnapshot(String)}只读取一次，修改后自动重新加载，同时清空已编译的消息</li>
+ * <li>消息第一次使用时编译并缓存；只有{0}形式参数的消息直接拼接，参数为数字或日期、
+ * 或带格式（如{0,number,#.##}）的消息使用编译好的MessageFormat</li>
+ * <li>格式规则与MessageFormat相同，单引号用于转义，''表示一个单引号</li>
+ * </strong>
+ * </ol>
+ * <pre>
+ * String text = MessageCatalog.getDefault().getMessage(Locale.CHINA, "validate.required", "手机号");
+ * </pre>
+ * 实例会注册重新加载的监听器，需要复用，不要每次新建。
+ *
+ * @author t
+ */
+public class MessageCatalog {
+
+    public static final String DEFAULT_BASE_NAME = "message/message";
+
+    private static final MessageCatalog defaultInstance = new MessageCatalog(DEFAULT_BASE_NAME);
+
+    private final String baseName;
+    private final ConcurrentHashMap<Locale, ConcurrentHashMap<String, CompiledMessage>> compiled
+            = new ConcurrentHashMap<Locale, ConcurrentHashMap<String, CompiledMessage>>();
+
+    /**
+     * 构建消息目录
+     *
+     * @param baseName 资源文件的基础名，如message/message
+     */
+    public MessageCatalog(final String baseName) {
+        Assert.notBlank(baseName, "baseName must not be blank");
+        this.baseName = baseName;
+        PropertyUtil.addListener(new PropertyListener() {
+            @Override
+            public void onReload(String name, PropertySnapshot previous, PropertySnapshot current) {
+                if (name.startsWith(baseName)) {
+                    compiled.clear();
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用message/message的消息目录
+     *
+     * @return 消息目录
+     */
+    public static MessageCatalog getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * 资源文件的基础名
+     */
+    public String getBaseName() {
+        return baseName;
+    }
+
+    /**
+     * 按默认语言取得并格式化消息
+     *
+     * @param key  key
+     * @param args 参数
+     * @return 消息，key不存在时返回key
+     */
+    public String getMessage(String key, Object... args) {
+        return getMessage(Locale.getDefault(), key, args);
+    }
+
+    /**
+     * 取得并格式化消息
+     *
+     * @param locale 语言
+     * @param key    key
+     * @param args   参数
+     * @return 消息，key不存在时返回key
+     * @throws IllegalArgumentException 消息的格式错误
+     */
+    public String getMessage(Locale locale, String key, Object... args) {
+        CompiledMessage message = compile(locale, key);
+        return message == null ? key : message.format(args);
+    }
+
+    /**
+     * 是否有该消息
+     *
+     * @param locale 语言
+     * @param key    key
+     * @return 是否存在
+     */
+    public boolean contains(Locale locale, String key) {
+        return compile(locale, key) != null;
+    }
+
+    /**
+     * 清空已编译的消息，资源文件修改后会自动清空
+     */
+    public void clearCache() {
+        compiled.clear();
+    }
+
+    private CompiledMessage compile(Locale locale, String key) {
+        ConcurrentHashMap<String, CompiledMessage> messages = compiled.get(locale);
+        if (messages == null) {
+            messages = new ConcurrentHashMap<String, CompiledMessage>();
+            ConcurrentHashMap<String, CompiledMessage> existing = compiled.putIfAbsent(locale, messages);
+            if (existing != null) {
+                messages = existing;
+            }
+        }
+        CompiledMessage message = messages.get(key);
+        if (message == null) {
+            String pattern = find(locale, key);
+            message = pattern == null ? CompiledMessage.MISSING : new CompiledMessage(pattern, locale);
+            messages.putIfAbsent(key, message);
+        }
+        return message == CompiledMessage.MISSING ? null : message;
+    }
+
+    /**
+     * 按语言从具体到一般查找消息
+     */
+    private String find(Locale locale, String key) {
+        for (String suffix : suffixes(locale)) {
+            String pattern = PropertyUtil.getSnapshot(baseName + suffix + ".properties").get(key);
+            if (pattern != null) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> suffixes(Locale locale) {
+        List<String> suffixes = new ArrayList<String>(4);
+        String language = locale.getLanguage();
+        String country = locale.getCountry();
+        String variant = locale.getVariant();
+        if (!variant.isEmpty()) {
+            suffixes.add("_" + language + "_" + country + "_" + variant);
+        }
+        if (!country.isEmpty()) {
+            suffixes.add("_" + language + "_" + country);
+        }
+        if (!language.isEmpty()) {
+            suffixes.add("_" + language);
+        }
+        suffixes.add("");
+        return suffixes;
+    }
+
+    /**
+     * 编译好的消息<br>
+     * 只有{n}形式参数的消息拆分为文本和参数序号，格式化时直接拼接；
+     * 其他消息以及参数为数字、日期时使用MessageFormat，MessageFormat不是线程安全的，格式化时加锁
+     */
+    static final class CompiledMessage {
+        static final CompiledMessage MISSING = new CompiledMessage();
+
+        /**
+         * 文本为String，参数为Integer序号；不能直接拼接时为null
+         */
+        private final Object[] segments;
+        private final MessageFormat format;
+        private final int length;
+
+        private CompiledMessage() {
+            this.segments = null;
+            this.format = null;
+            this.length = 0;
+        }
+
+        CompiledMessage(String pattern, Locale locale) {
+            this.format = new MessageFormat(pattern, locale);
+            this.segments = split(pattern);
+            this.length = pattern.length();
+        }
+
+        String format(Object[] args) {
+            if (segments == null || needsFormat(args)) {
+                synchronized (format) {
+                    return format.format(args == null ? new Object[0] : args);
+                }
+            }
+            StringBuilder builder = new StringBuilder(length + 16 * (args == null ? 0 : args.length));
+            for (Object segment : segments) {
+                if (segment instanceof String) {
+                    builder.append((String) segment);
+                    continue;
+                }
+                int index = (Integer) segment;
+                if (args == null || index >= args.length) {
+                    // 与MessageFormat相同，缺少的参数原样输出
+                    builder.append('{').append(index).append('}');
+                } else {
+                    builder.append(args[index]);
+                }
+            }
+            return builder.toString();
+        }
+
+        private boolean needsFormat(Object[] args) {
+            if (args == null) {
+                return false;
+            }
+            for (Object segment : segments) {
+                if (segment instanceof Integer) {
+                    int index = (Integer) segment;
+                    if (index < args.length && (args[index] instanceof Number || args[index] instanceof Date)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 按MessageFormat的引号规则拆分消息
+         *
+         * @return 文本和参数序号，有带格式的参数时为null
+         */
+        private static Object[] split(String pattern) {
+            List<Object> segments = new ArrayList<Object>();
+            StringBuilder text = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                        text.append('\'');
+                        i++;
+                    } else {
+                        quoted = !quoted;
+                    }
+                } else if (c == '{' && !quoted) {
+                    int end = pattern.indexOf('}', i);
+                    String argument = end < 0 ? "" : pattern.substring(i + 1, end);
+                    if (argument.isEmpty() || argument.length() > 9 || !isDigits(argument)) {
+                        return null;
+                    }
+                    if (text.length() > 0) {
+                        segments.add(text.toString());
+                        text.setLength(0);
+                    }
+                    segments.add(Integer.valueOf(argument));
+                    i = end;
+                } else {
+                    text.append(c);
+                }
+            }
+            if (text.length() > 0) {
+                segments.add(text.toString());
+            }
+            return segments.toArray();
+        }
+
+        private static boolean isDigits(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (!Character.isDigit(text.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.gogtz.common.properties;
+
+/**
+ * 资源文件重新加载的监听器，通过{@link PropertyUtil#addListener(PropertyListener)}注册
+ *
+ * @author t
+ */
+public interface PropertyListener {
+
+    /**
+     * 资源文件的内容发生变化并已替换为新的快照，在重新加载的线程中调用
+     *
+     * @param name     资源文件名，如properties/redis.properties
+     * @param previous 旧的快照
+     * @param current  新的快照
+     */
+    void onReload(String name, PropertySnapshot previous, PropertySnapshot current);
+}
@@ -0,0 +1,194 @@
+package com.gogtz.common.properties;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 资源文件在某一时刻的不可变快照<br>
+ * 读取只是一次Map查找；类型转换的结果按key缓存，同一快照中每个key只解析一次。
+ * 文件修改后{@link PropertyUtil}整体替换为新的快照，持有旧快照的调用方看到的仍是一致的旧值。
+ *
+ * @author t
+ */
+public final class PropertySnapshot {
+
+    /**
+     * 解析结果为默认值的标记
+     */
+    private static final Object ABSENT = new Object();
+
+    private final String name;
+    private final Map<String, String> values;
+    private final long loadedAt;
+    private final ConcurrentHashMap<String, Object> parsed = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @param name       资源文件名
+     * @param properties 内容，构建后不再引用
+     */
+    PropertySnapshot(String name, Properties properties) {
+        Map<String, String> copy = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            copy.put(key, properties.getProperty(key));
+        }
+        this.name = name;
+        this.values = Collections.unmodifiableMap(copy);
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 资源文件名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 加载时间
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * 取得值
+     *
+     * @param key key
+     * @return 值，不存在时为null
+     */
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * 取得值
+     *
+     * @param key          key
+     * @param defaultValue 不存在或为空白时的默认值
+     * @return 值
+     */
+    public String get(String key, String defaultValue) {
+        String value = values.get(key);
+        return StringUtils.isBlank(value) ? defaultValue : value;
+    }
+
+    /**
+     * 取得int值，前后的空白被忽略
+     *
+     * @param key          key
+     * @param defaultValue 不存在或为空白时的默认值
+     * @return 值
+     * @throws NumberFormatException 不是整数
+     */
+    public int getInt(String key, int defaultValue) {
+        Object value = parse("i:", key);
+        if (value == null) {
+            value = cache("i:", key, Integer.valueOf(values.get(key).trim()));
+        }
+        return value == ABSENT ? defaultValue : (Integer) value;
+    }
+
+    /**
+     * 取得long值，前后的空白被忽略
+     *
+     * @param key          key
+     * @param defaultValue 不存在或为空白时的默认值
+     * @return 值
+     * @throws NumberFormatException 不是整数
+     */
+    public long getLong(String key, long defaultValue) {
+        Object value = parse("l:", key);
+        if (value == null) {
+            value = cache("l:", key, Long.valueOf(values.get(key).trim()));
+        }
+        return value == ABSENT ? defaultValue : (Long) value;
+    }
+
+    /**
+     * 取得double值，前后的空白被忽略
+     *
+     * @param key          key
+     * @param defaultValue 不存在或为空白时的默认值
+     * @return 值
+     * @throws NumberFormatException 不是数字
+     */
+    public double getDouble(String key, double defaultValue) {
+        Object value = parse("d:", key);
+        if (value == null) {
+            value = cache("d:", key, Double.valueOf(values.get(key).trim()));
+        }
+        return value == ABSENT ? defaultValue : (Double) value;
+    }
+
+    /**
+     * 取得boolean值，true（不区分大小写）以外的值都为false
+     *
+     * @param key          key
+     * @param defaultValue 不存在或为空白时的默认值
+     * @return 值
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = parse("b:", key);
+        if (value == null) {
+            value = cache("b:", key, Boolean.valueOf(values.get(key).trim()));
+        }
+        return value == ABSENT ? defaultValue : (Boolean) value;
+    }
+
+    /**
+     * 所有的key
+     */
+    public Set<String> keys() {
+        return values.keySet();
+    }
+
+    /**
+     * 只读的全部内容
+     */
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    /**
+     * 复制为Properties，修改不影响快照
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.putAll(values);
+        return properties;
+    }
+
+    /**
+     * 内容是否相同
+     *
+     * @param other 另一个快照
+     * @return 是否相同
+     */
+    boolean sameContent(PropertySnapshot other) {
+        return other != null && values.equals(other.values);
+    }
+
+    /**
+     * 取得已缓存的解析结果
+     *
+     * @return 解析结果，值不存在时为{@link #ABSENT}，还未解析时为null
+     */
+    private Object parse(String type, String key) {
+        Object value = parsed.get(type + key);
+        if (value != null) {
+            return value;
+        }
+        return StringUtils.isBlank(values.get(key)) ? ABSENT : null;
+    }
+
+    private Object cache(String type, String key, Object value) {
+        parsed.put(type + key, value);
+        return value;
+    }
+}
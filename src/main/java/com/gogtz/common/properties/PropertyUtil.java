@@ -11,11 +11,24 @@
  */
 package com.gogtz.common.properties;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * 资源文件的读取<br>
+ * 每个文件只读取一次并缓存为不可变的{@link PropertySnapshot}，取值只是一次Map查找；
+ * 文件修改后自动重新加载并通知{@link PropertyListener}
+ */
 public class PropertyUtil {
+    private static final Logger logger = LoggerFactory.getLogger(PropertyUtil.class);
 
     /**
      * 数据库资源文件
@@ -43,23 +56,147 @@ public class PropertyUtil {
     protected static final String REDIS_RESOURCES_PROPERTIES_FILE_NAME = "properties/redis.properties";
 
     /**
-     * 获取资源文件的共通方法
+     * 已加载的快照
+     */
+    private static final ConcurrentHashMap<String, PropertySnapshot> snapshots = new ConcurrentHashMap<String, PropertySnapshot>();
+
+    private static final CopyOnWriteArrayList<PropertyListener> listeners = new CopyOnWriteArrayList<PropertyListener>();
+
+    /**
+     * 获取资源文件的共通方法，返回快照的副本
      *
      * @param propertiesFileName
      * @return
      * @throws IOException
      */
     protected static Properties getProperties(String propertiesFileName) throws IOException {
-        Properties prop = new Properties();
-        InputStream is = PropertyUtil.class.getClassLoader().getResourceAsStream(propertiesFileName);
+        return getSnapshot(propertiesFileName).toProperties();
+    }
 
-        try {
-            prop.load(is);
-        } catch (IOException e) {
-            throw e;
+    /**
+     * 取得资源文件的快照<br>
+     * 第一次调用时加载并缓存，之后文件变化时自动重新加载（见{@link PropertyWatcher}），不再每次读取文件
+     *
+     * @param propertiesFileName 资源文件名
+     * @return 快照，文件不存在时为空
+     */
+    public static PropertySnapshot getSnapshot(String propertiesFileName) {
+        PropertySnapshot snapshot = snapshots.get(propertiesFileName);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (snapshots) {
+            snapshot = snapshots.get(propertiesFileName);
+            if (snapshot == null) {
+                snapshot = load(propertiesFileName);
+                snapshots.put(propertiesFileName, snapshot);
+                PropertyWatcher.watch(propertiesFileName, PropertyUtil.class.getClassLoader().getResource(propertiesFileName));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * redis资源文件的快照
+     *
+     * @return
+     */
+    public static PropertySnapshot getRedisSnapshot() {
+        return getSnapshot(REDIS_RESOURCES_PROPERTIES_FILE_NAME);
+    }
+
+    /**
+     * 系统资源文件的快照
+     *
+     * @return
+     */
+    public static PropertySnapshot getSystemSnapshot() {
+        return getSnapshot(SYSTEM_PROPERTIES_FILE_NAME);
+    }
+
+    /**
+     * 数据库资源文件的快照
+     *
+     * @return
+     */
+    public static PropertySnapshot getJDBCSnapshot() {
+        return getSnapshot(JDBC_RESOURCES_PROPERTIES_FILE_NAME);
+    }
+
+    /**
+     * 注册重新加载的监听器
+     *
+     * @param listener 监听器
+     */
+    public static void addListener(PropertyListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除重新加载的监听器
+     *
+     * @param listener 监听器
+     */
+    public static void removeListener(PropertyListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 立即重新加载所有已加载的资源文件
+     */
+    public static void reloadAll() {
+        for (String name : snapshots.keySet()) {
+            reload(name);
         }
+    }
 
-        return prop;
+    /**
+     * 重新加载资源文件，内容变化时替换快照并通知监听器
+     *
+     * @param propertiesFileName 资源文件名
+     */
+    static void reload(String propertiesFileName) {
+        PropertySnapshot previous;
+        PropertySnapshot current;
+        synchronized (snapshots) {
+            previous = snapshots.get(propertiesFileName);
+            current = load(propertiesFileName);
+            if (current.sameContent(previous)) {
+                return;
+            }
+            snapshots.put(propertiesFileName, current);
+        }
+        logger.info("reloaded " + propertiesFileName);
+        for (PropertyListener listener : listeners) {
+            try {
+                listener.onReload(propertiesFileName, previous, current);
+            } catch (RuntimeException e) {
+                logger.error("property listener error", e);
+            }
+        }
+    }
+
+    /**
+     * 读取资源文件，文件不存在或读取失败时为空
+     */
+    private static PropertySnapshot load(String propertiesFileName) {
+        Properties prop = new Properties();
+        URL url = PropertyUtil.class.getClassLoader().getResource(propertiesFileName);
+        if (url != null) {
+            // 不使用缓存的连接，否则文件修改后仍读到旧内容
+            try (InputStream is = openStream(url)) {
+                prop.load(is);
+            } catch (IOException e) {
+                logger.error("load " + propertiesFileName + " failed", e);
+            }
+        }
+        return new PropertySnapshot(propertiesFileName, prop);
+    }
+
+    private static InputStream openStream(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        return connection.getInputStream();
     }
 
     /**
@@ -83,8 +220,7 @@ public class PropertyUtil {
      * @return
      */
     public static String getJDBCPropertiesValue(String key) {
-        Properties properties = getJDBCProperties();
-        return properties == null ? "" : properties.getProperty(key);
+        return getSnapshot(JDBC_RESOURCES_PROPERTIES_FILE_NAME).get(key);
     }
 
     /**
@@ -122,19 +258,18 @@ public class PropertyUtil {
      * @return
      */
     public static String getSystemResourcesPropertieValue(String key) {
-        Properties properties = getSystemResourcesProperties();
-        return properties == null ? "" : properties.getProperty(key);
+        return getSnapshot(SYSTEM_PROPERTIES_FILE_NAME).get(key);
     }
 
     /**
-     * 消息资源文件
+     * 消息资源文件<br>
+     * 需要按语言取得或格式化消息时使用{@link MessageCatalog}
      *
      * @return
      * @throws IOException
      */
     public static String getMessageResourcesPropertieValue(String key) {
-        Properties properties = getMessageResourcesProperties();
-        return properties == null ? "" : properties.getProperty(key);
+        return getSnapshot(MESSAGE_RESOURCES_PROPERTIES_FILE_NAME).get(key);
     }
 
     /**
@@ -157,8 +292,7 @@ public class PropertyUtil {
      * @return
      */
     public static String getWxResourcesPropertieValue(String key) {
-        Properties properties = getWxResourcesProperties();
-        return properties == null ? "" : properties.getProperty(key);
+        return getSnapshot(WX_PROPERTIES_FILE_NAME).get(key);
     }
 
 
@@ -182,8 +316,7 @@ public class PropertyUtil {
      * @return
      */
     public static String getRedisValue(String key) {
-        Properties properties = getRedisResourcesProperties();
-        return properties == null ? "" : properties.getProperty(key);
+        return getSnapshot(REDIS_RESOURCES_PROPERTIES_FILE_NAME).get(key);
     }
 
 
@@ -0,0 +1,142 @@
+package com.gogtz.common.properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过WatchService监视资源文件所在的目录，文件变化后延迟{@link #DEBOUNCE_MILLIS}毫秒重新加载<br>
+ * 编辑器保存时通常连续触发多个事件，延迟期间的事件合并为一次加载。
+ * 只监视文件系统中的资源，jar中的资源不会变化；系统属性gogtz.properties.watch为false时不监视。
+ *
+ * @author t
+ */
+final class PropertyWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(PropertyWatcher.class);
+
+    static final long DEBOUNCE_MILLIS = 500L;
+
+    private static final Map<Path, String> files = new HashMap<Path, String>();
+    private static final Set<Path> directories = new HashSet<Path>();
+    private static final ConcurrentHashMap<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+    private static WatchService watchService;
+    private static ScheduledExecutorService reloader;
+
+    private PropertyWatcher() {
+    }
+
+    /**
+     * 开始监视资源文件
+     *
+     * @param name 资源文件名
+     * @param url  资源的位置
+     */
+    static synchronized void watch(String name, URL url) {
+        if (url == null || !"file".equals(url.getProtocol())
+                || "false".equalsIgnoreCase(System.getProperty("gogtz.properties.watch"))) {
+            return;
+        }
+        try {
+            Path file = Paths.get(url.toURI()).toAbsolutePath().normalize();
+            Path directory = file.getParent();
+            if (watchService == null) {
+                start();
+            }
+            if (directories.add(directory)) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            files.put(file, name);
+        } catch (Exception e) {
+            logger.warn("watch " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    private static void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        reloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "property-reload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final WatchService service = watchService;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll(service);
+            }
+        }, "property-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void poll(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.context() instanceof Path) {
+                    String name;
+                    synchronized (PropertyWatcher.class) {
+                        name = files.get(directory.resolve((Path) event.context()));
+                    }
+                    if (name != null) {
+                        schedule(name);
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    /**
+     * 延迟加载，延迟期间再次变化时重新计时
+     */
+    private static void schedule(final String name) {
+        ScheduledFuture<?> future = reloader.schedule(new Runnable() {
+            @Override
+            public void run() {
+                pending.remove(name);
+                try {
+                    PropertyUtil.reload(name);
+                } catch (RuntimeException e) {
+                    logger.error("reload " + name + " error", e);
+                }
+            }
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = pending.put(name, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.gogtz.common.session;
+
+import com.gogtz.common.cache.shiro.RedisSessionDAO;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.session.Session;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 请求内的会话属性缓冲<br>
+ * 开启后{@link SessionUtils}的读写先在当前线程内合并，请求结束时一次写回会话；
+ * 请求内读取总能读到本请求写入的值，同一属性只从会话读取一次。
+ * 通常由{@link SessionBufferFilter}开启，使用{@link RedisSessionDAO}时整个请求只写入一次Redis。
+ *
+ * @author t
+ */
+public final class SessionAttributeBuffer {
+
+    /**
+     * 已删除的属性
+     */
+    private static final Object REMOVED = new Object();
+
+    private static final ThreadLocal<SessionAttributeBuffer> current = new ThreadLocal<SessionAttributeBuffer>();
+
+    private final Map<String, Object> writes = new LinkedHashMap<String, Object>();
+    private final Map<String, Object> reads = new HashMap<String, Object>();
+    private int depth;
+
+    private SessionAttributeBuffer() {
+    }
+
+    /**
+     * 为当前线程开启缓冲，可以嵌套调用，必须与{@link #end()}成对出现
+     */
+    public static void begin() {
+        SessionAttributeBuffer buffer = current.get();
+        if (buffer == null) {
+            buffer = new SessionAttributeBuffer();
+            current.set(buffer);
+        }
+        buffer.depth++;
+    }
+
+    /**
+     * 结束缓冲，最外层结束时写回会话
+     */
+    public static void end() {
+        SessionAttributeBuffer buffer = current.get();
+        if (buffer == null || --buffer.depth > 0) {
+            return;
+        }
+        try {
+            buffer.flush();
+        } finally {
+            current.remove();
+        }
+    }
+
+    /**
+     * 当前线程的缓冲
+     *
+     * @return 缓冲，未开启时为null
+     */
+    static SessionAttributeBuffer get() {
+        return current.get();
+    }
+
+    /**
+     * 读取属性，优先返回本请求写入的值
+     *
+     * @param key key
+     * @return 值
+     */
+    Object getAttribute(String key) {
+        Object value = writes.get(key);
+        if (value != null) {
+            return value == REMOVED ? null : value;
+        }
+        if (reads.containsKey(key)) {
+            return reads.get(key);
+        }
+        value = session().getAttribute(key);
+        reads.put(key, value);
+        return value;
+    }
+
+    /**
+     * 写入属性，值为null时与删除相同
+     *
+     * @param key   key
+     * @param value 值
+     */
+    void setAttribute(String key, Object value) {
+        if (writes.isEmpty()) {
+            // 立即创建会话，请求结束时响应可能已提交，无法再写入会话Cookie
+            session();
+        }
+        writes.put(key, value == null ? REMOVED : value);
+    }
+
+    /**
+     * 删除属性
+     *
+     * @param key key
+     */
+    void removeAttribute(String key) {
+        setAttribute(key, null);
+    }
+
+    /**
+     * 把缓冲的写入合并写回会话，并清空读取的缓存，下一个请求重新从会话读取
+     */
+    void flush() {
+        reads.clear();
+        if (writes.isEmpty()) {
+            return;
+        }
+        final Session session = session();
+        final Map<String, Object> pending = new LinkedHashMap<String, Object>(writes);
+        writes.clear();
+        RedisSessionDAO.batchUpdates(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                    if (entry.getValue() == REMOVED) {
+                        session.removeAttribute(entry.getKey());
+                    } else {
+                        session.setAttribute(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        });
+    }
+
+    private static Session session() {
+        return SecurityUtils.getSubject().getSession(true);
+    }
+}
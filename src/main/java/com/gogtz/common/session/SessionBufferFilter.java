@@ -0,0 +1,42 @@
+package com.gogtz.common.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 为每个请求开启{@link SessionAttributeBuffer}，请求结束时一次写回会话<br>
+ * 需要配置在shiroFilter之后，以便请求结束时仍能取得当前Subject
+ * <pre>
+ * &lt;filter&gt;
+ *     &lt;filter-name&gt;sessionBufferFilter&lt;/filter-name&gt;
+ *     &lt;filter-class&gt;com.gogtz.common.session.SessionBufferFilter&lt;/filter-class&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ *
+ * @author t
+ */
+public class SessionBufferFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(SessionBufferFilter.class);
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SessionAttributeBuffer.begin();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            try {
+                SessionAttributeBuffer.end();
+            } catch (RuntimeException e) {
+                logger.error("flush session attributes error", e);
+            }
+        }
+    }
+}
@@ -17,6 +17,13 @@ import org.apache.shiro.subject.Subject;
 
 import javax.servlet.http.HttpServletRequest;
 
+/**
+ * Session工具类<br>
+ * 开启{@link SessionAttributeBuffer}（通常通过{@link SessionBufferFilter}）时，属性的读写在请求内合并，请求结束时一次写回
+ *
+ * @author: t
+ * @version: 1.0
+ */
 public class SessionUtils {
 
     /**
@@ -25,9 +32,7 @@ public class SessionUtils {
      * @return
      */
     public static void setSession(String key, String value) {
-        Subject subject = SecurityUtils.getSubject();
-        Session session = subject.getSession(true);
-        session.setAttribute(key, value);
+        setSession(key, (Object) value);
     }
 
     /**
@@ -36,6 +41,11 @@ public class SessionUtils {
      * @return
      */
     public static void setSession(String key, Object value) {
+        SessionAttributeBuffer buffer = SessionAttributeBuffer.get();
+        if (buffer != null) {
+            buffer.setAttribute(key, value);
+            return;
+        }
         Subject subject = SecurityUtils.getSubject();
         Session session = subject.getSession(true);
         session.setAttribute(key, value);
@@ -48,18 +58,27 @@ public class SessionUtils {
      */
     @SuppressWarnings("unchecked")
     public static <T> T getSession(String key) {
+        SessionAttributeBuffer buffer = SessionAttributeBuffer.get();
+        if (buffer != null) {
+            return (T) buffer.getAttribute(key);
+        }
         Subject subject = SecurityUtils.getSubject();
         Session session = subject.getSession(true);
         return (T) session.getAttribute(key);
     }
 
     /**
-     * 此处为方法说明
+     * 此处为方法说明<br>
+     * 开启缓冲时先写回已缓冲的属性，之后直接修改会话不经过缓冲
      *
      * @return
      * @author renxingchen
      */
     public static Session getSession() {
+        SessionAttributeBuffer buffer = SessionAttributeBuffer.get();
+        if (buffer != null) {
+            buffer.flush();
+        }
         Subject subject = SecurityUtils.getSubject();
         return subject.getSession(true);
     }
@@ -70,6 +89,11 @@ public class SessionUtils {
      * @return
      */
     public static void removeSession(String key) {
+        SessionAttributeBuffer buffer = SessionAttributeBuffer.get();
+        if (buffer != null) {
+            buffer.removeAttribute(key);
+            return;
+        }
         Subject subject = SecurityUtils.getSubject();
         Session session = subject.getSession(true);
         session.removeAttribute(key);
@@ -0,0 +1,159 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.embedded.EmbeddedRedisServer;
+import redis.clients.jedis.Jedis;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 测试用的Redis服务器<br>
+ * 默认启动{@link EmbeddedRedisServer}，内置脚本由它的Java实现执行。
+ * 指定系统属性redis.it.address时（如mvn test -Dredis.it.address=127.0.0.1:6379）改为连接真实的Redis，
+ * 同样的测试执行注册的Lua脚本，用于发现Lua脚本与Java实现不一致；密码由redis.it.password指定。
+ * 连接真实的Redis时每个测试前后执行FLUSHDB，不要指向保存数据的库。
+ *
+ * @author t
+ */
+public final class RedisTestServer implements Closeable {
+
+    public static final String ADDRESS_PROPERTY = "redis.it.address";
+    public static final String PASSWORD_PROPERTY = "redis.it.password";
+
+    private final EmbeddedRedisServer embedded;
+    private final String host;
+    private final int port;
+    private final String password;
+
+    /**
+     * 真实Redis上本类执行INFO的次数，INFO本身也计入命令数
+     */
+    private long infoCount;
+
+    private RedisTestServer(EmbeddedRedisServer embedded, String host, int port, String password) {
+        this.embedded = embedded;
+        this.host = host;
+        this.port = port;
+        this.password = password;
+    }
+
+    /**
+     * 启动服务器，并让{@link RedisPoolManager}连接它
+     *
+     * @return 服务器
+     */
+    public static RedisTestServer start() {
+        String address = System.getProperty(ADDRESS_PROPERTY);
+        if (address == null || address.trim().isEmpty()) {
+            EmbeddedRedisServer server = new EmbeddedRedisServer().start();
+            return new RedisTestServer(server, server.getHost(), server.getPort(), "").useAsDefault();
+        }
+        String[] hostAndPort = address.trim().split(":");
+        String password = System.getProperty(PASSWORD_PROPERTY, "");
+        RedisTestServer server = new RedisTestServer(null, hostAndPort[0],
+                hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : 6379, password);
+        server.flushDb();
+        return server.useAsDefault();
+    }
+
+    /**
+     * 是否为内嵌服务器
+     *
+     * @return 是否为内嵌服务器
+     */
+    public boolean isEmbedded() {
+        return embedded != null;
+    }
+
+    /**
+     * 让{@link RedisPoolManager}连接本服务器
+     *
+     * @return 本服务器
+     */
+    public RedisTestServer useAsDefault() {
+        return useAsDefault(Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * 让{@link RedisPoolManager}连接本服务器，并覆盖其他配置，如redis.nearCache.enabled
+     *
+     * @param settings 其他配置
+     * @return 本服务器
+     */
+    public RedisTestServer useAsDefault(Map<String, String> settings) {
+        if (embedded != null) {
+            embedded.useAsDefault(settings);
+            return this;
+        }
+        Map<String, String> overrides = new HashMap<String, String>(settings);
+        overrides.put("redis.ip", host);
+        overrides.put("redis.port", String.valueOf(port));
+        overrides.put("redis.nodes", "");
+        overrides.put("redis.pool.password", password);
+        RedisPoolManager.override(overrides);
+        return this;
+    }
+
+    /**
+     * 已执行的命令数，真实的Redis按INFO的total_commands_processed计算，不含本类执行的INFO
+     *
+     * @return 命令数
+     */
+    public long getCommandCount() {
+        if (embedded != null) {
+            return embedded.getCommandCount();
+        }
+        String info = call(new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return jedis.info();
+            }
+        });
+        long previous = infoCount++;
+        for (String line : info.split("\r\n")) {
+            if (line.startsWith("total_commands_processed:")) {
+                return Long.parseLong(line.substring(line.indexOf(':') + 1).trim()) - previous;
+            }
+        }
+        throw new IllegalStateException("total_commands_processed not found in INFO");
+    }
+
+    @Override
+    public void close() {
+        if (embedded != null) {
+            embedded.close();
+            return;
+        }
+        try {
+            flushDb();
+        } finally {
+            RedisPoolManager.clearOverrides();
+        }
+    }
+
+    private void flushDb() {
+        call(new RedisCallback<String>() {
+            @Override
+            public String doInRedis(Jedis jedis) {
+                return jedis.flushDB();
+            }
+        });
+    }
+
+    /**
+     * 使用单独的连接执行，不经过连接池
+     */
+    private <T> T call(RedisCallback<T> callback) {
+        Jedis jedis = new Jedis(host, port);
+        try {
+            if (!password.isEmpty()) {
+                jedis.auth(password);
+            }
+            return callback.doInRedis(jedis);
+        } finally {
+            jedis.disconnect();
+        }
+    }
+}
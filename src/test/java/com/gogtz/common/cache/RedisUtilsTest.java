@@ -0,0 +1,105 @@
+package com.gogtz.common.cache;
+
+import com.gogtz.common.cache.codec.BinaryCodec;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * RedisUtils常用命令对{@link RedisTestServer}的冒烟测试
+ *
+ * @author t
+ */
+public class RedisUtilsTest extends TestCase {
+
+    private RedisTestServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testStringCommands() {
+        assertEquals("OK", RedisUtils.set("k", "值"));
+        assertEquals("值", RedisUtils.get("k"));
+        assertEquals(Long.valueOf(1L), RedisUtils.incr("c"));
+        assertEquals(Long.valueOf(6L), RedisUtils.incrBy("c", 5));
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("a", "1");
+        values.put("b", "2");
+        RedisUtils.mset(values);
+        assertEquals(Arrays.asList("1", "2", null), RedisUtils.mget("a", "b", "missing"));
+        assertEquals(Long.valueOf(2L), RedisUtils.mdel("a", "b", "missing"));
+        assertFalse(RedisUtils.exists("a"));
+    }
+
+    public void testCompareAndSet() {
+        assertTrue(RedisUtils.compareAndSet("cas", "", "1", 0));
+        assertTrue(RedisUtils.compareAndSet("cas", "1", "2", 10));
+        assertFalse(RedisUtils.compareAndSet("cas", "1", "3", 0));
+        assertTrue(RedisUtils.compareAndDelete("cas", "2"));
+        assertNull(RedisUtils.get("cas"));
+    }
+
+    public void testDeleteByPatternSkipsOtherKeys() {
+        for (int i = 0; i < 50; i++) {
+            RedisUtils.set("scan:" + i, "v");
+        }
+        RedisUtils.set("other", "v");
+        assertEquals(50L, RedisUtils.countByPattern("scan:*", 7));
+        assertEquals(50L, RedisUtils.deleteByPattern("scan:*", 7));
+        assertEquals(0L, RedisUtils.countByPattern("scan:*", 7));
+        assertTrue(RedisUtils.exists("other"));
+    }
+
+    public void testGetOrLoadWithoutExpiry() {
+        Supplier<String> loader = new Supplier<String>() {
+            @Override
+            public String get() {
+                return "loaded";
+            }
+        };
+        assertEquals("loaded", RedisUtils.getOrLoad("load", loader, 0));
+        assertEquals("loaded", RedisUtils.get("load"));
+    }
+
+    public void testNearCacheDropsBothCopies() throws Exception {
+        server.useAsDefault(Collections.singletonMap("redis.nearCache.enabled", "true"));
+        assertTrue(RedisNearCache.isEnabled());
+        RedisUtils.setObject("obj", "v1", BinaryCodec.INSTANCE);
+        awaitLocalCopy("obj", "v1");
+        // 按byte[]读取的副本在String形式的删除后也要失效
+        RedisUtils.del("obj");
+        assertNull(RedisUtils.getObject("obj", String.class, BinaryCodec.INSTANCE));
+
+        RedisUtils.set("str", "a");
+        assertEquals("a", RedisUtils.get("str"));
+        RedisUtils.del("str".getBytes(StandardCharsets.UTF_8));
+        assertNull(RedisUtils.get("str"));
+    }
+
+    /**
+     * 订阅完成时的清空和自身写入的失效通知都是异步到达的，重复读取直到按byte[]读取的副本命中本地
+     */
+    private static void awaitLocalCopy(String key, String expected) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            long hits = RedisNearCache.stats().getHitCount();
+            assertEquals(expected, RedisUtils.getObject(key, String.class, BinaryCodec.INSTANCE));
+            if (RedisNearCache.stats().getHitCount() > hits) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("near cache never served " + key);
+    }
+}
@@ -0,0 +1,63 @@
+package com.gogtz.common.cache.bloom;
+
+import com.gogtz.common.cache.RedisTestServer;
+import junit.framework.TestCase;
+
+/**
+ * 布隆过滤器脚本经过Jedis解析回复的完整路径，脚本由{@link RedisTestServer}执行
+ *
+ * @author t
+ */
+public class RedisBloomFilterTest extends TestCase {
+
+    private RedisTestServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testPutAndMightContain() {
+        RedisBloomFilter filter = new RedisBloomFilter("test", 1000, 0.01);
+        assertFalse(filter.mightContain("a"));
+        assertTrue(filter.put("a"));
+        assertFalse(filter.put("a"));
+        assertTrue(filter.mightContain("a"));
+        boolean[] added = filter.putAll("a", "b", "c");
+        assertFalse(added[0]);
+        assertTrue(added[1]);
+        assertTrue(added[2]);
+        boolean[] contained = filter.mightContainAll("b", "c", "d");
+        assertTrue(contained[0]);
+        assertTrue(contained[1]);
+        assertFalse(contained[2]);
+        assertEquals(3L, filter.count());
+    }
+
+    public void testGrowsBeyondExpectedInsertions() {
+        RedisBloomFilter filter = new RedisBloomFilter("test", 500, 0.01);
+        String[] values = new String[2000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "id" + i;
+        }
+        filter.putAll(values);
+        for (boolean contained : filter.mightContainAll(values)) {
+            assertTrue(contained);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 100);
+        filter.delete();
+        assertEquals(0L, filter.count());
+        assertFalse(filter.mightContain("id0"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.gogtz.common.cache.codec;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 损坏的数据只能以{@link CodecException}失败，不能产生其他异常或按损坏的长度分配内存
+ *
+ * @author t
+ */
+public class BinaryCodecTest extends TestCase {
+
+    private static final int[] CORRUPT_BYTES = {0x00, 0x01, 0x7F, 0x80, 0xFF};
+
+    public void testRoundTrip() {
+        Object value = sample();
+        assertEquals(value, BinaryCodec.INSTANCE.decode(BinaryCodec.INSTANCE.encode(value), Object.class));
+    }
+
+    public void testTruncatedData() {
+        byte[] bytes = BinaryCodec.INSTANCE.encode(sample());
+        for (int length = 0; length < bytes.length; length++) {
+            assertCodecException(Arrays.copyOf(bytes, length));
+        }
+    }
+
+    public void testCorruptData() {
+        byte[] bytes = BinaryCodec.INSTANCE.encode(sample());
+        for (int i = 1; i < bytes.length; i++) {
+            for (int b : CORRUPT_BYTES) {
+                byte[] corrupt = bytes.clone();
+                corrupt[i] = (byte) b;
+                try {
+                    BinaryCodec.INSTANCE.decode(corrupt, Object.class);
+                } catch (CodecException e) {
+                    // 预期的失败
+                }
+            }
+        }
+    }
+
+    public void testHugeLength() {
+        byte[] bytes = BinaryCodec.INSTANCE.encode(new int[]{1, 2, 3});
+        // 把长度改为五个字节的最大变长整数，即Integer.MAX_VALUE附近
+        byte[] corrupt = new byte[bytes.length + 4];
+        int lengthAt = indexOf(bytes, (byte) 3);
+        System.arraycopy(bytes, 0, corrupt, 0, lengthAt);
+        corrupt[lengthAt] = (byte) 0xFF;
+        corrupt[lengthAt + 1] = (byte) 0xFF;
+        corrupt[lengthAt + 2] = (byte) 0xFF;
+        corrupt[lengthAt + 3] = (byte) 0xFF;
+        corrupt[lengthAt + 4] = (byte) 0x07;
+        System.arraycopy(bytes, lengthAt + 1, corrupt, lengthAt + 5, bytes.length - lengthAt - 1);
+        assertCodecException(corrupt);
+        corrupt[lengthAt + 4] = (byte) 0x0F;
+        assertCodecException(corrupt);
+    }
+
+    private static Object sample() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        List<Object> list = new ArrayList<Object>();
+        list.add("a");
+        list.add(1L);
+        list.add(new TreeSet<String>(Arrays.asList("x", "y")));
+        map.put("list", list);
+        map.put("ints", Arrays.asList(1, 2, 3));
+        map.put("name", "值");
+        return map;
+    }
+
+    private static void assertCodecException(byte[] bytes) {
+        try {
+            BinaryCodec.INSTANCE.decode(bytes, Object.class);
+            fail("decoded corrupt data " + Arrays.toString(bytes));
+        } catch (CodecException e) {
+            // 预期的失败
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+}
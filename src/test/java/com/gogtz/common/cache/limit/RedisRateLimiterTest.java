@@ -0,0 +1,53 @@
+package com.gogtz.common.cache.limit;
+
+import com.gogtz.common.cache.RedisTestServer;
+import junit.framework.TestCase;
+
+/**
+ * 限流脚本经过Jedis解析回复的完整路径，脚本由{@link RedisTestServer}执行
+ *
+ * @author t
+ */
+public class RedisRateLimiterTest extends TestCase {
+
+    private RedisTestServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testTokenBucketLimitsBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("limit:test", 3, 1.0 / 60);
+        // 回复无法解析时按Redis不可用处理，关闭放行后仍能通过说明回复被正确解析
+        limiter.setAllowOnError(false);
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a", 2));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b", 3));
+        assertFalse(limiter.tryAcquire("b", 4));
+    }
+
+    public void testSlidingWindowLimitsWindow() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter("limit:test", 2, 60000L);
+        limiter.setAllowOnError(false);
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b", 2));
+    }
+
+    public void testRejectedCallerIsBlockedLocally() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter("limit:test", 1, 60000L);
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+        long commands = server.getCommandCount();
+        assertFalse(limiter.tryAcquire("a"));
+        assertEquals(commands, server.getCommandCount());
+    }
+}
@@ -0,0 +1,136 @@
+package com.gogtz.common.cache.lock;
+
+import com.gogtz.common.cache.RedisTestServer;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式锁对{@link RedisTestServer}的冒烟测试
+ *
+ * @author t
+ */
+public class RedisLockTest extends TestCase {
+
+    private RedisTestServer server;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    public void testReentrantAndExclusive() throws Exception {
+        final RedisLock lock = new RedisLock("lock:test");
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock());
+        assertFalse(other("lock:test", 50L));
+        lock.unlock();
+        assertTrue(lock.isHeldByCurrentThread());
+        assertFalse(other("lock:test", 50L));
+        lock.unlock();
+        assertFalse(lock.isHeldByCurrentThread());
+        assertTrue(other("lock:test", 50L));
+    }
+
+    public void testAnotherInstanceInSameThreadFailsFast() throws Exception {
+        RedisLock first = new RedisLock("lock:same");
+        RedisLock second = new RedisLock("lock:same");
+        first.lock();
+        try {
+            try {
+                second.lock();
+                fail("second instance must not wait for the lock held by its own thread");
+            } catch (IllegalStateException e) {
+                // 预期的失败
+            }
+            try {
+                second.tryLock(1, TimeUnit.SECONDS);
+                fail("second instance must not wait for the lock held by its own thread");
+            } catch (IllegalStateException e) {
+                // 预期的失败
+            }
+        } finally {
+            first.unlock();
+        }
+        assertTrue(second.tryLock());
+        second.unlock();
+        assertTrue(other("lock:same", 0L));
+    }
+
+    public void testDifferentNamesDoNotBlock() throws Exception {
+        RedisLock lock = new RedisLock("lock:a");
+        lock.lock();
+        try {
+            for (int i = 0; i < 300; i++) {
+                assertTrue(other("lock:b" + i, 0L));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void testMutualExclusion() throws Exception {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = 0; i < 50; i++) {
+                        RedisLock lock = new RedisLock("lock:shared");
+                        lock.lock();
+                        try {
+                            if (inside.incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            count.incrementAndGet();
+                            inside.decrementAndGet();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(200, count.get());
+        assertEquals(0, overlaps.get());
+    }
+
+    /**
+     * 在其他线程中用新的实例尝试加锁，成功后立即解锁
+     */
+    private boolean other(final String name, final long waitMillis) throws Exception {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                RedisLock lock = new RedisLock(name);
+                if (!lock.tryLock(waitMillis, TimeUnit.MILLISECONDS)) {
+                    return false;
+                }
+                lock.unlock();
+                return true;
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,93 @@
+package com.gogtz.common.cache.queue;
+
+import com.gogtz.common.cache.RedisTestServer;
+import com.gogtz.common.cache.RedisUtils;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可靠队列对{@link RedisTestServer}的冒烟测试
+ *
+ * @author t
+ */
+public class RedisQueueConsumerTest extends TestCase {
+
+    private RedisTestServer server;
+    private RedisQueueConsumer consumer;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (consumer != null) {
+            consumer.stop(5, TimeUnit.SECONDS);
+        }
+        server.close();
+    }
+
+    public void testConsumesAndAcks() throws Exception {
+        final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            RedisUtils.lpush("queue:test", "m" + i);
+        }
+        consumer = new RedisQueueConsumer("queue:test", new MessageHandler() {
+            @Override
+            public void handle(String message) {
+                handled.add(message);
+                done.countDown();
+            }
+        }, 2, 5, 30000L, 3);
+        consumer.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(consumer.stop(5, TimeUnit.SECONDS));
+        assertEquals(20, handled.size());
+        assertEquals(Long.valueOf(0L), RedisUtils.llen("queue:test" + RedisQueueConsumer.PROCESSING_SUFFIX));
+        assertEquals(20L, consumer.stats().getProcessedCount());
+    }
+
+    public void testSlowBatchIsNotRedelivered() throws Exception {
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            RedisUtils.lpush("queue:slow", "m" + i);
+        }
+        // 整批的处理时间超过可见超时，单条不超过
+        consumer = new RedisQueueConsumer("queue:slow", new MessageHandler() {
+            @Override
+            public void handle(String message) throws Exception {
+                Thread.sleep(600);
+                done.countDown();
+            }
+        }, 1, 4, 1000L, 3);
+        consumer.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(consumer.stop(5, TimeUnit.SECONDS));
+        assertEquals(0L, consumer.stats().getRedeliveredCount());
+        assertEquals(Long.valueOf(0L), RedisUtils.llen("queue:slow" + RedisQueueConsumer.PROCESSING_SUFFIX));
+    }
+
+    public void testFailedMessageMovesToDeadLetter() throws Exception {
+        final CountDownLatch attempts = new CountDownLatch(2);
+        RedisUtils.lpush("queue:fail", "bad");
+        consumer = new RedisQueueConsumer("queue:fail", new MessageHandler() {
+            @Override
+            public void handle(String message) {
+                attempts.countDown();
+                throw new IllegalStateException("fail " + message);
+            }
+        }, 1, 1, 30000L, 2);
+        consumer.start();
+        assertTrue(attempts.await(10, TimeUnit.SECONDS));
+        assertTrue(consumer.stop(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(1L), RedisUtils.llen("queue:fail" + RedisQueueConsumer.DEAD_LETTER_SUFFIX));
+        assertEquals(Long.valueOf(0L), RedisUtils.llen("queue:fail"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.gogtz.common.cache.shiro;
+
+import com.gogtz.common.cache.RedisNearCache;
+import com.gogtz.common.cache.RedisTestServer;
+import com.gogtz.common.cache.codec.BinaryCodec;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shiro缓存对{@link RedisTestServer}的冒烟测试
+ *
+ * @author t
+ */
+public class RedisCacheTest extends TestCase {
+
+    private RedisTestServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = RedisTestServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testPutGetClear() {
+        RedisCache<String, Object> cache = new RedisCache<String, Object>("test", BinaryCodec.INSTANCE, 60, 1000L, 100L);
+        List<String> roles = Arrays.asList("admin", "user");
+        cache.put("roles", roles);
+        cache.put("name", "t");
+        assertEquals(roles, cache.get("roles"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.keys().size());
+        cache.remove("name");
+        assertNull(cache.get("name"));
+        cache.clear();
+        assertNull(cache.get("roles"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testRemoveTakesEffectWithNearCache() {
+        server.useAsDefault(Collections.singletonMap("redis.nearCache.enabled", "true"));
+        assertTrue(RedisNearCache.isEnabled());
+        // 不使用本地一级缓存，读取经过近端缓存
+        RedisCache<String, Object> cache = new RedisCache<String, Object>("auth", BinaryCodec.INSTANCE, 60, 0L, 0L);
+        List<String> roles = Arrays.asList("admin");
+        cache.put("user:1", roles);
+        cache.put("user:2", roles);
+        assertEquals(roles, cache.get("user:1"));
+        assertEquals(roles, cache.get("user:2"));
+        // 清除授权缓存后必须立即生效，不能从近端缓存读到旧值
+        cache.remove("user:1");
+        assertNull(cache.get("user:1"));
+        cache.clear();
+        assertNull(cache.get("user:2"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.gogtz.common.date;
+
+import junit.framework.TestCase;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 与SimpleDateFormat含义不同的写法按SimpleDateFormat的结果格式化和解析
+ *
+ * @author t
+ */
+public class DateFormattersTest extends TestCase {
+
+    private static final String[] PATTERNS = {
+            "yyyy-MM-dd HH:mm:ss.S", "yyyy-MM-dd HH:mm:ss.SSS", "yyyyMMddHHmmssSSS", "yyyy-MM-dd u",
+            "[yyyy-MM-dd] HH:mm", "yy-MM-dd", "yyyy-MM-dd F EEE", "yyyy-MM-dd HH:mm Z", "'{'yyyy'}' #"
+    };
+
+    public void testFormatLikeSimpleDateFormat() throws Exception {
+        Date date = legacy("yyyy-MM-dd HH:mm:ss.SSS").parse("2012-01-05 10:20:30.123");
+        for (String pattern : PATTERNS) {
+            assertEquals(pattern, legacy(pattern).format(date), DateUtils.format(date, pattern));
+        }
+        date = legacy("yyyy-MM-dd HH:mm:ss.SSS").parse("2012-01-05 10:20:30.005");
+        assertEquals("2012-01-05 10:20:30.5", DateUtils.format(date, "yyyy-MM-dd HH:mm:ss.S"));
+    }
+
+    public void testParseLikeSimpleDateFormat() throws Exception {
+        for (String pattern : PATTERNS) {
+            String text = legacy(pattern).format(new Date(1325730030123L));
+            assertEquals(pattern, legacy(pattern).parse(text), DateUtils.date(text, pattern));
+        }
+        assertEquals(5, millis(DateUtils.date("2012-01-05 10:20:30.5", "yyyy-MM-dd HH:mm:ss.S")));
+        assertEquals(123, millis(DateUtils.date("10:20:30.123", "HH:mm:ss.S")));
+        assertEquals(legacy("yy-MM-dd").parse("99-01-05"), DateUtils.date("99-01-05", "yy-MM-dd"));
+    }
+
+    public void testJulianDates() throws Exception {
+        Date date = legacy("yyyy-MM-dd HH:mm").parse("1500-03-01 08:00");
+        assertEquals("1500-03-01 08:00", DateUtils.format(date, "yyyy-MM-dd HH:mm"));
+        assertEquals(date, DateUtils.date("1500-03-01 08:00", "yyyy-MM-dd HH:mm"));
+        assertEquals(legacy("yyyy-MM-dd").parse("1582-10-04"), DateUtils.date("1582-10-04", "yyyy-MM-dd"));
+        assertEquals(legacy("yyyy-MM-dd").parse("1582-10-15"), DateUtils.date("1582-10-15", "yyyy-MM-dd"));
+        // 只在儒略历中存在的闰日
+        assertEquals(legacy("yyyy-MM-dd").parse("1500-02-29"), DateUtils.date("1500-02-29", "yyyy-MM-dd"));
+    }
+
+    public void testNoLocalMeanTime() throws Exception {
+        TimeZone zone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+        try {
+            String text = "1800-06-01 12:00:00";
+            Date date = legacy("yyyy-MM-dd HH:mm:ss").parse(text);
+            assertEquals(date, DateUtils.date(text, EnumDateStyle.YYYY_MM_DD_HH_MM_SS));
+            assertEquals(date, DateUtils.date(text));
+            assertEquals(text, DateUtils.format(date, EnumDateStyle.YYYY_MM_DD_HH_MM_SS));
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+    }
+
+    public void testLastAdjacentFieldTakesRemainingDigits() throws Exception {
+        assertEquals(legacy("yyyyMMdd").parse("2012015"), DateUtils.date("2012015", EnumDateStyle.YYYYMMDD));
+        assertEquals(legacy("HHmmss").parse("12345"), DateUtils.date("12345", EnumDateStyle.HHMMSS));
+        assertEquals("12:34:05", DateUtils.format(DateUtils.date("12345", EnumDateStyle.HHMMSS), "HH:mm:ss"));
+        assertEquals(legacy("yyyyMMddHHmmssSSS").parse("201201051020305"),
+                DateUtils.date("201201051020305", "yyyyMMddHHmmssSSS"));
+        assertNull(DateUtils.date("20120105102030", EnumDateStyle.YYYYMMDD));
+    }
+
+    public void testRejectsUnsupportedLetters() {
+        assertNull(DateUtils.date("2012-01-05", "yyyy-MM-dd n"));
+        assertNull(DateUtils.format(new Date(), "yyyy-MM-dd Q"));
+    }
+
+    private static SimpleDateFormat legacy(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        return format;
+    }
+
+    private static long millis(Date date) {
+        return date.getTime() % 1000;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gogtz.common.date;
+
+import junit.framework.TestCase;
+
+import java.util.Date;
+
+/**
+ * 纯数字只有10位秒数和13位毫秒数按时间戳处理，连写的日期时间不会被误判
+ *
+ * @author t
+ */
+public class DateScannerTest extends TestCase {
+
+    public void testCompactDateTimeIsNotEpoch() {
+        String serverTime = DateUtils.format(new Date(), "yyyyMMddHHmmss");
+        for (String text : new String[]{"20120105102030", "2012010510", "201201051020", serverTime}) {
+            assertEquals(text, DateScanner.INVALID, DateScanner.parse(text));
+            assertFalse(text, DateScanner.isEpoch(text));
+            assertNull(text, DateUtils.date(text));
+            // 与SimpleDateFormat一样，yyyyMMdd不截取前8位
+            assertNull(text, DateUtils.date(text, EnumDateStyle.YYYYMMDD));
+        }
+    }
+
+    public void testEpoch() {
+        assertEquals(1325730030000L, DateScanner.parse("1325730030"));
+        assertEquals(1325730030123L, DateScanner.parse(" 1325730030123 "));
+        assertEquals(new Date(1700000000000L), DateUtils.date("1700000000"));
+        assertTrue(DateScanner.isEpoch("1700000000000"));
+        assertNull(DateScanner.detect("1700000000"));
+        assertFalse(DateScanner.isEpoch("132573003"));
+        assertFalse(DateScanner.isEpoch("13257300301"));
+    }
+
+    public void testCompactDate() {
+        assertEquals(EnumDateStyle.YYYYMMDD, DateScanner.detect("20120105"));
+        assertEquals(DateUtils.date("2012-01-05 00:00:00", "yyyy-MM-dd HH:mm:ss"), DateUtils.date("20120105"));
+    }
+
+    public void testBeforeGregorianCutover() {
+        for (String text : new String[]{"1500-03-01", "0012-01-05", "1582-10-04"}) {
+            assertEquals(text, DateScanner.INVALID, DateScanner.parse(text));
+            assertEquals(text, DateUtils.date(text, EnumDateStyle.YYYY_MM_DD), DateUtils.date(text));
+            assertEquals(text, text, DateUtils.format(DateUtils.date(text), EnumDateStyle.YYYY_MM_DD));
+        }
+        assertEquals(EnumDateStyle.YYYY_MM_DD, DateScanner.detect("1582-10-15"));
+        assertEquals(DateUtils.date("1582-10-15", EnumDateStyle.YYYY_MM_DD), DateUtils.date("1582-10-15"));
+    }
+}